@@ -12,6 +12,7 @@ import com.magmaguy.betterstructures.config.schematics.SchematicConfig;
 import com.magmaguy.betterstructures.config.spawnpools.SpawnPoolsConfig;
 import com.magmaguy.betterstructures.config.treasures.TreasureConfig;
 import com.magmaguy.betterstructures.content.BSPackage;
+import com.magmaguy.betterstructures.listeners.ChunkEligibilityProfile;
 import com.magmaguy.betterstructures.listeners.FirstTimeSetupWarner;
 import com.magmaguy.betterstructures.listeners.MobDeathListener;
 import com.magmaguy.betterstructures.listeners.NewChunkLoadEvent;
@@ -22,6 +23,15 @@ import com.magmaguy.betterstructures.schematics.SchematicContainer;
 import com.magmaguy.betterstructures.structurelocation.StructureLocationManager;
 import com.magmaguy.betterstructures.thirdparty.MythicMobs;
 import com.magmaguy.betterstructures.thirdparty.WorldGuard;
+import com.magmaguy.betterstructures.util.ChunkLoadRateLimiter;
+import com.magmaguy.betterstructures.util.ChunkTicketRegistry;
+import com.magmaguy.betterstructures.util.MaterialClassTable;
+import com.magmaguy.betterstructures.util.PasteAdmission;
+import com.magmaguy.betterstructures.util.StartupGraph;
+import com.magmaguy.betterstructures.util.StructurePasteQueue;
+import com.magmaguy.betterstructures.worldedit.ClipboardResidency;
+import com.magmaguy.betterstructures.worldedit.PasteCoalescer;
+import com.magmaguy.betterstructures.worldedit.RelightScheduler;
 import com.magmaguy.easyminecraftgoals.NMSManager;
 import com.magmaguy.magmacore.MagmaCore;
 import com.magmaguy.magmacore.command.CommandManager;
@@ -31,9 +41,21 @@ import org.bukkit.Bukkit;
 import org.bukkit.event.HandlerList;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public final class BetterStructures extends JavaPlugin {
+    private static final int STARTUP_THREADS = 3;
+    // Bumped on every enable and disable, so a startup that was overtaken does not open generation
+    private static int startupGeneration = 0;
+    private static ExecutorService startupPool = null;
 
     @Override
     public void onEnable() {
@@ -68,21 +90,42 @@ public final class BetterStructures extends JavaPlugin {
         MagmaCore.initializeImporter();
 
         NMSManager.initializeAdapter(this);
-
-        long configStartTime = System.currentTimeMillis();
-        new TreasureConfig();
-        new GeneratorConfig();
-        new ModuleGeneratorsConfig();
-        new SpawnPoolsConfig();
-        new SchematicConfig();
-        new ModulesConfig();
-        new ContentPackageConfig();
-        ComponentsConfigFolder.initialize();
-        Logger.info("配置初始化完成，耗时 " + (System.currentTimeMillis() - configStartTime) + "毫秒");
-
-        long slmStartTime = System.currentTimeMillis();
-        StructureLocationManager.getInstance();
-        Logger.info("建筑位置管理器初始化完成，耗时 " + (System.currentTimeMillis() - slmStartTime) + "毫秒");
+        MaterialClassTable.initialize();
+
+        // Reading schematic, module and structure location files runs off the main thread, side by side. The MagmaCore
+        // configs and the registries they fill are only touched on the main thread, one stage per task, so commands
+        // and listeners never see a registry mid-update. Chunks loaded meanwhile are queued by NewChunkLoadEvent and
+        // scanned once the last stage finished.
+        long startupStartTime = System.currentTimeMillis();
+        int generation = ++startupGeneration;
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(STARTUP_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "BetterStructures-startup-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        startupPool = pool;
+        Executor mainThread = runnable -> Bukkit.getScheduler().runTask(this, runnable);
+        AtomicReference<Map<File, SchematicConfig.LoadedSchematic>> schematicFiles = new AtomicReference<>();
+        AtomicReference<Map<File, ModulesConfig.LoadedModule>> moduleFiles = new AtomicReference<>();
+        StructureLocationManager structureLocationManager = StructureLocationManager.createUnloaded();
+        new StartupGraph()
+                .stage("schematicFiles", pool, () -> schematicFiles.set(SchematicConfig.loadSchematicFiles()))
+                .stage("moduleFiles", pool, () -> moduleFiles.set(ModulesConfig.loadModuleFiles()))
+                .stage("structureLocations", pool, structureLocationManager::loadStoredLocations)
+                .stage("treasures", mainThread, TreasureConfig::new)
+                .stage("spawnPools", mainThread, SpawnPoolsConfig::new)
+                .stage("moduleGenerators", mainThread, ModuleGeneratorsConfig::new)
+                .stage("components", mainThread, ComponentsConfigFolder::initialize)
+                .stage("generators", mainThread, GeneratorConfig::new, "treasures")
+                .stage("schematics", mainThread, () -> new SchematicConfig(schematicFiles.get()),
+                        "treasures", "generators", "schematicFiles")
+                .stage("modules", mainThread, () -> new ModulesConfig(moduleFiles.get()), "treasures", "moduleFiles")
+                .stage("contentPackages", mainThread, ContentPackageConfig::new,
+                        "generators", "moduleGenerators", "schematics", "modules")
+                .run()
+                .whenComplete((timings, throwable) -> Bukkit.getScheduler().runTask(this, () ->
+                        finishStartup(generation, pool, timings, throwable, startupStartTime)));
 
         // Initialize mob tracking system
         if (DefaultConfig.isMobTrackingEnabled()) {
@@ -113,6 +156,9 @@ public final class BetterStructures extends JavaPlugin {
         commandManager.registerCommand(new GenerateModulesCommand());
         commandManager.registerCommand(new CommandTestCommand());
         commandManager.registerCommand(new StructureInfoCommand());
+        commandManager.registerCommand(new StatsCommand());
+        commandManager.registerCommand(new BenchmarkCommand());
+        commandManager.registerCommand(new TicketsCommand());
         commandManager.registerCommand(new BetterStructuresCommand());
 
         MagmaCore.checkVersionUpdate("103241", "https://nightbreak.io/plugin/betterstructures/");
@@ -123,6 +169,33 @@ public final class BetterStructures extends JavaPlugin {
         new Metrics(this, 19523);
     }
 
+    /**
+     * @return Whether the startup stages of the current enable are still running
+     */
+    public static boolean isStartupRunning() {
+        return startupPool != null;
+    }
+
+    private void finishStartup(int generation, ExecutorService pool, List<StartupGraph.StageTiming> timings,
+                               Throwable throwable, long startupStartTime) {
+        pool.shutdown();
+        // Disabled or reloaded while the stages were running
+        if (generation != startupGeneration) return;
+        startupPool = null;
+        if (throwable != null) {
+            Logger.warn("插件启动失败，结构生成不会启用！请检查配置文件后重载插件或重启服务器。");
+            throwable.printStackTrace();
+            NewChunkLoadEvent.abandonPendingChunks();
+            return;
+        }
+        // Eligibility profiles depend on the loaded generators, drop any compiled before they were available
+        ChunkEligibilityProfile.shutdown();
+        Logger.info("配置初始化完成，耗时 " + (System.currentTimeMillis() - startupStartTime) + "毫秒");
+        for (StartupGraph.StageTiming timing : timings)
+            Logger.info("- " + timing.name() + ": 第 " + timing.startMillis() + " 毫秒开始，耗时 " + timing.durationMillis() + "毫秒");
+        NewChunkLoadEvent.markGenerationReady();
+    }
+
     @Override
     public void onLoad() {
         MagmaCore.createInstance(this);
@@ -140,15 +213,28 @@ public final class BetterStructures extends JavaPlugin {
     @Override
     public void onDisable() {
         // Plugin shutdown logic
+        startupGeneration++;
+        if (startupPool != null) {
+            startupPool.shutdownNow();
+            startupPool = null;
+        }
         MythicMobs.clearCache();
         MobTrackingManager.shutdown();
         StructureLocationManager.getInstance().shutdown();
         SchematicContainer.shutdown();
+        NewChunkLoadEvent.shutdown();
+        PasteCoalescer.shutdown();
+        StructurePasteQueue.shutdown();
+        PasteAdmission.shutdown();
+        ChunkLoadRateLimiter.shutdown();
+        RelightScheduler.shutdown();
+        ChunkTicketRegistry.shutdown();
         Bukkit.getServer().getScheduler().cancelTasks(MetadataHandler.PLUGIN);
         MagmaCore.shutdown();
         HandlerList.unregisterAll(MetadataHandler.PLUGIN);
         BSPackage.shutdown();
         ModulesContainer.shutdown();
+        ClipboardResidency.shutdown();
         WFCGenerator.shutdown();
         Bukkit.getLogger().info("[BetterStructures] 已关闭！");
     }
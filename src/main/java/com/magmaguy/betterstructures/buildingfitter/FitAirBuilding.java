@@ -1,38 +1,41 @@
 package com.magmaguy.betterstructures.buildingfitter;
 
+import com.magmaguy.betterstructures.buildingfitter.util.FitSearch;
 import com.magmaguy.betterstructures.buildingfitter.util.TerrainAdequacy;
+import com.magmaguy.betterstructures.buildingfitter.util.TerrainContext;
 import com.magmaguy.betterstructures.config.DefaultConfig;
 import com.magmaguy.betterstructures.config.generators.GeneratorConfigFields;
 import com.magmaguy.betterstructures.schematics.SchematicContainer;
-import com.magmaguy.betterstructures.util.WorldEditUtils;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
-import org.bukkit.Material;
 import org.bukkit.util.Vector;
 
 import java.util.concurrent.ThreadLocalRandom;
 
 public class FitAirBuilding extends FitAnything {
 
-    public FitAirBuilding(Chunk chunk, SchematicContainer schematicContainer) {
+    public FitAirBuilding(Chunk chunk, TerrainContext terrain, SchematicContainer schematicContainer) {
         super(schematicContainer);
+        this.terrain = terrain;
         super.structureType = GeneratorConfigFields.StructureType.SKY;
         this.schematicContainer = schematicContainer;
-        this.schematicClipboard = schematicContainer.getClipboard();
         scan(chunk);
     }
 
-    public FitAirBuilding(Chunk chunk) {
+    public FitAirBuilding(Chunk chunk, TerrainContext terrain) {
+        this.terrain = terrain;
         super.structureType = GeneratorConfigFields.StructureType.SKY;
         scan(chunk);
     }
 
     private void scan(Chunk chunk) {
-        // Check if chunk is loaded to avoid sync chunk loading with FAWE
-        if (!chunk.isLoaded()) return;
+        // Scoring only reads the captured terrain, never the live world
+        int columnX = chunk.getX() * 16 + 8;
+        int columnZ = chunk.getZ() * 16 + 8;
+        if (!terrain.isLoaded(columnX, columnZ)) return;
         //The 8 offset on x and y is to center the anchor on the chunk, the system adds 100 blocks
         int altitude = 0;
-        switch (chunk.getWorld().getEnvironment()) {
+        switch (terrain.getEnvironment()) {
             case NORMAL:
             case CUSTOM:
                 altitude = ThreadLocalRandom.current().nextInt(DefaultConfig.getNormalCustomAirBuildingMinAltitude(), DefaultConfig.getNormalCustomAirBuildingMaxAltitude() + 1);
@@ -45,9 +48,9 @@ public class FitAirBuilding extends FitAnything {
                 altitude = ThreadLocalRandom.current().nextInt(DefaultConfig.getEndAirBuildMinAltitude(), DefaultConfig.getEndAirBuildMaxAltitude() + 1);
                 break;
         }
-        Location originalLocation = chunk.getWorld().getHighestBlockAt(chunk.getX() * 16 + 8, chunk.getZ() * 16 + 8).getLocation().add(new Vector(0, altitude, 0));
+        Location originalLocation = new Location(chunk.getWorld(), columnX, terrain.getHighestBlockYAt(columnX, columnZ), columnZ).add(new Vector(0, altitude, 0));
 
-        switch (chunk.getWorld().getEnvironment()) {
+        switch (terrain.getEnvironment()) {
             case CUSTOM:
             case NORMAL:
                 break;
@@ -59,9 +62,8 @@ public class FitAirBuilding extends FitAnything {
                 int highPoint = 0;
                 int tolerance = 3;
                 for (int y = lowestY; y < highestY; y++) {
-                    Location currentLocation = originalLocation.clone();
-                    currentLocation.setY(y);
-                    if (currentLocation.getBlock().getType().isAir()) {
+                    int blockClass = terrain.getBlockClass(columnX, y, columnZ);
+                    if ((blockClass & TerrainContext.AIR) != 0) {
                         if (streak) {
                             highPoint = y;
                         } else {
@@ -69,15 +71,13 @@ public class FitAirBuilding extends FitAnything {
                             streak = true;
                         }
                     } else {
-                        if (currentLocation.getBlock().getType() == Material.VOID_AIR ||
-                                currentLocation.getBlock().getType() == Material.BEDROCK ||
+                        if ((blockClass & (TerrainContext.VOID | TerrainContext.BEDROCK)) != 0 ||
                                 tolerance == 0) {
                             if (streak) {
                                 streak = false;
                                 if (highPoint - lowPoint >= 40)
                                     break;
-                                if (currentLocation.getBlock().getType() == Material.VOID_AIR ||
-                                        currentLocation.getBlock().getType() == Material.BEDROCK)
+                                if ((blockClass & (TerrainContext.VOID | TerrainContext.BEDROCK)) != 0)
                                     return;
                                 tolerance = 3;
                             }
@@ -104,20 +104,16 @@ public class FitAirBuilding extends FitAnything {
         }
 
         randomizeSchematicContainer(originalLocation, GeneratorConfigFields.StructureType.SKY);
-        if (schematicClipboard == null) {
+        if (schematicContainer == null) {
             //Bukkit.getLogger().info("Did not spawn structure in biome " + originalLocation.getBlock().getBiome() + " because no valid schematics exist for it.");
             return;
         }
-        schematicOffset = WorldEditUtils.getSchematicOffset(schematicClipboard);
+        schematicOffset = schematicContainer.getSchematicOffset();
 
         chunkScan(originalLocation, 0, 0);
         if (location == null)
-            for (int chunkX = -searchRadius; chunkX < searchRadius + 1; chunkX++) {
-                for (int chunkZ = -searchRadius; chunkZ < searchRadius + 1; chunkZ++) {
-                    if (chunkX == 0 && chunkZ == 0) continue;
-                    chunkScan(originalLocation, chunkX, chunkZ);
-                    if (location != null) break;
-                }
+            for (int[] offset : FitSearch.getAnchorOffsets(searchRadius, false)) {
+                chunkScan(originalLocation, offset[0], offset[1]);
                 if (location != null) break;
             }
         if (location == null) {
@@ -128,9 +124,9 @@ public class FitAirBuilding extends FitAnything {
         paste(location, chunk);
     }
 
-    private void chunkScan(Location originalLocation, int chunkX, int chunkZ) {
-        Location iteratedLocation = originalLocation.clone().add(new Vector(chunkX * 16, 0, chunkZ * 16));
-        double newScore = TerrainAdequacy.scan(scanStep, schematicClipboard, iteratedLocation, schematicOffset, TerrainAdequacy.ScanType.AIR);
+    private void chunkScan(Location originalLocation, int offsetX, int offsetZ) {
+        Location iteratedLocation = originalLocation.clone().add(new Vector(offsetX, 0, offsetZ));
+        double newScore = TerrainAdequacy.scan(terrain, schematicContainer.getSampleLattice(), iteratedLocation, schematicOffset, TerrainAdequacy.ScanType.AIR, startingScore);
         if (newScore == startingScore) location = iteratedLocation;
     }
 }
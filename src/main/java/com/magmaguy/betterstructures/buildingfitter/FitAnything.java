@@ -4,8 +4,13 @@ import com.magmaguy.betterstructures.MetadataHandler;
 import com.magmaguy.betterstructures.api.BuildPlaceEvent;
 import com.magmaguy.betterstructures.api.ChestFillEvent;
 import com.magmaguy.betterstructures.buildingfitter.util.FitUndergroundDeepBuilding;
+import com.magmaguy.betterstructures.buildingfitter.util.HeightmapCache;
 import com.magmaguy.betterstructures.buildingfitter.util.LocationProjector;
+import com.magmaguy.betterstructures.buildingfitter.util.PedestalPalette;
+import com.magmaguy.betterstructures.buildingfitter.util.SampleLattice;
 import com.magmaguy.betterstructures.buildingfitter.util.SchematicPicker;
+import com.magmaguy.betterstructures.buildingfitter.util.TerrainContext;
+import com.magmaguy.betterstructures.buildingfitter.util.TerrainSnapshot;
 import com.magmaguy.betterstructures.config.DefaultConfig;
 import com.magmaguy.betterstructures.config.generators.GeneratorConfigFields;
 import com.magmaguy.betterstructures.mobtracking.MobSpawnConfig;
@@ -18,8 +23,10 @@ import com.magmaguy.betterstructures.thirdparty.MythicMobs;
 import com.magmaguy.betterstructures.thirdparty.WorldGuard;
 import com.magmaguy.betterstructures.util.ChunkProcessingMarker;
 import com.magmaguy.betterstructures.util.DeveloperLogger;
-import com.magmaguy.betterstructures.util.SurfaceMaterials;
+import com.magmaguy.betterstructures.util.MaterialClassTable;
+import com.magmaguy.betterstructures.util.StructurePasteQueue;
 import com.magmaguy.betterstructures.util.WorldEditUtils;
+import com.magmaguy.betterstructures.worldedit.ClipboardResidency;
 import com.magmaguy.betterstructures.worldedit.Schematic;
 import com.magmaguy.magmacore.util.Logger;
 import com.magmaguy.magmacore.util.SpigotMessage;
@@ -30,15 +37,12 @@ import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.block.Block;
-import org.bukkit.block.BlockFace;
 import org.bukkit.block.Container;
 import org.bukkit.entity.*;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.util.Vector;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -50,15 +54,11 @@ import java.util.function.Function;
 public class FitAnything {
     public static boolean worldGuardWarn = false;
     protected final int searchRadius = 1;
-    protected final int scanStep = 3;
-    private final HashMap<Material, Integer> undergroundPedestalMaterials = new HashMap<>();
-    private final HashMap<Material, Integer> surfacePedestalMaterials = new HashMap<>();
+    protected final int scanStep = SampleLattice.SCAN_STEP;
     @Getter
     protected SchematicContainer schematicContainer;
     protected double startingScore = 100;
     @Getter
-    protected Clipboard schematicClipboard = null;
-    @Getter
     protected Vector schematicOffset;
     protected int verticalOffset = 0;
     //At 10% it is assumed a fit is so bad it's better just to skip
@@ -66,44 +66,55 @@ public class FitAnything {
     @Getter
     protected Location location = null;
     protected GeneratorConfigFields.StructureType structureType;
-    private Material pedestalMaterial = null;
+    // Terrain captured on the main thread, all fit scoring reads from this instead of the live world
+    protected TerrainContext terrain;
+    // Placed by a command rather than by natural generation, its paste is queued ahead of natural ones
+    private final boolean commandBased;
+    // Sampled from the captured terrain while fitting, read by the paste
+    private PedestalPalette pedestalPalette = null;
 
     public FitAnything(SchematicContainer schematicContainer) {
         this.schematicContainer = schematicContainer;
-        this.verticalOffset = schematicContainer.getClipboard().getMinimumPoint().y() - schematicContainer.getClipboard().getOrigin().y();
+        this.commandBased = true;
+        this.verticalOffset = schematicContainer.getMinimumPoint().y() - schematicContainer.getOrigin().y();
     }
 
     public FitAnything() {
+        this.commandBased = false;
     }
 
     public static void commandBasedCreation(Chunk chunk, GeneratorConfigFields.StructureType structureType, SchematicContainer container) {
+        // Commands run on the main thread, so the terrain can be captured right away
+        TerrainContext terrain = new TerrainContext(TerrainSnapshot.capture(chunk.getWorld(), chunk.getX(), chunk.getZ(),
+                TerrainSnapshot.captureRadius(container.getHorizontalReach())));
         switch (structureType) {
             case SKY:
-                new FitAirBuilding(chunk, container);
+                new FitAirBuilding(chunk, terrain, container);
                 break;
             case SURFACE:
-                new FitSurfaceBuilding(chunk, container);
+                new FitSurfaceBuilding(chunk, terrain, container);
                 break;
             case LIQUID_SURFACE:
-                new FitLiquidBuilding(chunk, container);
+                new FitLiquidBuilding(chunk, terrain, container);
                 break;
             case UNDERGROUND_DEEP:
-                FitUndergroundDeepBuilding.fit(chunk, container);
+                FitUndergroundDeepBuilding.fit(chunk, terrain, container);
                 break;
             case UNDERGROUND_SHALLOW:
-                FitUndergroundShallowBuilding.fit(chunk, container);
+                FitUndergroundShallowBuilding.fit(chunk, terrain, container);
                 break;
             default:
         }
     }
 
     protected void randomizeSchematicContainer(Location location, GeneratorConfigFields.StructureType structureType) {
-        if (schematicClipboard != null) return;
-        schematicContainer = SchematicPicker.pick(location, structureType);
-        if (schematicContainer != null) {
-            schematicClipboard = schematicContainer.getClipboard();
-            verticalOffset = schematicContainer.getClipboard().getMinimumPoint().y() - schematicContainer.getClipboard().getOrigin().y();
-        }
+        if (schematicContainer != null) return;
+        schematicContainer = SchematicPicker.pick(terrain, location, structureType);
+        // Only the anchor neighbourhood is captured up front, the rest is captured for the schematic actually picked
+        if (schematicContainer != null && !terrain.requireReach(schematicContainer.getHorizontalReach()))
+            schematicContainer = null;
+        if (schematicContainer != null)
+            verticalOffset = schematicContainer.getMinimumPoint().y() - schematicContainer.getOrigin().y();
     }
 
     protected void paste(Location location) {
@@ -111,6 +122,9 @@ public class FitAnything {
     }
 
     protected void paste(Location location, Chunk sourceChunk) {
+        // Pedestal materials come from the captured terrain, so no world reads are left for the pre-paste step
+        pedestalPalette = samplePedestalPalette(location);
+
         // Ensure paste runs on main thread since BuildPlaceEvent must fire on main thread
         // and this method may be called from async terrain scanning
         Runnable pasteLogic = () -> {
@@ -120,28 +134,15 @@ public class FitAnything {
 
             FitAnything fitAnything = this;
 
-            // Create prePasteCallback that runs AFTER chunks are ready but BEFORE paste
-            // This ensures assignPedestalMaterial can safely access world blocks
-            Runnable prePasteCallback = () -> {
-                // Set pedestal material - now safe because chunks are generated
-                assignPedestalMaterial(location);
-                if (pedestalMaterial == null)
-                    switch (location.getWorld().getEnvironment()) {
-                        case NETHER:
-                            pedestalMaterial = Material.NETHERRACK;
-                            break;
-                        case THE_END:
-                            pedestalMaterial = Material.END_STONE;
-                            break;
-                        default:
-                            pedestalMaterial = Material.STONE;
-                    }
-            };
-
             // Create a function to provide pedestal material
             Function<Boolean, Material> pedestalMaterialProvider = this::getPedestalMaterial;
             Consumer<Schematic.PasteResult> onPasteResult = pasteResult -> {
                 if (pasteResult.success()) {
+                    // The structure replaced the terrain under it, so cached ground there is no longer valid
+                    Location pasteCorner = location.clone().add(schematicOffset);
+                    HeightmapCache.evict(location.getWorld(), pasteCorner.getBlockX(), pasteCorner.getBlockZ(),
+                            pasteCorner.getBlockX() + schematicContainer.getDimensions().x() - 1,
+                            pasteCorner.getBlockZ() + schematicContainer.getDimensions().z() - 1);
                     if (sourceChunk != null && sourceChunk.isLoaded()) {
                         ChunkProcessingMarker.markProcessed(sourceChunk);
                         DeveloperLogger.debug("PASTE_SUCCESS_MARKED: " + sourceChunk.getWorld().getName() + " "
@@ -157,13 +158,24 @@ public class FitAnything {
                 }
             };
 
+            // Pedestal and tree clearing are written in the same edit as the structure
+            Schematic.TerrainFinish terrainFinish = new Schematic.TerrainFinish(
+                    !(this instanceof FitAirBuilding || this instanceof FitLiquidBuilding),
+                    this instanceof FitSurfaceBuilding);
+
             // Paste the schematic with chunk-safe callback
             Schematic.pasteSchematic(
-                    schematicClipboard,
+                    schematicContainer,
                     location,
                     schematicOffset,
-                    prePasteCallback,
+                    // Pedestals and tree clearing cover the whole bounding box
+                    terrainFinish.buildPedestal() || terrainFinish.clearTrees() ? null : schematicContainer.getPasteFootprint(),
+                    // A command paste stays queued even if the chunk it was placed in unloads
+                    commandBased ? null : sourceChunk,
+                    commandBased ? StructurePasteQueue.Priority.HIGH : StructurePasteQueue.Priority.NORMAL,
+                    null,
                     pedestalMaterialProvider,
+                    terrainFinish,
                     onPasteResult
             );
         };
@@ -198,21 +210,6 @@ public class FitAnything {
                         fitAnything.structureType
                 );
 
-                if (!(fitAnything instanceof FitAirBuilding)) {
-                    try {
-                        addPedestal(location);
-                    } catch (Exception exception) {
-                        Logger.warn("分配基座材料失败！");
-                        exception.printStackTrace();
-                    }
-                    try {
-                        if (fitAnything instanceof FitSurfaceBuilding)
-                            clearTrees(location);
-                    } catch (Exception exception) {
-                        Logger.warn("清除树木失败！");
-                        exception.printStackTrace();
-                    }
-                }
                 try {
                     fillChests();
                 } catch (Exception exception) {
@@ -225,12 +222,26 @@ public class FitAnything {
                     Logger.warn("生成实体失败！");
                     exception.printStackTrace();
                 }
-                try{
-                    spawnProps(fitAnything.schematicClipboard);
-                } catch (Exception exception) {
-                    Logger.warn("生成装饰物失败！");
-                    exception.printStackTrace();
-                }
+                // The clipboard may have been evicted, so it is fetched off the main thread where parsing it again
+                // does not stall the tick
+                Bukkit.getScheduler().runTaskAsynchronously(MetadataHandler.PLUGIN, () -> {
+                    ClipboardResidency.Lease lease = fitAnything.schematicContainer.acquireClipboard();
+                    if (lease == null) return;
+                    if (!MetadataHandler.PLUGIN.isEnabled()) {
+                        lease.release();
+                        return;
+                    }
+                    Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> {
+                        try {
+                            spawnProps(lease.getClipboard());
+                        } catch (Exception exception) {
+                            Logger.warn("生成装饰物失败！");
+                            exception.printStackTrace();
+                        } finally {
+                            lease.release();
+                        }
+                    });
+                });
             }
         };
     }
@@ -240,118 +251,23 @@ public class FitAnything {
         WorldEditUtils.pasteArmorStandsOnlyFromTransformed(clipboard, location.clone().add(schematicOffset));
     }
 
-    private void assignPedestalMaterial(Location location) {
-        if (this instanceof FitAirBuilding) return;
-        pedestalMaterial = schematicContainer.getSchematicConfigField().getPedestalMaterial();
+    private PedestalPalette samplePedestalPalette(Location location) {
+        Material fallback = schematicContainer.getSchematicConfigField().getPedestalMaterial();
+        if (fallback == null || this instanceof FitAirBuilding)
+            fallback = switch (location.getWorld().getEnvironment()) {
+                case NETHER -> Material.NETHERRACK;
+                case THE_END -> Material.END_STONE;
+                default -> Material.STONE;
+            };
+        if (this instanceof FitAirBuilding) return PedestalPalette.of(fallback);
         Location lowestCorner = location.clone().add(schematicOffset);
-
-        int maxSurfaceHeightScan = 20;
-
-        //get underground pedestal blocks
-        for (int x = 0; x < schematicClipboard.getDimensions().x(); x++)
-            for (int z = 0; z < schematicClipboard.getDimensions().z(); z++)
-                for (int y = 0; y < schematicClipboard.getDimensions().y(); y++) {
-                    Block groundBlock = lowestCorner.clone().add(new Vector(x, y, z)).getBlock();
-                    Block aboveBlock = groundBlock.getRelative(BlockFace.UP);
-
-                    if (aboveBlock.getType().isSolid() && groundBlock.getType().isSolid() && !SurfaceMaterials.ignorable(groundBlock.getType()))
-                        undergroundPedestalMaterials.merge(groundBlock.getType(), 1, Integer::sum);
-                }
-
-        //get above ground pedestal blocks, if any
-        for (int x = 0; x < schematicClipboard.getDimensions().x(); x++)
-            for (int z = 0; z < schematicClipboard.getDimensions().z(); z++) {
-                boolean scanUp = lowestCorner.clone().add(new Vector(x, schematicClipboard.getDimensions().y(), z)).getBlock().getType().isSolid();
-                for (int y = 0; y < maxSurfaceHeightScan; y++) {
-                    Block groundBlock = lowestCorner.clone().add(new Vector(x, scanUp ? y : -y, z)).getBlock();
-                    Block aboveBlock = groundBlock.getRelative(BlockFace.UP);
-
-                    if (!aboveBlock.getType().isSolid() && groundBlock.getType().isSolid()) {
-                        surfacePedestalMaterials.merge(groundBlock.getType(), 1, Integer::sum);
-                        break;
-                    }
-                }
-            }
+        return PedestalPalette.sample(terrain, lowestCorner.getBlockX(), lowestCorner.getBlockY(), lowestCorner.getBlockZ(),
+                schematicContainer.getDimensions().x(), schematicContainer.getDimensions().y(),
+                schematicContainer.getDimensions().z(), fallback);
     }
 
     private Material getPedestalMaterial(boolean isPedestalSurface) {
-        if (isPedestalSurface) {
-            if (surfacePedestalMaterials.isEmpty()) return pedestalMaterial;
-            return getRandomMaterialBasedOnWeight(surfacePedestalMaterials);
-        } else {
-            if (undergroundPedestalMaterials.isEmpty()) return pedestalMaterial;
-            return getRandomMaterialBasedOnWeight(undergroundPedestalMaterials);
-        }
-    }
-
-    public Material getRandomMaterialBasedOnWeight(HashMap<Material, Integer> weightedMaterials) {
-        // Calculate the total weight
-        int totalWeight = weightedMaterials.values().stream().mapToInt(Integer::intValue).sum();
-
-        // Generate a random number in the range of 0 (inclusive) to totalWeight (exclusive)
-        int randomNumber = ThreadLocalRandom.current().nextInt(totalWeight);
-
-        // Iterate through the materials and pick one based on the random number
-        int cumulativeWeight = 0;
-        for (Map.Entry<Material, Integer> entry : weightedMaterials.entrySet()) {
-            cumulativeWeight += entry.getValue();
-            if (randomNumber < cumulativeWeight) {
-                return entry.getKey();
-            }
-        }
-
-        // Fallback return, should not occur if the map is not empty and weights are positive
-        throw new IllegalStateException("Weighted random selection failed.");
-    }
-
-    private void addPedestal(Location location) {
-        if (this instanceof FitAirBuilding || this instanceof FitLiquidBuilding) return;
-        Location lowestCorner = location.clone().add(schematicOffset);
-        for (int x = 0; x < schematicClipboard.getDimensions().x(); x++)
-            for (int z = 0; z < schematicClipboard.getDimensions().z(); z++) {
-                Location blockLoc = lowestCorner.clone().add(new Vector(x, 0, z));
-                // Skip if chunk not loaded to avoid sync chunk loading
-                if (!blockLoc.getWorld().isChunkLoaded(blockLoc.getBlockX() >> 4, blockLoc.getBlockZ() >> 4)) {
-                    continue;
-                }
-                //Only add pedestals for areas with a solid floor, some schematics can have rounded air edges to better fit terrain
-                Block groundBlock = blockLoc.getBlock();
-                if (groundBlock.getType().isAir()) continue;
-                for (int y = -1; y > -11; y--) {
-                    Block block = lowestCorner.clone().add(new Vector(x, y, z)).getBlock();
-                    if (SurfaceMaterials.ignorable(block.getType())) {
-                        // Use setBlockData with false to disable physics updates
-                        Material pedestalMat = getPedestalMaterial(!block.getRelative(BlockFace.UP).getType().isSolid());
-                        block.setBlockData(pedestalMat.createBlockData(), false);
-                    } else {
-                        //Pedestal only fills until it hits the first solid block
-                        break;
-                    }
-                }
-            }
-    }
-
-    private void clearTrees(Location location) {
-        Location highestCorner = location.clone().add(schematicOffset).add(new Vector(0, schematicClipboard.getDimensions().y() + 1, 0));
-        boolean detectedTreeElement = true;
-        for (int x = 0; x < schematicClipboard.getDimensions().x(); x++)
-            for (int z = 0; z < schematicClipboard.getDimensions().z(); z++) {
-                Location blockLoc = highestCorner.clone().add(new Vector(x, 0, z));
-                // Skip if chunk not loaded to avoid sync chunk loading
-                if (!blockLoc.getWorld().isChunkLoaded(blockLoc.getBlockX() >> 4, blockLoc.getBlockZ() >> 4)) {
-                    continue;
-                }
-                for (int y = 0; y < 31; y++) {
-                    if (!detectedTreeElement) break;
-                    detectedTreeElement = false;
-                    Block block = highestCorner.clone().add(new Vector(x, y, z)).getBlock();
-                    if (SurfaceMaterials.ignorable(block.getType()) && !block.getType().isAir()) {
-                        detectedTreeElement = true;
-                        // Use setBlockData with false to disable physics updates
-                        block.setBlockData(Material.AIR.createBlockData(), false);
-                    }
-                }
-            }
+        return pedestalPalette.pick(isPedestalSurface);
     }
 
     private void fillChests() {
@@ -500,7 +416,7 @@ public class FitAnything {
             // Only set up WorldGuard protection for original EliteMobs bosses (not MM overrides)
             if (trackingType == MobSpawnConfig.MobType.ELITEMOBS) {
                 Location lowestCorner = location.clone().add(schematicOffset);
-                Location highestCorner = lowestCorner.clone().add(new Vector(schematicClipboard.getRegion().getWidth() - 1, schematicClipboard.getRegion().getHeight(), schematicClipboard.getRegion().getLength() - 1));
+                Location highestCorner = lowestCorner.clone().add(new Vector(schematicContainer.getDimensions().x() - 1, schematicContainer.getDimensions().y(), schematicContainer.getDimensions().z() - 1));
                 if (DefaultConfig.isProtectEliteMobsRegions() &&
                         Bukkit.getPluginManager().getPlugin("WorldGuard") != null &&
                         Bukkit.getPluginManager().getPlugin("EliteMobs") != null) {
@@ -1,9 +1,10 @@
 package com.magmaguy.betterstructures.buildingfitter;
 
+import com.magmaguy.betterstructures.buildingfitter.util.FitSearch;
 import com.magmaguy.betterstructures.buildingfitter.util.TerrainAdequacy;
+import com.magmaguy.betterstructures.buildingfitter.util.TerrainContext;
 import com.magmaguy.betterstructures.config.generators.GeneratorConfigFields;
 import com.magmaguy.betterstructures.schematics.SchematicContainer;
-import com.magmaguy.betterstructures.util.WorldEditUtils;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
@@ -12,61 +13,61 @@ import org.bukkit.util.Vector;
 public class FitLiquidBuilding extends FitAnything {
 
     //For commands
-    public FitLiquidBuilding(Chunk chunk, SchematicContainer schematicContainer) {
+    public FitLiquidBuilding(Chunk chunk, TerrainContext terrain, SchematicContainer schematicContainer) {
         super(schematicContainer);
+        this.terrain = terrain;
         super.structureType = GeneratorConfigFields.StructureType.LIQUID_SURFACE;
         this.schematicContainer = schematicContainer;
-        this.schematicClipboard = schematicContainer.getClipboard();
         scan(chunk);
     }
 
-    public FitLiquidBuilding(Chunk chunk) {
+    public FitLiquidBuilding(Chunk chunk, TerrainContext terrain) {
         super();
+        this.terrain = terrain;
         super.structureType = GeneratorConfigFields.StructureType.LIQUID_SURFACE;
         scan(chunk);
     }
 
     private void scan(Chunk chunk) {
-        // Check if chunk is loaded to avoid sync chunk loading with FAWE
-        if (!chunk.isLoaded()) return;
         //Note about the adjustments:
         //The 8 offset on x and y is to center the anchor on the chunk
         Location originalLocation = new Location(chunk.getWorld(), chunk.getX() * 16D, 0, chunk.getZ() * 16D).add(new Vector(8, 0, 8));
+        // Scoring only reads the captured terrain, never the live world
+        int columnX = originalLocation.getBlockX();
+        int columnZ = originalLocation.getBlockZ();
+        if (!terrain.isLoaded(columnX, columnZ)) return;
         //This gets the location of the highest solid block
-        originalLocation.setY(chunk.getWorld().getHighestBlockYAt(originalLocation));
+        originalLocation.setY(terrain.getHighestBlockYAt(columnX, columnZ));
 
-        switch (chunk.getWorld().getEnvironment()) {
+        switch (terrain.getEnvironment()) {
             case CUSTOM:
             case NORMAL:
-                if (!originalLocation.getBlock().isLiquid()) return;
+                Material surfaceMaterial = terrain.getType(columnX, originalLocation.getBlockY(), columnZ);
+                if (surfaceMaterial != Material.WATER && surfaceMaterial != Material.LAVA) return;
                 break;
             case NETHER:
                 int netherLavaOceanHeight = 31;
                 originalLocation.setY(netherLavaOceanHeight);
-                if (originalLocation.getBlock().getType() != Material.LAVA) {
+                if (terrain.getType(columnX, netherLavaOceanHeight, columnZ) != Material.LAVA) {
                     return;
                 }
                 for (int i = 1; i < 20; i++)
-                    if (!originalLocation.clone().add(new Vector(0, i, 0)).getBlock().getType().isAir()) {
+                    if (!terrain.is(columnX, netherLavaOceanHeight + i, columnZ, TerrainContext.AIR)) {
                         return;
                     }
         }
 
         randomizeSchematicContainer(originalLocation, GeneratorConfigFields.StructureType.LIQUID_SURFACE);
-        if (schematicClipboard == null) {
+        if (schematicContainer == null) {
             //Bukkit.getLogger().info("Did not spawn structure in biome " + originalLocation.getBlock().getBiome() + " because no valid schematics exist for it.");
             return;
         }
-        schematicOffset = WorldEditUtils.getSchematicOffset(schematicClipboard);
+        schematicOffset = schematicContainer.getSchematicOffset();
 
         chunkScan(originalLocation, 0, 0);
         if (highestScore < 90)
-            for (int chunkX = -searchRadius; chunkX < searchRadius + 1; chunkX++) {
-                for (int chunkZ = -searchRadius; chunkZ < searchRadius + 1; chunkZ++) {
-                    if (chunkX == 0 && chunkZ == 0) continue;
-                    chunkScan(originalLocation, chunkX, chunkZ);
-                    if (highestScore >= 90) break;
-                }
+            for (int[] offset : FitSearch.getAnchorOffsets(searchRadius, false)) {
+                chunkScan(originalLocation, offset[0], offset[1]);
                 if (highestScore >= 90) break;
             }
 
@@ -78,9 +79,9 @@ public class FitLiquidBuilding extends FitAnything {
         super.paste(location, chunk);
     }
 
-    private void chunkScan(Location originalLocation, int chunkX, int chunkZ) {
-        Location iteratedLocation = originalLocation.clone().add(new Vector(chunkX * 16, 1, chunkZ * 16));
-        double newScore = TerrainAdequacy.scan(scanStep, schematicClipboard, iteratedLocation, schematicOffset, TerrainAdequacy.ScanType.LIQUID);
+    private void chunkScan(Location originalLocation, int offsetX, int offsetZ) {
+        Location iteratedLocation = originalLocation.clone().add(new Vector(offsetX, 1, offsetZ));
+        double newScore = TerrainAdequacy.scan(terrain, schematicContainer.getSampleLattice(), iteratedLocation, schematicOffset, TerrainAdequacy.ScanType.LIQUID, startingScore);
         if (newScore < 90) return;
         if (newScore == startingScore) {
             highestScore = newScore;
@@ -1,10 +1,11 @@
 package com.magmaguy.betterstructures.buildingfitter;
 
+import com.magmaguy.betterstructures.buildingfitter.util.FitSearch;
 import com.magmaguy.betterstructures.buildingfitter.util.TerrainAdequacy;
+import com.magmaguy.betterstructures.buildingfitter.util.TerrainContext;
 import com.magmaguy.betterstructures.buildingfitter.util.Topology;
 import com.magmaguy.betterstructures.config.generators.GeneratorConfigFields;
 import com.magmaguy.betterstructures.schematics.SchematicContainer;
-import com.magmaguy.betterstructures.util.WorldEditUtils;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.World;
@@ -13,16 +14,17 @@ import org.bukkit.util.Vector;
 public class FitSurfaceBuilding extends FitAnything {
 
     //For commands
-    public FitSurfaceBuilding(Chunk chunk, SchematicContainer schematicContainer) {
+    public FitSurfaceBuilding(Chunk chunk, TerrainContext terrain, SchematicContainer schematicContainer) {
         super(schematicContainer);
+        this.terrain = terrain;
         super.structureType = GeneratorConfigFields.StructureType.SURFACE;
         this.schematicContainer = schematicContainer;
-        this.schematicClipboard = schematicContainer.getClipboard();
         scan(chunk);
     }
 
-    public FitSurfaceBuilding(Chunk chunk) {
+    public FitSurfaceBuilding(Chunk chunk, TerrainContext terrain) {
         super();
+        this.terrain = terrain;
         super.structureType = GeneratorConfigFields.StructureType.SURFACE;
         scan(chunk);
     }
@@ -31,28 +33,21 @@ public class FitSurfaceBuilding extends FitAnything {
         //Note about the adjustments:
         //The 8 offset on x and y is to center the anchor on the chunk
         Location originalLocation = new Location(chunk.getWorld(), chunk.getX() * 16D, 0, chunk.getZ() * 16D).add(new Vector(8, 0, 8));
-        // Use chunk's loaded data to avoid sync chunk loading with FAWE
-        if (!chunk.isLoaded()) return;
-        originalLocation.setY(chunk.getWorld().getHighestBlockYAt(originalLocation));
+        // Scoring only reads the captured terrain, never the live world
+        if (!terrain.isLoaded(originalLocation.getBlockX(), originalLocation.getBlockZ())) return;
+        originalLocation.setY(terrain.getHighestBlockYAt(originalLocation.getBlockX(), originalLocation.getBlockZ()));
         randomizeSchematicContainer(originalLocation, GeneratorConfigFields.StructureType.SURFACE);
-        if (schematicClipboard == null) {
+        if (schematicContainer == null) {
             //Bukkit.getLogger().info("Did not spawn structure in biome " + originalLocation.getBlock().getBiome() + " because no valid schematics exist for it.");
             return;
         }
-        schematicOffset = WorldEditUtils.getSchematicOffset(schematicClipboard);
+        schematicOffset = schematicContainer.getSchematicOffset();
 
         chunkScan(originalLocation, 0, 0);
         if (highestScore < 50)
-            for (int chunkX = -searchRadius; chunkX < searchRadius + 1; chunkX++) {
-                for (int chunkZ = -searchRadius; chunkZ < searchRadius + 1; chunkZ++) {
-                    //Relief measure: instead of doing a 3x3 grid, this does a "+" shaped  pattern search - may want to remove this some day, if not optimal
-                    if (chunkX == -1 && chunkZ == -1 ||
-                            chunkX == 1 && chunkZ == 1 ||
-                            chunkX == -1 && chunkZ == 1 ||
-                            chunkX == 1 && chunkZ == -1) continue;
-                    chunkScan(originalLocation, chunkX, chunkZ);
-                    if (highestScore > 50) break;
-                }
+            //Relief measure: instead of doing a 3x3 grid, this does a "+" shaped  pattern search - may want to remove this some day, if not optimal
+            for (int[] offset : FitSearch.getAnchorOffsets(searchRadius, true)) {
+                chunkScan(originalLocation, offset[0], offset[1]);
                 if (highestScore > 50) break;
             }
 
@@ -66,11 +61,11 @@ public class FitSurfaceBuilding extends FitAnything {
         super.paste(location, chunk);
     }
 
-    private void chunkScan(Location originalLocation, int chunkX, int chunkZ) {
-        Location iteratedLocation = originalLocation.clone().add(new Vector(chunkX * 16, 0, chunkZ * 16));
+    private void chunkScan(Location originalLocation, int offsetX, int offsetZ) {
+        Location iteratedLocation = originalLocation.clone().add(new Vector(offsetX, 0, offsetZ));
 
-        if (originalLocation.getWorld().getEnvironment().equals(World.Environment.NETHER)) startingScore = 200;
-        double score = Topology.scan(startingScore, scanStep, schematicClipboard, iteratedLocation, schematicOffset);
+        if (terrain.getEnvironment().equals(World.Environment.NETHER)) startingScore = 200;
+        double score = Topology.scan(terrain, startingScore, scanStep, schematicContainer.getDimensions(), iteratedLocation, schematicOffset);
 
         //Continue to the next scan in case of poor fit
         if (score == 0) {
@@ -78,7 +73,8 @@ public class FitSurfaceBuilding extends FitAnything {
             return;
         }
 
-        double adequacyScore = TerrainAdequacy.scan(scanStep, schematicClipboard, iteratedLocation, schematicOffset, TerrainAdequacy.ScanType.SURFACE);
+        //Anything that cannot lift the total above the current best is not worth scoring in full
+        double adequacyScore = TerrainAdequacy.scan(terrain, schematicContainer.getSampleLattice(), iteratedLocation, schematicOffset, TerrainAdequacy.ScanType.SURFACE, 2 * (highestScore - score));
         //Adequacy has an impact of 50% on the score
         score += (.5 * adequacyScore);
 
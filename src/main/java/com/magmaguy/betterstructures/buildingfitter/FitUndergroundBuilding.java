@@ -1,14 +1,14 @@
 package com.magmaguy.betterstructures.buildingfitter;
 
 import com.magmaguy.betterstructures.buildingfitter.util.EndHeightClamp;
+import com.magmaguy.betterstructures.buildingfitter.util.FitSearch;
 import com.magmaguy.betterstructures.buildingfitter.util.TerrainAdequacy;
+import com.magmaguy.betterstructures.buildingfitter.util.TerrainContext;
 import com.magmaguy.betterstructures.config.DefaultConfig;
 import com.magmaguy.betterstructures.config.generators.GeneratorConfigFields;
 import com.magmaguy.betterstructures.schematics.SchematicContainer;
-import com.magmaguy.betterstructures.util.WorldEditUtils;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
-import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.util.Vector;
 
@@ -20,18 +20,19 @@ public class FitUndergroundBuilding extends FitAnything {
     private int highestY;
 
     //For commands
-    public FitUndergroundBuilding(Chunk chunk, SchematicContainer schematicContainer, int lowestY, int highestY, GeneratorConfigFields.StructureType structureType) {
+    public FitUndergroundBuilding(Chunk chunk, TerrainContext terrain, SchematicContainer schematicContainer, int lowestY, int highestY, GeneratorConfigFields.StructureType structureType) {
         super(schematicContainer);
+        this.terrain = terrain;
         super.structureType = structureType;
         this.lowestY = lowestY;
         this.highestY = highestY;
         this.schematicContainer = schematicContainer;
-        this.schematicClipboard = schematicContainer.getClipboard();
         scan(chunk);
     }
 
-    public FitUndergroundBuilding(Chunk chunk, int lowestY, int highestY, GeneratorConfigFields.StructureType structureType) {
+    public FitUndergroundBuilding(Chunk chunk, TerrainContext terrain, int lowestY, int highestY, GeneratorConfigFields.StructureType structureType) {
         super();
+        this.terrain = terrain;
         super.structureType = structureType;
         this.lowestY = lowestY;
         this.highestY = highestY;
@@ -39,12 +40,14 @@ public class FitUndergroundBuilding extends FitAnything {
     }
 
     private void scan(Chunk chunk) {
-        // Check if chunk is loaded to avoid sync chunk loading with FAWE
-        if (!chunk.isLoaded()) return;
         //Note about the adjustments:
         //The 8 offset on x and y is to center the anchor on the chunk
         Location originalLocation = new Location(chunk.getWorld(), chunk.getX() * 16D, 0, chunk.getZ() * 16D).add(new Vector(8, 0, 8));
-        switch (chunk.getWorld().getEnvironment()) {
+        // Scoring only reads the captured terrain, never the live world
+        int columnX = originalLocation.getBlockX();
+        int columnZ = originalLocation.getBlockZ();
+        if (!terrain.isLoaded(columnX, columnZ)) return;
+        switch (terrain.getEnvironment()) {
             case NORMAL:
             case CUSTOM:
                 originalLocation.setY(ThreadLocalRandom.current().nextInt(lowestY, highestY));
@@ -56,9 +59,8 @@ public class FitUndergroundBuilding extends FitAnything {
                     int highPoint = 0;
                     int tolerance = 3;
                     for (int y = lowestY; y < highestY; y++) {
-                        Location currentLocation = originalLocation.clone();
-                        currentLocation.setY(y);
-                        if (currentLocation.getBlock().getType().isSolid()) {
+                        int blockClass = terrain.getBlockClass(columnX, y, columnZ);
+                        if ((blockClass & TerrainContext.SOLID) != 0) {
                             if (streak) {
                                 highPoint = y;
                             } else {
@@ -66,15 +68,13 @@ public class FitUndergroundBuilding extends FitAnything {
                                 streak = true;
                             }
                         } else {
-                            if (currentLocation.getBlock().getType() == Material.VOID_AIR ||
-                                    currentLocation.getBlock().getType() == Material.BEDROCK ||
+                            if ((blockClass & (TerrainContext.VOID | TerrainContext.BEDROCK)) != 0 ||
                                     tolerance == 0) {
                                 if (streak) {
                                     streak = false;
                                     if (highPoint - lowPoint >= 20)
                                         break;
-                                    if (currentLocation.getBlock().getType() == Material.VOID_AIR ||
-                                            currentLocation.getBlock().getType() == Material.BEDROCK)
+                                    if ((blockClass & (TerrainContext.VOID | TerrainContext.BEDROCK)) != 0)
                                         return;
                                     tolerance = 3;
                                 }
@@ -101,9 +101,8 @@ public class FitUndergroundBuilding extends FitAnything {
                     int highPoint = 0;
                     int tolerance = 3;
                     for (int y = highestY; y > lowestY; y--) {
-                        Location currentLocation = originalLocation.clone();
-                        currentLocation.setY(y);
-                        if (currentLocation.getBlock().getType().isSolid()) {
+                        int blockClass = terrain.getBlockClass(columnX, y, columnZ);
+                        if ((blockClass & TerrainContext.SOLID) != 0) {
                             if (streak) {
                                 lowPoint = y;
                             } else {
@@ -111,15 +110,13 @@ public class FitUndergroundBuilding extends FitAnything {
                                 streak = true;
                             }
                         } else {
-                            if (currentLocation.getBlock().getType() == Material.VOID_AIR ||
-                                    currentLocation.getBlock().getType() == Material.BEDROCK ||
+                            if ((blockClass & (TerrainContext.VOID | TerrainContext.BEDROCK)) != 0 ||
                                     tolerance == 0) {
                                 if (streak) {
                                     streak = false;
                                     if (highPoint - lowPoint >= 20)
                                         break;
-                                    if (currentLocation.getBlock().getType() == Material.VOID_AIR ||
-                                            currentLocation.getBlock().getType() == Material.BEDROCK)
+                                    if ((blockClass & (TerrainContext.VOID | TerrainContext.BEDROCK)) != 0)
                                         return;
                                     tolerance = 3;
                                 }
@@ -149,9 +146,8 @@ public class FitUndergroundBuilding extends FitAnything {
                     int highPoint = 0;
                     int tolerance = 3;
                     for (int y = lowestY; y < highestY; y++) {
-                        Location currentLocation = originalLocation.clone();
-                        currentLocation.setY(y);
-                        if (currentLocation.getBlock().getType().isSolid()) {
+                        int blockClass = terrain.getBlockClass(columnX, y, columnZ);
+                        if ((blockClass & TerrainContext.SOLID) != 0) {
                             if (streak) {
                                 highPoint = y;
                             } else {
@@ -159,15 +155,13 @@ public class FitUndergroundBuilding extends FitAnything {
                                 streak = true;
                             }
                         } else {
-                            if (currentLocation.getBlock().getType() == Material.VOID_AIR ||
-                                    currentLocation.getBlock().getType() == Material.BEDROCK ||
+                            if ((blockClass & (TerrainContext.VOID | TerrainContext.BEDROCK)) != 0 ||
                                     tolerance == 0) {
                                 if (streak) {
                                     streak = false;
                                     if (highPoint - lowPoint >= 20)
                                         break;
-                                    if (currentLocation.getBlock().getType() == Material.VOID_AIR ||
-                                            currentLocation.getBlock().getType() == Material.BEDROCK)
+                                    if ((blockClass & (TerrainContext.VOID | TerrainContext.BEDROCK)) != 0)
                                         return;
                                     tolerance = 3;
                                 }
@@ -193,17 +187,17 @@ public class FitUndergroundBuilding extends FitAnything {
         }
 
         randomizeSchematicContainer(originalLocation, structureType);
-        if (schematicClipboard == null) {
+        if (schematicContainer == null) {
             //Bukkit.getLogger().info("Did not spawn structure in biome " + originalLocation.getBlock().getBiome() + " because no valid schematics exist for it.");
             return;
         }
 
-        schematicOffset = WorldEditUtils.getSchematicOffset(schematicClipboard);
+        schematicOffset = schematicContainer.getSchematicOffset();
 
         //Make sure the schematic will not go beyond the bedrock level
         int offsetYAbs = (int) Math.abs(schematicOffset.getY());
-        int schematicHeight = schematicClipboard.getRegion().getHeight();
-        switch (originalLocation.getWorld().getEnvironment()) {
+        int schematicHeight = schematicContainer.getDimensions().y();
+        switch (terrain.getEnvironment()) {
             case NORMAL:
             case CUSTOM:
                 originalLocation.setY(EndHeightClamp.clamp(
@@ -233,12 +227,8 @@ public class FitUndergroundBuilding extends FitAnything {
 
         chunkScan(originalLocation, 0, 0);
         if (highestScore < 90)
-            for (int chunkX = -searchRadius; chunkX < searchRadius + 1; chunkX++) {
-                for (int chunkZ = -searchRadius; chunkZ < searchRadius + 1; chunkZ++) {
-                    if (chunkX == 0 && chunkZ == 0) continue;
-                    chunkScan(originalLocation, chunkX, chunkZ);
-                    if (highestScore > 90) break;
-                }
+            for (int[] offset : FitSearch.getAnchorOffsets(searchRadius, false)) {
+                chunkScan(originalLocation, offset[0], offset[1]);
                 if (highestScore > 90) break;
             }
 
@@ -249,13 +239,11 @@ public class FitUndergroundBuilding extends FitAnything {
         paste(location, chunk);
     }
 
-    private void chunkScan(Location originalLocation, int chunkX, int chunkZ) {
-        Location iteratedLocation = originalLocation.clone().add(new Vector(chunkX * 16, 0, chunkZ * 16));
-        double score = TerrainAdequacy.scan(scanStep, schematicClipboard, iteratedLocation, schematicOffset, TerrainAdequacy.ScanType.UNDERGROUND);
-        if (!originalLocation.getWorld().getEnvironment().equals(World.Environment.NETHER)) {
-            if (score < 70)
-                return;
-        } else if (score < 50)
+    private void chunkScan(Location originalLocation, int offsetX, int offsetZ) {
+        Location iteratedLocation = originalLocation.clone().add(new Vector(offsetX, 0, offsetZ));
+        double minimumScore = terrain.getEnvironment().equals(World.Environment.NETHER) ? 50 : 70;
+        double score = TerrainAdequacy.scan(terrain, schematicContainer.getSampleLattice(), iteratedLocation, schematicOffset, TerrainAdequacy.ScanType.UNDERGROUND, Math.max(minimumScore, highestScore));
+        if (score < minimumScore)
             return;
 
         if (score > highestScore) {
@@ -1,5 +1,6 @@
 package com.magmaguy.betterstructures.buildingfitter;
 
+import com.magmaguy.betterstructures.buildingfitter.util.TerrainContext;
 import com.magmaguy.betterstructures.config.generators.GeneratorConfigFields;
 import com.magmaguy.betterstructures.schematics.SchematicContainer;
 import com.magmaguy.magmacore.util.Logger;
@@ -9,34 +10,34 @@ public class FitUndergroundShallowBuilding {
     private FitUndergroundShallowBuilding() {
     }
 
-    public static void fit(Chunk chunk) {
+    public static void fit(Chunk chunk, TerrainContext terrain) {
         switch (chunk.getWorld().getEnvironment()) {
             case NORMAL:
             case CUSTOM:
-                new FitUndergroundBuilding(chunk, -0, 50, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW);
+                new FitUndergroundBuilding(chunk, terrain, -0, 50, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW);
                 break;
             case NETHER:
-                new FitUndergroundBuilding(chunk, 60, 120, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW);
+                new FitUndergroundBuilding(chunk, terrain, 60, 120, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW);
                 break;
             case THE_END:
                 //The nether has no "deep" underground area, it's floating islands
-                new FitUndergroundBuilding(chunk, 0, 80, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW);
+                new FitUndergroundBuilding(chunk, terrain, 0, 80, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW);
                 break;
             default:
                 Logger.warn("Unexpected environment type: " + chunk.getWorld().getEnvironment());
         }
     }
-    public static void fit(Chunk chunk, SchematicContainer schematicContainer) {
+    public static void fit(Chunk chunk, TerrainContext terrain, SchematicContainer schematicContainer) {
         switch (chunk.getWorld().getEnvironment()) {
             case NORMAL:
             case CUSTOM:
-                new FitUndergroundBuilding(chunk, schematicContainer, -53, 0, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW);
+                new FitUndergroundBuilding(chunk, terrain, schematicContainer, -53, 0, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW);
                 break;
             case NETHER:
-                new FitUndergroundBuilding(chunk, schematicContainer, 5, 60, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW);
+                new FitUndergroundBuilding(chunk, terrain, schematicContainer, 5, 60, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW);
                 break;
             case THE_END:
-                new FitUndergroundBuilding(chunk, schematicContainer, 0, 80, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW);
+                new FitUndergroundBuilding(chunk, terrain, schematicContainer, 0, 80, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW);
                 //The nether has no "deep" underground area, it's floating islands
                 break;
             default:
@@ -0,0 +1,53 @@
+package com.magmaguy.betterstructures.buildingfitter.util;
+
+import com.magmaguy.betterstructures.config.DefaultConfig;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Positions the fitters try around a chunk after its center anchor did not score well enough.
+ */
+public final class FitSearch {
+    private FitSearch() {
+    }
+
+    /**
+     * Anchor offsets, in blocks, around the center anchor of a chunk. Without coarse to fine search these are the
+     * whole chunk offsets of the original search. With it, positions every {@code fitSearch.anchorStride} blocks over
+     * the same area are tried nearest first, which is affordable because hopeless candidates are dropped early.
+     *
+     * @param searchRadius Search radius in chunks
+     * @param plusPattern  Skip the diagonal corners of the search square, as the surface search always did
+     * @return Offsets as {x, z} pairs, never including the center itself
+     */
+    public static List<int[]> getAnchorOffsets(int searchRadius, boolean plusPattern) {
+        List<int[]> offsets = new ArrayList<>();
+        int reach = searchRadius * 16;
+        if (!DefaultConfig.isFitSearchCoarseToFine()) {
+            for (int chunkX = -searchRadius; chunkX < searchRadius + 1; chunkX++)
+                for (int chunkZ = -searchRadius; chunkZ < searchRadius + 1; chunkZ++) {
+                    if (chunkX == 0 && chunkZ == 0) continue;
+                    //Relief measure: instead of doing a 3x3 grid, this does a "+" shaped pattern search
+                    if (plusPattern && Math.abs(chunkX) == searchRadius && Math.abs(chunkZ) == searchRadius) continue;
+                    offsets.add(new int[]{chunkX * 16, chunkZ * 16});
+                }
+            return offsets;
+        }
+        int stride = Math.max(1, Math.min(16, DefaultConfig.getFitSearchAnchorStride()));
+        List<Integer> axis = new ArrayList<>();
+        for (int offset = -(reach / stride) * stride; offset <= reach; offset += stride) axis.add(offset);
+        // Always reach the edges of the search area, even when the stride does not divide it
+        if (!axis.contains(-reach)) axis.add(0, -reach);
+        if (!axis.contains(reach)) axis.add(reach);
+        for (int offsetX : axis)
+            for (int offsetZ : axis) {
+                if (offsetX == 0 && offsetZ == 0) continue;
+                if (plusPattern && Math.abs(offsetX) + Math.abs(offsetZ) > reach) continue;
+                offsets.add(new int[]{offsetX, offsetZ});
+            }
+        offsets.sort(Comparator.comparingInt(offset -> offset[0] * offset[0] + offset[1] * offset[1]));
+        return offsets;
+    }
+}
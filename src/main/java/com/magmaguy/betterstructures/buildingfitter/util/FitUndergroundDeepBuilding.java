@@ -10,17 +10,17 @@ public class FitUndergroundDeepBuilding {
     private FitUndergroundDeepBuilding() {
     }
 
-    public static void fit(Chunk chunk) {
+    public static void fit(Chunk chunk, TerrainContext terrain) {
         switch (chunk.getWorld().getEnvironment()) {
             case NORMAL:
             case CUSTOM:
-                new FitUndergroundBuilding(chunk, -53, 0, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP);
+                new FitUndergroundBuilding(chunk, terrain, -53, 0, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP);
                 break;
             case NETHER:
-                new FitUndergroundBuilding(chunk, 5, 60, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP);
+                new FitUndergroundBuilding(chunk, terrain, 5, 60, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP);
                 break;
             case THE_END:
-                new FitUndergroundBuilding(chunk, 0, 80, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP);
+                new FitUndergroundBuilding(chunk, terrain, 0, 80, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP);
                 //The nether has no "deep" underground area, it's floating islands
                 break;
             default:
@@ -28,17 +28,17 @@ public class FitUndergroundDeepBuilding {
         }
     }
 
-    public static void fit(Chunk chunk, SchematicContainer schematicContainer) {
+    public static void fit(Chunk chunk, TerrainContext terrain, SchematicContainer schematicContainer) {
         switch (chunk.getWorld().getEnvironment()) {
             case NORMAL:
             case CUSTOM:
-                new FitUndergroundBuilding(chunk, schematicContainer, -53, 0, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP);
+                new FitUndergroundBuilding(chunk, terrain, schematicContainer, -53, 0, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP);
                 break;
             case NETHER:
-                new FitUndergroundBuilding(chunk, schematicContainer, 5, 60, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP);
+                new FitUndergroundBuilding(chunk, terrain, schematicContainer, 5, 60, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP);
                 break;
             case THE_END:
-                new FitUndergroundBuilding(chunk, schematicContainer, 0, 80, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP);
+                new FitUndergroundBuilding(chunk, terrain, schematicContainer, 0, 80, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP);
                 //The nether has no "deep" underground area, it's floating islands
                 break;
             default:
@@ -0,0 +1,210 @@
+package com.magmaguy.betterstructures.buildingfitter.util;
+
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per world cache of the effective ground of every column a topology scan has resolved: the highest block (or the
+ * Nether surface search) walked down through {@link TerrainContext#IGNORABLE} blocks, plus whether that ground is a
+ * liquid. Neighbouring candidate chunks scan heavily overlapping areas, so they and any retries reuse columns that
+ * were already resolved instead of walking them again.
+ * <p>
+ * Columns are stored in one array per chunk, keyed by packed chunk coordinates. A chunk is dropped when it unloads or
+ * when a structure is pasted over it, so cached ground never outlives the terrain it was read from by much. Scan
+ * threads never ask the world whether a chunk is still loaded: snapshots mark the chunks they capture as live on the
+ * main thread and the unload eviction unmarks them there, and only live chunks are added. Each world holds at most
+ * {@value #MAX_CACHED_CHUNKS} chunks, a scan that finds it full works on an uncached array. Column entries may be
+ * written by several scan threads at once; they all store the same value for the same terrain.
+ */
+public final class HeightmapCache {
+    /**
+     * Column for which no valid ground exists, the topology scan fails there.
+     */
+    public static final int NO_GROUND = Integer.MIN_VALUE;
+    // Zero would be a valid ground at y = 0, so untouched entries are filled with this instead
+    private static final int UNRESOLVED = Integer.MIN_VALUE + 1;
+    // About 1 KB per chunk
+    private static final int MAX_CACHED_CHUNKS = 4096;
+    private static final Map<UUID, Map<Long, int[]>> worlds = new ConcurrentHashMap<>();
+    // Chunks captured while loaded and not unloaded since, written on the main thread only
+    private static final Map<UUID, Set<Long>> liveChunks = new ConcurrentHashMap<>();
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private HeightmapCache() {
+    }
+
+    /**
+     * @return Ground column value as read by {@link #getGroundY(int)} and {@link #isLiquid(int)}, or
+     * {@link #NO_GROUND}. The column must be part of a chunk captured by the context.
+     */
+    static int getGround(TerrainContext terrain, int[] chunkColumns, int blockX, int blockZ) {
+        int columnIndex = ((blockX & 15) << 4) | (blockZ & 15);
+        int column = chunkColumns[columnIndex];
+        if (column != UNRESOLVED) {
+            hits.increment();
+            return column;
+        }
+        misses.increment();
+        column = resolve(terrain, blockX, blockZ);
+        chunkColumns[columnIndex] = column;
+        return column;
+    }
+
+    /**
+     * Marks a chunk a snapshot just captured as loaded, so scans of it may cache its ground. Main thread only.
+     */
+    static void onChunkCaptured(World world, int chunkX, int chunkZ) {
+        liveChunks.computeIfAbsent(world.getUID(), k -> ConcurrentHashMap.newKeySet()).add(chunkKey(chunkX, chunkZ));
+    }
+
+    /**
+     * @return The shared column array of a chunk, created empty if the chunk has not been scanned yet. Not shared if
+     * the chunk unloaded since it was captured or the cache is full.
+     */
+    static int[] getChunkColumns(World world, int chunkX, int chunkZ) {
+        long chunkKey = chunkKey(chunkX, chunkZ);
+        Map<Long, int[]> chunks = worlds.get(world.getUID());
+        int[] columns = chunks == null ? null : chunks.get(chunkKey);
+        if (columns != null) return columns;
+        columns = new int[256];
+        Arrays.fill(columns, UNRESOLVED);
+        // Its unload eviction may already have run, an entry added now would never be dropped
+        Set<Long> worldLiveChunks = liveChunks.get(world.getUID());
+        if (worldLiveChunks == null || !worldLiveChunks.contains(chunkKey)) return columns;
+        if (chunks == null) chunks = worlds.computeIfAbsent(world.getUID(), k -> new ConcurrentHashMap<>());
+        if (chunks.size() >= MAX_CACHED_CHUNKS) return columns;
+        int[] existing = chunks.putIfAbsent(chunkKey, columns);
+        if (existing != null) return existing;
+        // Unloaded while it was added: the eviction unmarks the chunk before dropping its entry, so either it dropped
+        // this entry or the chunk shows as unloaded here
+        if (!worldLiveChunks.contains(chunkKey)) chunks.remove(chunkKey, columns);
+        return columns;
+    }
+
+    public static int getGroundY(int column) {
+        return column >> 1;
+    }
+
+    public static boolean isLiquid(int column) {
+        return (column & 1) != 0;
+    }
+
+    /**
+     * Drops an unloading chunk. Main thread only.
+     */
+    public static void evict(World world, int chunkX, int chunkZ) {
+        Set<Long> worldLiveChunks = liveChunks.get(world.getUID());
+        if (worldLiveChunks != null) worldLiveChunks.remove(chunkKey(chunkX, chunkZ));
+        Map<Long, int[]> chunks = worlds.get(world.getUID());
+        if (chunks != null) chunks.remove(chunkKey(chunkX, chunkZ));
+    }
+
+    /**
+     * Drops every chunk overlapping a block area, for terrain that just got replaced by a structure.
+     */
+    public static void evict(World world, int minBlockX, int minBlockZ, int maxBlockX, int maxBlockZ) {
+        Map<Long, int[]> chunks = worlds.get(world.getUID());
+        if (chunks == null) return;
+        for (int chunkX = minBlockX >> 4; chunkX <= maxBlockX >> 4; chunkX++)
+            for (int chunkZ = minBlockZ >> 4; chunkZ <= maxBlockZ >> 4; chunkZ++)
+                chunks.remove(chunkKey(chunkX, chunkZ));
+    }
+
+    public static void evictWorld(World world) {
+        Set<Long> worldLiveChunks = liveChunks.remove(world.getUID());
+        if (worldLiveChunks != null) worldLiveChunks.clear();
+        worlds.remove(world.getUID());
+    }
+
+    public static void shutdown() {
+        liveChunks.clear();
+        worlds.clear();
+        hits.reset();
+        misses.reset();
+    }
+
+    public static long getHits() {
+        return hits.sum();
+    }
+
+    public static long getMisses() {
+        return misses.sum();
+    }
+
+    public static int getCachedChunks() {
+        int cachedChunks = 0;
+        for (Map<Long, int[]> chunks : worlds.values()) cachedChunks += chunks.size();
+        return cachedChunks;
+    }
+
+    private static int resolve(TerrainContext terrain, int blockX, int blockZ) {
+        int y = getHighestBlockYAt(terrain, blockX, blockZ);
+        if (y == Integer.MIN_VALUE) return NO_GROUND;
+        int safeGuard = 0;
+        int blockClass = terrain.getBlockClass(blockX, y, blockZ);
+        while ((blockClass & TerrainContext.IGNORABLE) != 0) {
+            if ((blockClass & TerrainContext.VOID) != 0) return NO_GROUND;
+            y--;
+            blockClass = terrain.getBlockClass(blockX, y, blockZ);
+            safeGuard++;
+            if (safeGuard > 50) {
+                Bukkit.getLogger().warning("Busted the 50 block cap for the tree scanner!");
+                break;
+            }
+        }
+        return (y << 1) | ((blockClass & TerrainContext.LIQUID) != 0 ? 1 : 0);
+    }
+
+    /**
+     * @return The highest block Y of the column, or {@link Integer#MIN_VALUE} if no valid surface was found
+     */
+    private static int getHighestBlockYAt(TerrainContext terrain, int blockX, int blockZ) {
+        if (!terrain.getEnvironment().equals(World.Environment.NETHER))
+            return terrain.getHighestBlockYAt(blockX, blockZ);
+        else {
+            //This is middle point for the height in the Nether
+            int y = 63;
+            //The nether has specific topology
+            if (terrain.is(blockX, y, blockZ, TerrainContext.IGNORABLE)) {
+                //Basically air for all intents and purposes, scan down
+                for (; y > 30; y--) {
+                    if (validNetherSurface(terrain, blockX, y, blockZ))
+                        return y;
+                }
+            } else {
+                //Solid, scan up
+                for (; y < 100; y++) {
+                    if (validNetherSurface(terrain, blockX, y, blockZ))
+                        return y;
+                }
+            }
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    private static boolean validNetherSurface(TerrainContext terrain, int blockX, int y, int blockZ) {
+        //See if current block is solid and if the one above it is air or similar to air
+        if (!(!terrain.is(blockX, y, blockZ, TerrainContext.IGNORABLE) &&
+                terrain.is(blockX, y + 1, blockZ, TerrainContext.IGNORABLE)))
+            return false;
+        //Scan 10 blocks vertically to make sure they're all air
+        for (int i = 1; i < 11; i++) {
+            if (terrain.is(blockX, y + i, blockZ, TerrainContext.IGNORABLE))
+                continue;
+            return false;
+        }
+        return true;
+    }
+
+    private static long chunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+}
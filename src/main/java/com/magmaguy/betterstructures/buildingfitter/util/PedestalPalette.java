@@ -0,0 +1,99 @@
+package com.magmaguy.betterstructures.buildingfitter.util;
+
+import com.magmaguy.betterstructures.util.AliasTable;
+import org.bukkit.Material;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Materials a pedestal is built from, weighted by how often they occur in the terrain the structure replaces.
+ * <p>
+ * Sampled from the captured {@link TerrainContext} while fitting, so the paste never reads the live world for it.
+ * Every {@link #SAMPLE_STRIDE}th column of the footprint is sampled: underground materials are the solid blocks
+ * covered by another solid block inside the structure volume, surface materials the topmost solid block found
+ * within {@link #MAX_SURFACE_HEIGHT_SCAN} blocks of the structure. Immutable and safe to share between threads.
+ */
+public final class PedestalPalette {
+    private static final int SAMPLE_STRIDE = 2;
+    private static final int MAX_SURFACE_HEIGHT_SCAN = 20;
+
+    private final Material[] undergroundMaterials;
+    private final AliasTable undergroundWeights;
+    private final Material[] surfaceMaterials;
+    private final AliasTable surfaceWeights;
+    // Used when no terrain material was found
+    private final Material fallback;
+
+    private PedestalPalette(Map<Material, Integer> undergroundCounts, Map<Material, Integer> surfaceCounts, Material fallback) {
+        this.undergroundMaterials = undergroundCounts.keySet().toArray(new Material[0]);
+        this.undergroundWeights = weights(undergroundMaterials, undergroundCounts);
+        this.surfaceMaterials = surfaceCounts.keySet().toArray(new Material[0]);
+        this.surfaceWeights = weights(surfaceMaterials, surfaceCounts);
+        this.fallback = fallback;
+    }
+
+    private static AliasTable weights(Material[] materials, Map<Material, Integer> counts) {
+        if (materials.length == 0) return null;
+        double[] weights = new double[materials.length];
+        for (int i = 0; i < materials.length; i++) weights[i] = counts.get(materials[i]);
+        return new AliasTable(weights);
+    }
+
+    /**
+     * @return A palette that always picks the fallback, for structures that do not sample the terrain
+     */
+    public static PedestalPalette of(Material fallback) {
+        return new PedestalPalette(Map.of(), Map.of(), fallback);
+    }
+
+    /**
+     * @param cornerX  World X of the lowest corner of the paste
+     * @param cornerY  World Y of the lowest corner of the paste
+     * @param cornerZ  World Z of the lowest corner of the paste
+     * @param fallback Material used when the terrain yields none
+     */
+    public static PedestalPalette sample(TerrainContext terrain, int cornerX, int cornerY, int cornerZ,
+                                         int sizeX, int sizeY, int sizeZ, Material fallback) {
+        Map<Material, Integer> undergroundCounts = new HashMap<>();
+        Map<Material, Integer> surfaceCounts = new HashMap<>();
+        for (int x = 0; x < sizeX; x += SAMPLE_STRIDE)
+            for (int z = 0; z < sizeZ; z += SAMPLE_STRIDE) {
+                int blockX = cornerX + x;
+                int blockZ = cornerZ + z;
+                if (!terrain.isLoaded(blockX, blockZ)) continue;
+
+                //get underground pedestal blocks
+                for (int y = 0; y < sizeY; y++) {
+                    int blockY = cornerY + y;
+                    if (terrain.is(blockX, blockY + 1, blockZ, TerrainContext.SOLID) &&
+                            (terrain.getBlockClass(blockX, blockY, blockZ) & (TerrainContext.SOLID | TerrainContext.IGNORABLE)) == TerrainContext.SOLID)
+                        undergroundCounts.merge(terrain.getType(blockX, blockY, blockZ), 1, Integer::sum);
+                }
+
+                //get above ground pedestal blocks, if any
+                boolean scanUp = terrain.is(blockX, cornerY + sizeY, blockZ, TerrainContext.SOLID);
+                for (int y = 0; y < MAX_SURFACE_HEIGHT_SCAN; y++) {
+                    int blockY = cornerY + (scanUp ? y : -y);
+                    if (!terrain.is(blockX, blockY + 1, blockZ, TerrainContext.SOLID) && terrain.is(blockX, blockY, blockZ, TerrainContext.SOLID)) {
+                        surfaceCounts.merge(terrain.getType(blockX, blockY, blockZ), 1, Integer::sum);
+                        break;
+                    }
+                }
+            }
+        return new PedestalPalette(undergroundCounts, surfaceCounts, fallback);
+    }
+
+    /**
+     * @param isPedestalSurface True for the top of the pedestal, false for blocks below it
+     */
+    public Material pick(boolean isPedestalSurface) {
+        if (isPedestalSurface) {
+            if (surfaceWeights == null) return fallback;
+            return surfaceMaterials[surfaceWeights.sample()];
+        } else {
+            if (undergroundWeights == null) return fallback;
+            return undergroundMaterials[undergroundWeights.sample()];
+        }
+    }
+}
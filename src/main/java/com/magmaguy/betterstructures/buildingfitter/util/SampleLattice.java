@@ -0,0 +1,146 @@
+package com.magmaguy.betterstructures.buildingfitter.util;
+
+import com.magmaguy.betterstructures.util.MaterialClassTable;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.block.BlockType;
+import lombok.Getter;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The schematic half of a {@link TerrainAdequacy} scan, compiled once when the schematic is loaded.
+ * <p>
+ * Holds every sampled position of the clipboard, packed relative to the paste corner, and for each
+ * {@link TerrainAdequacy.ScanType} the rule the world block at that position has to satisfy. Whether a sample sits
+ * above or below the floor only depends on its height relative to the clipboard origin, so the rules are fixed too.
+ * Scans then only iterate primitive arrays against terrain reads. Samples are ordered coarse lattice first, so a scan
+ * can estimate its score early and give up on hopeless candidates. Immutable and safe to share between scan threads.
+ */
+public final class SampleLattice {
+    public static final int SCAN_STEP = 3;
+    // Rule flags, the low bits hold the block classes the rule tests for
+    static final int NEGATE = 1 << 14;
+    private static final int AXIS_BITS = 21;
+    private static final long AXIS_MASK = (1L << AXIS_BITS) - 1;
+
+    private final long[] offsets;
+    private final short[][] rules;
+    // Samples at the head of the arrays forming a lattice of twice the scan step
+    @Getter
+    private final int coarseSize;
+
+    public SampleLattice(Clipboard clipboard, int scanStep) {
+        BlockVector3 minimumPoint = clipboard.getMinimumPoint();
+        BlockVector3 dimensions = clipboard.getDimensions();
+        int originOffsetY = minimumPoint.y() - clipboard.getOrigin().y();
+        int samplesX = (dimensions.x() + scanStep - 1) / scanStep;
+        int samplesY = (dimensions.y() + scanStep - 1) / scanStep;
+        int samplesZ = (dimensions.z() + scanStep - 1) / scanStep;
+        int sampleCount = samplesX * samplesY * samplesZ;
+        TerrainAdequacy.ScanType[] scanTypes = TerrainAdequacy.ScanType.values();
+        offsets = new long[sampleCount];
+        rules = new short[scanTypes.length][sampleCount];
+
+        // Samples on every other lattice point go first, so the head of the arrays is a coarse lattice on its own
+        int index = 0;
+        int coarseCount = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int x = 0; x < dimensions.x(); x += scanStep)
+                for (int y = 0; y < dimensions.y(); y += scanStep)
+                    for (int z = 0; z < dimensions.z(); z += scanStep) {
+                        boolean coarse = ((x / scanStep) & 1) == 0 && ((y / scanStep) & 1) == 0 && ((z / scanStep) & 1) == 0;
+                        if (coarse != (pass == 0)) continue;
+                        BlockType blockType = clipboard.getBlock(minimumPoint.add(x, y, z)).getBlockType();
+                        int schematicClasses = MaterialClassTable.getClasses(blockType);
+                        // Samples at or above the origin height are pasted above the floor the structure stands on
+                        boolean aboveFloor = y + originOffsetY >= 0;
+                        offsets[index] = ((long) x << (AXIS_BITS * 2)) | ((long) y << AXIS_BITS) | z;
+                        for (TerrainAdequacy.ScanType scanType : scanTypes)
+                            rules[scanType.ordinal()][index] = (short) rule(scanType, aboveFloor, schematicClasses);
+                        index++;
+                    }
+            if (pass == 0) coarseCount = index;
+        }
+        this.coarseSize = coarseCount;
+    }
+
+    private SampleLattice(long[] offsets, short[][] rules, int coarseSize) {
+        this.offsets = offsets;
+        this.rules = rules;
+        this.coarseSize = coarseSize;
+    }
+
+    /**
+     * Writes the lattice for the schematic cache, see {@link #read(DataInput)}.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(coarseSize);
+        out.writeInt(offsets.length);
+        for (long offset : offsets) out.writeLong(offset);
+        out.writeInt(rules.length);
+        for (short[] scanTypeRules : rules)
+            for (short rule : scanTypeRules) out.writeShort(rule);
+    }
+
+    /**
+     * @throws IOException If the data is truncated or was written for a different set of scan types
+     */
+    public static SampleLattice read(DataInput in) throws IOException {
+        int coarseSize = in.readInt();
+        int sampleCount = in.readInt();
+        if (sampleCount < 0 || coarseSize < 0 || coarseSize > sampleCount)
+            throw new IOException("Invalid sample count " + sampleCount);
+        long[] offsets = new long[sampleCount];
+        for (int i = 0; i < sampleCount; i++) offsets[i] = in.readLong();
+        int scanTypeCount = in.readInt();
+        if (scanTypeCount != TerrainAdequacy.ScanType.values().length)
+            throw new IOException("Lattice has " + scanTypeCount + " scan types");
+        short[][] rules = new short[scanTypeCount][sampleCount];
+        for (short[] scanTypeRules : rules)
+            for (int i = 0; i < sampleCount; i++) scanTypeRules[i] = in.readShort();
+        return new SampleLattice(offsets, rules, coarseSize);
+    }
+
+    private static int rule(TerrainAdequacy.ScanType scanType, boolean aboveFloor, int schematicClasses) {
+        return switch (scanType) {
+            case SURFACE -> {
+                if (!aboveFloor) yield TerrainContext.AIR | NEGATE;
+                // Non air schematic blocks replace whatever is there, air ones need terrain that can be cleared
+                yield (schematicClasses & MaterialClassTable.AIR) == 0 ? 0 : TerrainContext.IGNORABLE;
+            }
+            case AIR -> TerrainContext.AIR;
+            case UNDERGROUND -> TerrainContext.SOLID;
+            case LIQUID -> {
+                if (aboveFloor) yield TerrainContext.AIR;
+                yield (schematicClasses & MaterialClassTable.LIQUID) != 0 ? TerrainContext.LIQUID : 0;
+            }
+        };
+    }
+
+    public int size() {
+        return offsets.length;
+    }
+
+    int getX(int index) {
+        return (int) (offsets[index] >>> (AXIS_BITS * 2));
+    }
+
+    int getY(int index) {
+        return (int) ((offsets[index] >>> AXIS_BITS) & AXIS_MASK);
+    }
+
+    int getZ(int index) {
+        return (int) (offsets[index] & AXIS_MASK);
+    }
+
+    /**
+     * @return Block classes the world block has to have any of, possibly combined with {@link #NEGATE} to require
+     * none of them instead, or 0 if any block is adequate
+     */
+    int getRule(TerrainAdequacy.ScanType scanType, int index) {
+        return rules[scanType.ordinal()][index];
+    }
+}
@@ -2,33 +2,136 @@ package com.magmaguy.betterstructures.buildingfitter.util;
 
 import com.magmaguy.betterstructures.config.generators.GeneratorConfigFields;
 import com.magmaguy.betterstructures.schematics.SchematicContainer;
-import com.magmaguy.betterstructures.util.WeighedProbability;
+import com.magmaguy.betterstructures.util.AliasTable;
 import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Picks the schematic to try at an anchor, weighted by the schematic configuration.
+ * <p>
+ * Containers are indexed per structure type, then bucketed by world (which fixes the environment) and biome the
+ * first time that combination is asked for. Each bucket splits the Y axis at the schematics' level limits and keeps
+ * an {@link AliasTable} per slice, so a pick is a few map lookups, a binary search and one random draw. The index is
+ * rebuilt when the schematics are loaded, buckets of a world are dropped when it unloads.
+ */
 public class SchematicPicker {
-    public static SchematicContainer pick(Location naiveAnchorLocation, GeneratorConfigFields.StructureType structureType) {
-        // Check if chunk is loaded to avoid sync chunk loading with FAWE
-        if (!naiveAnchorLocation.getWorld().isChunkLoaded(
-                naiveAnchorLocation.getBlockX() >> 4,
-                naiveAnchorLocation.getBlockZ() >> 4)) {
+    private static volatile Map<GeneratorConfigFields.StructureType, TypeIndex> index = new EnumMap<>(GeneratorConfigFields.StructureType.class);
+
+    public static SchematicContainer pick(TerrainContext terrain, Location naiveAnchorLocation, GeneratorConfigFields.StructureType structureType) {
+        // Check if chunk was loaded when the terrain was captured
+        if (!terrain.isLoaded(naiveAnchorLocation.getBlockX(), naiveAnchorLocation.getBlockZ())) {
             return null;
         }
-        List<SchematicContainer> schematicContainers = new ArrayList<>(SchematicContainer.getSchematics().get(structureType));
-        if (schematicContainers.isEmpty()) return null;
-        schematicContainers.removeIf(schematicContainer ->
-                !schematicContainer.isValidWorld(naiveAnchorLocation.getWorld().getName()) ||
-                        !schematicContainer.isValidEnvironment(naiveAnchorLocation.getWorld().getEnvironment()) ||
-                        !schematicContainer.isValidBiome(naiveAnchorLocation.getBlock().getBiome()) ||
-                        !schematicContainer.isValidYLevel(naiveAnchorLocation.getBlockY()));
-        if (schematicContainers.isEmpty()) return null;
-        HashMap<Integer, Double> probabilities = new HashMap<>();
-        for (int i = 0; i < schematicContainers.size(); i++)
-            probabilities.put(i, schematicContainers.get(i).getSchematicConfigField().getWeight());
-        SchematicContainer schematicContainer = schematicContainers.get(WeighedProbability.pickWeightedProbability(probabilities));
-        return schematicContainer;
+        TypeIndex typeIndex = index.get(structureType);
+        if (typeIndex == null) return null;
+        Biome biome = terrain.getBiome(naiveAnchorLocation.getBlockX(), naiveAnchorLocation.getBlockY(), naiveAnchorLocation.getBlockZ());
+        if (biome == null) return null;
+        return typeIndex.getBucket(naiveAnchorLocation.getWorld(), biome).pick(naiveAnchorLocation.getBlockY());
+    }
+
+    /**
+     * Indexes the currently registered schematic containers. Runs once the schematics are loaded.
+     */
+    public static void rebuild() {
+        Map<GeneratorConfigFields.StructureType, TypeIndex> newIndex = new EnumMap<>(GeneratorConfigFields.StructureType.class);
+        synchronized (SchematicContainer.getSchematics()) {
+            for (GeneratorConfigFields.StructureType structureType : SchematicContainer.getSchematics().keySet()) {
+                List<SchematicContainer> schematicContainers = SchematicContainer.getSchematics().get(structureType);
+                if (!schematicContainers.isEmpty())
+                    newIndex.put(structureType, new TypeIndex(schematicContainers.toArray(new SchematicContainer[0])));
+            }
+        }
+        index = newIndex;
+    }
+
+    public static void evictWorld(World world) {
+        for (TypeIndex typeIndex : index.values()) typeIndex.buckets.remove(world.getName());
+    }
+
+    public static void shutdown() {
+        index = new EnumMap<>(GeneratorConfigFields.StructureType.class);
+    }
+
+    private static class TypeIndex {
+        private final SchematicContainer[] schematicContainers;
+        private final Map<String, Map<Biome, YRangeBucket>> buckets = new ConcurrentHashMap<>();
+
+        private TypeIndex(SchematicContainer[] schematicContainers) {
+            this.schematicContainers = schematicContainers;
+        }
+
+        private YRangeBucket getBucket(World world, Biome biome) {
+            Map<Biome, YRangeBucket> biomes = buckets.get(world.getName());
+            if (biomes == null) biomes = buckets.computeIfAbsent(world.getName(), k -> new ConcurrentHashMap<>());
+            YRangeBucket bucket = biomes.get(biome);
+            if (bucket == null) bucket = biomes.computeIfAbsent(biome, k -> buildBucket(world, biome));
+            return bucket;
+        }
+
+        private YRangeBucket buildBucket(World world, Biome biome) {
+            // Resolved once per bucket instead of once per container and pick
+            String biomeKey = SchematicContainer.getBiomeIdentifier(biome);
+            List<SchematicContainer> candidates = new ArrayList<>();
+            for (SchematicContainer schematicContainer : schematicContainers)
+                if (schematicContainer.isValidWorld(world.getName()) &&
+                        schematicContainer.isValidEnvironment(world.getEnvironment()) &&
+                        schematicContainer.isValidBiomeKey(biomeKey))
+                    candidates.add(schematicContainer);
+            return new YRangeBucket(candidates);
+        }
+    }
+
+    /**
+     * Candidates of one bucket, split into Y slices within which the same schematics are valid.
+     */
+    private static class YRangeBucket {
+        // Lowest Y of each slice, ascending; a slice ends where the next one starts
+        private final int[] sliceStarts;
+        // Candidates and their alias table per slice, null where no schematic is valid
+        private final SchematicContainer[][] sliceCandidates;
+        private final AliasTable[] sliceTables;
+
+        private YRangeBucket(List<SchematicContainer> candidates) {
+            TreeSet<Integer> boundaries = new TreeSet<>();
+            for (SchematicContainer schematicContainer : candidates) {
+                int lowestYLevel = schematicContainer.getGeneratorConfigFields().getLowestYLevel();
+                int highestYLevel = schematicContainer.getGeneratorConfigFields().getHighestYLevel();
+                if (lowestYLevel > highestYLevel) continue;
+                boundaries.add(lowestYLevel);
+                if (highestYLevel != Integer.MAX_VALUE) boundaries.add(highestYLevel + 1);
+            }
+            sliceStarts = boundaries.stream().mapToInt(Integer::intValue).toArray();
+            sliceCandidates = new SchematicContainer[sliceStarts.length][];
+            sliceTables = new AliasTable[sliceStarts.length];
+            for (int slice = 0; slice < sliceStarts.length; slice++) {
+                int sliceStart = sliceStarts[slice];
+                // No limit falls inside a slice, so a schematic valid at its start is valid throughout it
+                List<SchematicContainer> sliceContainers = new ArrayList<>();
+                for (SchematicContainer schematicContainer : candidates)
+                    if (schematicContainer.isValidYLevel(sliceStart)) sliceContainers.add(schematicContainer);
+                if (sliceContainers.isEmpty()) continue;
+                double[] weights = new double[sliceContainers.size()];
+                for (int i = 0; i < weights.length; i++)
+                    weights[i] = sliceContainers.get(i).getSchematicConfigField().getWeight();
+                sliceCandidates[slice] = sliceContainers.toArray(new SchematicContainer[0]);
+                sliceTables[slice] = new AliasTable(weights);
+            }
+        }
+
+        private SchematicContainer pick(int y) {
+            int slice = Arrays.binarySearch(sliceStarts, y);
+            if (slice < 0) slice = -slice - 2;
+            if (slice < 0 || sliceCandidates[slice] == null) return null;
+            return sliceCandidates[slice][sliceTables[slice].sample()];
+        }
     }
 }
@@ -1,11 +1,7 @@
 package com.magmaguy.betterstructures.buildingfitter.util;
 
-import com.magmaguy.betterstructures.util.SurfaceMaterials;
-import com.sk89q.worldedit.bukkit.BukkitAdapter;
-import com.sk89q.worldedit.extent.clipboard.Clipboard;
-import com.sk89q.worldedit.math.BlockVector3;
+import com.magmaguy.betterstructures.config.DefaultConfig;
 import org.bukkit.Location;
-import org.bukkit.Material;
 import org.bukkit.util.Vector;
 
 public class TerrainAdequacy {
@@ -16,23 +12,35 @@ public class TerrainAdequacy {
         LIQUID
     }
 
-    public static double scan(int scanStep, Clipboard schematicClipboard, Location iteratedLocation, Vector schematicOffset, ScanType scanType) {
-        int width = schematicClipboard.getDimensions().x();
-        int depth = schematicClipboard.getDimensions().z();
-        int height = schematicClipboard.getDimensions().y();
-
-        int totalCount = 0;
+    /**
+     * Scores how well the terrain suits the schematic at a position, as the percentage of adequate samples.
+     * <p>
+     * Candidates that can no longer reach {@code minimumScore} stop being scored: exactly once enough samples failed,
+     * and in coarse to fine mode also when the coarse head of the lattice already estimates a score too far below it.
+     *
+     * @param minimumScore Lowest score the caller would accept, use 0 to always score every sample
+     * @return The score, or 0 if the candidate was given up on
+     */
+    public static double scan(TerrainContext terrain, SampleLattice sampleLattice, Location iteratedLocation, Vector schematicOffset, ScanType scanType, double minimumScore) {
+        int totalCount = sampleLattice.size();
+        int coarseCount = sampleLattice.getCoarseSize();
+        int coarseTolerance = DefaultConfig.getFitSearchCoarseTolerance();
+        boolean coarseCutoff = DefaultConfig.isFitSearchCoarseToFine() && coarseTolerance >= 0 &&
+                coarseCount > 0 && coarseCount < totalCount;
         int negativeCount = 0;
 
-        for (int x = 0; x < width; x += scanStep) {
-            for (int y = 0; y < height; y += scanStep) {
-                for (int z = 0; z < depth; z += scanStep) {
-                    Material schematicMaterialAtPosition = BukkitAdapter.adapt(schematicClipboard.getBlock(BlockVector3.at(x, y, z)).getBlockType());
-                    Location projectedLocation = LocationProjector.project(iteratedLocation, new Vector(x, y, z), schematicOffset);
-                    if (!isBlockAdequate(projectedLocation, schematicMaterialAtPosition, iteratedLocation.getBlockY() - 1, scanType))
-                        negativeCount++;
-                    totalCount++;
-                }
+        int originX = iteratedLocation.getBlockX() + schematicOffset.getBlockX();
+        int originY = iteratedLocation.getBlockY() + schematicOffset.getBlockY();
+        int originZ = iteratedLocation.getBlockZ() + schematicOffset.getBlockZ();
+
+        for (int i = 0; i < totalCount; i++) {
+            if (coarseCutoff && i == coarseCount &&
+                    100 - negativeCount * 100D / (double) coarseCount < minimumScore - coarseTolerance)
+                return 0;
+            if (!isBlockAdequate(terrain, originX + sampleLattice.getX(i), originY + sampleLattice.getY(i), originZ + sampleLattice.getZ(i), sampleLattice.getRule(scanType, i))) {
+                negativeCount++;
+                // Same formula as the final score, so this only ever drops candidates that would end up below it
+                if (100 - negativeCount * 100D / (double) totalCount < minimumScore) return 0;
             }
         }
 
@@ -41,42 +49,14 @@ public class TerrainAdequacy {
         return score;
     }
 
-    private static boolean isBlockAdequate(Location projectedWorldLocation, Material schematicBlockMaterial, int floorHeight, ScanType scanType) {
-        // Check if chunk is loaded to avoid sync chunk loading with FAWE
-        if (!projectedWorldLocation.getWorld().isChunkLoaded(
-                projectedWorldLocation.getBlockX() >> 4,
-                projectedWorldLocation.getBlockZ() >> 4)) {
-            return false;
-        }
-
-        int floorYValue = projectedWorldLocation.getBlockY();
-        if (projectedWorldLocation.getBlock().getType().equals(Material.VOID_AIR)) return false;
-        switch (scanType) {
-            case SURFACE:
-                if (floorYValue > floorHeight)
-                    //for air level
-                    return SurfaceMaterials.ignorable(projectedWorldLocation.getBlock().getType()) || !schematicBlockMaterial.isAir();
-                else
-                    //for underground level
-                    return !projectedWorldLocation.getBlock().getType().isAir();
-            case AIR:
-                return projectedWorldLocation.getBlock().getType().isAir();
-            case UNDERGROUND:
-                return projectedWorldLocation.getBlock().getType().isSolid();
-            case LIQUID:
-                if (floorYValue > floorHeight) {
-                    //for air level
-                    return projectedWorldLocation.getBlock().getType().isAir();
-                } else {
-                    //for underwater level
-                    if (schematicBlockMaterial == Material.WATER || schematicBlockMaterial == Material.LAVA)
-                        return projectedWorldLocation.getBlock().isLiquid();
-                    else
-                        return true;
-                }
-            default:
-                return false;
-        }
-
+    private static boolean isBlockAdequate(TerrainContext terrain, int blockX, int blockY, int blockZ, int rule) {
+        // Chunks that were not loaded when the terrain was captured read as void and fail here
+        int worldClass = terrain.getBlockClass(blockX, blockY, blockZ);
+        if ((worldClass & TerrainContext.VOID) != 0) return false;
+        // The rule was compiled from the schematic block and the scan type, see SampleLattice
+        int requiredClasses = rule & ~SampleLattice.NEGATE;
+        if (requiredClasses == 0) return true;
+        boolean matches = (worldClass & requiredClasses) != 0;
+        return (rule & SampleLattice.NEGATE) == 0 ? matches : !matches;
     }
 }
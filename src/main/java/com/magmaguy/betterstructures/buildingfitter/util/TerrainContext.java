@@ -0,0 +1,192 @@
+package com.magmaguy.betterstructures.buildingfitter.util;
+
+import com.magmaguy.betterstructures.util.MaterialClassTable;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+
+/**
+ * Terrain data for a single candidate chunk, shared by every structure type fitter that runs on it in the same pass.
+ * <p>
+ * Wraps a {@link TerrainSnapshot} and lazily memoises what the fitters keep asking for: the heightmap, the block class
+ * (solid, air, liquid, ignorable, void, bedrock) of every column position read so far and the biome of each 4x4x4
+ * biome cell. A chunk that is a candidate for several types therefore decodes each position once instead of once per
+ * fitter. Memoised data is allocated per captured chunk on first use. Effective ground heights go one step further and
+ * are shared between scans through the {@link HeightmapCache}.
+ * <p>
+ * Not thread safe, a context belongs to the single scan task it was created for.
+ */
+public final class TerrainContext {
+    public static final int SOLID = MaterialClassTable.SOLID;
+    public static final int AIR = MaterialClassTable.AIR;
+    public static final int LIQUID = MaterialClassTable.LIQUID;
+    public static final int IGNORABLE = MaterialClassTable.IGNORABLE;
+    public static final int VOID = MaterialClassTable.VOID;
+    public static final int BEDROCK = MaterialClassTable.BEDROCK;
+    // Only the flags above fit in a memoised position
+    private static final int MEMOISED_CLASSES = SOLID | AIR | LIQUID | IGNORABLE | VOID | BEDROCK;
+    // Set on every memoised class so an untouched (zero) entry reads as unknown
+    private static final byte KNOWN = (byte) (1 << 6);
+
+    private final TerrainSnapshot snapshot;
+    private final int height;
+    private final int biomeCellsY;
+    // All indexed by captured chunk, see TerrainSnapshot#chunkIndex
+    private final int[][] heightmaps;
+    private final byte[][][] columnClasses;
+    private final Biome[][] biomeCells;
+    // Shared arrays from the HeightmapCache, looked up once per chunk
+    private final int[][] groundColumns;
+
+    public TerrainContext(TerrainSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.height = snapshot.getMaxHeight() - snapshot.getMinHeight();
+        this.biomeCellsY = (height + 3) >> 2;
+        int chunkCount = snapshot.getChunkCount();
+        this.heightmaps = new int[chunkCount][];
+        this.columnClasses = new byte[chunkCount][][];
+        this.biomeCells = new Biome[chunkCount][];
+        this.groundColumns = new int[chunkCount][];
+    }
+
+    public World getWorld() {
+        return snapshot.getWorld();
+    }
+
+    public World.Environment getEnvironment() {
+        return snapshot.getEnvironment();
+    }
+
+    public int getMinHeight() {
+        return snapshot.getMinHeight();
+    }
+
+    public int getMaxHeight() {
+        return snapshot.getMaxHeight();
+    }
+
+    /**
+     * Captures the rest of the area a schematic of the given reach needs, see {@link TerrainSnapshot#require(int)}.
+     *
+     * @param reach Furthest horizontal distance, in blocks, the schematic extends from its paste anchor
+     * @return False if the area could not be captured
+     */
+    public boolean requireReach(int reach) {
+        return snapshot.require(TerrainSnapshot.captureRadius(reach));
+    }
+
+    /**
+     * @return True if the column was part of a loaded chunk at capture time
+     */
+    public boolean isLoaded(int blockX, int blockZ) {
+        return snapshot.isLoaded(blockX, blockZ);
+    }
+
+    /**
+     * Exact material lookup, for the few checks block classes do not cover. Not memoised.
+     */
+    public Material getType(int blockX, int blockY, int blockZ) {
+        return snapshot.getType(blockX, blockY, blockZ);
+    }
+
+    /**
+     * Memoised {@link TerrainSnapshot#getHighestBlockYAt(int, int)}. The heightmap of a chunk is copied whole on
+     * first use.
+     */
+    public int getHighestBlockYAt(int blockX, int blockZ) {
+        int chunkIndex = snapshot.chunkIndex(blockX, blockZ);
+        if (chunkIndex < 0) return snapshot.getMinHeight() - 1;
+        int[] heightmap = heightmaps[chunkIndex];
+        if (heightmap == null) {
+            heightmap = new int[256];
+            int baseX = blockX & ~15;
+            int baseZ = blockZ & ~15;
+            for (int x = 0; x < 16; x++)
+                for (int z = 0; z < 16; z++)
+                    heightmap[(x << 4) | z] = snapshot.getHighestBlockYAt(baseX + x, baseZ + z);
+            heightmaps[chunkIndex] = heightmap;
+        }
+        return heightmap[((blockX & 15) << 4) | (blockZ & 15)];
+    }
+
+    /**
+     * Effective ground of a column, resolved through the world wide {@link HeightmapCache} so columns already walked
+     * by an earlier or neighbouring scan are reused.
+     *
+     * @return Ground column value for {@link HeightmapCache#getGroundY(int)} and {@link HeightmapCache#isLiquid(int)},
+     * or {@link HeightmapCache#NO_GROUND} if the column has no valid ground or was not captured
+     */
+    public int getGround(int blockX, int blockZ) {
+        int chunkIndex = snapshot.chunkIndex(blockX, blockZ);
+        if (chunkIndex < 0 || !snapshot.isLoaded(blockX, blockZ)) return HeightmapCache.NO_GROUND;
+        int[] chunkColumns = groundColumns[chunkIndex];
+        if (chunkColumns == null) {
+            chunkColumns = HeightmapCache.getChunkColumns(snapshot.getWorld(), blockX >> 4, blockZ >> 4);
+            groundColumns[chunkIndex] = chunkColumns;
+        }
+        return HeightmapCache.getGround(this, chunkColumns, blockX, blockZ);
+    }
+
+    /**
+     * Block class of a position, a combination of {@link #SOLID}, {@link #AIR}, {@link #LIQUID}, {@link #IGNORABLE},
+     * {@link #VOID} and {@link #BEDROCK} matching the {@link Material} checks the fitters used to run. Positions in
+     * chunks that were not captured or outside the world height read as {@link Material#VOID_AIR}.
+     */
+    public int getBlockClass(int blockX, int blockY, int blockZ) {
+        int yIndex = blockY - snapshot.getMinHeight();
+        if (yIndex < 0 || yIndex >= height) return voidClass();
+        int chunkIndex = snapshot.chunkIndex(blockX, blockZ);
+        if (chunkIndex < 0) return voidClass();
+        byte[][] chunkColumns = columnClasses[chunkIndex];
+        if (chunkColumns == null) {
+            chunkColumns = new byte[256][];
+            columnClasses[chunkIndex] = chunkColumns;
+        }
+        int columnIndex = ((blockX & 15) << 4) | (blockZ & 15);
+        byte[] column = chunkColumns[columnIndex];
+        if (column == null) {
+            column = new byte[height];
+            chunkColumns[columnIndex] = column;
+        }
+        byte blockClass = column[yIndex];
+        if (blockClass == 0) {
+            blockClass = (byte) ((MaterialClassTable.getClasses(snapshot.getType(blockX, blockY, blockZ)) & MEMOISED_CLASSES) | KNOWN);
+            column[yIndex] = blockClass;
+        }
+        return blockClass & ~KNOWN;
+    }
+
+    /**
+     * @param blockClasses One or more block class flags
+     * @return True if the position has any of the given classes
+     */
+    public boolean is(int blockX, int blockY, int blockZ, int blockClasses) {
+        return (getBlockClass(blockX, blockY, blockZ) & blockClasses) != 0;
+    }
+
+    /**
+     * Memoised {@link TerrainSnapshot#getBiome(int, int, int)}, resolved once per 4x4x4 biome cell which is the
+     * resolution the world stores biomes at.
+     */
+    public Biome getBiome(int blockX, int blockY, int blockZ) {
+        int chunkIndex = snapshot.chunkIndex(blockX, blockZ);
+        if (chunkIndex < 0) return null;
+        Biome[] cells = biomeCells[chunkIndex];
+        if (cells == null) {
+            cells = new Biome[16 * biomeCellsY];
+            biomeCells[chunkIndex] = cells;
+        }
+        int clampedY = Math.max(snapshot.getMinHeight(), Math.min(snapshot.getMaxHeight() - 1, blockY));
+        int cellIndex = ((((blockX & 15) >> 2) << 2) | ((blockZ & 15) >> 2)) * biomeCellsY + ((clampedY - snapshot.getMinHeight()) >> 2);
+        Biome biome = cells[cellIndex];
+        if (biome == null) {
+            biome = snapshot.getBiome(blockX, clampedY, blockZ);
+            cells[cellIndex] = biome;
+        }
+        return biome;
+    }
+
+    private static int voidClass() {
+        return MaterialClassTable.getClasses(Material.VOID_AIR) & MEMOISED_CLASSES;
+    }
+}
@@ -0,0 +1,222 @@
+package com.magmaguy.betterstructures.buildingfitter.util;
+
+import com.magmaguy.betterstructures.MetadataHandler;
+import lombok.Getter;
+import org.bukkit.Bukkit;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.BitSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Immutable view over a square of chunk snapshots, captured on the main thread so terrain scoring can run on worker
+ * threads without ever touching live world state.
+ * <p>
+ * Only chunks that were loaded at capture time are included. Reads in missing chunks or outside the world height
+ * return {@link Material#VOID_AIR}, which every scanner already treats as a failed position, matching how unloaded
+ * chunks used to be handled.
+ * <p>
+ * Natural scans only capture the neighbourhood of the anchor up front. Once a fitter knows which schematic it is
+ * trying, {@link #require(int)} captures the rest of the area that schematic reaches, a few chunks per tick, so a
+ * single large schematic in the pool does not make every scan snapshot hundreds of chunks.
+ */
+public final class TerrainSnapshot {
+    // Chunks snapshotted per tick when a scan needs a larger area
+    private static final int CAPTURE_BATCH = 16;
+    // How long a scan waits for the main thread to capture the area before giving up on the chunk
+    private static final long CAPTURE_TIMEOUT_SECONDS = 10;
+
+    @Getter
+    private final World world;
+    @Getter
+    private final World.Environment environment;
+    @Getter
+    private final int minHeight;
+    @Getter
+    private final int maxHeight;
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int size;
+    private final ChunkSnapshot[] chunks;
+    // Radius around the center captured so far, the square is allocated for size / 2
+    private volatile int capturedRadius = -1;
+    // Positions already looked at, main thread only
+    private final BitSet attempted;
+
+    private TerrainSnapshot(World world, int minChunkX, int minChunkZ, int size) {
+        this.world = world;
+        this.environment = world.getEnvironment();
+        this.minHeight = world.getMinHeight();
+        this.maxHeight = world.getMaxHeight();
+        this.minChunkX = minChunkX;
+        this.minChunkZ = minChunkZ;
+        this.size = size;
+        this.chunks = new ChunkSnapshot[size * size];
+        this.attempted = new BitSet(size * size);
+    }
+
+    /**
+     * Captures the loaded chunks in a square around a chunk. Must be called from the main thread.
+     *
+     * @param world        World to capture
+     * @param centerChunkX Center chunk X
+     * @param centerChunkZ Center chunk Z
+     * @param chunkRadius  Radius in chunks around the center
+     * @return The captured view
+     */
+    public static TerrainSnapshot capture(World world, int centerChunkX, int centerChunkZ, int chunkRadius) {
+        return capture(world, centerChunkX, centerChunkZ, chunkRadius, chunkRadius);
+    }
+
+    /**
+     * Captures the loaded chunks in a square around a chunk, leaving room to {@link #require(int)} more later. Must be
+     * called from the main thread.
+     *
+     * @param maxChunkRadius      Largest radius that can be required later
+     * @param capturedChunkRadius Radius captured right away
+     * @return The captured view
+     */
+    public static TerrainSnapshot capture(World world, int centerChunkX, int centerChunkZ, int maxChunkRadius, int capturedChunkRadius) {
+        TerrainSnapshot terrainSnapshot = new TerrainSnapshot(world, centerChunkX - maxChunkRadius,
+                centerChunkZ - maxChunkRadius, maxChunkRadius * 2 + 1);
+        terrainSnapshot.captureUpTo(Math.min(maxChunkRadius, capturedChunkRadius), Integer.MAX_VALUE);
+        return terrainSnapshot;
+    }
+
+    /**
+     * Makes sure every loaded chunk within the radius is captured. Off the main thread, the missing chunks are captured
+     * on the main thread {@value #CAPTURE_BATCH} per tick while the calling scan waits.
+     *
+     * @param chunkRadius Radius in chunks around the center
+     * @return False if the radius does not fit the allocated square or the capture could not finish
+     */
+    public boolean require(int chunkRadius) {
+        if (chunkRadius <= capturedRadius) return true;
+        if (chunkRadius > size / 2) return false;
+        if (Bukkit.isPrimaryThread()) {
+            captureUpTo(chunkRadius, Integer.MAX_VALUE);
+            return true;
+        }
+        if (!MetadataHandler.PLUGIN.isEnabled()) return false;
+        CompletableFuture<Void> captured = new CompletableFuture<>();
+        BukkitTask captureTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                if (!captureUpTo(chunkRadius, CAPTURE_BATCH)) return;
+                captured.complete(null);
+                cancel();
+            }
+        }.runTaskTimer(MetadataHandler.PLUGIN, 0, 1);
+        try {
+            captured.get(CAPTURE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return true;
+        } catch (InterruptedException exception) {
+            // The scan gave up, so nobody would read the chunks still to be captured
+            captureTask.cancel();
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException exception) {
+            captureTask.cancel();
+            return false;
+        }
+    }
+
+    /**
+     * Captures up to {@code budget} of the chunks within the radius that were not looked at yet. Main thread only.
+     *
+     * @return True once every chunk within the radius was looked at
+     */
+    private boolean captureUpTo(int chunkRadius, int budget) {
+        int center = size / 2;
+        for (int x = center - chunkRadius; x <= center + chunkRadius; x++)
+            for (int z = center - chunkRadius; z <= center + chunkRadius; z++) {
+                int index = x * size + z;
+                if (attempted.get(index)) continue;
+                if (budget-- <= 0) return false;
+                attempted.set(index);
+                int chunkX = minChunkX + x;
+                int chunkZ = minChunkZ + z;
+                // Never load chunks here, missing ones simply fail any scan reaching into them
+                if (!world.isChunkLoaded(chunkX, chunkZ)) continue;
+                chunks[index] = world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(true, true, false);
+                HeightmapCache.onChunkCaptured(world, chunkX, chunkZ);
+            }
+        // Publishes the chunks written above to the scan thread
+        capturedRadius = Math.max(capturedRadius, chunkRadius);
+        return true;
+    }
+
+    /**
+     * Chunk radius needed to score a structure of the given horizontal reach anywhere in the fit search area, which
+     * spans the center chunk and its direct neighbours.
+     *
+     * @param reach Furthest horizontal distance, in blocks, a schematic extends from its paste anchor
+     */
+    public static int captureRadius(int reach) {
+        // Anchors sit in the middle of the center chunk or of a neighbouring chunk, so between 8 blocks before and
+        // 24 blocks after the start of the center chunk
+        return Math.max(1, (24 + Math.max(0, reach)) >> 4);
+    }
+
+    /**
+     * @return Index of the captured chunk holding the column, or -1 if the column is outside the captured square
+     */
+    int chunkIndex(int blockX, int blockZ) {
+        int x = (blockX >> 4) - minChunkX;
+        int z = (blockZ >> 4) - minChunkZ;
+        if (x < 0 || z < 0 || x >= size || z >= size) return -1;
+        return x * size + z;
+    }
+
+    int getChunkCount() {
+        return chunks.length;
+    }
+
+    private ChunkSnapshot chunkAt(int blockX, int blockZ) {
+        int index = chunkIndex(blockX, blockZ);
+        return index < 0 ? null : chunks[index];
+    }
+
+    /**
+     * @return True if the column was part of a loaded chunk at capture time
+     */
+    public boolean isLoaded(int blockX, int blockZ) {
+        return chunkAt(blockX, blockZ) != null;
+    }
+
+    public Material getType(int blockX, int blockY, int blockZ) {
+        if (blockY < minHeight || blockY >= maxHeight) return Material.VOID_AIR;
+        ChunkSnapshot chunkSnapshot = chunkAt(blockX, blockZ);
+        if (chunkSnapshot == null) return Material.VOID_AIR;
+        return chunkSnapshot.getBlockType(blockX & 15, blockY, blockZ & 15);
+    }
+
+    /**
+     * Same heightmap as {@link World#getHighestBlockYAt(int, int)}.
+     *
+     * @return The highest non-empty block Y, or {@code minHeight - 1} if the column was not captured
+     */
+    public int getHighestBlockYAt(int blockX, int blockZ) {
+        ChunkSnapshot chunkSnapshot = chunkAt(blockX, blockZ);
+        if (chunkSnapshot == null) return minHeight - 1;
+        return chunkSnapshot.getHighestBlockYAt(blockX & 15, blockZ & 15);
+    }
+
+    /**
+     * @return The biome at the position, or null if the column was not captured
+     */
+    public Biome getBiome(int blockX, int blockY, int blockZ) {
+        ChunkSnapshot chunkSnapshot = chunkAt(blockX, blockZ);
+        if (chunkSnapshot == null) return null;
+        int clampedY = Math.max(minHeight, Math.min(maxHeight - 1, blockY));
+        return chunkSnapshot.getBiome(blockX & 15, clampedY, blockZ & 15);
+    }
+}
@@ -1,27 +1,23 @@
 package com.magmaguy.betterstructures.buildingfitter.util;
 
-import com.magmaguy.betterstructures.util.SurfaceMaterials;
-import com.sk89q.worldedit.extent.clipboard.Clipboard;
-import org.bukkit.Bukkit;
+import com.sk89q.worldedit.math.BlockVector3;
 import org.bukkit.Location;
-import org.bukkit.Material;
-import org.bukkit.World;
 import org.bukkit.util.Vector;
 
 import java.util.ArrayList;
 import java.util.Collections;
 
 public class Topology {
-    public static double scan(double startingScore, int scanStep, Clipboard schematicClipboard, Location iteratedLocation, Vector schematicOffset) {
+    public static double scan(TerrainContext terrain, double startingScore, int scanStep, BlockVector3 schematicDimensions, Location iteratedLocation, Vector schematicOffset) {
         //if (schematicOffset == null) Bukkit.getLogger().info("oops the schematic offset is null");
         double score = startingScore;
-        int width = schematicClipboard.getDimensions().x();
-        int depth = schematicClipboard.getDimensions().z();
+        int width = schematicDimensions.x();
+        int depth = schematicDimensions.z();
 
         ArrayList<Integer> heights = new ArrayList<>();
 
         //Scans the topology to find a mesh of the highest locations for the entirety of the x and z axi. Also does the water / lava scan
-        score = scanHighestLocations(width, depth, scanStep, iteratedLocation, schematicOffset, heights, score);
+        score = scanHighestLocations(terrain, width, depth, scanStep, iteratedLocation, schematicOffset, heights, score);
         if (score == 0) return 0;
 
         //Detects extreme height differences which would immediately disqualify this scan
@@ -37,87 +33,32 @@ public class Topology {
         return score;
     }
 
-    private static double scanHighestLocations(int width, int depth, int scanStep, Location iteratedLocation, Vector schematicOffset, ArrayList<Integer> heights, double score) {
+    private static double scanHighestLocations(TerrainContext terrain, int width, int depth, int scanStep, Location iteratedLocation, Vector schematicOffset, ArrayList<Integer> heights, double score) {
         int totalPointAmount = (int) Math.floor(Math.floor(width / (double) scanStep) * Math.floor(depth / (double) scanStep));
+        int originX = iteratedLocation.getBlockX() + schematicOffset.getBlockX();
+        int originZ = iteratedLocation.getBlockZ() + schematicOffset.getBlockZ();
         for (int x = 0; x < width; x += scanStep) {
             for (int z = 0; z < depth; z += scanStep) {
-                Location projectedLocation = LocationProjector.project(iteratedLocation, new Vector(x, 0, z), schematicOffset);
-                // Skip if chunk not loaded to avoid sync chunk loading with FAWE
-                if (!projectedLocation.getWorld().isChunkLoaded(projectedLocation.getBlockX() >> 4, projectedLocation.getBlockZ() >> 4)) {
+                int blockX = originX + x;
+                int blockZ = originZ + z;
+                // Skip if chunk was not loaded when the terrain was captured
+                if (!terrain.isLoaded(blockX, blockZ)) {
                     return 0;
                 }
-                projectedLocation = getHighestBlockAt(projectedLocation);
-                if (projectedLocation == null) {
+                int ground = terrain.getGround(blockX, blockZ);
+                if (ground == HeightmapCache.NO_GROUND) {
                     return 0;
                 }
-                int safeGuard = 0;
-                while (SurfaceMaterials.ignorable(projectedLocation.getBlock().getType())) {
-                    if (projectedLocation.getBlock().getType().equals(Material.VOID_AIR)) return 0;
-                    projectedLocation.setY(projectedLocation.getY() - 1);
-                    safeGuard++;
-                    if (safeGuard > 50) {
-                        Bukkit.getLogger().warning("Busted the 50 block cap for the tree scanner!");
-                        break;
-                    }
-                }
-                switch (projectedLocation.getBlock().getType()) {
-                    case WATER:
-                    case LAVA:
-                        score -= 50 / (double) totalPointAmount;
-                }
+                if (HeightmapCache.isLiquid(ground))
+                    score -= 50 / (double) totalPointAmount;
                 if (score < 75)
                     return 0;
-                heights.add(projectedLocation.getBlockY());
+                heights.add(HeightmapCache.getGroundY(ground));
             }
         }
         return score;
     }
 
-    private static Location getHighestBlockAt(Location location) {
-        // Check if chunk is loaded to avoid sync chunk loading with FAWE
-        if (!location.getWorld().isChunkLoaded(location.getBlockX() >> 4, location.getBlockZ() >> 4)) {
-            return null;
-        }
-
-        if (!location.getWorld().getEnvironment().equals(World.Environment.NETHER))
-            return location.getWorld().getHighestBlockAt(location).getLocation();
-        else {
-            //This is middle point for the height in the Nether
-            location.setY(63);
-            //The nether has specific topology
-            if (SurfaceMaterials.ignorable(location.getBlock().getType())) {
-                //Basically air for all intents and purposes, scan down
-                for (int y = (int) location.getY(); y > 30; y--) {
-                    location.setY(y);
-                    if (validNetherSurface(location))
-                        return location;
-                }
-            } else {
-                //Solid, scan up
-                for (int y = (int) location.getY(); y < 100; y++) {
-                    location.setY(y);
-                    if (validNetherSurface(location))
-                        return location;
-                }
-            }
-            return null;
-        }
-    }
-
-    private static boolean validNetherSurface(Location location) {
-        //See if current block is solid and if the one above it is air or similar to air
-        if (!(!SurfaceMaterials.ignorable(location.getBlock().getType()) &&
-                SurfaceMaterials.ignorable(location.getBlock().getLocation().add(new Vector(0, 1, 0)).getBlock().getType())))
-            return false;
-        //Scan 10 blocks vertically to make sure they're all air
-        for (int i = 1; i < 11; i++) {
-            if (SurfaceMaterials.ignorable(location.clone().add(new Vector(0, i, 0)).getBlock().getType()))
-                continue;
-            return false;
-        }
-        return true;
-    }
-
     //Checks for extreme height differences and establishes the mesh of heights to be checked later
     private static double scanExtremeHeightDifferences(ArrayList<Integer> heights, double score) {
         //Sort to make math on points faster
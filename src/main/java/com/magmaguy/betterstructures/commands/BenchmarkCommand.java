@@ -0,0 +1,106 @@
+package com.magmaguy.betterstructures.commands;
+
+import com.magmaguy.betterstructures.util.MaterialClassTable;
+import com.magmaguy.betterstructures.util.SurfaceMaterials;
+import com.magmaguy.magmacore.command.AdvancedCommand;
+import com.magmaguy.magmacore.command.CommandData;
+import com.magmaguy.magmacore.util.Logger;
+import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.world.block.BlockType;
+import org.bukkit.Material;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Microbenchmark of the block classification hot path: the name based switch the table is built from against the
+ * precomputed {@link MaterialClassTable} lookups, for both Bukkit materials and FAWE block types.
+ */
+public class BenchmarkCommand extends AdvancedCommand {
+    private static final int WARMUP_ROUNDS = 50;
+    private static final int ROUNDS = 200;
+    // Keeps the JIT from discarding the measured loops
+    private static int sink = 0;
+
+    public BenchmarkCommand() {
+        super(List.of("benchmark"));
+        setUsage("/bs benchmark");
+        setPermission("betterstructures.*");
+        setDescription("测试方块分类查表相对旧实现的性能。");
+    }
+
+    @Override
+    public void execute(CommandData commandData) {
+        CommandSender sender = commandData.getCommandSender();
+        List<Material> materials = new ArrayList<>();
+        List<BlockType> blockTypes = new ArrayList<>();
+        for (Material material : Material.values()) {
+            if (material.isLegacy() || !material.isBlock()) continue;
+            materials.add(material);
+            BlockType blockType = BukkitAdapter.asBlockType(material);
+            if (blockType != null) blockTypes.add(blockType);
+        }
+        Material[] materialArray = materials.toArray(new Material[0]);
+        BlockType[] blockTypeArray = blockTypes.toArray(new BlockType[0]);
+
+        Logger.sendMessage(sender, "&a&l===== 方块分类基准 =====");
+        Logger.sendMessage(sender, "&7样本: " + materialArray.length + " 种材料, " + blockTypeArray.length + " 种方块类型, "
+                + ROUNDS + " 轮");
+        report(sender, "Material 可忽略判定", materialArray.length,
+                measure(() -> legacyMaterials(materialArray)), measure(() -> tableMaterials(materialArray)));
+        report(sender, "BlockType 可忽略判定" + (MaterialClassTable.isBlockTypeIndexed() ? "" : " &c(未使用 FAWE 内部 ID)"),
+                blockTypeArray.length,
+                measure(() -> legacyBlockTypes(blockTypeArray)), measure(() -> tableBlockTypes(blockTypeArray)));
+    }
+
+    private static long measure(Runnable round) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) round.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) round.run();
+        return System.nanoTime() - start;
+    }
+
+    private static void report(CommandSender sender, String name, int samples, long legacyNanos, long tableNanos) {
+        double operations = (double) samples * ROUNDS;
+        double legacyPerOperation = legacyNanos / operations;
+        double tablePerOperation = tableNanos / operations;
+        Logger.sendMessage(sender, "&6" + name + ": &f旧实现 " + format(legacyPerOperation) + " ns/次, 查表 "
+                + format(tablePerOperation) + " ns/次 &a(" + format(legacyPerOperation / Math.max(tablePerOperation, 0.001)) + " 倍)");
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static void legacyMaterials(Material[] materials) {
+        int count = 0;
+        for (Material material : materials)
+            if (SurfaceMaterials.classifyIgnorable(material)) count++;
+        sink += count;
+    }
+
+    private static void tableMaterials(Material[] materials) {
+        int count = 0;
+        for (Material material : materials)
+            if (MaterialClassTable.is(material, MaterialClassTable.IGNORABLE)) count++;
+        sink += count;
+    }
+
+    private static void legacyBlockTypes(BlockType[] blockTypes) {
+        int count = 0;
+        for (BlockType blockType : blockTypes) {
+            Material material = BukkitAdapter.adapt(blockType);
+            if (material != null && SurfaceMaterials.classifyIgnorable(material)) count++;
+        }
+        sink += count;
+    }
+
+    private static void tableBlockTypes(BlockType[] blockTypes) {
+        int count = 0;
+        for (BlockType blockType : blockTypes)
+            if (MaterialClassTable.is(blockType, MaterialClassTable.IGNORABLE)) count++;
+        sink += count;
+    }
+}
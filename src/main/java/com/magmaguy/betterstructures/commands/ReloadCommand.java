@@ -1,5 +1,6 @@
 package com.magmaguy.betterstructures.commands;
 
+import com.magmaguy.betterstructures.BetterStructures;
 import com.magmaguy.betterstructures.MetadataHandler;
 import com.magmaguy.magmacore.command.AdvancedCommand;
 import com.magmaguy.magmacore.command.CommandData;
@@ -17,6 +18,10 @@ public class ReloadCommand extends AdvancedCommand {
 
     @Override
     public void execute(CommandData commandData) {
+        if (BetterStructures.isStartupRunning()) {
+            Logger.sendMessage(commandData.getCommandSender(), "插件仍在启动中，请等待启动完成后再重载。");
+            return;
+        }
         MetadataHandler.PLUGIN.onDisable();
         MetadataHandler.PLUGIN.onLoad();
         MetadataHandler.PLUGIN.onEnable();
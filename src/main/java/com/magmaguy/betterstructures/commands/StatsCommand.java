@@ -0,0 +1,86 @@
+package com.magmaguy.betterstructures.commands;
+
+import com.magmaguy.betterstructures.buildingfitter.util.HeightmapCache;
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.betterstructures.listeners.ChunkScanScheduler;
+import com.magmaguy.betterstructures.schematics.SchematicContainer;
+import com.magmaguy.betterstructures.util.ChunkLoadRateLimiter;
+import com.magmaguy.betterstructures.util.ChunkTicketRegistry;
+import com.magmaguy.betterstructures.util.PasteAdmission;
+import com.magmaguy.betterstructures.util.StructurePasteQueue;
+import com.magmaguy.betterstructures.worldedit.ClipboardResidency;
+import com.magmaguy.betterstructures.worldedit.IncrementalPaste;
+import com.magmaguy.betterstructures.worldedit.PasteCoalescer;
+import com.magmaguy.betterstructures.worldedit.PastePlan;
+import com.magmaguy.betterstructures.worldedit.RelightScheduler;
+import com.magmaguy.magmacore.command.AdvancedCommand;
+import com.magmaguy.magmacore.command.CommandData;
+import com.magmaguy.magmacore.util.Logger;
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+import java.util.Locale;
+
+public class StatsCommand extends AdvancedCommand {
+    public StatsCommand() {
+        super(List.of("stats"));
+        setUsage("/bs stats");
+        setPermission("betterstructures.*");
+        setDescription("显示结构生成管线的运行状态。");
+    }
+
+    @Override
+    public void execute(CommandData commandData) {
+        CommandSender sender = commandData.getCommandSender();
+        Logger.sendMessage(sender, "&a&l===== 生成状态 =====");
+        Logger.sendMessage(sender, "&6待扫描区块: &f" + ChunkScanScheduler.getPendingScans()
+                + " &7(超出每刻检查上限而等待: " + ChunkScanScheduler.getScanBacklog() + ")");
+        long hits = HeightmapCache.getHits();
+        long lookups = hits + HeightmapCache.getMisses();
+        Logger.sendMessage(sender, "&6地面高度缓存: &f" + HeightmapCache.getCachedChunks() + " &7个区块, 命中 "
+                + hits + "/" + lookups + " (" + (lookups == 0 ? 0 : hits * 100 / lookups) + "%)");
+        Logger.sendMessage(sender, "&6结构粘贴队列: &f" + StructurePasteQueue.getActivePastes() + " &7个进行中, "
+                + StructurePasteQueue.getQueueSize() + " 个排队 (峰值 " + StructurePasteQueue.getPeakQueueSize() + ")");
+        Logger.sendMessage(sender, "&6粘贴等待: &f平均 " + StructurePasteQueue.getAverageWaitMillis() + "ms &7/ 最长 "
+                + StructurePasteQueue.getMaxWaitMillis() + "ms, 已开始 " + StructurePasteQueue.getStartedPastes()
+                + ", 已取消 " + StructurePasteQueue.getCancelledPastes());
+        Logger.sendMessage(sender, "&6负载控制: &f" + String.format(Locale.ROOT, "%.1f", PasteAdmission.getMspt())
+                + " MSPT &7(阈值 " + DefaultConfig.getPasteAdmissionMsptThreshold() + "), "
+                + (PasteAdmission.isServerBusy() ? "&c正在推迟昂贵的粘贴&7" : "正常放行") + ", "
+                + StructurePasteQueue.getDeferredQueueSize() + " 个推迟中, 累计推迟 " + PasteAdmission.getDeferredPastes());
+        Logger.sendMessage(sender, "&6合并粘贴: &f" + PasteCoalescer.getPendingPastes() + " &7个等待合并, 已将 "
+                + PasteCoalescer.getCoalescedPastes() + " 个结构合并为 " + PasteCoalescer.getCoalescedGroups() + " 次编辑");
+        Logger.sendMessage(sender, "&6区块加载: &f" + ChunkLoadRateLimiter.getInFlightLoads() + " &7个进行中, "
+                + ChunkLoadRateLimiter.getQueuedLoads() + " 个排队, 已发起 " + ChunkLoadRateLimiter.getDispatchedLoads()
+                + ", 已加载直接使用 " + ChunkLoadRateLimiter.getFastPathLoads());
+        Logger.sendMessage(sender, "&6区块票据: &f" + ChunkTicketRegistry.getTicketedChunks().values().stream()
+                .mapToInt(Integer::intValue).sum() + " &7个区块, " + ChunkTicketRegistry.getActiveLeases().size()
+                + " 个持有者 (详情见 /bs tickets)");
+        Logger.sendMessage(sender, "&6延迟光照: &f" + (RelightScheduler.isEnabled() ? RelightScheduler.getQueuedChunks()
+                + " &7个区块等待重算, 已重算 " + RelightScheduler.getRelitChunks() + ", 合并重复请求 "
+                + RelightScheduler.getMergedRequests() : "&7未启用"));
+        List<IncrementalPaste> incrementalPastes = IncrementalPaste.getActivePastes();
+        Logger.sendMessage(sender, "&6增量粘贴: &f" + incrementalPastes.size() + " &7个进行中");
+        for (IncrementalPaste incrementalPaste : incrementalPastes)
+            Logger.sendMessage(sender, "&7- " + incrementalPaste.getDescription() + ": " + incrementalPaste.getCompletedSlices()
+                    + "/" + incrementalPaste.getSliceCount() + " 个切片");
+        Logger.sendMessage(sender, "&6剪贴板驻留: &f" + ClipboardResidency.getResidentCount() + " &7个, 约 "
+                + ClipboardResidency.getResidentBytes() / (1024 * 1024) + " MB"
+                + (DefaultConfig.getMaxClipboardMemoryMegabytes() > 0 ? " / " + DefaultConfig.getMaxClipboardMemoryMegabytes() + " MB" : "")
+                + ", 命中 " + ClipboardResidency.getHits() + ", 解析 " + ClipboardResidency.getLoads() + " (平均 "
+                + String.format(Locale.ROOT, "%.1f", ClipboardResidency.getAverageLoadMillis()) + "ms / 最长 "
+                + String.format(Locale.ROOT, "%.1f", ClipboardResidency.getMaxLoadMillis()) + "ms), 淘汰 "
+                + ClipboardResidency.getEvictions());
+        List<SchematicContainer.CompiledPastePlan> compiledPlans = SchematicContainer.getCompiledPastePlans();
+        long pastePlanBytes = 0;
+        for (SchematicContainer.CompiledPastePlan compiledPlan : compiledPlans)
+            pastePlanBytes += compiledPlan.pastePlan().getEstimatedBytes();
+        Logger.sendMessage(sender, "&6粘贴计划: &f" + compiledPlans.size() + " &7个驻留, 约 " + pastePlanBytes / 1024 + " KB (计入剪贴板驻留)");
+        for (int i = 0; i < Math.min(compiledPlans.size(), 5); i++) {
+            PastePlan pastePlan = compiledPlans.get(i).pastePlan();
+            Logger.sendMessage(sender, "&7- " + compiledPlans.get(i).schematicContainer().getClipboardFilename() + ": " + pastePlan.getBlockCount()
+                    + " 个方块, " + pastePlan.getPedestalCount() + " 个基座, 调色板 " + pastePlan.getPaletteSize()
+                    + ", 约 " + pastePlan.getEstimatedBytes() / 1024 + " KB");
+        }
+    }
+}
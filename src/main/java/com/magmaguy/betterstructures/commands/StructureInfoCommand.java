@@ -1,5 +1,8 @@
 package com.magmaguy.betterstructures.commands;
 
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.betterstructures.schematics.PasteCost;
+import com.magmaguy.betterstructures.schematics.SchematicContainer;
 import com.magmaguy.betterstructures.structurelocation.StructureLocationData;
 import com.magmaguy.betterstructures.structurelocation.StructureLocationManager;
 import com.magmaguy.magmacore.command.AdvancedCommand;
@@ -13,6 +16,7 @@ import java.text.SimpleDateFormat;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 public class StructureInfoCommand extends AdvancedCommand {
     public StructureInfoCommand() {
@@ -64,5 +68,13 @@ public class StructureInfoCommand extends AdvancedCommand {
         Logger.sendMessage(player, "&6怪物配置数: &f" + found.getTotalMobCount());
         Logger.sendMessage(player, "&6存活怪物数: &f" + found.getAliveMobCount());
         Logger.sendMessage(player, "&6创建时间: &f" + sdf.format(new Date(found.getCreatedTimestamp())));
+
+        SchematicContainer schematicContainer = SchematicContainer.getByConfigFilename(found.schematicName());
+        if (schematicContainer == null || schematicContainer.getPasteCost() == null) return;
+        PasteCost pasteCost = schematicContainer.getPasteCost();
+        Logger.sendMessage(player, "&6粘贴成本: &f" + String.format(Locale.ROOT, "%.1f", pasteCost.getUnits())
+                + (pasteCost.isExpensive(DefaultConfig.getExpensivePasteCost()) ? " &c(昂贵，服务器卡顿时推迟)" : " &7(廉价)"));
+        Logger.sendMessage(player, "&7方块 " + pasteCost.getBlockCount() + ", 区块 " + pasteCost.getChunkCount()
+                + ", 方块实体 " + pasteCost.getBlockEntityCount() + ", 生物 " + pasteCost.getEntityCount());
     }
 }
@@ -0,0 +1,48 @@
+package com.magmaguy.betterstructures.commands;
+
+import com.magmaguy.betterstructures.util.ChunkTicketRegistry;
+import com.magmaguy.magmacore.command.AdvancedCommand;
+import com.magmaguy.magmacore.command.CommandData;
+import com.magmaguy.magmacore.util.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class TicketsCommand extends AdvancedCommand {
+    private static final int MAX_LISTED_LEASES = 10;
+
+    public TicketsCommand() {
+        super(List.of("tickets"));
+        setUsage("/bs tickets");
+        setPermission("betterstructures.*");
+        setDescription("显示插件持有的区块加载票据，用于排查区块无法卸载的问题。");
+    }
+
+    @Override
+    public void execute(CommandData commandData) {
+        CommandSender sender = commandData.getCommandSender();
+        Logger.sendMessage(sender, "&a&l===== 区块加载票据 =====");
+        Map<UUID, Integer> ticketedChunks = ChunkTicketRegistry.getTicketedChunks();
+        if (ticketedChunks.isEmpty()) Logger.sendMessage(sender, "&7当前没有持有任何区块票据。");
+        for (Map.Entry<UUID, Integer> entry : ticketedChunks.entrySet()) {
+            World world = Bukkit.getWorld(entry.getKey());
+            Logger.sendMessage(sender, "&6" + (world == null ? entry.getKey().toString() : world.getName())
+                    + ": &f" + entry.getValue() + " &7个区块");
+        }
+        List<ChunkTicketRegistry.Lease> leases = ChunkTicketRegistry.getActiveLeases();
+        Logger.sendMessage(sender, "&6持有者: &f" + leases.size() + " &7(已添加 " + ChunkTicketRegistry.getAddedTickets()
+                + ", 已移除 " + ChunkTicketRegistry.getRemovedTickets() + ", 超时释放 "
+                + ChunkTicketRegistry.getLeakedLeases() + ")");
+        for (int i = 0; i < Math.min(leases.size(), MAX_LISTED_LEASES); i++) {
+            ChunkTicketRegistry.Lease lease = leases.get(i);
+            Logger.sendMessage(sender, "&7- &f" + lease.getOwner() + " &7" + lease.getWorld().getName() + ", "
+                    + lease.getChunkCount() + " 个区块, 已持有 " + lease.getAgeMillis() / 1000 + " 秒");
+        }
+        if (leases.size() > MAX_LISTED_LEASES)
+            Logger.sendMessage(sender, "&7... 以及另外 " + (leases.size() - MAX_LISTED_LEASES) + " 个");
+    }
+}
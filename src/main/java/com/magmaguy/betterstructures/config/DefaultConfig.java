@@ -1,10 +1,13 @@
 package com.magmaguy.betterstructures.config;
 
+import com.magmaguy.betterstructures.worldedit.SectionBatches;
 import com.magmaguy.magmacore.config.ConfigurationEngine;
 import com.magmaguy.magmacore.config.ConfigurationFile;
+import com.magmaguy.magmacore.util.Logger;
 import lombok.Getter;
 
 import java.util.List;
+import java.util.Locale;
 
 public class DefaultConfig extends ConfigurationFile {
     @Getter
@@ -96,7 +99,61 @@ public class DefaultConfig extends ConfigurationFile {
     @Getter
     private static boolean terraCompatibilityMode;
     @Getter
+    private static int maxScanReadinessChecksPerTick;
+    @Getter
     private static boolean validateChunkBeforePaste;
+
+    // Fit search settings
+    @Getter
+    private static boolean fitSearchCoarseToFine;
+    @Getter
+    private static int fitSearchAnchorStride;
+    @Getter
+    private static int fitSearchCoarseTolerance;
+
+    // Chunk I/O throttling settings
+    @Getter
+    private static int maxConcurrentStructurePastes;
+    @Getter
+    private static int maxChunkLoadsPerSecond;
+    @Getter
+    private static int maxChunkLoadsInFlight;
+    @Getter
+    private static int chunkTicketLeakTimeoutSeconds;
+    @Getter
+    private static SectionBatches.Sequence pasteSectionOrder;
+    @Getter
+    private static int incrementalPasteMinBlocks;
+    @Getter
+    private static int incrementalPasteChunksPerSlice;
+    @Getter
+    private static int incrementalPasteSliceIntervalTicks;
+    @Getter
+    private static int coalesceRegionChunks;
+    @Getter
+    private static int coalesceWindowTicks;
+    @Getter
+    private static int coalesceMaxStructures;
+    @Getter
+    private static boolean deferredRelight;
+    @Getter
+    private static int relightDelayTicks;
+    @Getter
+    private static int maxRelightChunksPerTick;
+    @Getter
+    private static boolean pasteAdmission;
+    @Getter
+    private static int pasteAdmissionMsptThreshold;
+    @Getter
+    private static double expensivePasteCost;
+    @Getter
+    private static int maxPasteDeferralSeconds;
+    @Getter
+    private static boolean schematicCache;
+    @Getter
+    private static int maxClipboardMemoryMegabytes;
+    @Getter
+    private static boolean diskBackedClipboards;
     @Getter
     private static boolean developerMessages;
 
@@ -292,6 +349,13 @@ public class DefaultConfig extends ConfigurationFile {
                         "Set to 0 to disable retries."),
                 fileConfiguration, "terraCompatibility.structureScanMaxRetries", 3);
 
+        maxScanReadinessChecksPerTick = ConfigurationEngine.setInt(
+                List.of(
+                        "Maximum number of pending chunk scans checked for readiness each tick.",
+                        "Scans over this limit wait for the next tick, which spreads out chunk load storms.",
+                        "Use /bs stats to see how many scans are pending."),
+                fileConfiguration, "terraCompatibility.maxScanReadinessChecksPerTick", 32);
+
         terraCompatibilityMode = ConfigurationEngine.setBoolean(
                 List.of(
                         "Enable enhanced compatibility mode for Terra and other async world generators.",
@@ -306,6 +370,171 @@ public class DefaultConfig extends ConfigurationFile {
                         "Disable only if experiencing performance issues."),
                 fileConfiguration, "terraCompatibility.validateChunkBeforePaste", true);
 
+        // Fit search settings
+        fitSearchCoarseToFine = ConfigurationEngine.setBoolean(
+                List.of(
+                        "Search structure positions coarse to fine.",
+                        "Candidates are first scored on a coarse sample grid and dropped as soon as they can no longer",
+                        "reach the score their structure type needs, so more positions can be tried for the same cost.",
+                        "When disabled, only whole chunk offsets are tried and every candidate is fully scored."),
+                fileConfiguration, "fitSearch.coarseToFine", true);
+
+        fitSearchAnchorStride = ConfigurationEngine.setInt(
+                List.of(
+                        "Distance in blocks between the positions tried around a chunk when coarseToFine is enabled.",
+                        "16 only tries whole chunk offsets, lower values also try positions inside chunks.",
+                        "Valid range: 1-16."),
+                fileConfiguration, "fitSearch.anchorStride", 8);
+
+        fitSearchCoarseTolerance = ConfigurationEngine.setInt(
+                List.of(
+                        "How many points below the required score a candidate may estimate on the coarse sample grid",
+                        "and still be scored at full resolution. Higher values drop fewer good positions but save less.",
+                        "Set to -1 to never drop candidates on the coarse estimate alone."),
+                fileConfiguration, "fitSearch.coarseTolerance", 10);
+
+        // Chunk I/O throttling settings
+        maxConcurrentStructurePastes = ConfigurationEngine.setInt(
+                List.of(
+                        "Maximum number of structure pastes that can run concurrently.",
+                        "Each paste involves async chunk loading + FAWE block placement, further pastes wait in a queue.",
+                        "Lower values reduce disk I/O pressure on HDD servers.",
+                        "Set to 0 to disable the limit (not recommended for HDD servers)."),
+                fileConfiguration, "chunkIOThrottling.maxConcurrentStructurePastes", 2);
+
+        maxChunkLoadsPerSecond = ConfigurationEngine.setInt(
+                List.of(
+                        "Maximum number of chunk load requests the plugin can trigger per second.",
+                        "This limit is shared by all structure pastes and the pregenerator, chunks that are already loaded do not count.",
+                        "Lower values reduce disk I/O spikes but structures take longer to appear.",
+                        "When set, pregeneration only gets what pastes leave of this budget, so raise it while pregenerating.",
+                        "0 disables the limit (default), a value around 10 suits HDD servers."),
+                fileConfiguration, "chunkIOThrottling.maxChunkLoadsPerSecond", 0);
+
+        maxChunkLoadsInFlight = ConfigurationEngine.setInt(
+                List.of(
+                        "Maximum number of plugin-triggered chunk loads that may be running at the same time.",
+                        "Further loads wait until one finishes, even if the per second budget would allow them.",
+                        "Only applies while maxChunkLoadsPerSecond is set."),
+                fileConfiguration, "chunkIOThrottling.maxChunkLoadsInFlight", 4);
+
+        chunkTicketLeakTimeoutSeconds = ConfigurationEngine.setInt(
+                List.of(
+                        "Seconds after which a chunk ticket still held by a paste is considered leaked.",
+                        "Leaked tickets are reported in the console and released so the chunks can unload again.",
+                        "Set to 0 to disable leak detection."),
+                fileConfiguration, "chunkIOThrottling.chunkTicketLeakTimeoutSeconds", 600);
+
+        String pasteSectionOrderString = ConfigurationEngine.setString(
+                List.of(
+                        "Order in which a structure paste writes its blocks, grouped by 16x16x16 chunk section.",
+                        "CHUNK_COLUMNS: chunk by chunk, sections bottom to top. LAYERS: section layer by layer, bottom to top.",
+                        "NONE: schematic order without grouping, jumps between chunks on large structures."),
+                fileConfiguration, "pastePerformance.sectionOrder", SectionBatches.Sequence.CHUNK_COLUMNS.name());
+        try {
+            pasteSectionOrder = SectionBatches.Sequence.valueOf(pasteSectionOrderString.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            Logger.warn("无效的 pastePerformance.sectionOrder: " + pasteSectionOrderString + "，将使用 CHUNK_COLUMNS");
+            pasteSectionOrder = SectionBatches.Sequence.CHUNK_COLUMNS;
+        }
+
+        incrementalPasteMinBlocks = ConfigurationEngine.setInt(
+                List.of(
+                        "Structures writing at least this many blocks are pasted a few chunks at a time.",
+                        "Each slice is flushed to the world before the next one starts, which bounds paste memory",
+                        "and spreads chunk sends out instead of sending the whole structure at once.",
+                        "Set to 0 to always paste in one go."),
+                fileConfiguration, "pastePerformance.incrementalPasteMinBlocks", 200000);
+
+        incrementalPasteChunksPerSlice = ConfigurationEngine.setInt(
+                List.of(
+                        "Number of chunk columns pasted per slice of an incremental paste."),
+                fileConfiguration, "pastePerformance.incrementalPasteChunksPerSlice", 4);
+
+        incrementalPasteSliceIntervalTicks = ConfigurationEngine.setInt(
+                List.of(
+                        "Ticks to wait between two slices of an incremental paste. Higher values spread the load further",
+                        "but the structure takes longer to complete."),
+                fileConfiguration, "pastePerformance.incrementalPasteSliceIntervalTicks", 2);
+
+        coalesceRegionChunks = ConfigurationEngine.setInt(
+                List.of(
+                        "Width in chunks of the region windows used to merge nearby structure pastes.",
+                        "Generated structures whose paste location falls in the same window are written in one edit,",
+                        "loading and ticketing their chunks once. Set to 0 to paste every structure on its own."),
+                fileConfiguration, "pastePerformance.coalesceRegionChunks", 8);
+
+        coalesceWindowTicks = ConfigurationEngine.setInt(
+                List.of(
+                        "Ticks a generated structure waits for neighbours to merge with before it is queued."),
+                fileConfiguration, "pastePerformance.coalesceWindowTicks", 10);
+
+        coalesceMaxStructures = ConfigurationEngine.setInt(
+                List.of(
+                        "Maximum number of structures merged into one edit, a full group is queued right away."),
+                fileConfiguration, "pastePerformance.coalesceMaxStructures", 8);
+
+        deferredRelight = ConfigurationEngine.setBoolean(
+                List.of(
+                        "Paste structures without lighting and recalculate the light of their chunks afterwards.",
+                        "Chunks touched by several nearby structures are relit once instead of once per structure.",
+                        "Requires FastAsyncWorldEdit, ignored otherwise."),
+                fileConfiguration, "lighting.deferredRelight", true);
+
+        relightDelayTicks = ConfigurationEngine.setInt(
+                List.of(
+                        "Ticks a pasted chunk waits for other pastes nearby before its light is recalculated."),
+                fileConfiguration, "lighting.relightDelayTicks", 40);
+
+        maxRelightChunksPerTick = ConfigurationEngine.setInt(
+                List.of(
+                        "Maximum number of chunks relit in one batch. A new batch starts at most once per tick,",
+                        "after the previous one finished. Chunks closest to a player are relit first."),
+                fileConfiguration, "lighting.maxRelightChunksPerTick", 4);
+
+        pasteAdmission = ConfigurationEngine.setBoolean(
+                List.of(
+                        "Hold back expensive generated structures while the server is lagging.",
+                        "Structures found while the average tick time is above the threshold wait in a low priority",
+                        "queue until the server recovers, cheap ones are pasted right away. Command pastes are never held."),
+                fileConfiguration, "pasteAdmission.enabled", true);
+
+        pasteAdmissionMsptThreshold = ConfigurationEngine.setInt(
+                List.of(
+                        "Average milliseconds per tick above which expensive pastes are held back. 50 is a full tick."),
+                fileConfiguration, "pasteAdmission.msptThreshold", 45);
+
+        expensivePasteCost = ConfigurationEngine.setDouble(
+                List.of(
+                        "Estimated cost from which a paste counts as expensive, shown in /bs info.",
+                        "One unit is roughly one chunk load, 4096 blocks count as one unit."),
+                fileConfiguration, "pasteAdmission.expensiveCost", 64);
+
+        maxPasteDeferralSeconds = ConfigurationEngine.setInt(
+                List.of(
+                        "Seconds after which a held back paste starts even if the server is still lagging.",
+                        "Set to 0 to wait for the server to recover no matter how long it takes."),
+                fileConfiguration, "pasteAdmission.maxDeferralSeconds", 300);
+
+        schematicCache = ConfigurationEngine.setBoolean(
+                List.of(
+                        "Store what is scanned from each schematic under cache/schematics, so restarts and reloads",
+                        "only parse the schematics that changed. Unchanged schematics are parsed on their first paste."),
+                fileConfiguration, "schematicCache.enabled", true);
+
+        maxClipboardMemoryMegabytes = ConfigurationEngine.setInt(
+                List.of(
+                        "Estimated memory, in megabytes, the parsed structure and module schematics may use together.",
+                        "The least recently pasted ones are dropped beyond it and parsed again on their next paste.",
+                        "Set to 0 to keep every schematic in memory once it was parsed."),
+                fileConfiguration, "clipboardResidency.maxMemoryMegabytes", 512);
+
+        diskBackedClipboards = ConfigurationEngine.setBoolean(
+                List.of(
+                        "Keep the blocks of parsed schematics in memory-mapped files under cache/clipboards instead of",
+                        "the heap. Requires FastAsyncWorldEdit, ignored otherwise."),
+                fileConfiguration, "clipboardResidency.diskBacked", false);
+
         developerMessages = ConfigurationEngine.setBoolean(
                 List.of(
                         "Enable developer diagnostic messages in console.",
@@ -1,5 +1,6 @@
 package com.magmaguy.betterstructures.config;
 
+import com.magmaguy.betterstructures.listeners.ChunkEligibilityProfile;
 import com.magmaguy.magmacore.config.ConfigurationEngine;
 import com.magmaguy.magmacore.config.ConfigurationFile;
 import lombok.Getter;
@@ -28,6 +29,7 @@ public class ValidWorldsConfig extends ConfigurationFile {
     }
 
     public static void registerNewWorld(World world) {
+        ChunkEligibilityProfile.invalidate(world);
         if (instance.fileConfiguration.getKeys(true).contains("Valid worlds." + world.getName())) {
             validWorlds.put(world, instance.fileConfiguration.getBoolean("Valid worlds." + world.getName()));
             return;
@@ -2,10 +2,13 @@ package com.magmaguy.betterstructures.config.modules;
 
 import com.magmaguy.betterstructures.MetadataHandler;
 import com.magmaguy.betterstructures.modules.ModulesContainer;
+import com.magmaguy.betterstructures.schematics.SchematicCache;
+import com.magmaguy.betterstructures.worldedit.ClipboardResidency;
 import com.magmaguy.betterstructures.worldedit.Schematic;
 import com.magmaguy.magmacore.config.CustomConfig;
 import com.magmaguy.magmacore.util.Logger;
 import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.math.BlockVector3;
 import lombok.Getter;
 
 import java.io.File;
@@ -19,42 +22,28 @@ public class ModulesConfig extends CustomConfig {
     @Getter
     private static final HashMap<String, ModulesConfigFields> moduleConfigurations = new HashMap<>();
 
-    public ModulesConfig() {
+    /**
+     * A module file read by {@link #loadModuleFiles()}. Only the dimensions stay with the modules, the clipboards live
+     * in the ClipboardResidency.
+     */
+    public record LoadedModule(String contentKey, BlockVector3 dimensions) {
+    }
+
+    /**
+     * Registers the module configurations and containers. Main thread only, the registries are read from it.
+     *
+     * @param loadedModules Module files read by {@link #loadModuleFiles()}
+     */
+    public ModulesConfig(Map<File, LoadedModule> loadedModules) {
         super("modules", ModulesConfigFields.class);
         moduleConfigurations.clear();
 
         ModulesContainer.initializeSpecialModules();
 
-        File modulesFile = new File(MetadataHandler.PLUGIN.getDataFolder().getAbsolutePath()+ File.separatorChar + "modules");
-        if (!modulesFile.exists()) modulesFile.mkdir();
-
-        // Step 1: Collect all .schem files (fast, synchronous)
-        List<File> moduleFiles = new ArrayList<>();
-        File modulesDir = new File(MetadataHandler.PLUGIN.getDataFolder().getAbsolutePath() + File.separatorChar + "modules");
-        if (modulesDir.exists() && modulesDir.listFiles() != null) {
-            for (File file : modulesDir.listFiles()) {
-                collectSchematicFiles(file, moduleFiles);
-            }
-        }
-
-        // Step 2: Parallel loading
-        Logger.info("Loading " + moduleFiles.size() + " modules...");
-        long startTime = System.currentTimeMillis();
-
-        Map<File, Clipboard> clipboards = new ConcurrentHashMap<>();
-        moduleFiles.parallelStream().forEach(file -> {
-            Clipboard clipboard = Schematic.load(file);
-            if (clipboard != null) {
-                clipboards.put(file, clipboard);
-            }
-        });
-
-        Logger.info("Loaded " + clipboards.size() + " modules in " + (System.currentTimeMillis() - startTime) + "ms");
-
         for (String key : super.getCustomConfigFieldsHashMap().keySet())
             moduleConfigurations.put(key, (ModulesConfigFields) super.getCustomConfigFieldsHashMap().get(key));
 
-        for (File file : clipboards.keySet()) {
+        for (File file : loadedModules.keySet()) {
             String configurationName = convertFromSchematicFilename(file.getName());
             ModulesConfigFields moduleConfigField = new ModulesConfigFields(configurationName, true);
             new CustomConfig(file.getParent().replace(
@@ -65,17 +54,18 @@ public class ModulesConfig extends CustomConfig {
 
         moduleConfigurations.values().forEach(ModulesConfigFields::validateClones);
 
+        // Indexed once instead of searching every file for every configuration
+        Map<String, File> moduleFilesByName = new HashMap<>();
+        for (File file : loadedModules.keySet()) moduleFilesByName.putIfAbsent(file.getName(), file);
         for (ModulesConfigFields modulesConfigFields : moduleConfigurations.values()) {
             if (!modulesConfigFields.isEnabled()) continue;
             String schematicFilename = convertFromConfigurationFilename(modulesConfigFields.getFilename());
-            Clipboard clipboard = null;
-            for (File file : clipboards.keySet())
-                if (file.getName().equals(schematicFilename)) {
-                    clipboard = clipboards.get(file);
-                    break;
-                }
+            File schematicFile = moduleFilesByName.get(schematicFilename);
+            LoadedModule loadedModule = schematicFile == null ? null : loadedModules.get(schematicFile);
             ModulesContainer.initializeModulesContainer(
-                    clipboard,
+                    schematicFile,
+                    loadedModule == null ? null : loadedModule.contentKey(),
+                    loadedModule == null ? null : loadedModule.dimensions(),
                     schematicFilename,
                     modulesConfigFields,
                     modulesConfigFields.getFilename());
@@ -85,6 +75,42 @@ public class ModulesConfig extends CustomConfig {
 
     }
 
+    /**
+     * Parses every module file. Touches no configuration or registry, so it runs off the main thread while the
+     * configurations load.
+     */
+    public static Map<File, LoadedModule> loadModuleFiles() {
+        File modulesFile = new File(MetadataHandler.PLUGIN.getDataFolder().getAbsolutePath()+ File.separatorChar + "modules");
+        if (!modulesFile.exists()) modulesFile.mkdir();
+
+        // Step 1: Collect all .schem files (fast, synchronous)
+        List<File> moduleFiles = new ArrayList<>();
+        File modulesDir = new File(MetadataHandler.PLUGIN.getDataFolder().getAbsolutePath() + File.separatorChar + "modules");
+        if (modulesDir.exists() && modulesDir.listFiles() != null) {
+            for (File file : modulesDir.listFiles()) {
+                collectSchematicFiles(file, moduleFiles);
+            }
+        }
+
+        // Step 2: Parallel loading
+        Logger.info("Loading " + moduleFiles.size() + " modules...");
+        long startTime = System.currentTimeMillis();
+
+        Map<File, LoadedModule> loadedModules = new ConcurrentHashMap<>();
+        moduleFiles.parallelStream().forEach(file -> {
+            Clipboard clipboard = Schematic.load(file);
+            if (clipboard != null) {
+                String contentKey = SchematicCache.getKey(file);
+                if (contentKey == null) contentKey = file.getAbsolutePath();
+                ClipboardResidency.offer(contentKey, clipboard);
+                loadedModules.put(file, new LoadedModule(contentKey, clipboard.getDimensions()));
+            }
+        });
+
+        Logger.info("Loaded " + loadedModules.size() + " modules in " + (System.currentTimeMillis() - startTime) + "ms");
+        return loadedModules;
+    }
+
     private static void collectSchematicFiles(File file, List<File> schematicFiles) {
         if (file.getName().endsWith(".schem")) {
             schematicFiles.add(file);
@@ -1,7 +1,11 @@
 package com.magmaguy.betterstructures.config.schematics;
 
 import com.magmaguy.betterstructures.MetadataHandler;
+import com.magmaguy.betterstructures.buildingfitter.util.SchematicPicker;
+import com.magmaguy.betterstructures.schematics.SchematicCache;
 import com.magmaguy.betterstructures.schematics.SchematicContainer;
+import com.magmaguy.betterstructures.schematics.SchematicMetadata;
+import com.magmaguy.betterstructures.worldedit.ClipboardResidency;
 import com.magmaguy.betterstructures.worldedit.Schematic;
 import com.magmaguy.magmacore.config.CustomConfig;
 import com.magmaguy.magmacore.util.Logger;
@@ -13,13 +17,25 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class SchematicConfig extends CustomConfig {
     @Getter
     private static final HashMap<String, SchematicConfigField> schematicConfigurations = new HashMap<>();
 
-    public SchematicConfig() {
+    /**
+     * A schematic file read by {@link #loadSchematicFiles()}, with the key of its resident clipboard.
+     */
+    public record LoadedSchematic(String contentKey, SchematicMetadata metadata) {
+    }
+
+    /**
+     * Registers the schematic configurations and containers. Main thread only, the registries are read from it.
+     *
+     * @param loadedSchematics Schematic files read by {@link #loadSchematicFiles()}
+     */
+    public SchematicConfig(Map<File, LoadedSchematic> loadedSchematics) {
         super("schematics", SchematicConfigField.class);
         schematicConfigurations.clear();
 
@@ -29,6 +45,44 @@ public class SchematicConfig extends CustomConfig {
             MetadataHandler.PLUGIN.saveResource("schematics" + File.separatorChar + "ReadMe.txt", false);
         }
 
+        for (String key : super.getCustomConfigFieldsHashMap().keySet())
+            schematicConfigurations.put(key, (SchematicConfigField) super.getCustomConfigFieldsHashMap().get(key));
+
+        for (File file : loadedSchematics.keySet()) {
+            String configurationName = convertFromSchematicFilename(file.getName());
+            SchematicConfigField schematicConfigField = new SchematicConfigField(configurationName, true);
+            new CustomConfig(file.getParent().replace(
+                    MetadataHandler.PLUGIN.getDataFolder().getAbsolutePath() + File.separatorChar, ""),
+                    SchematicConfigField.class, schematicConfigField);
+            schematicConfigurations.put(configurationName, schematicConfigField);
+        }
+
+        // Step 3: Create SchematicContainer instances from the scanned metadata
+        // Indexed once instead of searching every file for every configuration
+        Map<String, File> schematicFilesByName = new HashMap<>();
+        for (File file : loadedSchematics.keySet()) schematicFilesByName.putIfAbsent(file.getName(), file);
+        for (SchematicConfigField schematicConfigField : schematicConfigurations.values()) {
+            if (!schematicConfigField.isEnabled()) continue;
+            String schematicFilename = convertFromConfigurationFilename(schematicConfigField.getFilename());
+            File schematicFile = schematicFilesByName.get(schematicFilename);
+            if (schematicFile == null) continue;
+            LoadedSchematic loadedSchematic = loadedSchematics.get(schematicFile);
+            new SchematicContainer(
+                    schematicFile,
+                    loadedSchematic.contentKey(),
+                    loadedSchematic.metadata(),
+                    schematicFilename,
+                    schematicConfigField,
+                    schematicConfigField.getFilename());
+        }
+        SchematicPicker.rebuild();
+    }
+
+    /**
+     * Reads every schematic file, unchanged ones from the schematic cache. Touches no configuration or registry, so it
+     * runs off the main thread while the configurations load.
+     */
+    public static Map<File, LoadedSchematic> loadSchematicFiles() {
         // Step 1: Collect all .schem file paths (fast, synchronous)
         List<File> schematicFiles = new ArrayList<>();
         File schematicsDir = new File(MetadataHandler.PLUGIN.getDataFolder().getAbsolutePath() + File.separatorChar + "schematics");
@@ -39,57 +93,36 @@ public class SchematicConfig extends CustomConfig {
         }
 
         // Step 2: Load all schematics in parallel
+        // Unchanged schematics come from the cache without being parsed, the others are parsed and scanned
         Logger.info("Loading " + schematicFiles.size() + " schematics...");
         long startTime = System.currentTimeMillis();
 
-        Map<File, Clipboard> clipboards = new ConcurrentHashMap<>();
+        Map<File, LoadedSchematic> loadedSchematics = new ConcurrentHashMap<>();
+        Set<String> cacheKeys = ConcurrentHashMap.newKeySet();
 
         // Use parallel stream for concurrent loading (uses ForkJoinPool)
         schematicFiles.parallelStream().forEach(file -> {
-            Clipboard clipboard = Schematic.load(file);
-            if (clipboard != null) {
-                clipboards.put(file, clipboard);
+            String cacheKey = SchematicCache.getKey(file);
+            if (cacheKey != null) cacheKeys.add(cacheKey);
+            // Identical files share one resident clipboard
+            String contentKey = cacheKey != null ? cacheKey : file.getAbsolutePath();
+            SchematicMetadata metadata = SchematicCache.load(cacheKey);
+            if (metadata != null) {
+                loadedSchematics.put(file, new LoadedSchematic(contentKey, metadata));
+                return;
             }
+            Clipboard clipboard = Schematic.load(file);
+            if (clipboard == null) return;
+            // Scanning every block is the expensive part of loading a schematic
+            metadata = SchematicMetadata.scan(clipboard, file.getName());
+            SchematicCache.store(cacheKey, metadata);
+            ClipboardResidency.offer(contentKey, clipboard);
+            loadedSchematics.put(file, new LoadedSchematic(contentKey, metadata));
         });
 
-        Logger.info("Loaded " + clipboards.size() + " schematics in " + (System.currentTimeMillis() - startTime) + "ms");
-
-        for (String key : super.getCustomConfigFieldsHashMap().keySet())
-            schematicConfigurations.put(key, (SchematicConfigField) super.getCustomConfigFieldsHashMap().get(key));
-
-        for (File file : clipboards.keySet()) {
-            String configurationName = convertFromSchematicFilename(file.getName());
-            SchematicConfigField schematicConfigField = new SchematicConfigField(configurationName, true);
-            new CustomConfig(file.getParent().replace(
-                    MetadataHandler.PLUGIN.getDataFolder().getAbsolutePath() + File.separatorChar, ""),
-                    SchematicConfigField.class, schematicConfigField);
-            schematicConfigurations.put(configurationName, schematicConfigField);
-        }
-
-        // Step 3: Create SchematicContainer instances in parallel
-        // Each container scans its clipboard (triple-nested loop) which benefits from parallelism
-        record ContainerTask(Clipboard clipboard, String schematicFilename, SchematicConfigField configField) {}
-        List<ContainerTask> containerTasks = new ArrayList<>();
-        for (SchematicConfigField schematicConfigField : schematicConfigurations.values()) {
-            if (!schematicConfigField.isEnabled()) continue;
-            String schematicFilename = convertFromConfigurationFilename(schematicConfigField.getFilename());
-            Clipboard clipboard = null;
-            for (File file : clipboards.keySet())
-                if (file.getName().equals(schematicFilename)) {
-                    clipboard = clipboards.get(file);
-                    break;
-                }
-            if (clipboard != null) {
-                containerTasks.add(new ContainerTask(clipboard, schematicFilename, schematicConfigField));
-            }
-        }
-        containerTasks.parallelStream().forEach(task ->
-                new SchematicContainer(
-                        task.clipboard(),
-                        task.schematicFilename(),
-                        task.configField(),
-                        task.configField().getFilename()));
-
+        Logger.info("Loaded " + loadedSchematics.size() + " schematics in " + (System.currentTimeMillis() - startTime) + "ms");
+        SchematicCache.finishLoad(cacheKeys);
+        return loadedSchematics;
     }
 
     /**
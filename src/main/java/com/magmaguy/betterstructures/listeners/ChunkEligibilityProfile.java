@@ -0,0 +1,147 @@
+package com.magmaguy.betterstructures.listeners;
+
+import com.magmaguy.betterstructures.buildingfitter.util.TerrainSnapshot;
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.betterstructures.config.ValidWorldsConfig;
+import com.magmaguy.betterstructures.config.generators.GeneratorConfigFields;
+import com.magmaguy.betterstructures.config.modulegenerators.ModuleGeneratorsConfig;
+import com.magmaguy.betterstructures.config.modulegenerators.ModuleGeneratorsConfigFields;
+import com.magmaguy.betterstructures.schematics.SchematicContainer;
+import com.magmaguy.betterstructures.util.StructureGrid;
+import org.bukkit.World;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Everything needed to decide, on the event thread and without allocating, whether a freshly loaded chunk could host
+ * any structure at all. Compiled once per world from {@link ValidWorldsConfig}, the loaded generators and the
+ * distance settings, and dropped whenever any of those change.
+ */
+public final class ChunkEligibilityProfile {
+    private static final GeneratorConfigFields.StructureType[] STRUCTURE_TYPES = GeneratorConfigFields.StructureType.values();
+    private static final Map<UUID, ChunkEligibilityProfile> profiles = new ConcurrentHashMap<>();
+
+    // Indexed by structure type ordinal, null when the type can never spawn in this world
+    private final StructureGrid[] grids = new StructureGrid[STRUCTURE_TYPES.length];
+    // Largest chunk radius of terrain the fitters of each type may read around a candidate chunk
+    private final int[] captureRadii = new int[STRUCTURE_TYPES.length];
+    private final boolean anyTypeEnabled;
+
+    private ChunkEligibilityProfile(World world) {
+        boolean enabled = false;
+        if (ValidWorldsConfig.isValidWorld(world))
+            for (GeneratorConfigFields.StructureType structureType : STRUCTURE_TYPES) {
+                int reach = getMaxReach(world, structureType);
+                if (reach < 0) continue;
+                int gridDistance = getGridDistance(structureType);
+                if (gridDistance <= 0) continue;
+                captureRadii[structureType.ordinal()] = structureType == GeneratorConfigFields.StructureType.DUNGEON ?
+                        0 : TerrainSnapshot.captureRadius(reach);
+                grids[structureType.ordinal()] = new StructureGrid(
+                        StructureGrid.typeSeed(world.getSeed(), structureType.name()), gridDistance, getMaxOffset(structureType));
+                enabled = true;
+            }
+        anyTypeEnabled = enabled;
+    }
+
+    public static ChunkEligibilityProfile get(World world) {
+        ChunkEligibilityProfile profile = profiles.get(world.getUID());
+        if (profile != null) return profile;
+        profile = new ChunkEligibilityProfile(world);
+        ChunkEligibilityProfile existing = profiles.putIfAbsent(world.getUID(), profile);
+        return existing != null ? existing : profile;
+    }
+
+    public static void invalidate(World world) {
+        profiles.remove(world.getUID());
+    }
+
+    public static void shutdown() {
+        profiles.clear();
+    }
+
+    public static int typeBit(GeneratorConfigFields.StructureType structureType) {
+        return 1 << structureType.ordinal();
+    }
+
+    /**
+     * Resolves which structure types have a grid anchor on the given chunk.
+     *
+     * @param chunkX Chunk X
+     * @param chunkZ Chunk Z
+     * @return Bitmask of {@link #typeBit(GeneratorConfigFields.StructureType)} values, 0 if the chunk is not a candidate
+     */
+    public int candidateTypes(int chunkX, int chunkZ) {
+        if (!anyTypeEnabled) return 0;
+        int mask = 0;
+        for (int i = 0; i < grids.length; i++)
+            if (grids[i] != null && grids[i].isAnchor(chunkX, chunkZ)) mask |= 1 << i;
+        return mask;
+    }
+
+    /**
+     * Chunk radius the terrain snapshot is allocated for, so every fitter in the mask can extend it to the schematic
+     * it picks. Only the anchor neighbourhood is captured up front.
+     *
+     * @param candidateTypes Bitmask returned by {@link #candidateTypes(int, int)}
+     * @return The radius, or 0 if none of the types score terrain from a snapshot
+     */
+    public int getCaptureRadius(int candidateTypes) {
+        int radius = 0;
+        for (int i = 0; i < captureRadii.length; i++)
+            if ((candidateTypes & (1 << i)) != 0) radius = Math.max(radius, captureRadii[i]);
+        return radius;
+    }
+
+    /**
+     * @return Furthest horizontal reach of any schematic that can spawn as this type in the world, or -1 if none can
+     */
+    private static int getMaxReach(World world, GeneratorConfigFields.StructureType structureType) {
+        switch (structureType) {
+            case UNDEFINED:
+                return -1;
+            case DUNGEON:
+                for (ModuleGeneratorsConfigFields moduleGeneratorsConfigFields : ModuleGeneratorsConfig.getModuleGenerators().values()) {
+                    if (moduleGeneratorsConfigFields.getValidWorlds() != null && !moduleGeneratorsConfigFields.getValidWorlds().isEmpty() && !moduleGeneratorsConfigFields.getValidWorlds().contains(world.getName())) continue;
+                    if (moduleGeneratorsConfigFields.getValidWorldEnvironments() != null && !moduleGeneratorsConfigFields.getValidWorldEnvironments().isEmpty() && !moduleGeneratorsConfigFields.getValidWorldEnvironments().contains(world.getEnvironment())) continue;
+                    return 0;
+                }
+                return -1;
+            default:
+                int reach = -1;
+                synchronized (SchematicContainer.getSchematics()) {
+                    for (SchematicContainer schematicContainer : SchematicContainer.getSchematics().get(structureType))
+                        if (schematicContainer.isValidWorld(world.getName()) &&
+                                schematicContainer.isValidEnvironment(world.getEnvironment()))
+                            reach = Math.max(reach, schematicContainer.getHorizontalReach());
+                }
+                return reach;
+        }
+    }
+
+    private static int getGridDistance(GeneratorConfigFields.StructureType structureType) {
+        return switch (structureType) {
+            case SURFACE -> DefaultConfig.getDistanceSurface();
+            case UNDERGROUND_SHALLOW -> DefaultConfig.getDistanceShallow();
+            case UNDERGROUND_DEEP -> DefaultConfig.getDistanceDeep();
+            case SKY -> DefaultConfig.getDistanceSky();
+            case LIQUID_SURFACE -> DefaultConfig.getDistanceLiquid();
+            case DUNGEON -> DefaultConfig.getDistanceDungeon();
+            default -> 0;
+        };
+    }
+
+    private static int getMaxOffset(GeneratorConfigFields.StructureType structureType) {
+        return switch (structureType) {
+            case SURFACE -> DefaultConfig.getMaxOffsetSurface();
+            case UNDERGROUND_SHALLOW -> DefaultConfig.getMaxOffsetShallow();
+            case UNDERGROUND_DEEP -> DefaultConfig.getMaxOffsetDeep();
+            case SKY -> DefaultConfig.getMaxOffsetSky();
+            case LIQUID_SURFACE -> DefaultConfig.getMaxOffsetLiquid();
+            case DUNGEON -> DefaultConfig.getMaxOffsetDungeon();
+            default -> 0;
+        };
+    }
+}
@@ -0,0 +1,160 @@
+package com.magmaguy.betterstructures.listeners;
+
+import com.magmaguy.betterstructures.MetadataHandler;
+import com.magmaguy.betterstructures.buildingfitter.util.TerrainContext;
+import com.magmaguy.betterstructures.buildingfitter.util.TerrainSnapshot;
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.betterstructures.util.ChunkValidationUtil;
+import com.magmaguy.betterstructures.util.DeveloperLogger;
+import com.magmaguy.betterstructures.util.TimingWheel;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Delays structure scans of newly loaded chunks until they are ready (Terra/FAWE compatibility).
+ * <p>
+ * All pending scans live in one timing wheel advanced by a single repeating task instead of one runnable per chunk.
+ * Entries only hold the world id and packed chunk coordinates, so a pending scan never keeps a chunk in memory, and
+ * retries are re-bucketed in the wheel. Readiness checks are capped per tick so chunk load storms are spread out.
+ * Main thread only.
+ */
+public final class ChunkScanScheduler {
+    private static final TimingWheel<PendingScan> wheel = new TimingWheel<>(64);
+    // Chunks with a scan in flight, so repeated load events for the same chunk only scan once
+    private static final Map<UUID, Set<Long>> pendingChunks = new HashMap<>();
+    private static BukkitTask task = null;
+
+    private ChunkScanScheduler() {
+    }
+
+    /**
+     * Queues a delayed structure scan for a chunk.
+     *
+     * @param chunk          The chunk to scan
+     * @param candidateTypes Structure types whose grid anchors this chunk, see {@link ChunkEligibilityProfile}
+     * @return False if a scan for the chunk was already pending
+     */
+    public static boolean schedule(Chunk chunk, int candidateTypes) {
+        long chunkKey = chunkKey(chunk.getX(), chunk.getZ());
+        UUID worldId = chunk.getWorld().getUID();
+        if (!pendingChunks.computeIfAbsent(worldId, k -> new HashSet<>()).add(chunkKey)) return false;
+        wheel.schedule(new PendingScan(worldId, chunkKey, candidateTypes), getDelayTicks());
+        if (task == null) task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }.runTaskTimer(MetadataHandler.PLUGIN, 1, 1);
+        return true;
+    }
+
+    /**
+     * @return Structure scans currently waiting for their chunk to become ready
+     */
+    public static int getPendingScans() {
+        return wheel.size();
+    }
+
+    /**
+     * @return Expired scans held back by the per tick readiness check cap
+     */
+    public static int getScanBacklog() {
+        return wheel.backlog();
+    }
+
+    public static void shutdown() {
+        if (task != null) task.cancel();
+        task = null;
+        wheel.clear();
+        pendingChunks.clear();
+    }
+
+    private static void tick() {
+        wheel.tick(Math.max(1, DefaultConfig.getMaxScanReadinessChecksPerTick()), ChunkScanScheduler::process);
+        if (wheel.size() == 0) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private static void process(PendingScan pendingScan) {
+        int chunkX = (int) (pendingScan.chunkKey >> 32);
+        int chunkZ = (int) pendingScan.chunkKey;
+        World world = Bukkit.getWorld(pendingScan.worldId);
+
+        // Validate chunk is still loaded
+        if (world == null || !world.isChunkLoaded(chunkX, chunkZ)) {
+            DeveloperLogger.debug("SCAN_FAILED: chunk_unloaded " + (world == null ? pendingScan.worldId : world.getName()) + " "
+                    + chunkX + "," + chunkZ + " attempt=" + pendingScan.attemptNumber);
+            release(pendingScan);
+            return;
+        }
+
+        // Validate chunk is ready for scanning (BORDER+ load level for Paper, FAWE compatibility)
+        Chunk chunk = world.getChunkAt(chunkX, chunkZ);
+        if (!ChunkValidationUtil.isChunkFullyReady(chunk)) {
+            if (pendingScan.attemptNumber < DefaultConfig.getStructureScanMaxRetries()) {
+                // Retry with same delay
+                pendingScan.attemptNumber++;
+                wheel.schedule(pendingScan, getDelayTicks());
+                return;
+            }
+            DeveloperLogger.debug("SCAN_FAILED: retries_exhausted " + world.getName() + " "
+                    + chunkX + "," + chunkZ + " attempts=" + (pendingScan.attemptNumber + 1));
+            release(pendingScan);
+            return;
+        }
+
+        // Capture the anchor neighbourhood here on the main thread, then run terrain scoring asynchronously against
+        // that snapshot so worker threads never read live world state. Fitters extend the capture to the reach of the
+        // schematic they pick. The context is shared by every type fitter that runs on this chunk.
+        int candidateTypes = pendingScan.candidateTypes;
+        int captureRadius = ChunkEligibilityProfile.get(world).getCaptureRadius(candidateTypes);
+        TerrainContext terrain = captureRadius > 0 ? new TerrainContext(TerrainSnapshot.capture(world, chunkX, chunkZ,
+                captureRadius, TerrainSnapshot.captureRadius(0))) : null;
+        Bukkit.getScheduler().runTaskAsynchronously(MetadataHandler.PLUGIN, () -> NewChunkLoadEvent.runScanners(chunk, candidateTypes, terrain));
+        release(pendingScan);
+    }
+
+    private static void release(PendingScan pendingScan) {
+        Set<Long> worldChunks = pendingChunks.get(pendingScan.worldId);
+        if (worldChunks == null) return;
+        worldChunks.remove(pendingScan.chunkKey);
+        if (worldChunks.isEmpty()) pendingChunks.remove(pendingScan.worldId);
+    }
+
+    private static int getDelayTicks() {
+        int delayTicks = DefaultConfig.getStructureScanDelayTicks();
+        // Apply longer delay if Terra compatibility mode is enabled
+        if (DefaultConfig.isTerraCompatibilityMode() && delayTicks < 40) {
+            delayTicks = 40;
+        }
+        return delayTicks;
+    }
+
+    private static long chunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    private static final class PendingScan {
+        private final UUID worldId;
+        private final long chunkKey;
+        private final int candidateTypes;
+        private int attemptNumber = 0;
+
+        private PendingScan(UUID worldId, long chunkKey, int candidateTypes) {
+            this.worldId = worldId;
+            this.chunkKey = chunkKey;
+            this.candidateTypes = candidateTypes;
+        }
+    }
+}
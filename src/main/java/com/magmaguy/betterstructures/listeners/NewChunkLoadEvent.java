@@ -6,212 +6,220 @@ import com.magmaguy.betterstructures.buildingfitter.FitLiquidBuilding;
 import com.magmaguy.betterstructures.buildingfitter.FitSurfaceBuilding;
 import com.magmaguy.betterstructures.buildingfitter.FitUndergroundShallowBuilding;
 import com.magmaguy.betterstructures.buildingfitter.util.FitUndergroundDeepBuilding;
-import com.magmaguy.betterstructures.config.DefaultConfig;
-import com.magmaguy.betterstructures.config.ValidWorldsConfig;
+import com.magmaguy.betterstructures.buildingfitter.util.HeightmapCache;
+import com.magmaguy.betterstructures.buildingfitter.util.SchematicPicker;
+import com.magmaguy.betterstructures.buildingfitter.util.TerrainContext;
 import com.magmaguy.betterstructures.config.generators.GeneratorConfigFields;
 import com.magmaguy.betterstructures.util.ChunkProcessingMarker;
-import com.magmaguy.betterstructures.util.ChunkValidationUtil;
+import com.magmaguy.betterstructures.util.ChunkTicketRegistry;
 import com.magmaguy.betterstructures.util.DeveloperLogger;
+import com.magmaguy.betterstructures.util.StructurePasteQueue;
+import com.magmaguy.betterstructures.worldedit.PasteCoalescer;
+import com.magmaguy.betterstructures.worldedit.RelightScheduler;
 import com.magmaguy.betterstructures.config.modulegenerators.ModuleGeneratorsConfig;
 import com.magmaguy.betterstructures.config.modulegenerators.ModuleGeneratorsConfigFields;
 import com.magmaguy.betterstructures.modules.WFCGenerator;
-import com.magmaguy.betterstructures.schematics.SchematicContainer;
+import com.magmaguy.magmacore.util.Logger;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
+import org.bukkit.World;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.world.ChunkLoadEvent;
-import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.UUID;
 import java.util.concurrent.ThreadLocalRandom;
 
 public class NewChunkLoadEvent implements Listener {
-
-    private static final Set<Chunk> loadingChunks = ConcurrentHashMap.newKeySet();
+    // Chunks remembered during startup, past that every loaded chunk is swept once generation is ready instead
+    private static final int MAX_PENDING_CHUNKS = 8192;
+    // Set once the startup stages loaded the generators and schematics
+    private static volatile boolean generationReady = false;
+    // Cleared if startup fails, chunk loads are then ignored until the next enable
+    private static boolean bufferingChunks = true;
+    // Chunks loaded before generation is ready, by world, looked at once it is
+    private static final Map<UUID, Set<Long>> pendingChunks = new HashMap<>();
+    private static int pendingChunkCount = 0;
+    // Set when the buffer overflowed, the loaded chunks of every world are swept instead
+    private static boolean sweepLoadedChunks = false;
 
     @EventHandler(priority = EventPriority.HIGHEST, ignoreCancelled = true)
     public void onChunkLoad(ChunkLoadEvent event) {
-        Chunk chunk = event.getChunk();
-        if (ChunkProcessingMarker.isProcessed(chunk)) {
-            DeveloperLogger.debug("SKIP_PROCESSED: " + chunk.getWorld().getName() + " " + chunk.getX() + "," + chunk.getZ());
+        if (!generationReady) {
+            if (!bufferingChunks || sweepLoadedChunks) return;
+            if (pendingChunkCount >= MAX_PENDING_CHUNKS) {
+                // Chunks still loaded once startup finished are found by the sweep, the others on their next load
+                pendingChunks.clear();
+                pendingChunkCount = 0;
+                sweepLoadedChunks = true;
+                return;
+            }
+            if (pendingChunks.computeIfAbsent(event.getWorld().getUID(), uuid -> new LinkedHashSet<>())
+                    .add(((long) event.getChunk().getX() << 32) | (event.getChunk().getZ() & 0xFFFFFFFFL)))
+                pendingChunkCount++;
             return;
         }
-        if (!loadingChunks.add(chunk)) return;
-        //In some cases the same chunk gets loaded (at least at an event level) several times, this prevents the plugin from doing multiple scans and placing multiple builds, enhancing performance
-        if (!ValidWorldsConfig.isValidWorld(event.getWorld())) {
-            loadingChunks.remove(chunk);
+        considerChunk(event.getChunk());
+    }
+
+    private static void considerChunk(Chunk chunk) {
+        // Almost no chunk sits on a structure grid anchor, so those are dropped here before reading the chunk PDC or
+        // touching the scheduler. The profile also covers the valid world and environment filters.
+        int candidateTypes = ChunkEligibilityProfile.get(chunk.getWorld()).candidateTypes(chunk.getX(), chunk.getZ());
+        if (candidateTypes == 0) return;
+        if (ChunkProcessingMarker.isProcessed(chunk)) {
+            DeveloperLogger.debug("SKIP_PROCESSED: " + chunk.getWorld().getName() + " " + chunk.getX() + "," + chunk.getZ());
             return;
         }
-
         // Schedule delayed scanning with validation (Terra/FAWE compatibility)
-        scheduleStructureScan(chunk, 0);
+        //In some cases the same chunk gets loaded (at least at an event level) several times, the scheduler only keeps one pending scan per chunk so the plugin doesn't do multiple scans and place multiple builds
+        ChunkScanScheduler.schedule(chunk, candidateTypes);
     }
 
-    /**
-     * Schedules structure scanning with delay and retry logic.
-     * This provides compatibility with Terra and other async world generators.
-     *
-     * @param chunk The chunk to scan
-     * @param attemptNumber Current attempt number (0-based)
-     */
-    private void scheduleStructureScan(Chunk chunk, int attemptNumber) {
-        int maxAttempts = DefaultConfig.getStructureScanMaxRetries();
-        int delayTicks = DefaultConfig.getStructureScanDelayTicks();
-
-        // Apply longer delay if Terra compatibility mode is enabled
-        if (DefaultConfig.isTerraCompatibilityMode() && delayTicks < 40) {
-            delayTicks = 40;
-        }
-
-        final int finalDelayTicks = delayTicks;
-
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                // Validate chunk is still loaded
-                if (!chunk.isLoaded()) {
-                    DeveloperLogger.debug("SCAN_FAILED: chunk_unloaded " + chunk.getWorld().getName() + " "
-                            + chunk.getX() + "," + chunk.getZ() + " attempt=" + attemptNumber);
-                    loadingChunks.remove(chunk);
-                    return;
-                }
-
-                // Validate chunk is ready for scanning (BORDER+ load level for Paper, FAWE compatibility)
-                if (!ChunkValidationUtil.isChunkFullyReady(chunk)) {
-                    if (attemptNumber < maxAttempts) {
-                        // Retry with same delay
-                        scheduleStructureScan(chunk, attemptNumber + 1);
-                        return;
-                    }
-                    DeveloperLogger.debug("SCAN_FAILED: retries_exhausted " + chunk.getWorld().getName() + " "
-                            + chunk.getX() + "," + chunk.getZ() + " attempts=" + (attemptNumber + 1));
-                    loadingChunks.remove(chunk);
-                    return;
-                }
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        HeightmapCache.evict(event.getWorld(), event.getChunk().getX(), event.getChunk().getZ());
+        StructurePasteQueue.onChunkUnload(event.getWorld(), event.getChunk().getX(), event.getChunk().getZ());
+    }
 
-                // Run terrain scanning asynchronously to avoid blocking the main thread.
-                // All scan operations (getBlock, getHighestBlockAt, etc.) are read-only
-                // and safe to call from async threads on Paper servers.
-                Bukkit.getScheduler().runTaskAsynchronously(MetadataHandler.PLUGIN, () -> runScanners(chunk));
-                loadingChunks.remove(chunk);
-            }
-        }.runTaskLater(MetadataHandler.PLUGIN, finalDelayTicks);
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        Set<Long> worldPendingChunks = pendingChunks.remove(event.getWorld().getUID());
+        if (worldPendingChunks != null) pendingChunkCount -= worldPendingChunks.size();
+        HeightmapCache.evictWorld(event.getWorld());
+        SchematicPicker.evictWorld(event.getWorld());
+        PasteCoalescer.onWorldUnload(event.getWorld());
+        StructurePasteQueue.onWorldUnload(event.getWorld());
+        RelightScheduler.onWorldUnload(event.getWorld());
+        ChunkTicketRegistry.onWorldUnload(event.getWorld());
     }
 
     /**
      * Runs all structure scanners on a chunk.
      *
      * @param chunk The chunk to scan for structure placement
+     * @param candidateTypes Structure types whose grid anchors this chunk
+     * @param terrain Terrain around the chunk captured on the main thread, the only world data the fitters read. Shared
+     *                by every fitter so positions read by one type are not decoded again by the next
      */
-    private void runScanners(Chunk chunk) {
-        surfaceScanner(chunk);
-        shallowUndergroundScanner(chunk);
-        deepUndergroundScanner(chunk);
-        skyScanner(chunk);
-        liquidSurfaceScanner(chunk);
+    static void runScanners(Chunk chunk, int candidateTypes, TerrainContext terrain) {
+        surfaceScanner(chunk, candidateTypes, terrain);
+        shallowUndergroundScanner(chunk, candidateTypes, terrain);
+        deepUndergroundScanner(chunk, candidateTypes, terrain);
+        skyScanner(chunk, candidateTypes, terrain);
+        liquidSurfaceScanner(chunk, candidateTypes, terrain);
         // WFCGenerator constructor is not async-safe (BossBar creation, non-thread-safe HashSet),
         // so dungeonScanner must run on the main thread
-        Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> dungeonScanner(chunk));
+        if (isCandidate(candidateTypes, GeneratorConfigFields.StructureType.DUNGEON))
+            Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> dungeonScanner(chunk));
     }
 
-    /**
-     * Determines if the given chunk is a valid structure position based on
-     * a diamond grid pattern with seeded random offsets.
-     *
-     * @param chunk The chunk to check
-     * @param structureType The type of structure
-     * @param gridDistance The distance between grid points
-     * @param maxOffset The maximum random offset from grid points
-     * @return True if this chunk should have a structure
-     */
-    private boolean isValidStructurePosition(Chunk chunk, GeneratorConfigFields.StructureType structureType,
-                                             int gridDistance, int maxOffset) {
-        int x = chunk.getX();
-        int z = chunk.getZ();
-        long worldSeed = chunk.getWorld().getSeed();
-
-        // Create a unique seed for each structure type
-        long typeSeed = worldSeed + structureType.name().hashCode() * 7919; // Use a prime number for better distribution
-
-        // Check all nearby grid cells that could have a structure landing on this chunk
-        for (int gridX = (x - maxOffset) / gridDistance - 1; gridX <= (x + maxOffset) / gridDistance + 1; gridX++) {
-            for (int gridZ = (z - maxOffset) / gridDistance - 1; gridZ <= (z + maxOffset) / gridDistance + 1; gridZ++) {
-                // Base position of this grid cell
-                int baseX = gridX * gridDistance;
-                int baseZ = gridZ * gridDistance;
-
-                // Apply diamond pattern offset (shift every other row by gridDistance/2)
-                if (gridZ % 2 != 0) {
-                    baseX += gridDistance / 2;
-                }
-
-                // Create a seeded random for this specific grid cell
-                Random cellRandom = new Random(typeSeed ^ (((long)baseX << 32) | (baseZ & 0xFFFFFFFFL)));
-
-                // Generate the random offset for structure in this grid cell
-                int offsetX = maxOffset > 0 ? cellRandom.nextInt(maxOffset * 2 + 1) - maxOffset : 0;
-                int offsetZ = maxOffset > 0 ? cellRandom.nextInt(maxOffset * 2 + 1) - maxOffset : 0;
+    private static boolean isCandidate(int candidateTypes, GeneratorConfigFields.StructureType structureType) {
+        return (candidateTypes & ChunkEligibilityProfile.typeBit(structureType)) != 0;
+    }
 
-                // Final structure position for this grid cell
-                int structureX = baseX + offsetX;
-                int structureZ = baseZ + offsetZ;
+    public static boolean isGenerationReady() {
+        return generationReady;
+    }
 
-                // If this chunk matches the structure position
-                if (x == structureX && z == structureZ) {
-                    return true;
+    /**
+     * Lets chunk loads through to the scanners and scans the chunks loaded during startup that are still loaded. The
+     * unloaded ones are looked at the next time they load. Main thread only.
+     */
+    public static void markGenerationReady() {
+        generationReady = true;
+        if (sweepLoadedChunks) {
+            int resumed = 0;
+            for (World world : Bukkit.getWorlds())
+                for (Chunk chunk : world.getLoadedChunks()) {
+                    considerChunk(chunk);
+                    resumed++;
                 }
+            clearPendingChunks();
+            Logger.info("启动期间加载的区块超过 " + MAX_PENDING_CHUNKS + " 个，已重新检查当前加载的 " + resumed + " 个区块");
+            return;
+        }
+        int pending = 0;
+        int resumed = 0;
+        for (Map.Entry<UUID, Set<Long>> entry : pendingChunks.entrySet()) {
+            World world = Bukkit.getWorld(entry.getKey());
+            if (world == null) continue;
+            for (long chunkKey : entry.getValue()) {
+                pending++;
+                int chunkX = (int) (chunkKey >> 32);
+                int chunkZ = (int) chunkKey;
+                if (!world.isChunkLoaded(chunkX, chunkZ)) continue;
+                considerChunk(world.getChunkAt(chunkX, chunkZ));
+                resumed++;
             }
         }
+        clearPendingChunks();
+        if (pending > 0) Logger.info("启动期间加载了 " + pending + " 个区块，其中 " + resumed + " 个仍在加载中，已加入扫描");
+    }
+
+    /**
+     * Drops the chunks queued during a startup that failed and stops queueing, generation stays closed until the next
+     * enable. Main thread only.
+     */
+    public static void abandonPendingChunks() {
+        bufferingChunks = false;
+        clearPendingChunks();
+    }
+
+    private static void clearPendingChunks() {
+        pendingChunks.clear();
+        pendingChunkCount = 0;
+        sweepLoadedChunks = false;
+    }
 
-        return false;
+    /**
+     * Drops pending scans, cached ground heights and the compiled eligibility profiles so they get rebuilt from the
+     * current configuration. Generation stays closed until startup marks it ready again.
+     */
+    public static void shutdown() {
+        generationReady = false;
+        bufferingChunks = true;
+        clearPendingChunks();
+        ChunkScanScheduler.shutdown();
+        ChunkEligibilityProfile.shutdown();
+        HeightmapCache.shutdown();
     }
 
-    private void surfaceScanner(Chunk chunk) {
-        if (SchematicContainer.getSchematics().get(GeneratorConfigFields.StructureType.SURFACE).isEmpty()) return;
-        // Get config values directly instead of using static finals
-        if (!isValidStructurePosition(chunk, GeneratorConfigFields.StructureType.SURFACE,
-                DefaultConfig.getDistanceSurface(), DefaultConfig.getMaxOffsetSurface())) return;
-        new FitSurfaceBuilding(chunk);
+    private static void surfaceScanner(Chunk chunk, int candidateTypes, TerrainContext terrain) {
+        if (!isCandidate(candidateTypes, GeneratorConfigFields.StructureType.SURFACE)) return;
+        new FitSurfaceBuilding(chunk, terrain);
     }
 
-    private void shallowUndergroundScanner(Chunk chunk) {
-        if (SchematicContainer.getSchematics().get(GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW).isEmpty()) return;
-        if (!isValidStructurePosition(chunk, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW,
-                DefaultConfig.getDistanceShallow(), DefaultConfig.getMaxOffsetShallow())) return;
-        FitUndergroundShallowBuilding.fit(chunk);
+    private static void shallowUndergroundScanner(Chunk chunk, int candidateTypes, TerrainContext terrain) {
+        if (!isCandidate(candidateTypes, GeneratorConfigFields.StructureType.UNDERGROUND_SHALLOW)) return;
+        FitUndergroundShallowBuilding.fit(chunk, terrain);
     }
 
-    private void deepUndergroundScanner(Chunk chunk) {
-        if (SchematicContainer.getSchematics().get(GeneratorConfigFields.StructureType.UNDERGROUND_DEEP).isEmpty()) return;
-        if (!isValidStructurePosition(chunk, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP,
-                DefaultConfig.getDistanceDeep(), DefaultConfig.getMaxOffsetDeep())) return;
-        FitUndergroundDeepBuilding.fit(chunk);
+    private static void deepUndergroundScanner(Chunk chunk, int candidateTypes, TerrainContext terrain) {
+        if (!isCandidate(candidateTypes, GeneratorConfigFields.StructureType.UNDERGROUND_DEEP)) return;
+        FitUndergroundDeepBuilding.fit(chunk, terrain);
     }
 
-    private void skyScanner(Chunk chunk) {
-        if (SchematicContainer.getSchematics().get(GeneratorConfigFields.StructureType.SKY).isEmpty()) return;
-        if (!isValidStructurePosition(chunk, GeneratorConfigFields.StructureType.SKY,
-                DefaultConfig.getDistanceSky(), DefaultConfig.getMaxOffsetSky())) return;
-        new FitAirBuilding(chunk);
+    private static void skyScanner(Chunk chunk, int candidateTypes, TerrainContext terrain) {
+        if (!isCandidate(candidateTypes, GeneratorConfigFields.StructureType.SKY)) return;
+        new FitAirBuilding(chunk, terrain);
     }
 
-    private void liquidSurfaceScanner(Chunk chunk) {
-        if (SchematicContainer.getSchematics().get(GeneratorConfigFields.StructureType.LIQUID_SURFACE).isEmpty()) return;
-        if (!isValidStructurePosition(chunk, GeneratorConfigFields.StructureType.LIQUID_SURFACE,
-                DefaultConfig.getDistanceLiquid(), DefaultConfig.getMaxOffsetLiquid())) return;
-        new FitLiquidBuilding(chunk);
+    private static void liquidSurfaceScanner(Chunk chunk, int candidateTypes, TerrainContext terrain) {
+        if (!isCandidate(candidateTypes, GeneratorConfigFields.StructureType.LIQUID_SURFACE)) return;
+        new FitLiquidBuilding(chunk, terrain);
     }
 
-    private void dungeonScanner(Chunk chunk) {
-        if (ModuleGeneratorsConfig.getModuleGenerators().isEmpty()) return;
-        if (!isValidStructurePosition(chunk, GeneratorConfigFields.StructureType.DUNGEON,
-                DefaultConfig.getDistanceDungeon(), DefaultConfig.getMaxOffsetDungeon())) return;
+    private static void dungeonScanner(Chunk chunk) {
         List<ModuleGeneratorsConfigFields> validatedGenerators = new ArrayList<>();
         for (ModuleGeneratorsConfigFields moduleGeneratorsConfigFields : ModuleGeneratorsConfig.getModuleGenerators().values()){
             if (moduleGeneratorsConfigFields.getValidWorlds() != null && !moduleGeneratorsConfigFields.getValidWorlds().isEmpty() && !moduleGeneratorsConfigFields.getValidWorlds().contains(chunk.getWorld().getName())) continue;
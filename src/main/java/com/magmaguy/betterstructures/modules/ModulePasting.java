@@ -9,7 +9,9 @@ import com.magmaguy.betterstructures.config.generators.GeneratorConfigFields;
 import com.magmaguy.betterstructures.config.treasures.TreasureConfig;
 import com.magmaguy.betterstructures.config.treasures.TreasureConfigFields;
 import com.magmaguy.betterstructures.structurelocation.StructureLocationManager;
+import com.magmaguy.betterstructures.util.StructurePasteQueue;
 import com.magmaguy.betterstructures.util.WorldEditUtils;
+import com.magmaguy.betterstructures.worldedit.ClipboardResidency;
 import com.magmaguy.magmacore.util.Logger;
 import com.magmaguy.magmacore.util.SpigotMessage;
 import com.sk89q.worldedit.EditSession;
@@ -286,12 +288,16 @@ public final class ModulePasting {
 
         // Collect entity paste info while processing blocks
         List<EntityPasteInfo> entityPasteInfos = new ArrayList<>();
+        // Entity paste info can point into the module clipboards, they stay leased until the entities are pasted
+        List<ClipboardResidency.Lease> clipboardLeases = new ArrayList<>();
 
         while (!WFCNodeDeque.isEmpty()) {
             WFCNode WFCNode = WFCNodeDeque.poll();
             if (WFCNode == null || WFCNode.getModulesContainer() == null) continue;
-            Clipboard clipboard = WFCNode.getModulesContainer().getClipboard();
-            if (clipboard == null) continue;
+            ClipboardResidency.Lease lease = WFCNode.getModulesContainer().acquireClipboard();
+            if (lease == null) continue;
+            clipboardLeases.add(lease);
+            Clipboard clipboard = lease.getClipboard();
 
             // Process blocks
             pasteableList.addAll(generatePasteMeList(clipboard, WFCNode.getRealLocation(startLocation),
@@ -313,65 +319,82 @@ public final class ModulePasting {
         final List<BedrockCandidate> finalBedrockCandidates = bedrockCandidates;
         final List<NbtPlacement> finalNbtToPlace = nbtToPlace;
 
-        Bukkit.getScheduler().runTaskAsynchronously(MetadataHandler.PLUGIN, () -> {
-            try {
-                com.sk89q.worldedit.world.World adaptedWorld = BukkitAdapter.adapt(world);
-
-                try (EditSession editSession = WorldEdit.getInstance().newEditSession(adaptedWorld)) {
-                    editSession.setTrackingHistory(false);
-                    editSession.setSideEffectApplier(SideEffectSet.none());
-
-                    // Place normal blocks via BaseBlock (carries any block state data)
-                    for (Pasteable pasteable : finalPasteableList) {
-                        BlockVector3 pos = BlockVector3.at(
-                                pasteable.location.getBlockX(),
-                                pasteable.location.getBlockY(),
-                                pasteable.location.getBlockZ());
-                        try {
-                            editSession.setBlock(pos, pasteable.baseBlock);
-                        } catch (WorldEditException e) {
-                            Logger.warn("设置方块失败 " + pasteable.location + ": " + e.getMessage());
-                        }
-                    }
+        String locationDesc = startLocation.getBlockX() + "," + startLocation.getBlockY() + "," + startLocation.getBlockZ();
+        // The dungeon counts as one structure paste, it waits for a free slot like any other
+        StructurePasteQueue.enqueue(world, null, StructurePasteQueue.Priority.NORMAL, locationDesc, new StructurePasteQueue.PasteJob() {
+            @Override
+            public void start(Runnable release) {
+                Bukkit.getScheduler().runTaskAsynchronously(MetadataHandler.PLUGIN, () -> {
+                    try {
+                        com.sk89q.worldedit.world.World adaptedWorld = BukkitAdapter.adapt(world);
+
+                        try (EditSession editSession = WorldEdit.getInstance().newEditSession(adaptedWorld)) {
+                            editSession.setTrackingHistory(false);
+                            editSession.setSideEffectApplier(SideEffectSet.none());
+
+                            // Place normal blocks via BaseBlock (carries any block state data)
+                            for (Pasteable pasteable : finalPasteableList) {
+                                BlockVector3 pos = BlockVector3.at(
+                                        pasteable.location.getBlockX(),
+                                        pasteable.location.getBlockY(),
+                                        pasteable.location.getBlockZ());
+                                try {
+                                    editSession.setBlock(pos, pasteable.baseBlock);
+                                } catch (WorldEditException e) {
+                                    Logger.warn("设置方块失败 " + pasteable.location + ": " + e.getMessage());
+                                }
+                            }
 
-                    // Place NBT-rich blocks (spawners, dispensers, etc.) via BaseBlock which carries NBT
-                    for (NbtPlacement np : finalNbtToPlace) {
-                        BlockVector3 pos = BlockVector3.at(
-                                np.location().getBlockX(),
-                                np.location().getBlockY(),
-                                np.location().getBlockZ());
-                        try {
-                            editSession.setBlock(pos, np.baseBlock());
-                        } catch (WorldEditException e) {
-                            Logger.warn("设置NBT方块失败 " + np.location() + ": " + e.getMessage());
-                        }
-                    }
+                            // Place NBT-rich blocks (spawners, dispensers, etc.) via BaseBlock which carries NBT
+                            for (NbtPlacement np : finalNbtToPlace) {
+                                BlockVector3 pos = BlockVector3.at(
+                                        np.location().getBlockX(),
+                                        np.location().getBlockY(),
+                                        np.location().getBlockZ());
+                                try {
+                                    editSession.setBlock(pos, np.baseBlock());
+                                } catch (WorldEditException e) {
+                                    Logger.warn("设置NBT方块失败 " + np.location() + ": " + e.getMessage());
+                                }
+                            }
 
-                    // Handle bedrock candidates: check solidity async via FAWE, replace non-solid with stone
-                    for (BedrockCandidate bc : finalBedrockCandidates) {
-                        BlockVector3 pos = BlockVector3.at(
-                                bc.location().getBlockX(),
-                                bc.location().getBlockY(),
-                                bc.location().getBlockZ());
-                        try {
-                            if (!editSession.getBlock(pos).getBlockType().getMaterial().isSolid()) {
-                                editSession.setBlock(pos, BukkitAdapter.adapt(Material.STONE.createBlockData()));
+                            // Handle bedrock candidates: check solidity async via FAWE, replace non-solid with stone
+                            for (BedrockCandidate bc : finalBedrockCandidates) {
+                                BlockVector3 pos = BlockVector3.at(
+                                        bc.location().getBlockX(),
+                                        bc.location().getBlockY(),
+                                        bc.location().getBlockZ());
+                                try {
+                                    if (!editSession.getBlock(pos).getBlockType().getMaterial().isSolid()) {
+                                        editSession.setBlock(pos, BukkitAdapter.adapt(Material.STONE.createBlockData()));
+                                    }
+                                } catch (WorldEditException e) {
+                                    Logger.warn("处理bedrock候选方块失败 " + bc.location() + ": " + e.getMessage());
+                                }
                             }
-                        } catch (WorldEditException e) {
-                            Logger.warn("处理bedrock候选方块失败 " + bc.location() + ": " + e.getMessage());
-                        }
+                        } // EditSession auto-closes and flushes
+
+                    } catch (Exception e) {
+                        Logger.warn("FAWE 异步地牢粘贴失败: " + e.getMessage());
+                        e.printStackTrace();
                     }
-                } // EditSession auto-closes and flushes
 
-            } catch (Exception e) {
-                Logger.warn("FAWE 异步地牢粘贴失败: " + e.getMessage());
-                e.printStackTrace();
+                    // Back to main thread for post-paste processing (entities, chests, etc.)
+                    Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> {
+                        try {
+                            postPasteProcessing(entityPasteInfos);
+                        } finally {
+                            clipboardLeases.forEach(ClipboardResidency.Lease::release);
+                            release.run();
+                        }
+                    });
+                });
             }
 
-            // Back to main thread for post-paste processing (entities, chests, etc.)
-            Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> {
-                postPasteProcessing(entityPasteInfos);
-            });
+            @Override
+            public void cancel(String reason) {
+                clipboardLeases.forEach(ClipboardResidency.Lease::release);
+            }
         });
 
         return new ArrayList<>();
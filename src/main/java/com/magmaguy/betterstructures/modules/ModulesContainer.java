@@ -2,11 +2,13 @@ package com.magmaguy.betterstructures.modules;
 
 import com.magmaguy.betterstructures.config.modules.ModulesConfigFields;
 import com.magmaguy.betterstructures.util.WeighedProbability;
+import com.magmaguy.betterstructures.worldedit.ClipboardResidency;
 import com.magmaguy.magmacore.util.Logger;
-import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.math.BlockVector3;
 import lombok.Getter;
 import org.joml.Vector3i;
 
+import java.io.File;
 import java.util.*;
 
 public class ModulesContainer {
@@ -14,8 +16,13 @@ public class ModulesContainer {
     @Getter
     private static final HashMap<String, ModulesContainer> modulesContainers = new HashMap<>();
     private static final List<Integer> validRotations = Arrays.asList(0, 90, 180, 270);
+    // Null for the nothing module and modules without a schematic
+    private final File schematicFile;
+    // Content hash of the schematic file, shared by the four rotations of a module
+    private final String contentKey;
+    // Null without a schematic
     @Getter
-    private final Clipboard clipboard;
+    private final BlockVector3 dimensions;
     @Getter
     private final String clipboardFilename;
     private final String configFilename;
@@ -33,8 +40,10 @@ public class ModulesContainer {
     private static final String WORLD_BORDER = "world_border";
     public static ModulesContainer nothingContainer;
 
-    public ModulesContainer(Clipboard clipboard, String clipboardFilename, ModulesConfigFields modulesConfigField, String configFilename, int rotation) {
-        this.clipboard = clipboard;
+    public ModulesContainer(File schematicFile, String contentKey, BlockVector3 dimensions, String clipboardFilename, ModulesConfigFields modulesConfigField, String configFilename, int rotation) {
+        this.schematicFile = schematicFile;
+        this.contentKey = contentKey;
+        this.dimensions = dimensions;
         this.clipboardFilename = clipboardFilename;
         this.modulesConfigField = modulesConfigField;
         this.configFilename = configFilename;
@@ -48,8 +57,17 @@ public class ModulesContainer {
         }
     }
 
-    public static void initializeModulesContainer(Clipboard clipboard, String clipboardFilename, ModulesConfigFields modulesConfigField, String configFilename) {
-        validRotations.forEach(rotation -> new ModulesContainer(clipboard, clipboardFilename, modulesConfigField, configFilename, rotation));
+    public static void initializeModulesContainer(File schematicFile, String contentKey, BlockVector3 dimensions, String clipboardFilename, ModulesConfigFields modulesConfigField, String configFilename) {
+        validRotations.forEach(rotation -> new ModulesContainer(schematicFile, contentKey, dimensions, clipboardFilename, modulesConfigField, configFilename, rotation));
+    }
+
+    /**
+     * @return A lease on the clipboard from the {@link ClipboardResidency}, parsed again if it was evicted, null without
+     * a schematic. Release it once done with the clipboard
+     */
+    public ClipboardResidency.Lease acquireClipboard() {
+        if (schematicFile == null) return null;
+        return ClipboardResidency.acquire(contentKey, schematicFile);
     }
 
     public static void postInitializeModulesContainer() {
@@ -93,7 +111,7 @@ public class ModulesContainer {
 
     public static void initializeSpecialModules() {
         //Initialize "nothing", a reserved name with special behavior
-        nothingContainer = new ModulesContainer(null, "nothing", new ModulesConfigFields("nothing", true), null, 0);
+        nothingContainer = new ModulesContainer(null, null, null, "nothing", new ModulesConfigFields("nothing", true), null, 0);
         nothingContainer.borderTags = new BorderTags(Map.of(
                 Direction.NORTH, Collections.singletonList(new NeighborTag("nothing")),
                 Direction.SOUTH, Collections.singletonList(new NeighborTag("nothing")),
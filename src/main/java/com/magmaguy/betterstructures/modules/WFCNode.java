@@ -1,6 +1,7 @@
 package com.magmaguy.betterstructures.modules;
 
 import com.magmaguy.betterstructures.MetadataHandler;
+import com.magmaguy.betterstructures.worldedit.ClipboardResidency;
 import com.magmaguy.magmacore.util.Logger;
 import lombok.Getter;
 import org.bukkit.*;
@@ -184,8 +185,8 @@ public class WFCNode {
 
     private Location getLocalCenterLocation() {
         double y = lattice.getNodeSizeY() / 2d;
-        if (modulesContainer != null && modulesContainer.getClipboard() != null)
-            y = modulesContainer.getClipboard().getDimensions().y() / 2d;
+        if (modulesContainer != null && modulesContainer.getDimensions() != null)
+            y = modulesContainer.getDimensions().y() / 2d;
         Vector3i worldPos = lattice.latticeToWorld(nodePosition).add((int) (lattice.getNodeSizeXZ() / 2d), (int) y, (int) (lattice.getNodeSizeXZ() / 2d));
         return new Location(world, worldPos.x, worldPos.y, worldPos.z);
     }
@@ -347,7 +348,13 @@ public class WFCNode {
                     return;
                 }
 
-                ModulePasting.paste(modulesContainer.getClipboard(), startLocation, modulesContainer.getRotation());
+                ClipboardResidency.Lease lease = modulesContainer.acquireClipboard();
+                if (lease == null) return;
+                try {
+                    ModulePasting.paste(lease.getClipboard(), startLocation, modulesContainer.getRotation());
+                } finally {
+                    lease.release();
+                }
             }
         }.runTaskLater(MetadataHandler.PLUGIN, 1L);
     }
@@ -0,0 +1,60 @@
+package com.magmaguy.betterstructures.schematics;
+
+/**
+ * Estimated cost of pasting a schematic, computed once when the schematic is loaded.
+ * <p>
+ * Combines the block writes done on the FAWE threads with the chunk loads and sends of the paste and the block
+ * entities and mobs set up on the main thread afterwards. One cost unit is roughly the work of loading and sending a
+ * chunk, so the units of different schematics can be compared directly.
+ */
+public final class PasteCost {
+    // One full chunk section of block writes weighs about as much as a chunk load
+    private static final double BLOCKS_PER_UNIT = 4096;
+    private static final double UNITS_PER_CHUNK = 1;
+    // Chests are filled and signs parsed on the main thread
+    private static final double UNITS_PER_BLOCK_ENTITY = 0.25;
+    // Mobs spawned from the schematic signs
+    private static final double UNITS_PER_ENTITY = 0.5;
+
+    private final int blockCount;
+    private final int chunkCount;
+    private final int blockEntityCount;
+    private final int entityCount;
+    private final double units;
+
+    public PasteCost(int blockCount, int chunkCount, int blockEntityCount, int entityCount) {
+        this.blockCount = blockCount;
+        this.chunkCount = chunkCount;
+        this.blockEntityCount = blockEntityCount;
+        this.entityCount = entityCount;
+        this.units = blockCount / BLOCKS_PER_UNIT + chunkCount * UNITS_PER_CHUNK
+                + blockEntityCount * UNITS_PER_BLOCK_ENTITY + entityCount * UNITS_PER_ENTITY;
+    }
+
+    /**
+     * @param expensiveUnits Cost from which a paste counts as expensive, 0 or less for never
+     */
+    public boolean isExpensive(double expensiveUnits) {
+        return expensiveUnits > 0 && units >= expensiveUnits;
+    }
+
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    public int getBlockEntityCount() {
+        return blockEntityCount;
+    }
+
+    public int getEntityCount() {
+        return entityCount;
+    }
+
+    public double getUnits() {
+        return units;
+    }
+}
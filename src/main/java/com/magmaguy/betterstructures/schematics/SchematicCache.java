@@ -0,0 +1,152 @@
+package com.magmaguy.betterstructures.schematics;
+
+import com.magmaguy.betterstructures.MetadataHandler;
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.betterstructures.util.DeveloperLogger;
+import com.magmaguy.magmacore.util.Logger;
+import org.bukkit.Bukkit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores the {@link SchematicMetadata} of every schematic under {@code cache/schematics} in the plugin folder.
+ * <p>
+ * Entries are named after a SHA-256 of the schematic file's bytes, the plugin version, the server version and
+ * {@link #FORMAT_VERSION}. Editing a schematic, updating the plugin or the server, or changing the entry layout all
+ * lead to a new name, so an entry is never stale, only unused. Unused entries are pruned after each load. Entries
+ * that fail to read are treated as misses and overwritten. Safe to call from the schematic loading threads.
+ */
+public final class SchematicCache {
+    // Bump whenever SchematicMetadata, SampleLattice or PasteFootprint change what they write
+    private static final int FORMAT_VERSION = 3;
+    // "BSMC"
+    private static final int MAGIC = 0x42534D43;
+    private static final String EXTENSION = ".bin";
+    // Metrics of the last load
+    private static final AtomicInteger hits = new AtomicInteger();
+    private static final AtomicInteger misses = new AtomicInteger();
+
+    private SchematicCache() {
+    }
+
+    private static File getDirectory() {
+        return new File(MetadataHandler.PLUGIN.getDataFolder(), "cache" + File.separatorChar + "schematics");
+    }
+
+    /**
+     * @return Name of the cache entry for the schematic, null if the file can't be read
+     */
+    public static String getKey(File schematicFile) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(schematicFile.toPath()))) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) digest.update(buffer, 0, read);
+            }
+            digest.update((MetadataHandler.PLUGIN.getDescription().getVersion() + "|" + Bukkit.getBukkitVersion()
+                    + "|" + FORMAT_VERSION).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | NoSuchAlgorithmException exception) {
+            DeveloperLogger.debug("Could not hash " + schematicFile.getName() + ": " + exception.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param key Entry name from {@link #getKey(File)}
+     * @return The cached metadata, null on a miss
+     */
+    public static SchematicMetadata load(String key) {
+        if (!DefaultConfig.isSchematicCache() || key == null) return null;
+        File entry = new File(getDirectory(), key + EXTENSION);
+        if (!entry.isFile()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry.toPath())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+                throw new IOException("Unknown cache entry format");
+            SchematicMetadata metadata = SchematicMetadata.read(in);
+            hits.incrementAndGet();
+            return metadata;
+        } catch (IOException | RuntimeException exception) {
+            DeveloperLogger.debug("Discarding schematic cache entry " + entry.getName() + ": " + exception.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the entry to a temporary file first, so an interrupted write never leaves a truncated entry behind.
+     *
+     * @param key Entry name from {@link #getKey(File)}
+     */
+    public static void store(String key, SchematicMetadata metadata) {
+        if (!DefaultConfig.isSchematicCache() || key == null) return;
+        File directory = getDirectory();
+        if (!directory.isDirectory() && !directory.mkdirs()) return;
+        Path target = new File(directory, key + EXTENSION).toPath();
+        Path temporary = new File(directory, key + ".tmp").toPath();
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(temporary);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                metadata.write(out);
+            }
+            try {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException exception) {
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException exception) {
+            Logger.warn("写入建筑模板缓存失败: " + exception.getMessage());
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Deletes every entry not used by the load that just finished and logs its hit rate.
+     *
+     * @param usedKeys Entry names of the schematics that were loaded
+     */
+    public static void finishLoad(Set<String> usedKeys) {
+        int hitCount = hits.getAndSet(0);
+        int missCount = misses.getAndSet(0);
+        if (!DefaultConfig.isSchematicCache()) return;
+        File[] entries = getDirectory().listFiles();
+        int pruned = 0;
+        if (entries != null)
+            for (File entry : entries) {
+                String name = entry.getName();
+                String key = name.endsWith(EXTENSION) ? name.substring(0, name.length() - EXTENSION.length()) : null;
+                if (key != null && usedKeys.contains(key)) continue;
+                if (entry.delete()) pruned++;
+            }
+        int total = hitCount + missCount;
+        Logger.info("Schematic cache: " + hitCount + "/" + total + " hits ("
+                + (total == 0 ? 0 : Math.round(hitCount * 100.0 / total)) + "%), " + missCount + " parsed"
+                + (pruned > 0 ? ", pruned " + pruned + " unused entries" : ""));
+    }
+}
@@ -1,36 +1,46 @@
 package com.magmaguy.betterstructures.schematics;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.magmaguy.betterstructures.buildingfitter.util.SampleLattice;
+import com.magmaguy.betterstructures.buildingfitter.util.SchematicPicker;
 import com.magmaguy.betterstructures.chests.ChestContents;
 import com.magmaguy.betterstructures.config.DefaultConfig;
 import com.magmaguy.betterstructures.config.generators.GeneratorConfigFields;
 import com.magmaguy.betterstructures.config.schematics.SchematicConfigField;
 import com.magmaguy.betterstructures.config.treasures.TreasureConfig;
 import com.magmaguy.betterstructures.config.treasures.TreasureConfigFields;
-import com.magmaguy.betterstructures.util.WorldEditUtils;
+import com.magmaguy.betterstructures.util.DeveloperLogger;
+import com.magmaguy.betterstructures.worldedit.ClipboardResidency;
+import com.magmaguy.betterstructures.worldedit.PasteFootprint;
+import com.magmaguy.betterstructures.worldedit.PastePlan;
 import com.magmaguy.magmacore.util.Logger;
-import com.sk89q.worldedit.bukkit.BukkitAdapter;
-import com.sk89q.worldedit.extent.clipboard.Clipboard;
 import com.sk89q.worldedit.math.BlockVector3;
-import com.sk89q.worldedit.world.block.BaseBlock;
-import com.sk89q.worldedit.world.block.BlockState;
 import lombok.Getter;
 import org.bukkit.Bukkit;
-import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.entity.EntityType;
 import org.bukkit.util.Vector;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Set;
 
 public class SchematicContainer {
     @Getter
     private static final ArrayListMultimap<GeneratorConfigFields.StructureType, SchematicContainer> schematics = ArrayListMultimap.create();
+    private final File schematicFile;
+    // Content hash of the schematic file, the clipboard is looked up by it
+    private final String contentKey;
+    // Geometry of the clipboard, known without parsing it
     @Getter
-    private final Clipboard clipboard;
+    private final BlockVector3 dimensions;
+    @Getter
+    private final BlockVector3 minimumPoint;
+    @Getter
+    private final BlockVector3 origin;
     @Getter
     private final SchematicConfigField schematicConfigField;
     @Getter
@@ -53,88 +63,51 @@ public class SchematicContainer {
     private ChestContents chestContents = null;
     @Getter
     private boolean valid = true;
+    // Schematic side of every terrain adequacy scan, compiled once here instead of on each scan
+    @Getter
+    private SampleLattice sampleLattice = null;
+    // Columns the paste writes blocks to, decides which chunks a paste has to load
+    @Getter
+    private PasteFootprint pasteFootprint = null;
+    // Estimated cost of a paste, decides whether it can start while the server is under load
+    @Getter
+    private PasteCost pasteCost = null;
 
-    public SchematicContainer(Clipboard clipboard, String clipboardFilename, SchematicConfigField schematicConfigField, String configFilename) {
-        this.clipboard = clipboard;
+    public SchematicContainer(File schematicFile, String contentKey, SchematicMetadata metadata, String clipboardFilename, SchematicConfigField schematicConfigField, String configFilename) {
+        this.schematicFile = schematicFile;
+        this.contentKey = contentKey;
         this.clipboardFilename = clipboardFilename;
         this.schematicConfigField = schematicConfigField;
         this.configFilename = configFilename;
+        dimensions = metadata.getDimensions();
+        minimumPoint = metadata.getMinimumPoint();
+        origin = metadata.getOrigin();
         generatorConfigFields = schematicConfigField.getGeneratorConfigFields();
         if (generatorConfigFields == null) {
             Logger.warn("为建筑模板 " + schematicConfigField.getFilename() + " 分配生成器失败！这意味着该建筑将不会出现在世界中。");
             return;
         }
-        for (int x = 0; x <= clipboard.getDimensions().x(); x++)
-            for (int y = 0; y <= clipboard.getDimensions().y(); y++)
-                for (int z = 0; z <= clipboard.getDimensions().z(); z++) {
-                    BlockVector3 translatedLocation = BlockVector3.at(x, y, z).add(clipboard.getMinimumPoint());
-                    BlockState weBlockState = clipboard.getBlock(translatedLocation);
-                    Material minecraftMaterial = BukkitAdapter.adapt(weBlockState.getBlockType());
-                    if (minecraftMaterial == null) continue;
-                    //register chest location
-                    if (minecraftMaterial.equals(Material.CHEST) ||
-                            minecraftMaterial.equals(Material.TRAPPED_CHEST) ||
-                            minecraftMaterial.equals(Material.SHULKER_BOX)) {
-                        chestLocations.add(new Vector(x, y, z));
-                    }
-                    if (minecraftMaterial.equals(Material.ACACIA_SIGN) ||
-                            minecraftMaterial.equals(Material.ACACIA_WALL_SIGN) ||
-                            minecraftMaterial.equals(Material.SPRUCE_SIGN) ||
-                            minecraftMaterial.equals(Material.SPRUCE_WALL_SIGN) ||
-                            minecraftMaterial.equals(Material.BIRCH_SIGN) ||
-                            minecraftMaterial.equals(Material.BIRCH_WALL_SIGN) ||
-                            minecraftMaterial.equals(Material.CRIMSON_SIGN) ||
-                            minecraftMaterial.equals(Material.CRIMSON_WALL_SIGN) ||
-                            minecraftMaterial.equals(Material.DARK_OAK_SIGN) ||
-                            minecraftMaterial.equals(Material.DARK_OAK_WALL_SIGN) ||
-                            minecraftMaterial.equals(Material.JUNGLE_SIGN) ||
-                            minecraftMaterial.equals(Material.JUNGLE_WALL_SIGN) ||
-                            minecraftMaterial.equals(Material.OAK_SIGN) ||
-                            minecraftMaterial.equals(Material.OAK_WALL_SIGN) ||
-                            minecraftMaterial.equals(Material.WARPED_SIGN) ||
-                            minecraftMaterial.equals(Material.WARPED_WALL_SIGN)) {
-                        BaseBlock baseBlock = clipboard.getFullBlock(translatedLocation);
-                        //For future reference, I don't know how to get the data in any other way than parsing the string. Sorry!
-                        String line1 = WorldEditUtils.getLine(baseBlock, 1);
-
-                        //Case for spawning a vanilla mob
-                        if (line1.toLowerCase(Locale.ROOT).contains("[spawn]")) {
-                            String line2 = WorldEditUtils.getLine(baseBlock, 2).toUpperCase(Locale.ROOT).replaceAll("\"", "");
-                            EntityType entityType;
-                            try {
-                                entityType = EntityType.valueOf(line2);
-                            } catch (Exception ex) {
-                                if (line2.equalsIgnoreCase("WITHER_CRYSTAL"))
-                                    entityType = EntityType.END_CRYSTAL;
-                                else {
-                                    Logger.warn("无法确定告示牌的实体类型！条目为 " + line2 + "，建筑模板 " + clipboardFilename + " ！请输入有效的实体类型来修复！");
-                                    continue;
-                                }
-                            }
-                            vanillaSpawns.put(new Vector(x, y, z), entityType);
-                        } else if (line1.toLowerCase(Locale.ROOT).contains("[elitemobs]")) {
-                            if (Bukkit.getPluginManager().getPlugin("EliteMobs") == null) {
-                                Bukkit.getLogger().warning("[BetterStructures] " + configFilename + " 使用了 EliteMobs Boss，但你未安装 EliteMobs！BetterStructures 不需要 EliteMobs 即可运行，但如果你想要酷炫的 EliteMobs Boss 战斗，请在此安装: https://nightbreak.io/plugin/elitemobs/");
-                                Bukkit.getLogger().warning("[BetterStructures] 由于未安装 EliteMobs，" + configFilename + " 将不会被使用。");
-                                valid = false;
-                                return;
-                            }
-                            String filename = "";
-                            for (int i = 2; i < 5; i++) filename += WorldEditUtils.getLine(baseBlock, i);
-                            eliteMobsSpawns.put(new Vector(x, y, z), filename);
-                        } else if (line1.toLowerCase(Locale.ROOT).contains("[mythicmobs]")) { // carm start - Support MythicMobs
-                            if (Bukkit.getPluginManager().getPlugin("MythicMobs") == null) {
-                                Bukkit.getLogger().warning("[BetterStructures] " + configFilename + " 使用了 MythicMobs Boss，但你未安装 MythicMobs！BetterStructures 不需要 MythicMobs 即可运行，但如果你想要 MythicMobs Boss 战斗，请安装 MythicMobs。");
-                                Bukkit.getLogger().warning("[BetterStructures] 由于未安装 MythicMobs，" + configFilename + " 将不会被使用。");
-                                valid = false;
-                                return;
-                            }
-                            String mob = WorldEditUtils.getLine(baseBlock, 2);
-                            String level = WorldEditUtils.getLine(baseBlock, 3);
-                            mythicMobsSpawns.put(new Vector(x, y, z), mob + (level.isEmpty() ? "" : ":" + level));
-                        } // carm end - Support MythicMobs
-                    }
-                }
+        metadata.getWarnings().forEach(Logger::warn);
+        if (!metadata.getEliteMobsSpawns().isEmpty() && Bukkit.getPluginManager().getPlugin("EliteMobs") == null) {
+            Bukkit.getLogger().warning("[BetterStructures] " + configFilename + " 使用了 EliteMobs Boss，但你未安装 EliteMobs！BetterStructures 不需要 EliteMobs 即可运行，但如果你想要酷炫的 EliteMobs Boss 战斗，请在此安装: https://nightbreak.io/plugin/elitemobs/");
+            Bukkit.getLogger().warning("[BetterStructures] 由于未安装 EliteMobs，" + configFilename + " 将不会被使用。");
+            valid = false;
+            return;
+        }
+        // carm start - Support MythicMobs
+        if (!metadata.getMythicMobsSpawns().isEmpty() && Bukkit.getPluginManager().getPlugin("MythicMobs") == null) {
+            Bukkit.getLogger().warning("[BetterStructures] " + configFilename + " 使用了 MythicMobs Boss，但你未安装 MythicMobs！BetterStructures 不需要 MythicMobs 即可运行，但如果你想要 MythicMobs Boss 战斗，请安装 MythicMobs。");
+            Bukkit.getLogger().warning("[BetterStructures] 由于未安装 MythicMobs，" + configFilename + " 将不会被使用。");
+            valid = false;
+            return;
+        } // carm end - Support MythicMobs
+        chestLocations.addAll(metadata.getChestLocations());
+        vanillaSpawns.putAll(metadata.getVanillaSpawns());
+        eliteMobsSpawns.putAll(metadata.getEliteMobsSpawns());
+        mythicMobsSpawns.putAll(metadata.getMythicMobsSpawns());
+        sampleLattice = metadata.getSampleLattice();
+        pasteFootprint = metadata.getPasteFootprint();
+        pasteCost = metadata.getPasteCost();
         chestContents = generatorConfigFields.getChestContents();
         if (schematicConfigField.getTreasureFile() != null && !schematicConfigField.getTreasureFile().isEmpty()) {
             TreasureConfigFields treasureConfigFields = TreasureConfig.getConfigFields(schematicConfigField.getFilename());
@@ -150,8 +123,97 @@ public class SchematicContainer {
             }
     }
 
+    /**
+     * Leases the clipboard from the {@link ClipboardResidency}, parsing the schematic file again if it is not
+     * resident. Release the lease once done with the clipboard. Can block on parsing, so call it off the main thread
+     * where possible. Safe to call from any thread.
+     *
+     * @return The lease, null if the file can no longer be parsed
+     */
+    public ClipboardResidency.Lease acquireClipboard() {
+        return ClipboardResidency.acquire(contentKey, schematicFile);
+    }
+
+    /**
+     * @return Offset from the paste anchor to the lowest corner of the schematic
+     */
+    public Vector getSchematicOffset() {
+        return new Vector(minimumPoint.x() - origin.x(), minimumPoint.y() - origin.y(), minimumPoint.z() - origin.z());
+    }
+
+    /**
+     * Compiles the paste plan the first time it is needed. The plan is kept with the clipboard in the
+     * {@link ClipboardResidency} and compiled again once evicted. Can block on parsing, so call it off the main thread.
+     */
+    public PastePlan getPastePlan() {
+        PastePlan pastePlan = ClipboardResidency.getPastePlan(contentKey);
+        if (pastePlan != null) return pastePlan;
+        synchronized (this) {
+            pastePlan = ClipboardResidency.getPastePlan(contentKey);
+            if (pastePlan != null) return pastePlan;
+            ClipboardResidency.Lease lease = acquireClipboard();
+            if (lease == null) throw new IllegalStateException("Could not parse " + clipboardFilename);
+            try {
+                pastePlan = PastePlan.compile(lease.getClipboard());
+                ClipboardResidency.attachPastePlan(contentKey, lease, pastePlan);
+            } finally {
+                lease.release();
+            }
+            DeveloperLogger.debug("Compiled paste plan for " + clipboardFilename + ": " + pastePlan.getBlockCount()
+                    + " blocks, " + pastePlan.getPedestalCount() + " pedestal, palette " + pastePlan.getPaletteSize()
+                    + ", ~" + pastePlan.getEstimatedBytes() / 1024 + " KB");
+            return pastePlan;
+        }
+    }
+
+    /**
+     * A resident paste plan and one of the schematics it belongs to.
+     */
+    public record CompiledPastePlan(SchematicContainer schematicContainer, PastePlan pastePlan) {
+    }
+
+    /**
+     * @return Paste plans currently resident, each listed once, largest first
+     */
+    public static List<CompiledPastePlan> getCompiledPastePlans() {
+        List<CompiledPastePlan> compiled = new ArrayList<>();
+        Set<String> listedContentKeys = new HashSet<>();
+        synchronized (schematics) {
+            for (SchematicContainer schematicContainer : new HashSet<>(schematics.values())) {
+                PastePlan pastePlan = ClipboardResidency.getPastePlan(schematicContainer.contentKey);
+                if (pastePlan != null && listedContentKeys.add(schematicContainer.contentKey))
+                    compiled.add(new CompiledPastePlan(schematicContainer, pastePlan));
+            }
+        }
+        compiled.sort((first, second) ->
+                Long.compare(second.pastePlan().getEstimatedBytes(), first.pastePlan().getEstimatedBytes()));
+        return compiled;
+    }
+
+    /**
+     * @return The loaded schematic using this configuration file, null if there is none
+     */
+    public static SchematicContainer getByConfigFilename(String configFilename) {
+        synchronized (schematics) {
+            for (SchematicContainer schematicContainer : schematics.values())
+                if (schematicContainer.configFilename.equals(configFilename)) return schematicContainer;
+        }
+        return null;
+    }
+
     public static void shutdown() {
         schematics.clear();
+        SchematicPicker.shutdown();
+    }
+
+    /**
+     * Furthest horizontal distance, in blocks, this schematic extends from its paste anchor.
+     */
+    public int getHorizontalReach() {
+        BlockVector3 offset = minimumPoint.subtract(origin);
+        int reachX = Math.max(Math.abs(offset.x()), Math.abs(offset.x() + dimensions.x() - 1));
+        int reachZ = Math.max(Math.abs(offset.z()), Math.abs(offset.z() + dimensions.z() - 1));
+        return Math.max(reachX, reachZ);
     }
 
     public boolean isValidEnvironment(World.Environment environment) {
@@ -172,10 +234,19 @@ public class SchematicContainer {
         if (generatorConfigFields.getValidBiomesNamespaces().isEmpty()) return true;
 
         // Extract biome identifier based on version
-        String biomeString = getBiomeIdentifier(biomeObj);
+        return isValidBiomeKey(getBiomeIdentifier(biomeObj));
+    }
+
+    /**
+     * @param biomeKey Biome identifier as returned by {@link #getBiomeIdentifier(Object)}
+     * @return True if the biome is valid, false otherwise
+     */
+    public boolean isValidBiomeKey(String biomeKey) {
+        if (generatorConfigFields.getValidBiomesNamespaces() == null) return true;
+        if (generatorConfigFields.getValidBiomesNamespaces().isEmpty()) return true;
 
         for (String validBiome : generatorConfigFields.getValidBiomesNamespaces()) {
-            if (biomeString.equals(validBiome)) {
+            if (biomeKey.equals(validBiome)) {
                 return true;
             }
         }
@@ -190,7 +261,7 @@ public class SchematicContainer {
      * @param biomeObj The biome to get an identifier for (passed as Object to avoid class casting issues)
      * @return A string identifier for the biome
      */
-    private String getBiomeIdentifier(Object biomeObj) {
+    public static String getBiomeIdentifier(Object biomeObj) {
         // First, try to use reflection to safely handle both class and interface versions
         try {
             // Try to get the getKey method (newer versions)
@@ -0,0 +1,248 @@
+package com.magmaguy.betterstructures.schematics;
+
+import com.magmaguy.betterstructures.buildingfitter.util.SampleLattice;
+import com.magmaguy.betterstructures.util.MaterialClassTable;
+import com.magmaguy.betterstructures.util.WorldEditUtils;
+import com.magmaguy.betterstructures.worldedit.PasteFootprint;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import lombok.Getter;
+import org.bukkit.entity.EntityType;
+import org.bukkit.util.Vector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Everything a {@link SchematicContainer} derives from a full scan of its clipboard.
+ * <p>
+ * Scanned once per schematic file and stored by {@link SchematicCache}, so a restart or reload only has to parse the
+ * schematics that changed. Positions are relative to the clipboard's minimum point, like the scan that produced them.
+ */
+@Getter
+public final class SchematicMetadata {
+    private final BlockVector3 dimensions;
+    private final BlockVector3 minimumPoint;
+    private final BlockVector3 origin;
+    private final List<Vector> chestLocations;
+    private final Map<Vector, EntityType> vanillaSpawns;
+    private final Map<Vector, String> eliteMobsSpawns;
+    private final Map<Vector, String> mythicMobsSpawns;
+    private final PasteFootprint pasteFootprint;
+    private final SampleLattice sampleLattice;
+    private final PasteCost pasteCost;
+    // Problems found in the signs, logged every time the schematic is loaded
+    private final List<String> warnings;
+
+    private SchematicMetadata(BlockVector3 dimensions, BlockVector3 minimumPoint, BlockVector3 origin,
+                              List<Vector> chestLocations, Map<Vector, EntityType> vanillaSpawns,
+                              Map<Vector, String> eliteMobsSpawns, Map<Vector, String> mythicMobsSpawns,
+                              PasteFootprint pasteFootprint, SampleLattice sampleLattice, PasteCost pasteCost,
+                              List<String> warnings) {
+        this.dimensions = dimensions;
+        this.minimumPoint = minimumPoint;
+        this.origin = origin;
+        this.chestLocations = chestLocations;
+        this.vanillaSpawns = vanillaSpawns;
+        this.eliteMobsSpawns = eliteMobsSpawns;
+        this.mythicMobsSpawns = mythicMobsSpawns;
+        this.pasteFootprint = pasteFootprint;
+        this.sampleLattice = sampleLattice;
+        this.pasteCost = pasteCost;
+        this.warnings = warnings;
+    }
+
+    /**
+     * Scans every block of the clipboard. Safe to call from any thread.
+     */
+    public static SchematicMetadata scan(Clipboard clipboard, String clipboardFilename) {
+        BlockVector3 dimensions = clipboard.getDimensions();
+        BlockVector3 minimumPoint = clipboard.getMinimumPoint();
+        List<Vector> chestLocations = new ArrayList<>();
+        Map<Vector, EntityType> vanillaSpawns = new HashMap<>();
+        Map<Vector, String> eliteMobsSpawns = new HashMap<>();
+        Map<Vector, String> mythicMobsSpawns = new HashMap<>();
+        List<String> warnings = new ArrayList<>();
+        int writtenBlocks = 0;
+        int blockEntities = 0;
+        for (int x = 0; x < dimensions.x(); x++)
+            for (int y = 0; y < dimensions.y(); y++)
+                for (int z = 0; z < dimensions.z(); z++) {
+                    BlockVector3 translatedLocation = BlockVector3.at(x, y, z).add(minimumPoint);
+                    BlockState weBlockState = clipboard.getBlock(translatedLocation);
+                    int blockClasses = MaterialClassTable.getClasses(weBlockState.getBlockType());
+                    // Air is pasted too, it clears the terrain inside the structure
+                    if (weBlockState.getBlockType() != BlockTypes.BARRIER)
+                        writtenBlocks++;
+                    if ((blockClasses & (MaterialClassTable.CONTAINER | MaterialClassTable.SIGN)) != 0)
+                        blockEntities++;
+                    //register chest location
+                    if ((blockClasses & MaterialClassTable.CONTAINER) != 0) {
+                        chestLocations.add(new Vector(x, y, z));
+                    }
+                    if ((blockClasses & MaterialClassTable.SIGN) != 0) {
+                        BaseBlock baseBlock = clipboard.getFullBlock(translatedLocation);
+                        //For future reference, I don't know how to get the data in any other way than parsing the string. Sorry!
+                        String line1 = WorldEditUtils.getLine(baseBlock, 1);
+
+                        //Case for spawning a vanilla mob
+                        if (line1.toLowerCase(Locale.ROOT).contains("[spawn]")) {
+                            String line2 = WorldEditUtils.getLine(baseBlock, 2).toUpperCase(Locale.ROOT).replaceAll("\"", "");
+                            EntityType entityType;
+                            try {
+                                entityType = EntityType.valueOf(line2);
+                            } catch (Exception ex) {
+                                if (line2.equalsIgnoreCase("WITHER_CRYSTAL"))
+                                    entityType = EntityType.END_CRYSTAL;
+                                else {
+                                    warnings.add("无法确定告示牌的实体类型！条目为 " + line2 + "，建筑模板 " + clipboardFilename + " ！请输入有效的实体类型来修复！");
+                                    continue;
+                                }
+                            }
+                            vanillaSpawns.put(new Vector(x, y, z), entityType);
+                        } else if (line1.toLowerCase(Locale.ROOT).contains("[elitemobs]")) {
+                            String filename = "";
+                            for (int i = 2; i < 5; i++) filename += WorldEditUtils.getLine(baseBlock, i);
+                            eliteMobsSpawns.put(new Vector(x, y, z), filename);
+                        } else if (line1.toLowerCase(Locale.ROOT).contains("[mythicmobs]")) { // carm start - Support MythicMobs
+                            String mob = WorldEditUtils.getLine(baseBlock, 2);
+                            String level = WorldEditUtils.getLine(baseBlock, 3);
+                            mythicMobsSpawns.put(new Vector(x, y, z), mob + (level.isEmpty() ? "" : ":" + level));
+                        } // carm end - Support MythicMobs
+                    }
+                }
+        PasteFootprint pasteFootprint = buildPasteFootprint(clipboard);
+        // With the corner in the middle of a chunk, between the best and the worst chunk alignment
+        PasteCost pasteCost = new PasteCost(writtenBlocks, pasteFootprint.getRequiredChunks(8, 8).size(), blockEntities,
+                vanillaSpawns.size() + eliteMobsSpawns.size() + mythicMobsSpawns.size());
+        return new SchematicMetadata(dimensions, minimumPoint, clipboard.getOrigin(), chestLocations, vanillaSpawns,
+                eliteMobsSpawns, mythicMobsSpawns, pasteFootprint, new SampleLattice(clipboard, SampleLattice.SCAN_STEP),
+                pasteCost, warnings);
+    }
+
+    private static PasteFootprint buildPasteFootprint(Clipboard clipboard) {
+        BlockVector3 minimumPoint = clipboard.getMinimumPoint();
+        BlockVector3 dimensions = clipboard.getDimensions();
+        BitSet writtenColumns = new BitSet(dimensions.x() * dimensions.z());
+        for (int x = 0; x < dimensions.x(); x++)
+            for (int z = 0; z < dimensions.z(); z++)
+                for (int y = 0; y < dimensions.y(); y++) {
+                    // Barriers are skipped by the paste, everything else is written, air included
+                    if (clipboard.getBlock(minimumPoint.add(x, y, z)).getBlockType() == BlockTypes.BARRIER) continue;
+                    writtenColumns.set(x * dimensions.z() + z);
+                    break;
+                }
+        return new PasteFootprint(dimensions.x(), dimensions.z(), writtenColumns);
+    }
+
+    /**
+     * Writes the metadata for the schematic cache, see {@link #read(DataInput)}.
+     */
+    public void write(DataOutput out) throws IOException {
+        writeBlockVector(out, dimensions);
+        writeBlockVector(out, minimumPoint);
+        writeBlockVector(out, origin);
+        out.writeInt(chestLocations.size());
+        for (Vector chestLocation : chestLocations) writeVector(out, chestLocation);
+        out.writeInt(vanillaSpawns.size());
+        for (Map.Entry<Vector, EntityType> entry : vanillaSpawns.entrySet()) {
+            writeVector(out, entry.getKey());
+            out.writeUTF(entry.getValue().name());
+        }
+        writeStringMap(out, eliteMobsSpawns);
+        writeStringMap(out, mythicMobsSpawns);
+        pasteFootprint.write(out);
+        sampleLattice.write(out);
+        out.writeInt(pasteCost.getBlockCount());
+        out.writeInt(pasteCost.getChunkCount());
+        out.writeInt(pasteCost.getBlockEntityCount());
+        out.writeInt(pasteCost.getEntityCount());
+        out.writeInt(warnings.size());
+        for (String warning : warnings) out.writeUTF(warning);
+    }
+
+    /**
+     * @throws IOException If the data is truncated or names an entity type this server does not have
+     */
+    public static SchematicMetadata read(DataInput in) throws IOException {
+        BlockVector3 dimensions = readBlockVector(in);
+        BlockVector3 minimumPoint = readBlockVector(in);
+        BlockVector3 origin = readBlockVector(in);
+        int chestCount = readCount(in);
+        List<Vector> chestLocations = new ArrayList<>(chestCount);
+        for (int i = 0; i < chestCount; i++) chestLocations.add(readVector(in));
+        int vanillaSpawnCount = readCount(in);
+        Map<Vector, EntityType> vanillaSpawns = new HashMap<>();
+        for (int i = 0; i < vanillaSpawnCount; i++) {
+            Vector location = readVector(in);
+            String entityType = in.readUTF();
+            try {
+                vanillaSpawns.put(location, EntityType.valueOf(entityType));
+            } catch (IllegalArgumentException exception) {
+                throw new IOException("Unknown entity type " + entityType);
+            }
+        }
+        Map<Vector, String> eliteMobsSpawns = readStringMap(in);
+        Map<Vector, String> mythicMobsSpawns = readStringMap(in);
+        PasteFootprint pasteFootprint = PasteFootprint.read(in);
+        SampleLattice sampleLattice = SampleLattice.read(in);
+        PasteCost pasteCost = new PasteCost(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        int warningCount = readCount(in);
+        List<String> warnings = new ArrayList<>(warningCount);
+        for (int i = 0; i < warningCount; i++) warnings.add(in.readUTF());
+        return new SchematicMetadata(dimensions, minimumPoint, origin, chestLocations, vanillaSpawns, eliteMobsSpawns,
+                mythicMobsSpawns, pasteFootprint, sampleLattice, pasteCost, warnings);
+    }
+
+    private static void writeBlockVector(DataOutput out, BlockVector3 vector) throws IOException {
+        out.writeInt(vector.x());
+        out.writeInt(vector.y());
+        out.writeInt(vector.z());
+    }
+
+    private static BlockVector3 readBlockVector(DataInput in) throws IOException {
+        return BlockVector3.at(in.readInt(), in.readInt(), in.readInt());
+    }
+
+    // Scan positions are whole blocks
+    private static void writeVector(DataOutput out, Vector vector) throws IOException {
+        out.writeInt(vector.getBlockX());
+        out.writeInt(vector.getBlockY());
+        out.writeInt(vector.getBlockZ());
+    }
+
+    private static Vector readVector(DataInput in) throws IOException {
+        return new Vector(in.readInt(), in.readInt(), in.readInt());
+    }
+
+    private static void writeStringMap(DataOutput out, Map<Vector, String> map) throws IOException {
+        out.writeInt(map.size());
+        for (Map.Entry<Vector, String> entry : map.entrySet()) {
+            writeVector(out, entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+    private static Map<Vector, String> readStringMap(DataInput in) throws IOException {
+        int size = readCount(in);
+        Map<Vector, String> map = new HashMap<>();
+        for (int i = 0; i < size; i++) map.put(readVector(in), in.readUTF());
+        return map;
+    }
+
+    private static int readCount(DataInput in) throws IOException {
+        int count = in.readInt();
+        if (count < 0) throw new IOException("Invalid count " + count);
+        return count;
+    }
+}
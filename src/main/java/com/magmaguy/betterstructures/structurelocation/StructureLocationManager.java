@@ -30,6 +30,10 @@ public class StructureLocationManager {
     // Set of worlds that have been modified and need saving
     private final Set<String> dirtyWorlds = ConcurrentHashMap.newKeySet();
 
+    // Set once the stored locations are in the cache, nothing is saved before that so a partially loaded world
+    // never overwrites its file
+    private volatile boolean loaded = false;
+
     // Auto-save task
     private BukkitRunnable saveTask;
 
@@ -41,7 +45,6 @@ public class StructureLocationManager {
         if (!storageFolder.exists()) {
             storageFolder.mkdirs();
         }
-        loadAllWorldData();
         startAutoSaveTask();
     }
 
@@ -51,10 +54,29 @@ public class StructureLocationManager {
     public static StructureLocationManager getInstance() {
         if (instance == null) {
             instance = new StructureLocationManager();
+            instance.loadStoredLocations();
         }
         return instance;
     }
 
+    /**
+     * Creates the singleton instance without reading the stored locations yet, so startup can call
+     * {@link #loadStoredLocations()} off the main thread while the instance is already available. Main thread only.
+     */
+    public static StructureLocationManager createUnloaded() {
+        if (instance == null) instance = new StructureLocationManager();
+        return instance;
+    }
+
+    /**
+     * Reads the stored locations into the cache. Locations recorded in the meantime take precedence over stored ones
+     * at the same position. Safe to call from any thread.
+     */
+    public void loadStoredLocations() {
+        loadAllWorldData();
+        loaded = true;
+    }
+
     /**
      * Records a newly generated structure location.
      * This method is thread-safe and can be called from any thread.
@@ -226,7 +248,9 @@ public class StructureLocationManager {
             worldLocations.put(key, data);
         }
 
-        locationCache.put(worldName, worldLocations);
+        // Merged rather than replaced, structures may have been recorded while the file was read
+        Map<String, StructureLocationData> cachedLocations = locationCache.computeIfAbsent(worldName, k -> new ConcurrentHashMap<>());
+        worldLocations.forEach(cachedLocations::putIfAbsent);
     }
 
     /**
@@ -246,6 +270,8 @@ public class StructureLocationManager {
      * Saves all worlds that have been modified.
      */
     public void saveAllDirtyWorlds() {
+        // Still loading, the worlds stay dirty until the next save
+        if (!loaded) return;
         Set<String> worldsToSave = new HashSet<>(dirtyWorlds);
         dirtyWorlds.clear();
 
@@ -359,9 +385,12 @@ public class StructureLocationManager {
         }
 
         // Save all data synchronously on shutdown
-        for (String worldName : locationCache.keySet()) {
-            saveWorldData(worldName);
-        }
+        if (loaded)
+            for (String worldName : locationCache.keySet()) {
+                saveWorldData(worldName);
+            }
+        else
+            Logger.warn("Structure locations were still loading during shutdown, skipped saving them");
 
         instance = null;
     }
@@ -372,6 +401,6 @@ public class StructureLocationManager {
     public void reload() {
         saveAllDirtyWorlds();
         locationCache.clear();
-        loadAllWorldData();
+        loadStoredLocations();
     }
 }
@@ -0,0 +1,83 @@
+package com.magmaguy.betterstructures.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Weighted random choice in constant time, built with Vose's alias method.
+ * <p>
+ * Every index gets a column of equal width; a column keeps its own index with some probability and hands the rest
+ * to one alias. Sampling is one uniform draw, one array load and one comparison, and never allocates. Immutable and
+ * safe to share between threads.
+ */
+public final class AliasTable {
+    private final double[] probability;
+    private final int[] alias;
+
+    /**
+     * @param weights Relative weights, negative or non finite ones count as zero. If no weight is positive every index
+     *                is equally likely.
+     */
+    public AliasTable(double[] weights) {
+        int size = weights.length;
+        if (size == 0) throw new IllegalArgumentException("Alias table needs at least one weight");
+        probability = new double[size];
+        alias = new int[size];
+
+        double totalWeight = 0;
+        for (double weight : weights) totalWeight += sanitize(weight);
+        double[] scaled = new double[size];
+        for (int i = 0; i < size; i++)
+            scaled[i] = totalWeight > 0 ? sanitize(weights[i]) * size / totalWeight : 1;
+
+        int[] small = new int[size];
+        int[] large = new int[size];
+        int smallCount = 0;
+        int largeCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (scaled[i] < 1) small[smallCount++] = i;
+            else large[largeCount++] = i;
+        }
+        while (smallCount > 0 && largeCount > 0) {
+            int less = small[--smallCount];
+            int more = large[--largeCount];
+            probability[less] = scaled[less];
+            alias[less] = more;
+            scaled[more] = scaled[more] + scaled[less] - 1;
+            if (scaled[more] < 1) small[smallCount++] = more;
+            else large[largeCount++] = more;
+        }
+        // Whatever is left only differs from 1 by rounding error
+        while (largeCount > 0) {
+            int index = large[--largeCount];
+            probability[index] = 1;
+            alias[index] = index;
+        }
+        while (smallCount > 0) {
+            int index = small[--smallCount];
+            probability[index] = 1;
+            alias[index] = index;
+        }
+    }
+
+    private static double sanitize(double weight) {
+        return weight > 0 && Double.isFinite(weight) ? weight : 0;
+    }
+
+    public int size() {
+        return probability.length;
+    }
+
+    public int sample() {
+        return sample(ThreadLocalRandom.current().nextDouble());
+    }
+
+    /**
+     * @param random Uniform value in [0, 1), its integer part picks the column and the remainder flips the coin
+     * @return The picked index
+     */
+    public int sample(double random) {
+        double scaled = random * probability.length;
+        int column = Math.min((int) scaled, probability.length - 1);
+        return scaled - column < probability[column] ? column : alias[column];
+    }
+}
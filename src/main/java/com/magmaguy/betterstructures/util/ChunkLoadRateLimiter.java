@@ -0,0 +1,248 @@
+package com.magmaguy.betterstructures.util;
+
+import com.magmaguy.betterstructures.MetadataHandler;
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Global rate limiter for plugin-triggered chunk loads, shared by the paste pipeline and the pregenerator.
+ * <p>
+ * Chunks that are already loaded are served right away without using the budget. Everything else waits in a queue
+ * and is handed to {@code getChunkAtAsync} only while a token of the {@code maxChunkLoadsPerSecond} bucket is
+ * available and fewer than {@code maxChunkLoadsInFlight} loads are still running. Paste loads go ahead of
+ * pregeneration loads, and requests for a chunk that is already queued share the same load. Main thread only, calls
+ * from other threads are handed over to it.
+ */
+public final class ChunkLoadRateLimiter {
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<PendingLoad>[] queues = new ArrayDeque[Priority.values().length];
+    // Queued or running loads per world, so duplicate requests join the existing one
+    private static final Map<UUID, Map<Long, PendingLoad>> pendingLoads = new HashMap<>();
+    private static TokenBucket tokenBucket = null;
+    private static BukkitTask task = null;
+    private static int queuedLoads = 0;
+    private static int inFlightLoads = 0;
+    // Bumped on shutdown so loads started before a reload do not touch the new counters
+    private static int generation = 0;
+    // Metrics
+    private static long fastPathLoads = 0;
+    private static long dispatchedLoads = 0;
+
+    static {
+        for (int i = 0; i < queues.length; i++) queues[i] = new ArrayDeque<>();
+    }
+
+    private ChunkLoadRateLimiter() {
+    }
+
+    public enum Priority {
+        PASTE,
+        PREGENERATION
+    }
+
+    private static class PendingLoad {
+        private final World world;
+        private final int chunkX;
+        private final int chunkZ;
+        private final CompletableFuture<Chunk> future = new CompletableFuture<>();
+        private Priority priority;
+        private boolean dispatched = false;
+
+        private PendingLoad(World world, int chunkX, int chunkZ, Priority priority) {
+            this.world = world;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Loads (and generates if needed) a set of chunks within the shared budget.
+     *
+     * @param world     The world to load chunks in
+     * @param chunkKeys Encoded chunk keys (chunkX << 32 | chunkZ & 0xFFFFFFFFL)
+     * @param priority  Priority of the requester
+     * @return Future that completes when ALL requested chunks are loaded
+     */
+    public static CompletableFuture<Void> loadChunks(World world, Collection<Long> chunkKeys, Priority priority) {
+        if (chunkKeys.isEmpty()) return CompletableFuture.completedFuture(null);
+        if (!Bukkit.isPrimaryThread()) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> loadChunks(world, chunkKeys, priority)
+                    .whenComplete((ignored, throwable) -> {
+                        if (throwable != null) future.completeExceptionally(throwable);
+                        else future.complete(null);
+                    }));
+            return future;
+        }
+        List<CompletableFuture<Chunk>> futures = new ArrayList<>(chunkKeys.size());
+        boolean allLoaded = true;
+        for (long chunkKey : chunkKeys) {
+            CompletableFuture<Chunk> future = loadChunk(world, (int) (chunkKey >> 32), (int) chunkKey, priority);
+            allLoaded &= future.isDone() && !future.isCompletedExceptionally();
+            futures.add(future);
+        }
+        if (allLoaded) return CompletableFuture.completedFuture(null);
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    /**
+     * Loads (and generates if needed) a chunk within the shared budget. Must be called on the main thread.
+     *
+     * @return Future completed with the chunk once it is loaded, right away if it already is
+     */
+    public static CompletableFuture<Chunk> loadChunk(World world, int chunkX, int chunkZ, Priority priority) {
+        if (world.isChunkLoaded(chunkX, chunkZ)) {
+            fastPathLoads++;
+            return CompletableFuture.completedFuture(world.getChunkAt(chunkX, chunkZ));
+        }
+        if (DefaultConfig.getMaxChunkLoadsPerSecond() <= 0) {
+            dispatchedLoads++;
+            return world.getChunkAtAsync(chunkX, chunkZ, true);
+        }
+        Map<Long, PendingLoad> worldLoads = pendingLoads.computeIfAbsent(world.getUID(), k -> new HashMap<>());
+        long chunkKey = chunkKey(chunkX, chunkZ);
+        PendingLoad pendingLoad = worldLoads.get(chunkKey);
+        if (pendingLoad != null) {
+            // Pastes waiting on a queued pregeneration load move it up
+            if (!pendingLoad.dispatched && priority.ordinal() < pendingLoad.priority.ordinal()) {
+                queues[pendingLoad.priority.ordinal()].remove(pendingLoad);
+                pendingLoad.priority = priority;
+                queues[priority.ordinal()].add(pendingLoad);
+            }
+            return pendingLoad.future;
+        }
+        pendingLoad = new PendingLoad(world, chunkX, chunkZ, priority);
+        worldLoads.put(chunkKey, pendingLoad);
+        queues[priority.ordinal()].add(pendingLoad);
+        queuedLoads++;
+        if (task == null) task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }.runTaskTimer(MetadataHandler.PLUGIN, 0, 1);
+        return pendingLoad.future;
+    }
+
+    /**
+     * Drops the queued loads of a world requested with the given priority, for requesters that gave up.
+     */
+    public static void cancelQueued(World world, Priority priority) {
+        for (Iterator<PendingLoad> iterator = queues[priority.ordinal()].iterator(); iterator.hasNext(); ) {
+            PendingLoad pendingLoad = iterator.next();
+            if (!pendingLoad.world.equals(world)) continue;
+            iterator.remove();
+            queuedLoads--;
+            removePending(pendingLoad);
+            pendingLoad.future.completeExceptionally(new CancellationException("chunk load cancelled"));
+        }
+    }
+
+    private static void tick() {
+        if (tokenBucket == null) {
+            int maxChunkLoadsPerSecond = Math.max(1, DefaultConfig.getMaxChunkLoadsPerSecond());
+            tokenBucket = new TokenBucket(maxChunkLoadsPerSecond, maxChunkLoadsPerSecond, System.nanoTime());
+        }
+        int maxInFlight = Math.max(1, DefaultConfig.getMaxChunkLoadsInFlight());
+        long now = System.nanoTime();
+        for (ArrayDeque<PendingLoad> queue : queues)
+            while (!queue.isEmpty() && inFlightLoads < maxInFlight) {
+                PendingLoad pendingLoad = queue.peek();
+                // Loaded by someone else while it waited, no need to spend a token on it
+                if (pendingLoad.world.isChunkLoaded(pendingLoad.chunkX, pendingLoad.chunkZ)) {
+                    queue.poll();
+                    queuedLoads--;
+                    fastPathLoads++;
+                    removePending(pendingLoad);
+                    pendingLoad.future.complete(pendingLoad.world.getChunkAt(pendingLoad.chunkX, pendingLoad.chunkZ));
+                    continue;
+                }
+                if (!tokenBucket.tryAcquire(now)) return;
+                queue.poll();
+                queuedLoads--;
+                dispatch(pendingLoad);
+            }
+        if (queuedLoads == 0 && inFlightLoads == 0) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private static void dispatch(PendingLoad pendingLoad) {
+        pendingLoad.dispatched = true;
+        inFlightLoads++;
+        dispatchedLoads++;
+        int dispatchedGeneration = generation;
+        pendingLoad.world.getChunkAtAsync(pendingLoad.chunkX, pendingLoad.chunkZ, true)
+                .whenComplete((chunk, throwable) -> {
+                    if (dispatchedGeneration == generation) {
+                        inFlightLoads--;
+                        removePending(pendingLoad);
+                    }
+                    if (throwable != null) pendingLoad.future.completeExceptionally(throwable);
+                    else pendingLoad.future.complete(chunk);
+                });
+    }
+
+    private static void removePending(PendingLoad pendingLoad) {
+        Map<Long, PendingLoad> worldLoads = pendingLoads.get(pendingLoad.world.getUID());
+        if (worldLoads == null) return;
+        worldLoads.remove(chunkKey(pendingLoad.chunkX, pendingLoad.chunkZ));
+        if (worldLoads.isEmpty()) pendingLoads.remove(pendingLoad.world.getUID());
+    }
+
+    /**
+     * Shuts down the rate limiter and cancels any pending requests.
+     */
+    public static void shutdown() {
+        if (task != null) task.cancel();
+        task = null;
+        tokenBucket = null;
+        generation++;
+        for (ArrayDeque<PendingLoad> queue : queues) {
+            for (PendingLoad pendingLoad : queue) pendingLoad.future.cancel(false);
+            queue.clear();
+        }
+        pendingLoads.clear();
+        queuedLoads = 0;
+        inFlightLoads = 0;
+        fastPathLoads = 0;
+        dispatchedLoads = 0;
+    }
+
+    public static int getQueuedLoads() {
+        return queuedLoads;
+    }
+
+    public static int getInFlightLoads() {
+        return inFlightLoads;
+    }
+
+    public static long getFastPathLoads() {
+        return fastPathLoads;
+    }
+
+    public static long getDispatchedLoads() {
+        return dispatchedLoads;
+    }
+
+    private static long chunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+}
@@ -18,8 +18,12 @@ import org.bukkit.event.world.ChunkLoadEvent;
 import org.bukkit.scheduler.BukkitTask;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 public class ChunkPregenerator implements Listener {
     public static HashSet<ChunkPregenerator> activePregenerators = new HashSet<>();
@@ -65,6 +69,8 @@ public class ChunkPregenerator implements Listener {
     private int centerChunkX;
     private int centerChunkZ;
     private int currentRadius = 0;
+    // Identifies the layer being generated, so a layer left behind by a pause does not advance the radius
+    private int currentLayerId = 0;
 
     public void start() {
         centerChunkX = center.getBlockX() >> 4;
@@ -72,6 +78,10 @@ public class ChunkPregenerator implements Listener {
 
         Logger.info("开始区块预生成，形状: " + shape + ", center chunk: (" + centerChunkX + ", " + centerChunkZ + "), radius: " + maxRadiusBlocks + " blocks (" + maxRadiusChunks + " chunks)");
 
+        if (DefaultConfig.getMaxChunkLoadsPerSecond() > 0)
+            Logger.info("预生成与结构粘贴共享区块加载速率上限 (chunkIOThrottling.maxChunkLoadsPerSecond: "
+                    + DefaultConfig.getMaxChunkLoadsPerSecond() + " chunks/s)，如需加快预生成请调高该值。");
+
         // Register this pregenerator as active
         activePregenerators.add(this);
 
@@ -133,6 +143,9 @@ public class ChunkPregenerator implements Listener {
         actualMaxRadiusChunks = currentRadius;
 
         final boolean[] chunksAdded = {false};
+        // Loads requested for this layer; they run within the shared chunk load budget, so they may finish much later
+        List<CompletableFuture<Chunk>> layerLoads = new ArrayList<>();
+        int layerId = ++currentLayerId;
 
         WorkloadRunnable workload = new WorkloadRunnable(tickUsage, () -> {
             // Check if cancelled before continuing
@@ -141,20 +154,31 @@ public class ChunkPregenerator implements Listener {
                 return;
             }
 
-            // When this layer completes, generate the next layer if chunks were added
-            if (chunksAdded[0]) {
-                currentRadius++;
-                generateNextLayer();
-            } else {
-                // No more chunks to generate, we're done
-                onComplete();
-            }
+            // Wait for this layer's loads before queueing the next one, so requests do not pile up in the limiter
+            CompletableFuture.allOf(layerLoads.toArray(new CompletableFuture[0])).whenComplete((ignored, throwable) ->
+                    Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> {
+                        // A pause or cancellation already moved on from this layer
+                        if (layerId != currentLayerId || isPaused) return;
+                        if (isCancelled) {
+                            onCancelled();
+                            return;
+                        }
+
+                        // When this layer completes, generate the next layer if chunks were added
+                        if (chunksAdded[0]) {
+                            currentRadius++;
+                            generateNextLayer();
+                        } else {
+                            // No more chunks to generate, we're done
+                            onComplete();
+                        }
+                    }));
         });
 
         if ("SQUARE".equalsIgnoreCase(shape)) {
-            chunksAdded[0] = generateSquareLayer(workload, currentRadius);
+            chunksAdded[0] = generateSquareLayer(workload, layerLoads, currentRadius);
         } else if ("CIRCLE".equalsIgnoreCase(shape)) {
-            chunksAdded[0] = generateCircleLayer(workload, currentRadius);
+            chunksAdded[0] = generateCircleLayer(workload, layerLoads, currentRadius);
         } else {
             Logger.warn("无效的形状: " + shape + "。必须为 SQUARE 或 CIRCLE。");
             onComplete();
@@ -172,17 +196,17 @@ public class ChunkPregenerator implements Listener {
         currentWorkloadTask = workload.runTaskTimer(MetadataHandler.PLUGIN, 0, 1);
     }
 
-    private boolean generateSquareLayer(WorkloadRunnable workload, int radius) {
+    private boolean generateSquareLayer(WorkloadRunnable workload, List<CompletableFuture<Chunk>> layerLoads, int radius) {
         boolean chunksAdded = false;
         // Generate chunks in a square pattern at this radius
         // Top and bottom edges
         for (int x = centerChunkX - radius; x <= centerChunkX + radius; x++) {
             // Top edge
-            if (addChunkToWorkload(workload, x, centerChunkZ - radius)) {
+            if (addChunkToWorkload(workload, layerLoads, x, centerChunkZ - radius)) {
                 chunksAdded = true;
             }
             // Bottom edge
-            if (addChunkToWorkload(workload, x, centerChunkZ + radius)) {
+            if (addChunkToWorkload(workload, layerLoads, x, centerChunkZ + radius)) {
                 chunksAdded = true;
             }
         }
@@ -190,18 +214,18 @@ public class ChunkPregenerator implements Listener {
         // Left and right edges (excluding corners already processed)
         for (int z = centerChunkZ - radius + 1; z < centerChunkZ + radius; z++) {
             // Left edge
-            if (addChunkToWorkload(workload, centerChunkX - radius, z)) {
+            if (addChunkToWorkload(workload, layerLoads, centerChunkX - radius, z)) {
                 chunksAdded = true;
             }
             // Right edge
-            if (addChunkToWorkload(workload, centerChunkX + radius, z)) {
+            if (addChunkToWorkload(workload, layerLoads, centerChunkX + radius, z)) {
                 chunksAdded = true;
             }
         }
         return chunksAdded;
     }
 
-    private boolean generateCircleLayer(WorkloadRunnable workload, int radius) {
+    private boolean generateCircleLayer(WorkloadRunnable workload, List<CompletableFuture<Chunk>> layerLoads, int radius) {
         boolean chunksAdded = false;
         // Generate chunks in a circle pattern at this radius
         int radiusSquared = radius * radius;
@@ -216,7 +240,7 @@ public class ChunkPregenerator implements Listener {
 
                 // Include chunks at exactly this radius
                 if (distanceSquared >= radiusSquared && distanceSquared < nextRadiusSquared) {
-                    if (addChunkToWorkload(workload, x, z)) {
+                    if (addChunkToWorkload(workload, layerLoads, x, z)) {
                         chunksAdded = true;
                     }
                 }
@@ -225,27 +249,26 @@ public class ChunkPregenerator implements Listener {
         return chunksAdded;
     }
 
-    private boolean addChunkToWorkload(WorkloadRunnable workload, int chunkX, int chunkZ) {
+    private boolean addChunkToWorkload(WorkloadRunnable workload, List<CompletableFuture<Chunk>> layerLoads, int chunkX, int chunkZ) {
         String chunkKey = chunkX + "," + chunkZ;
         if (generatedChunks.contains(chunkKey)) {
             return false; // Already generated or queued
         }
 
         generatedChunks.add(chunkKey);
-        workload.addWorkload(() -> generateChunk(chunkX, chunkZ));
+        workload.addWorkload(() -> generateChunk(layerLoads, chunkX, chunkZ));
         return true;
     }
 
-    private void generateChunk(int chunkX, int chunkZ) {
-        try {
-            Chunk chunk = world.getChunkAt(chunkX, chunkZ);
-            if (!chunk.isLoaded()) {
-                chunk.load(true);
-            }
-            // Chunk counting is now handled by ChunkLoadEvent listener
-        } catch (Exception e) {
-            Logger.warn("生成区块失败 (" + chunkX + ", " + chunkZ + "): " + e.getMessage());
-        }
+    private void generateChunk(List<CompletableFuture<Chunk>> layerLoads, int chunkX, int chunkZ) {
+        // Shares the chunk load budget with structure pastes, which go first
+        layerLoads.add(ChunkLoadRateLimiter.loadChunk(world, chunkX, chunkZ, ChunkLoadRateLimiter.Priority.PREGENERATION)
+                .exceptionally(throwable -> {
+                    if (!(throwable instanceof CancellationException) && !(throwable.getCause() instanceof CancellationException))
+                        Logger.warn("生成区块失败 (" + chunkX + ", " + chunkZ + "): " + throwable.getMessage());
+                    return null;
+                }));
+        // Chunk counting is now handled by ChunkLoadEvent listener
     }
 
     private void onComplete() {
@@ -281,6 +304,9 @@ public class ChunkPregenerator implements Listener {
             currentWorkloadTask = null;
         }
 
+        // Drop this world's pregeneration loads that have not started yet
+        ChunkLoadRateLimiter.cancelQueued(world, ChunkLoadRateLimiter.Priority.PREGENERATION);
+
         // Unregister event listener
         HandlerList.unregisterAll(this);
 
@@ -293,6 +319,8 @@ public class ChunkPregenerator implements Listener {
      */
     public void cancel() {
         isCancelled = true;
+        // Lets a layer that is still waiting for its loads finish right away
+        ChunkLoadRateLimiter.cancelQueued(world, ChunkLoadRateLimiter.Priority.PREGENERATION);
     }
 
     @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
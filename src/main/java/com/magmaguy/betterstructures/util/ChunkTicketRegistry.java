@@ -0,0 +1,210 @@
+package com.magmaguy.betterstructures.util;
+
+import com.magmaguy.betterstructures.MetadataHandler;
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.magmacore.util.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Reference counted plugin chunk tickets.
+ * <p>
+ * Bukkit keeps a single plugin ticket per chunk no matter how often it is added, so two pastes sharing a chunk used
+ * to release each other's ticket. Here every holder takes a {@link Lease} on its chunks; the real ticket is added
+ * when the first lease on a chunk is taken and removed when the last one is released. Leases still held after
+ * {@code chunkIOThrottling.chunkTicketLeakTimeoutSeconds} are reported and released, so a lost callback cannot keep
+ * chunks loaded forever. Main thread only, releases from other threads are handed over to it.
+ */
+public final class ChunkTicketRegistry {
+    private static final long LEAK_CHECK_INTERVAL_TICKS = 20L * 30;
+    private static final Map<UUID, Map<Long, Integer>> referenceCounts = new HashMap<>();
+    private static final Set<Lease> activeLeases = new LinkedHashSet<>();
+    private static BukkitTask leakCheckTask = null;
+    // Metrics
+    private static long addedTickets = 0;
+    private static long removedTickets = 0;
+    private static long leakedLeases = 0;
+
+    private ChunkTicketRegistry() {
+    }
+
+    public static final class Lease {
+        private final World world;
+        private final long[] chunkKeys;
+        private final String owner;
+        private final long acquiredAtMillis = System.currentTimeMillis();
+        private boolean released = false;
+
+        private Lease(World world, long[] chunkKeys, String owner) {
+            this.world = world;
+            this.chunkKeys = chunkKeys;
+            this.owner = owner;
+        }
+
+        /**
+         * Releases the lease. Safe to call more than once and from any thread.
+         */
+        public void release() {
+            if (!Bukkit.isPrimaryThread()) {
+                // Tasks cannot be scheduled after disable, shutdown() removes the ticket of every lease by itself
+                if (!MetadataHandler.PLUGIN.isEnabled()) released = true;
+                else Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, this::release);
+                return;
+            }
+            if (released) return;
+            released = true;
+            activeLeases.remove(this);
+            releaseChunks(world, chunkKeys);
+        }
+
+        public World getWorld() {
+            return world;
+        }
+
+        public int getChunkCount() {
+            return chunkKeys.length;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public long getAgeMillis() {
+            return System.currentTimeMillis() - acquiredAtMillis;
+        }
+    }
+
+    /**
+     * Keeps chunks loaded until the returned lease is released. Must be called on the main thread.
+     *
+     * @param world     World of the chunks
+     * @param chunkKeys Encoded chunk keys (chunkX << 32 | chunkZ & 0xFFFFFFFFL)
+     * @param owner     Human-readable holder, shown by leak reports and {@code /bs tickets}
+     */
+    public static Lease acquire(World world, Collection<Long> chunkKeys, String owner) {
+        long[] keys = new long[chunkKeys.size()];
+        int index = 0;
+        Map<Long, Integer> worldCounts = referenceCounts.computeIfAbsent(world.getUID(), k -> new HashMap<>());
+        for (long chunkKey : chunkKeys) {
+            keys[index++] = chunkKey;
+            if (worldCounts.merge(chunkKey, 1, Integer::sum) == 1) {
+                world.addPluginChunkTicket((int) (chunkKey >> 32), (int) chunkKey, MetadataHandler.PLUGIN);
+                addedTickets++;
+            }
+        }
+        Lease lease = new Lease(world, keys, owner);
+        activeLeases.add(lease);
+        if (leakCheckTask == null) leakCheckTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                checkLeaks();
+            }
+        }.runTaskTimer(MetadataHandler.PLUGIN, LEAK_CHECK_INTERVAL_TICKS, LEAK_CHECK_INTERVAL_TICKS);
+        return lease;
+    }
+
+    private static void releaseChunks(World world, long[] chunkKeys) {
+        Map<Long, Integer> worldCounts = referenceCounts.get(world.getUID());
+        if (worldCounts == null) return;
+        for (long chunkKey : chunkKeys) {
+            Integer count = worldCounts.get(chunkKey);
+            if (count == null) continue;
+            if (count > 1) {
+                worldCounts.put(chunkKey, count - 1);
+                continue;
+            }
+            worldCounts.remove(chunkKey);
+            world.removePluginChunkTicket((int) (chunkKey >> 32), (int) chunkKey, MetadataHandler.PLUGIN);
+            removedTickets++;
+        }
+        if (worldCounts.isEmpty()) referenceCounts.remove(world.getUID());
+    }
+
+    private static void checkLeaks() {
+        long timeoutMillis = DefaultConfig.getChunkTicketLeakTimeoutSeconds() * 1000L;
+        if (timeoutMillis > 0)
+            for (Lease lease : new ArrayList<>(activeLeases)) {
+                if (lease.getAgeMillis() < timeoutMillis) continue;
+                leakedLeases++;
+                Logger.warn("区块加载票据持有超时，已强制释放: " + lease.getOwner() + " (世界 " + lease.getWorld().getName()
+                        + ", " + lease.getChunkCount() + " 个区块, 持有 " + lease.getAgeMillis() / 1000 + " 秒)");
+                lease.release();
+            }
+        if (activeLeases.isEmpty()) {
+            leakCheckTask.cancel();
+            leakCheckTask = null;
+        }
+    }
+
+    /**
+     * Forgets the tickets of a world that is unloading, its tickets go away with it.
+     */
+    public static void onWorldUnload(World world) {
+        referenceCounts.remove(world.getUID());
+        activeLeases.removeIf(lease -> {
+            if (!lease.getWorld().getUID().equals(world.getUID())) return false;
+            lease.released = true;
+            return true;
+        });
+    }
+
+    /**
+     * Removes every ticket this registry added. Called during plugin disable.
+     */
+    public static void shutdown() {
+        if (leakCheckTask != null) leakCheckTask.cancel();
+        leakCheckTask = null;
+        for (Lease lease : activeLeases) lease.released = true;
+        activeLeases.clear();
+        for (Map.Entry<UUID, Map<Long, Integer>> entry : referenceCounts.entrySet()) {
+            World world = Bukkit.getWorld(entry.getKey());
+            if (world == null) continue;
+            for (long chunkKey : entry.getValue().keySet())
+                world.removePluginChunkTicket((int) (chunkKey >> 32), (int) chunkKey, MetadataHandler.PLUGIN);
+        }
+        referenceCounts.clear();
+        addedTickets = 0;
+        removedTickets = 0;
+        leakedLeases = 0;
+    }
+
+    /**
+     * @return Chunks currently ticketed by this registry, per world UUID
+     */
+    public static Map<UUID, Integer> getTicketedChunks() {
+        Map<UUID, Integer> ticketedChunks = new HashMap<>();
+        referenceCounts.forEach((worldUUID, counts) -> ticketedChunks.put(worldUUID, counts.size()));
+        return ticketedChunks;
+    }
+
+    /**
+     * @return Active leases, oldest first
+     */
+    public static List<Lease> getActiveLeases() {
+        return Collections.unmodifiableList(new ArrayList<>(activeLeases));
+    }
+
+    public static long getAddedTickets() {
+        return addedTickets;
+    }
+
+    public static long getRemovedTickets() {
+        return removedTickets;
+    }
+
+    public static long getLeakedLeases() {
+        return leakedLeases;
+    }
+}
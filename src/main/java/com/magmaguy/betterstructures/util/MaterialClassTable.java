@@ -0,0 +1,135 @@
+package com.magmaguy.betterstructures.util;
+
+import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.world.block.BlockType;
+import org.bukkit.Material;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Block classifications precomputed once at startup, so the hot paths (topology walks, pedestals, tree clearing,
+ * schematic scans) answer "is this ignorable / solid / ..." with a single array load instead of string switches.
+ * <p>
+ * Classes are bit flags, indexed by {@link Material#ordinal()} for Bukkit materials and by the FAWE block type
+ * internal id for WorldEdit block types. The FAWE index is resolved reflectively; without it block types fall back
+ * to {@link BukkitAdapter#adapt(BlockType)} and the material table.
+ */
+public final class MaterialClassTable {
+    // The first six flags are the ones terrain scoring memoises per position, keep them in the low bits
+    public static final int SOLID = 1;
+    public static final int AIR = 1 << 1;
+    public static final int LIQUID = 1 << 2;
+    public static final int IGNORABLE = 1 << 3;
+    public static final int VOID = 1 << 4;
+    public static final int BEDROCK = 1 << 5;
+    public static final int PEDESTAL = 1 << 6;
+    public static final int CONTAINER = 1 << 7;
+    public static final int SIGN = 1 << 8;
+
+    private static int[] materialClasses = null;
+    private static int[] blockTypeClasses = null;
+    private static MethodHandle internalId = null;
+
+    private MaterialClassTable() {
+    }
+
+    /**
+     * Builds the tables. Must run on enable, before any schematic or chunk is processed.
+     */
+    public static void initialize() {
+        Material[] materials = Material.values();
+        int[] classes = new int[materials.length];
+        for (Material material : materials) {
+            // Legacy materials never show up in a world or clipboard and asking them anything loads the legacy data
+            if (material.isLegacy()) continue;
+            classes[material.ordinal()] = classify(material);
+        }
+        materialClasses = classes;
+        initializeBlockTypes();
+    }
+
+    private static void initializeBlockTypes() {
+        try {
+            MethodHandle getInternalId = MethodHandles.publicLookup()
+                    .findVirtual(BlockType.class, "getInternalId", MethodType.methodType(int.class));
+            BlockType[] blockTypes = (BlockType[]) Class.forName("com.sk89q.worldedit.world.block.BlockTypesCache")
+                    .getField("values").get(null);
+            int[] classes = new int[blockTypes.length];
+            for (BlockType blockType : blockTypes) {
+                if (blockType == null) continue;
+                int id = (int) getInternalId.invokeExact(blockType);
+                if (id < 0 || id >= classes.length) continue;
+                Material material = BukkitAdapter.adapt(blockType);
+                if (material != null) classes[id] = getClasses(material);
+            }
+            blockTypeClasses = classes;
+            internalId = getInternalId;
+        } catch (Throwable throwable) {
+            blockTypeClasses = null;
+            internalId = null;
+            DeveloperLogger.debug("MaterialClassTable: FAWE block type ids unavailable, falling back to material lookups: " + throwable);
+        }
+    }
+
+    public static int getClasses(Material material) {
+        return materialClasses[material.ordinal()];
+    }
+
+    public static int getClasses(BlockType blockType) {
+        if (internalId != null) {
+            try {
+                int id = (int) internalId.invokeExact(blockType);
+                if (id >= 0 && id < blockTypeClasses.length) return blockTypeClasses[id];
+            } catch (Throwable ignored) {
+                // Fall through to the material lookup
+            }
+        }
+        Material material = BukkitAdapter.adapt(blockType);
+        return material == null ? 0 : getClasses(material);
+    }
+
+    /**
+     * @param classes One or more class flags
+     * @return True if the material has any of the given classes
+     */
+    public static boolean is(Material material, int classes) {
+        return (materialClasses[material.ordinal()] & classes) != 0;
+    }
+
+    /**
+     * @param classes One or more class flags
+     * @return True if the block type has any of the given classes
+     */
+    public static boolean is(BlockType blockType, int classes) {
+        return (getClasses(blockType) & classes) != 0;
+    }
+
+    /**
+     * @return True if block types are looked up by their FAWE internal id
+     */
+    public static boolean isBlockTypeIndexed() {
+        return internalId != null;
+    }
+
+    private static int classify(Material material) {
+        int classes = 0;
+        if (material.isSolid()) classes |= SOLID;
+        if (material.isAir()) classes |= AIR;
+        if (material == Material.WATER || material == Material.LAVA) classes |= LIQUID;
+        if (SurfaceMaterials.classifyIgnorable(material)) classes |= IGNORABLE;
+        if (material == Material.VOID_AIR) classes |= VOID;
+        if (material == Material.BEDROCK) classes |= BEDROCK;
+        if (SurfaceMaterials.classifyPedestal(material)) classes |= PEDESTAL;
+        switch (material) {
+            case CHEST, TRAPPED_CHEST, SHULKER_BOX -> classes |= CONTAINER;
+            case ACACIA_SIGN, ACACIA_WALL_SIGN, SPRUCE_SIGN, SPRUCE_WALL_SIGN, BIRCH_SIGN, BIRCH_WALL_SIGN,
+                 CRIMSON_SIGN, CRIMSON_WALL_SIGN, DARK_OAK_SIGN, DARK_OAK_WALL_SIGN, JUNGLE_SIGN, JUNGLE_WALL_SIGN,
+                 OAK_SIGN, OAK_WALL_SIGN, WARPED_SIGN, WARPED_WALL_SIGN -> classes |= SIGN;
+            default -> {
+            }
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,70 @@
+package com.magmaguy.betterstructures.util;
+
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.betterstructures.schematics.PasteCost;
+import org.bukkit.Bukkit;
+
+/**
+ * Admission rules that trade placement latency for smooth ticks.
+ * <p>
+ * A generated paste whose {@link PasteCost} reaches {@code pasteAdmission.expensiveCost} while the average tick time
+ * is above {@code pasteAdmission.msptThreshold} is queued with {@link StructurePasteQueue.Priority#LOW}. Low priority
+ * pastes only start once the server is back under the threshold, or after waiting
+ * {@code pasteAdmission.maxDeferralSeconds}. Cheap pastes and command pastes are always admitted.
+ */
+public final class PasteAdmission {
+    // Metrics
+    private static long deferredPastes = 0;
+
+    private PasteAdmission() {
+    }
+
+    /**
+     * @return Average milliseconds per tick over the last 100 ticks
+     */
+    public static double getMspt() {
+        return Bukkit.getAverageTickTime();
+    }
+
+    /**
+     * @return Whether expensive pastes are currently held back
+     */
+    public static boolean isServerBusy() {
+        return DefaultConfig.isPasteAdmission() && getMspt() > DefaultConfig.getPasteAdmissionMsptThreshold();
+    }
+
+    /**
+     * @param pasteCost Estimated cost of the paste
+     * @param requested Priority the paste was requested with
+     * @return Priority the paste is queued with
+     */
+    public static StructurePasteQueue.Priority admit(PasteCost pasteCost, StructurePasteQueue.Priority requested) {
+        if (requested != StructurePasteQueue.Priority.NORMAL || pasteCost == null) return requested;
+        if (!pasteCost.isExpensive(DefaultConfig.getExpensivePasteCost()) || !isServerBusy()) return requested;
+        deferredPastes++;
+        DeveloperLogger.debug("Deferring paste of cost " + Math.round(pasteCost.getUnits()) + " at "
+                + Math.round(getMspt()) + " MSPT");
+        return StructurePasteQueue.Priority.LOW;
+    }
+
+    /**
+     * @param queuedAt {@link System#nanoTime()} when the deferred paste was queued
+     * @return Whether a deferred paste can start now
+     */
+    static boolean admitsDeferred(long queuedAt) {
+        int maxDeferralSeconds = DefaultConfig.getMaxPasteDeferralSeconds();
+        if (maxDeferralSeconds > 0 && System.nanoTime() - queuedAt >= maxDeferralSeconds * 1_000_000_000L) return true;
+        return !isServerBusy();
+    }
+
+    public static long getDeferredPastes() {
+        return deferredPastes;
+    }
+
+    /**
+     * Resets counters. Called during plugin disable.
+     */
+    public static void shutdown() {
+        deferredPastes = 0;
+    }
+}
@@ -0,0 +1,88 @@
+package com.magmaguy.betterstructures.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Startup work split into named stages, each started as soon as the stages it depends on finished.
+ * <p>
+ * Stages without a path between them run concurrently on their executors. A stage can only depend on stages declared
+ * before it, so the graph can't contain a cycle. If a stage throws, the stages depending on it are skipped and
+ * {@link #run()} completes exceptionally with a {@link StageFailure} naming it. Timings are kept for every stage that
+ * finished, relative to the start of the run.
+ */
+public final class StartupGraph {
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+
+    private record Stage(String name, Executor executor, Runnable task, List<String> dependencies) {
+    }
+
+    /**
+     * @param startMillis    Milliseconds from the start of the run to the start of the stage
+     * @param durationMillis Milliseconds the stage ran for
+     */
+    public record StageTiming(String name, long startMillis, long durationMillis) {
+    }
+
+    public static final class StageFailure extends RuntimeException {
+        private StageFailure(String stage, Throwable cause) {
+            super("Startup stage " + stage + " failed", cause);
+        }
+    }
+
+    /**
+     * @param name         Unique name of the stage, shown in the timing report
+     * @param executor     Executor the stage runs on
+     * @param task         Work of the stage
+     * @param dependencies Names of previously declared stages that have to finish first
+     * @return This graph
+     * @throws IllegalArgumentException If the name is taken or a dependency was not declared yet
+     */
+    public StartupGraph stage(String name, Executor executor, Runnable task, String... dependencies) {
+        if (stages.containsKey(name)) throw new IllegalArgumentException("Duplicate startup stage " + name);
+        for (String dependency : dependencies)
+            if (!stages.containsKey(dependency))
+                throw new IllegalArgumentException("Startup stage " + name + " depends on undeclared stage " + dependency);
+        stages.put(name, new Stage(name, executor, task, List.of(dependencies)));
+        return this;
+    }
+
+    /**
+     * Starts every stage whose dependencies are met and returns right away.
+     *
+     * @return Timings of all stages by start time, once the last stage finished
+     */
+    public CompletableFuture<List<StageTiming>> run() {
+        long runStart = System.nanoTime();
+        List<StageTiming> timings = new ArrayList<>();
+        Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+        for (Stage stage : stages.values()) {
+            CompletableFuture<?>[] dependencies = stage.dependencies().stream().map(futures::get)
+                    .toArray(CompletableFuture<?>[]::new);
+            futures.put(stage.name(), CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+                long start = System.nanoTime();
+                try {
+                    stage.task().run();
+                } catch (RuntimeException | Error throwable) {
+                    throw new StageFailure(stage.name(), throwable);
+                }
+                long end = System.nanoTime();
+                synchronized (timings) {
+                    timings.add(new StageTiming(stage.name(), (start - runStart) / 1_000_000, (end - start) / 1_000_000));
+                }
+            }, stage.executor()));
+        }
+        return CompletableFuture.allOf(futures.values().toArray(CompletableFuture<?>[]::new)).thenApply(ignored -> {
+            synchronized (timings) {
+                List<StageTiming> sorted = new ArrayList<>(timings);
+                sorted.sort(Comparator.comparingLong(StageTiming::startMillis));
+                return sorted;
+            }
+        });
+    }
+}
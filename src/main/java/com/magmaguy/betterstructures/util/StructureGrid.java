@@ -0,0 +1,129 @@
+package com.magmaguy.betterstructures.util;
+
+/**
+ * Seeded diamond-grid placement for a single structure type in a single world.
+ * <p>
+ * Every grid cell owns one anchor chunk: the cell base (every other row shifted by half a cell) plus a seeded
+ * offset in {@code [-maxOffset, maxOffset]} on each axis. The offsets are derived from exactly the same
+ * {@code java.util.Random} sequence the plugin has always used ({@code new Random(typeSeed ^ packedBase)} followed by
+ * two {@code nextInt} calls), but the generator is stepped inline so no objects are allocated per lookup.
+ * Resolved cell offsets are kept in a small direct-mapped cache that is safe to read and write from several
+ * scanner threads at once.
+ */
+public final class StructureGrid {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+    // Mixed into every cache tag so an untouched (all zero) slot never reads back as a hit. The key it would match
+    // decodes to a cell base far outside the world border.
+    private static final long OCCUPIED = 0x9E3779B97F4A7C15L;
+    private static final int CACHE_SIZE = 1024;
+
+    private final long typeSeed;
+    private final int gridDistance;
+    private final int maxOffset;
+    private final long[] cacheTags = new long[CACHE_SIZE];
+    private final long[] cacheOffsets = new long[CACHE_SIZE];
+
+    public StructureGrid(long typeSeed, int gridDistance, int maxOffset) {
+        this.typeSeed = typeSeed;
+        this.gridDistance = gridDistance;
+        this.maxOffset = maxOffset;
+    }
+
+    /**
+     * Derives the per-type seed used by the grid. Kept identical to the original formula, including the int overflow
+     * of the hash multiplication, so existing worlds keep their structure positions.
+     */
+    public static long typeSeed(long worldSeed, String structureTypeName) {
+        return worldSeed + structureTypeName.hashCode() * 7919;
+    }
+
+    /**
+     * Checks whether the chunk at the given chunk coordinates is the anchor of any nearby grid cell.
+     *
+     * @param x Chunk X
+     * @param z Chunk Z
+     * @return True if a structure of this type should be attempted in the chunk
+     */
+    public boolean isAnchor(int x, int z) {
+        int reach = Math.max(maxOffset, 0);
+        for (int gridX = (x - maxOffset) / gridDistance - 1; gridX <= (x + maxOffset) / gridDistance + 1; gridX++) {
+            for (int gridZ = (z - maxOffset) / gridDistance - 1; gridZ <= (z + maxOffset) / gridDistance + 1; gridZ++) {
+                int baseX = gridX * gridDistance;
+                int baseZ = gridZ * gridDistance;
+                if (gridZ % 2 != 0) baseX += gridDistance / 2;
+
+                // A cell can only land on this chunk if its base is within the offset range, which rules out almost
+                // every cell before the generator has to be stepped
+                long deltaX = (long) x - baseX;
+                long deltaZ = (long) z - baseZ;
+                if (deltaX < -reach || deltaX > reach || deltaZ < -reach || deltaZ > reach) continue;
+
+                long offsets = cellOffsets(baseX, baseZ);
+                if (x == baseX + (int) (offsets >> 32) && z == baseZ + (int) offsets) return true;
+            }
+        }
+        return false;
+    }
+
+    private long cellOffsets(int baseX, int baseZ) {
+        long key = ((long) baseX << 32) | (baseZ & 0xFFFFFFFFL);
+        int slot = slot(key);
+        // Offsets and tag are read separately; a tag that does not decode back to this key is treated as a miss, so
+        // a slot being overwritten concurrently can only ever cost a recomputation
+        long offsets = cacheOffsets[slot];
+        if ((cacheTags[slot] ^ offsets ^ OCCUPIED) == key) return offsets;
+        offsets = computeOffsets(typeSeed ^ key, maxOffset);
+        cacheOffsets[slot] = offsets;
+        cacheTags[slot] = key ^ offsets ^ OCCUPIED;
+        return offsets;
+    }
+
+    private static int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 54) & (CACHE_SIZE - 1);
+    }
+
+    /**
+     * Produces the packed (offsetX, offsetZ) pair a {@code new Random(cellSeed)} would yield through two consecutive
+     * {@code nextInt(maxOffset * 2 + 1)} calls.
+     */
+    static long computeOffsets(long cellSeed, int maxOffset) {
+        if (maxOffset <= 0) return 0L;
+        int bound = maxOffset * 2 + 1;
+        long seed = (cellSeed ^ MULTIPLIER) & MASK;
+
+        // Inlined Random.nextInt(bound), including the rejection loop for non power of two bounds
+        int offsetX;
+        int offsetZ;
+        int r;
+        int m = bound - 1;
+
+        seed = (seed * MULTIPLIER + ADDEND) & MASK;
+        r = (int) (seed >>> 17);
+        if ((bound & m) == 0) {
+            r = (int) ((bound * (long) r) >> 31);
+        } else {
+            for (int u = r; u - (r = u % bound) + m < 0; ) {
+                seed = (seed * MULTIPLIER + ADDEND) & MASK;
+                u = (int) (seed >>> 17);
+            }
+        }
+        offsetX = r - maxOffset;
+
+        seed = (seed * MULTIPLIER + ADDEND) & MASK;
+        r = (int) (seed >>> 17);
+        if ((bound & m) == 0) {
+            r = (int) ((bound * (long) r) >> 31);
+        } else {
+            for (int u = r; u - (r = u % bound) + m < 0; ) {
+                seed = (seed * MULTIPLIER + ADDEND) & MASK;
+                u = (int) (seed >>> 17);
+            }
+        }
+        offsetZ = r - maxOffset;
+
+        return ((long) offsetX << 32) | (offsetZ & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,295 @@
+package com.magmaguy.betterstructures.util;
+
+import com.magmaguy.betterstructures.MetadataHandler;
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.magmacore.util.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Global queue that limits the number of concurrent structure paste operations.
+ * Each paste operation includes async chunk loading + FAWE block placement.
+ * <p>
+ * Queued pastes start by priority. Within a priority, worlds take turns so a busy world cannot starve the others, and
+ * the pastes of one world start in the order they were queued. Low priority pastes also wait until
+ * {@link PasteAdmission} admits them, a timer checks on them while any are queued. A queued paste is cancelled if the
+ * chunk that triggered it unloads before it starts, and all queued pastes of a world are cancelled when the world
+ * unloads. The queue is only touched on the main thread, calls from other threads are handed over to it.
+ */
+public final class StructurePasteQueue {
+    private static final Map<UUID, WorldQueue> worldQueues = new LinkedHashMap<>();
+    private static int queuedPastes = 0;
+    private static int activePastes = 0;
+    private static BukkitTask admissionTask = null;
+    // Bumped on shutdown so releases of pastes started before a reload do not free slots of the new queue
+    private static int generation = 0;
+    // Metrics
+    private static int peakQueueSize = 0;
+    private static long startedPastes = 0;
+    private static long cancelledPastes = 0;
+    private static long totalWaitNanos = 0;
+    private static long maxWaitNanos = 0;
+
+    private StructurePasteQueue() {
+    }
+
+    public enum Priority {
+        // Requested by a command, someone is waiting for it
+        HIGH,
+        NORMAL,
+        // Expensive paste held back by the PasteAdmission rules until the server catches up
+        LOW
+    }
+
+    public interface PasteJob {
+        /**
+         * Starts the paste. Called on the main thread.
+         *
+         * @param release Must be run exactly once, from any thread, when the paste has finished or failed
+         */
+        void start(Runnable release);
+
+        /**
+         * Called instead of {@link #start(Runnable)} when the paste is dropped before it could start.
+         *
+         * @param reason Why the paste was dropped
+         */
+        default void cancel(String reason) {
+        }
+    }
+
+    private record QueuedPaste(UUID worldUUID, boolean hasSourceChunk, int sourceChunkX, int sourceChunkZ,
+                               Priority priority, String description, PasteJob job, long queuedAt) {
+    }
+
+    private static class WorldQueue {
+        @SuppressWarnings("unchecked")
+        private final ArrayDeque<QueuedPaste>[] byPriority = new ArrayDeque[Priority.values().length];
+        private int size = 0;
+
+        private WorldQueue() {
+            for (int i = 0; i < byPriority.length; i++) byPriority[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Queues a structure paste, starting it right away if a slot is free.
+     *
+     * @param world       World the structure is pasted in
+     * @param sourceChunk Chunk whose generation triggered the paste, null if it was not triggered by a chunk
+     * @param priority    Priority of the paste
+     * @param description Human-readable location for debug logging (e.g., "123,64,-456")
+     * @param job         The paste operation
+     */
+    public static void enqueue(World world, Chunk sourceChunk, Priority priority, String description, PasteJob job) {
+        if (!Bukkit.isPrimaryThread()) {
+            Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> enqueue(world, sourceChunk, priority, description, job));
+            return;
+        }
+        if (sourceChunk != null && !sourceChunk.isLoaded()) {
+            cancel(new QueuedPaste(world.getUID(), true, sourceChunk.getX(), sourceChunk.getZ(), priority, description,
+                    job, System.nanoTime()), "source_chunk_unloaded");
+            return;
+        }
+        QueuedPaste queuedPaste = new QueuedPaste(world.getUID(), sourceChunk != null,
+                sourceChunk == null ? 0 : sourceChunk.getX(), sourceChunk == null ? 0 : sourceChunk.getZ(),
+                priority, description, job, System.nanoTime());
+        WorldQueue worldQueue = worldQueues.computeIfAbsent(world.getUID(), k -> new WorldQueue());
+        worldQueue.byPriority[priority.ordinal()].add(queuedPaste);
+        worldQueue.size++;
+        queuedPastes++;
+        peakQueueSize = Math.max(peakQueueSize, queuedPastes);
+        DeveloperLogger.debug("Structure paste queued at " + description +
+                " (queue size: " + queuedPastes + ", active: " + activePastes + ")");
+        tryExecuteNext();
+    }
+
+    /**
+     * Cancels the queued pastes triggered by a chunk that just unloaded.
+     */
+    public static void onChunkUnload(World world, int chunkX, int chunkZ) {
+        WorldQueue worldQueue = worldQueues.get(world.getUID());
+        if (worldQueue == null) return;
+        List<QueuedPaste> cancelled = new ArrayList<>();
+        for (ArrayDeque<QueuedPaste> queue : worldQueue.byPriority)
+            for (Iterator<QueuedPaste> iterator = queue.iterator(); iterator.hasNext(); ) {
+                QueuedPaste queuedPaste = iterator.next();
+                if (!queuedPaste.hasSourceChunk() ||
+                        queuedPaste.sourceChunkX() != chunkX || queuedPaste.sourceChunkZ() != chunkZ) continue;
+                iterator.remove();
+                cancelled.add(queuedPaste);
+            }
+        if (cancelled.isEmpty()) return;
+        worldQueue.size -= cancelled.size();
+        queuedPastes -= cancelled.size();
+        if (worldQueue.size == 0) worldQueues.remove(world.getUID());
+        for (QueuedPaste queuedPaste : cancelled) cancel(queuedPaste, "source_chunk_unloaded");
+    }
+
+    /**
+     * Cancels every queued paste of a world that is unloading.
+     */
+    public static void onWorldUnload(World world) {
+        WorldQueue worldQueue = worldQueues.remove(world.getUID());
+        if (worldQueue == null) return;
+        queuedPastes -= worldQueue.size;
+        for (ArrayDeque<QueuedPaste> queue : worldQueue.byPriority)
+            for (QueuedPaste queuedPaste : queue) cancel(queuedPaste, "world_unloaded");
+    }
+
+    private static void tryExecuteNext() {
+        int maxConcurrent = DefaultConfig.getMaxConcurrentStructurePastes();
+        while (maxConcurrent <= 0 || activePastes < maxConcurrent) {
+            QueuedPaste next = pollNext();
+            if (next == null) break;
+            activePastes++;
+            startedPastes++;
+            long waitNanos = System.nanoTime() - next.queuedAt();
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+            DeveloperLogger.debug("Structure paste started at " + next.description() +
+                    " (waited " + waitNanos / 1_000_000 + "ms, active: " + activePastes + ", queued: " + queuedPastes + ")");
+            Runnable release = createRelease(next);
+            try {
+                next.job().start(release);
+            } catch (Exception e) {
+                Logger.warn("启动结构粘贴失败 " + next.description() + ": " + e.getMessage());
+                e.printStackTrace();
+                release.run();
+            }
+        }
+        // Nothing else wakes the queue up when the server recovers while no paste is running
+        if (admissionTask == null && getDeferredQueueSize() > 0) admissionTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                if (getDeferredQueueSize() == 0) {
+                    cancel();
+                    admissionTask = null;
+                    return;
+                }
+                tryExecuteNext();
+            }
+        }.runTaskTimer(MetadataHandler.PLUGIN, 20, 20);
+    }
+
+    /**
+     * @return The oldest paste of the highest priority, taken from the world whose turn it is, or null
+     */
+    private static QueuedPaste pollNext() {
+        for (Priority priority : Priority.values())
+            for (Iterator<Map.Entry<UUID, WorldQueue>> iterator = worldQueues.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<UUID, WorldQueue> entry = iterator.next();
+                WorldQueue worldQueue = entry.getValue();
+                ArrayDeque<QueuedPaste> queue = worldQueue.byPriority[priority.ordinal()];
+                QueuedPaste queuedPaste = queue.peek();
+                if (queuedPaste == null) continue;
+                if (priority == Priority.LOW && !PasteAdmission.admitsDeferred(queuedPaste.queuedAt())) continue;
+                queue.poll();
+                worldQueue.size--;
+                queuedPastes--;
+                // The world goes to the back of the rotation, or leaves it when it has nothing left
+                iterator.remove();
+                if (worldQueue.size > 0) worldQueues.put(entry.getKey(), worldQueue);
+                return queuedPaste;
+            }
+        return null;
+    }
+
+    private static Runnable createRelease(QueuedPaste queuedPaste) {
+        int startedGeneration = generation;
+        AtomicBoolean released = new AtomicBoolean(false);
+        return () -> {
+            if (!released.compareAndSet(false, true)) return;
+            if (Bukkit.isPrimaryThread()) onPasteComplete(queuedPaste, startedGeneration);
+            // After disable shutdown() has already reset the queue, and tasks can no longer be scheduled
+            else if (MetadataHandler.PLUGIN.isEnabled())
+                Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> onPasteComplete(queuedPaste, startedGeneration));
+        };
+    }
+
+    private static void onPasteComplete(QueuedPaste queuedPaste, int startedGeneration) {
+        if (startedGeneration != generation) return;
+        activePastes--;
+        DeveloperLogger.debug("Structure paste completed at " + queuedPaste.description() +
+                " (active: " + activePastes + ", queued: " + queuedPastes + ")");
+        tryExecuteNext();
+    }
+
+    private static void cancel(QueuedPaste queuedPaste, String reason) {
+        cancelledPastes++;
+        DeveloperLogger.debug("Structure paste cancelled at " + queuedPaste.description() + " reason=" + reason);
+        try {
+            queuedPaste.job().cancel(reason);
+        } catch (Exception e) {
+            Logger.warn("取消结构粘贴失败 " + queuedPaste.description() + ": " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Clears the queue and resets counters. Called during plugin disable.
+     */
+    public static void shutdown() {
+        if (admissionTask != null) admissionTask.cancel();
+        admissionTask = null;
+        worldQueues.clear();
+        queuedPastes = 0;
+        activePastes = 0;
+        generation++;
+        peakQueueSize = 0;
+        startedPastes = 0;
+        cancelledPastes = 0;
+        totalWaitNanos = 0;
+        maxWaitNanos = 0;
+    }
+
+    public static int getActivePastes() {
+        return activePastes;
+    }
+
+    public static int getQueueSize() {
+        return queuedPastes;
+    }
+
+    /**
+     * @return Pastes held back by the admission rules
+     */
+    public static int getDeferredQueueSize() {
+        int deferred = 0;
+        for (WorldQueue worldQueue : worldQueues.values())
+            deferred += worldQueue.byPriority[Priority.LOW.ordinal()].size();
+        return deferred;
+    }
+
+    public static int getPeakQueueSize() {
+        return peakQueueSize;
+    }
+
+    public static long getStartedPastes() {
+        return startedPastes;
+    }
+
+    public static long getCancelledPastes() {
+        return cancelledPastes;
+    }
+
+    public static long getAverageWaitMillis() {
+        return startedPastes == 0 ? 0 : totalWaitNanos / startedPastes / 1_000_000;
+    }
+
+    public static long getMaxWaitMillis() {
+        return maxWaitNanos / 1_000_000;
+    }
+}
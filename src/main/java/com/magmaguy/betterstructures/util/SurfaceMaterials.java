@@ -8,6 +8,18 @@ public class SurfaceMaterials {
     }
 
     public static boolean ignorable(Material material) {
+        return MaterialClassTable.is(material, MaterialClassTable.IGNORABLE);
+    }
+
+    public static boolean isPedestalMaterial(Material material) {
+        return MaterialClassTable.is(material, MaterialClassTable.PEDESTAL);
+    }
+
+    /**
+     * Name based source of {@link #ignorable(Material)}, only evaluated once per material when the
+     * {@link MaterialClassTable} is built.
+     */
+    public static boolean classifyIgnorable(Material material) {
         return switch (material.name()) {
             case "ACACIA_LOG", "BIRCH_LOG", "DARK_OAK_LOG", "JUNGLE_LOG", "MANGROVE_LOG", "OAK_LOG", "SPRUCE_LOG",
                  "STRIPPED_ACACIA_LOG", "STRIPPED_BIRCH_LOG", "STRIPPED_DARK_OAK_LOG", "STRIPPED_JUNGLE_LOG",
@@ -42,7 +54,11 @@ public class SurfaceMaterials {
         };
     }
 
-    public static boolean isPedestalMaterial(Material material){
+    /**
+     * Source of {@link #isPedestalMaterial(Material)}, only evaluated once per material when the
+     * {@link MaterialClassTable} is built.
+     */
+    public static boolean classifyPedestal(Material material) {
         return switch (material) {
             case DIRT, COARSE_DIRT, ROOTED_DIRT, STONE, SNOW_BLOCK, POWDER_SNOW, SNOW, NETHERRACK, SOUL_SAND, END_STONE,
                  DIRT_PATH, GRASS_BLOCK, GRAVEL, DEEPSLATE, DIORITE, CLAY, SAND, SANDSTONE, TERRACOTTA,
@@ -0,0 +1,100 @@
+package com.magmaguy.betterstructures.util;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel driven by a single repeating task. Entries are dropped into the bucket of the tick they expire
+ * on, and delays longer than one wheel revolution wait out the extra laps in place. Expired entries are handed out at
+ * most {@code budget} per tick; any left over stay queued and are served first on the following ticks.
+ * <p>
+ * Not thread safe, meant to be owned by the main thread.
+ *
+ * @param <T> Entry payload
+ */
+public final class TimingWheel<T> {
+    private final ArrayDeque<Slot<T>>[] buckets;
+    private final int mask;
+    private final ArrayDeque<T> expired = new ArrayDeque<>();
+    private long currentTick = 0;
+    private int size = 0;
+
+    /**
+     * @param bucketCount Number of buckets, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(int bucketCount) {
+        int capacity = Integer.highestOneBit(Math.max(2, bucketCount) - 1) << 1;
+        buckets = new ArrayDeque[capacity];
+        for (int i = 0; i < capacity; i++) buckets[i] = new ArrayDeque<>();
+        mask = capacity - 1;
+    }
+
+    /**
+     * Schedules an entry to expire after the given amount of ticks. Delays under one tick expire on the next tick.
+     */
+    public void schedule(T value, int delayTicks) {
+        long delay = Math.max(1, delayTicks);
+        long expiryTick = currentTick + delay;
+        buckets[(int) (expiryTick & mask)].add(new Slot<>(value, (delay - 1) / buckets.length));
+        size++;
+    }
+
+    /**
+     * Advances the wheel by one tick and passes up to {@code budget} expired entries to the consumer.
+     *
+     * @return Number of entries passed to the consumer
+     */
+    public int tick(int budget, Consumer<T> consumer) {
+        currentTick++;
+        ArrayDeque<Slot<T>> bucket = buckets[(int) (currentTick & mask)];
+        int bucketSize = bucket.size();
+        for (int i = 0; i < bucketSize; i++) {
+            Slot<T> slot = bucket.poll();
+            if (slot.remainingLaps > 0) {
+                slot.remainingLaps--;
+                bucket.add(slot);
+            } else {
+                expired.add(slot.value);
+            }
+        }
+        int handled = 0;
+        while (handled < budget && !expired.isEmpty()) {
+            // Count it out before running the consumer so entries it reschedules are tracked correctly
+            size--;
+            handled++;
+            consumer.accept(expired.poll());
+        }
+        return handled;
+    }
+
+    /**
+     * @return Entries waiting in the wheel, including expired entries held back by the per tick budget
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Expired entries held back by the per tick budget
+     */
+    public int backlog() {
+        return expired.size();
+    }
+
+    public void clear() {
+        for (ArrayDeque<Slot<T>> bucket : buckets) bucket.clear();
+        expired.clear();
+        size = 0;
+    }
+
+    private static final class Slot<T> {
+        private final T value;
+        private long remainingLaps;
+
+        private Slot(T value, long remainingLaps) {
+            this.value = value;
+            this.remainingLaps = remainingLaps;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.magmaguy.betterstructures.util;
+
+/**
+ * Token bucket rate limit: tokens refill continuously at a fixed rate up to a burst capacity, and every permitted
+ * action takes one. Time is passed in by the caller so the bucket stays deterministic. Not thread safe.
+ * <p>
+ * Tokens are kept as nanoseconds of accumulated credit, so refilling in many small steps never loses a token to
+ * rounding.
+ */
+public final class TokenBucket {
+    private final long nanosPerToken;
+    private final long capacityNanos;
+    private long creditNanos;
+    private long lastRefillNanos;
+
+    /**
+     * @param tokensPerSecond Refill rate, must be positive
+     * @param capacity        Most tokens that can be saved up, the bucket starts full
+     * @param nowNanos        Current time as given by {@link System#nanoTime()}
+     */
+    public TokenBucket(double tokensPerSecond, int capacity, long nowNanos) {
+        this.nanosPerToken = Math.max(1, Math.round(1_000_000_000D / tokensPerSecond));
+        this.capacityNanos = nanosPerToken * Math.max(1, capacity);
+        this.creditNanos = capacityNanos;
+        this.lastRefillNanos = nowNanos;
+    }
+
+    /**
+     * @return True if a token was available and has been taken
+     */
+    public boolean tryAcquire(long nowNanos) {
+        refill(nowNanos);
+        if (creditNanos < nanosPerToken) return false;
+        creditNanos -= nanosPerToken;
+        return true;
+    }
+
+    public double getAvailable(long nowNanos) {
+        refill(nowNanos);
+        return (double) creditNanos / nanosPerToken;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - lastRefillNanos;
+        if (elapsed <= 0) return;
+        creditNanos = Math.min(capacityNanos, creditNanos + elapsed);
+        lastRefillNanos = nowNanos;
+    }
+}
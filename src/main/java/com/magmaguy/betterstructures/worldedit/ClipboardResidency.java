@@ -0,0 +1,364 @@
+package com.magmaguy.betterstructures.worldedit;
+
+import com.magmaguy.betterstructures.MetadataHandler;
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.betterstructures.util.DeveloperLogger;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.math.BlockVector3;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Keeps the parsed clipboards of structures and modules in memory, least recently used first out.
+ * <p>
+ * Containers only hold the file and content key of their schematic, the clipboard itself is leased from here when a
+ * paste needs it and parsed again if it was evicted. Clipboards are keyed by the content hash of their file, so
+ * identical files in different content packs and the rotations of a module share one clipboard. The {@link PastePlan}
+ * compiled from a clipboard is kept with it and counted in the same budget. The estimated size of the resident
+ * clipboards and plans is kept under {@code clipboardResidency.maxMemoryMegabytes} by evicting the least recently
+ * used ones; evicted clipboards stay valid until the last {@link Lease} on them is released. With
+ * {@code clipboardResidency.diskBacked} and FAWE installed, blocks are kept in FAWE's memory-mapped disk clipboards
+ * under {@code cache/clipboards} instead of the heap, closed and deleted once they are evicted and no longer leased. Safe to call from any thread, concurrent requests for the same
+ * clipboard parse it once.
+ */
+public final class ClipboardResidency {
+    // Rough heap cost of one block of an in-memory clipboard
+    private static final long BYTES_PER_BLOCK = 4;
+    // Resolved once, null when FAWE is not installed
+    private static final MethodHandle DISK_CLIPBOARD;
+
+    static {
+        MethodHandle diskClipboard = null;
+        try {
+            diskClipboard = MethodHandles.publicLookup().findConstructor(
+                    Class.forName("com.fastasyncworldedit.core.extent.clipboard.DiskOptimizedClipboard"),
+                    MethodType.methodType(void.class, BlockVector3.class, File.class));
+        } catch (Throwable throwable) {
+            DeveloperLogger.debug("ClipboardResidency: FAWE disk clipboards unavailable, clipboards stay on the heap: " + throwable);
+        }
+        DISK_CLIPBOARD = diskClipboard;
+    }
+
+    private static final Object lock = new Object();
+    // Access ordered, the eldest entry is the least recently used
+    private static final LinkedHashMap<String, Resident> residents = new LinkedHashMap<>(16, 0.75f, true);
+    private static final Map<String, CompletableFuture<Clipboard>> loading = new HashMap<>();
+    private static long residentBytes = 0;
+    private static final AtomicLong diskClipboardCounter = new AtomicLong();
+    // Metrics
+    private static long hits = 0;
+    private static long loads = 0;
+    private static long evictions = 0;
+    private static long totalLoadNanos = 0;
+    private static long maxLoadNanos = 0;
+
+    private ClipboardResidency() {
+    }
+
+    private static final class Resident {
+        private final Clipboard clipboard;
+        private final File diskFile;
+        private PastePlan pastePlan = null;
+        private long estimatedBytes;
+        private int leases = 0;
+        // Evicted residents are discarded once their last lease is released
+        private boolean evicted = false;
+
+        private Resident(Clipboard clipboard, long estimatedBytes, File diskFile) {
+            this.clipboard = clipboard;
+            this.estimatedBytes = estimatedBytes;
+            this.diskFile = diskFile;
+        }
+    }
+
+    /**
+     * Keeps a clipboard open while it is in use, even if it is evicted in the meantime.
+     */
+    public static final class Lease {
+        private final Resident resident;
+        private boolean released = false;
+
+        private Lease(Resident resident) {
+            this.resident = resident;
+        }
+
+        public Clipboard getClipboard() {
+            return resident.clipboard;
+        }
+
+        /**
+         * Releases the lease, the clipboard must not be used afterwards. Safe to call more than once and from any
+         * thread.
+         */
+        public void release() {
+            synchronized (lock) {
+                if (released) return;
+                released = true;
+                resident.leases--;
+                if (resident.evicted && resident.leases == 0) discard(resident);
+            }
+        }
+    }
+
+    /**
+     * Leases a clipboard, parsing it if it is not resident. Release the lease once the paste is done with it.
+     *
+     * @param contentKey    Content hash of the schematic file, identical files share one clipboard
+     * @param schematicFile File to parse the clipboard from if it is not resident
+     * @return The lease, null if the file can't be parsed
+     */
+    public static Lease acquire(String contentKey, File schematicFile) {
+        CompletableFuture<Boolean> pending;
+        synchronized (lock) {
+            Resident resident = residents.get(contentKey);
+            if (resident != null) {
+                hits++;
+                return lease(resident);
+            }
+            pending = loading.get(contentKey);
+            if (pending == null) loading.put(contentKey, new CompletableFuture<>());
+        }
+        // Another thread is already parsing this file, lease what it made resident
+        if (pending != null) {
+            if (!pending.join()) return null;
+            synchronized (lock) {
+                Resident resident = residents.get(contentKey);
+                if (resident != null) return lease(resident);
+            }
+            // Evicted right after it was parsed
+            return acquire(contentKey, schematicFile);
+        }
+
+        Clipboard clipboard = null;
+        Lease lease = null;
+        File diskFile = null;
+        Clipboard[] diskClipboard = new Clipboard[1];
+        long start = System.nanoTime();
+        try {
+            if (DefaultConfig.isDiskBackedClipboards() && DISK_CLIPBOARD != null)
+                diskFile = new File(getDiskDirectory(), contentKey + "-" + diskClipboardCounter.incrementAndGet() + ".bcd");
+            clipboard = Schematic.load(schematicFile, diskFile == null ? null : diskClipboardProvider(diskFile, diskClipboard));
+        } finally {
+            long loadNanos = System.nanoTime() - start;
+            CompletableFuture<Boolean> future;
+            synchronized (lock) {
+                future = loading.remove(contentKey);
+                if (clipboard != null) {
+                    loads++;
+                    totalLoadNanos += loadNanos;
+                    maxLoadNanos = Math.max(maxLoadNanos, loadNanos);
+                    // Leased under the lock, so an eviction by another thread cannot close it under the caller
+                    lease = lease(insert(contentKey, clipboard, diskFile));
+                }
+            }
+            if (clipboard == null && diskFile != null) {
+                // A failed read can leave the disk clipboard it was reading into open
+                if (diskClipboard[0] != null) close(diskClipboard[0]);
+                deleteDiskFile(diskFile);
+            }
+            if (future != null) future.complete(clipboard != null);
+        }
+        DeveloperLogger.debug("Parsed " + schematicFile.getName() + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        return lease;
+    }
+
+    // Holding the lock
+    private static Lease lease(Resident resident) {
+        resident.leases++;
+        return new Lease(resident);
+    }
+
+    /**
+     * Makes a clipboard that was parsed during startup resident, so its first paste does not parse it again.
+     */
+    public static void offer(String contentKey, Clipboard clipboard) {
+        synchronized (lock) {
+            if (residents.containsKey(contentKey)) return;
+            insert(contentKey, clipboard, null);
+        }
+    }
+
+    /**
+     * @return The paste plan compiled from the resident clipboard, null if there is none or it was evicted
+     */
+    public static PastePlan getPastePlan(String contentKey) {
+        synchronized (lock) {
+            Resident resident = residents.get(contentKey);
+            return resident == null ? null : resident.pastePlan;
+        }
+    }
+
+    /**
+     * Keeps a paste plan with the clipboard it was compiled from, evicting other entries if it exceeds the budget.
+     *
+     * @param lease Lease on the clipboard the plan was compiled from
+     */
+    public static void attachPastePlan(String contentKey, Lease lease, PastePlan pastePlan) {
+        synchronized (lock) {
+            Resident resident = lease.resident;
+            // Evicted while the plan was compiled, the plan is compiled again with the clipboard
+            if (resident.evicted || resident.pastePlan != null) return;
+            resident.pastePlan = pastePlan;
+            resident.estimatedBytes += pastePlan.getEstimatedBytes();
+            residentBytes += pastePlan.getEstimatedBytes();
+            evictOverBudget(contentKey);
+        }
+    }
+
+    private static Function<BlockVector3, Clipboard> diskClipboardProvider(File diskFile, Clipboard[] created) {
+        return dimensions -> {
+            try {
+                created[0] = (Clipboard) DISK_CLIPBOARD.invoke(dimensions, diskFile);
+                return created[0];
+            } catch (Throwable throwable) {
+                throw new IllegalStateException("Could not create disk clipboard " + diskFile.getName(), throwable);
+            }
+        };
+    }
+
+    private static File getDiskDirectory() {
+        File directory = new File(MetadataHandler.PLUGIN.getDataFolder(), "cache" + File.separatorChar + "clipboards");
+        directory.mkdirs();
+        return directory;
+    }
+
+    // Holding the lock
+    private static Resident insert(String contentKey, Clipboard clipboard, File diskFile) {
+        BlockVector3 dimensions = clipboard.getDimensions();
+        long estimatedBytes = (long) dimensions.x() * dimensions.y() * dimensions.z() * BYTES_PER_BLOCK;
+        Resident resident = new Resident(clipboard, estimatedBytes, diskFile);
+        Resident replaced = residents.put(contentKey, resident);
+        if (replaced != null) {
+            residentBytes -= replaced.estimatedBytes;
+            evict(replaced);
+        }
+        residentBytes += estimatedBytes;
+        evictOverBudget(contentKey);
+        return resident;
+    }
+
+    // Holding the lock
+    private static void evictOverBudget(String contentKey) {
+        long maxBytes = DefaultConfig.getMaxClipboardMemoryMegabytes() * 1024L * 1024L;
+        if (maxBytes <= 0) return;
+        Iterator<Map.Entry<String, Resident>> iterator = residents.entrySet().iterator();
+        // The entry just inserted stays, even if it is larger than the whole budget on its own
+        while (residentBytes > maxBytes && residents.size() > 1 && iterator.hasNext()) {
+            Map.Entry<String, Resident> eldest = iterator.next();
+            if (eldest.getKey().equals(contentKey)) continue;
+            iterator.remove();
+            residentBytes -= eldest.getValue().estimatedBytes;
+            evictions++;
+            evict(eldest.getValue());
+        }
+    }
+
+    // Holding the lock
+    private static void evict(Resident resident) {
+        resident.evicted = true;
+        // Leased clipboards are discarded when their last lease is released
+        if (resident.leases == 0) discard(resident);
+    }
+
+    // Holding the lock
+    private static void discard(Resident resident) {
+        if (resident.diskFile == null) return;
+        close(resident.clipboard);
+        deleteDiskFile(resident.diskFile);
+    }
+
+    private static void close(Clipboard clipboard) {
+        // FAWE clipboards hold a file channel and a mapping until they are closed
+        if (!(clipboard instanceof Closeable closeable)) return;
+        try {
+            closeable.close();
+        } catch (IOException | RuntimeException exception) {
+            DeveloperLogger.debug("ClipboardResidency: failed to close a disk clipboard: " + exception);
+        }
+    }
+
+    private static void deleteDiskFile(File diskFile) {
+        if (!diskFile.delete()) diskFile.deleteOnExit();
+    }
+
+    public static int getResidentCount() {
+        synchronized (lock) {
+            return residents.size();
+        }
+    }
+
+    public static long getResidentBytes() {
+        synchronized (lock) {
+            return residentBytes;
+        }
+    }
+
+    public static long getHits() {
+        synchronized (lock) {
+            return hits;
+        }
+    }
+
+    public static long getLoads() {
+        synchronized (lock) {
+            return loads;
+        }
+    }
+
+    public static long getEvictions() {
+        synchronized (lock) {
+            return evictions;
+        }
+    }
+
+    public static double getAverageLoadMillis() {
+        synchronized (lock) {
+            return loads == 0 ? 0 : totalLoadNanos / (double) loads / 1_000_000d;
+        }
+    }
+
+    public static double getMaxLoadMillis() {
+        synchronized (lock) {
+            return maxLoadNanos / 1_000_000d;
+        }
+    }
+
+    /**
+     * Drops every resident clipboard and resets counters, leased ones are discarded when released. Called during
+     * plugin disable.
+     */
+    public static void shutdown() {
+        Set<File> leasedDiskFiles = new HashSet<>();
+        synchronized (lock) {
+            for (Resident resident : residents.values()) {
+                evict(resident);
+                if (resident.leases > 0 && resident.diskFile != null) leasedDiskFiles.add(resident.diskFile);
+            }
+            residents.clear();
+            residentBytes = 0;
+            hits = 0;
+            loads = 0;
+            evictions = 0;
+            totalLoadNanos = 0;
+            maxLoadNanos = 0;
+        }
+        File[] diskFiles = new File(MetadataHandler.PLUGIN.getDataFolder(), "cache" + File.separatorChar + "clipboards").listFiles();
+        if (diskFiles != null)
+            for (File diskFile : diskFiles)
+                if (!leasedDiskFiles.contains(diskFile)) deleteDiskFile(diskFile);
+    }
+}
@@ -0,0 +1,154 @@
+package com.magmaguy.betterstructures.worldedit;
+
+import com.magmaguy.betterstructures.MetadataHandler;
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.betterstructures.util.DeveloperLogger;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.world.World;
+import org.bukkit.Bukkit;
+import org.bukkit.Material;
+import org.bukkit.plugin.IllegalPluginAccessException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Pastes a large plan a few chunks at a time instead of in one EditSession.
+ * <p>
+ * The plan is split into {@link PasteSlices} of {@code pastePerformance.incrementalPasteChunksPerSlice} chunk columns.
+ * Each slice gets its own EditSession that is closed, and so flushed to the world, before the next slice starts
+ * {@code pastePerformance.incrementalPasteSliceIntervalTicks} later. The FAWE buffers of a paste never hold more than
+ * one slice, and the chunk sends are spread over the paste instead of arriving in one burst. The finish callback runs
+ * once, after the last slice or the first failure, which includes the plugin being disabled between two slices.
+ * Slices run on async threads, one after the other.
+ */
+public final class IncrementalPaste {
+    private static final Set<IncrementalPaste> activePastes = ConcurrentHashMap.newKeySet();
+
+    private final World weWorld;
+    private final PastePlan pastePlan;
+    private final int cornerX;
+    private final int cornerY;
+    private final int cornerZ;
+    private final Function<Boolean, Material> pedestalMaterialProvider;
+    private final Schematic.TerrainFinish terrainFinish;
+    private final String description;
+    // Null on success, the failure reason otherwise
+    private final Consumer<String> onFinish;
+    private final SectionBatches blockBatches;
+    private final SectionBatches pedestalBatches;
+    private final PasteSlices slices;
+    // Slice that applies the terrain finish of each column (x * sizeZ + z), the one writing its chunk
+    private final int[] columnSlices;
+    private volatile int completedSlices = 0;
+    private volatile int pastedBlocks = 0;
+
+    IncrementalPaste(World weWorld, PastePlan pastePlan, int cornerX, int cornerY, int cornerZ,
+                     Function<Boolean, Material> pedestalMaterialProvider, Schematic.TerrainFinish terrainFinish,
+                     String description, Consumer<String> onFinish) {
+        this.weWorld = weWorld;
+        this.pastePlan = pastePlan;
+        this.cornerX = cornerX;
+        this.cornerY = cornerY;
+        this.cornerZ = cornerZ;
+        this.pedestalMaterialProvider = pedestalMaterialProvider;
+        this.terrainFinish = terrainFinish;
+        this.description = description + " at " + cornerX + "," + cornerY + "," + cornerZ;
+        this.onFinish = onFinish;
+        // Slices are whole chunk columns, so sections are always grouped chunk by chunk here
+        blockBatches = pastePlan.groupBySection(cornerX, cornerY, cornerZ, SectionBatches.Sequence.CHUNK_COLUMNS);
+        pedestalBatches = pastePlan.groupPedestalsBySection(cornerX, cornerY, cornerZ, SectionBatches.Sequence.CHUNK_COLUMNS);
+        slices = PasteSlices.plan(blockBatches, pedestalBatches, DefaultConfig.getIncrementalPasteChunksPerSlice());
+        columnSlices = assignColumns();
+    }
+
+    private int[] assignColumns() {
+        Map<Long, Integer> chunkSlices = new HashMap<>();
+        for (int slice = 0; slice < slices.getSliceCount(); slice++)
+            for (int section = slices.getBlockSectionStart(slice); section < slices.getBlockSectionEnd(slice); section++)
+                chunkSlices.put(chunkKey(blockBatches.getSectionX(section), blockBatches.getSectionZ(section)), slice);
+        int[] assigned = new int[pastePlan.getSizeX() * pastePlan.getSizeZ()];
+        for (int x = 0; x < pastePlan.getSizeX(); x++)
+            for (int z = 0; z < pastePlan.getSizeZ(); z++)
+                // Chunks the plan writes nothing to are finished with the last slice
+                assigned[x * pastePlan.getSizeZ() + z] = chunkSlices.getOrDefault(
+                        chunkKey((cornerX + x) >> 4, (cornerZ + z) >> 4), slices.getSliceCount() - 1);
+        return assigned;
+    }
+
+    private static long chunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Pastes the first slice on the calling thread and schedules the rest.
+     */
+    void start() {
+        activePastes.add(this);
+        DeveloperLogger.debug("Incremental paste of " + description + " started: " + pastePlan.getBlockCount()
+                + " blocks in " + slices.getSliceCount() + " slices");
+        pasteSlice(0);
+    }
+
+    private void pasteSlice(int slice) {
+        try (EditSession editSession = Schematic.newPasteSession(weWorld)) {
+            for (int section = slices.getBlockSectionStart(slice); section < slices.getBlockSectionEnd(slice); section++) {
+                Schematic.writeSection(editSession, pastePlan, blockBatches, section, cornerX, cornerY, cornerZ);
+                pastedBlocks += blockBatches.getSectionEnd(section) - blockBatches.getSectionStart(section);
+            }
+            for (int section = slices.getPedestalSectionStart(slice); section < slices.getPedestalSectionEnd(slice); section++)
+                Schematic.writePedestalSection(editSession, pastePlan, pedestalBatches, section, cornerX, cornerY, cornerZ,
+                        pedestalMaterialProvider);
+            for (int x = 0; x < pastePlan.getSizeX(); x++)
+                for (int z = 0; z < pastePlan.getSizeZ(); z++)
+                    if (columnSlices[x * pastePlan.getSizeZ() + z] == slice)
+                        Schematic.finishColumn(editSession, pastePlan, x, z, cornerX, cornerY, cornerZ,
+                                pedestalMaterialProvider, terrainFinish);
+        } catch (Exception e) {
+            activePastes.remove(this);
+            onFinish.accept(Schematic.faweFailureReason(e));
+            return;
+        }
+        completedSlices = slice + 1;
+        DeveloperLogger.debug("Incremental paste of " + description + ": slice " + completedSlices + "/"
+                + slices.getSliceCount() + " (" + pastedBlocks + "/" + pastePlan.getBlockCount() + " blocks)");
+        if (completedSlices == slices.getSliceCount()) {
+            activePastes.remove(this);
+            onFinish.accept(null);
+            return;
+        }
+        try {
+            Bukkit.getScheduler().runTaskLaterAsynchronously(MetadataHandler.PLUGIN, () -> pasteSlice(slice + 1),
+                    Math.max(1, DefaultConfig.getIncrementalPasteSliceIntervalTicks()));
+        } catch (IllegalPluginAccessException e) {
+            // Disabled while the paste was running, it fails here so its chunk tickets and queue slot are released
+            activePastes.remove(this);
+            onFinish.accept("plugin_disabled");
+        }
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getCompletedSlices() {
+        return completedSlices;
+    }
+
+    public int getSliceCount() {
+        return slices.getSliceCount();
+    }
+
+    /**
+     * @return Incremental pastes still in progress
+     */
+    public static List<IncrementalPaste> getActivePastes() {
+        return new ArrayList<>(activePastes);
+    }
+}
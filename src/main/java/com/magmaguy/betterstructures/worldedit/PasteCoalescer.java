@@ -0,0 +1,320 @@
+package com.magmaguy.betterstructures.worldedit;
+
+import com.magmaguy.betterstructures.MetadataHandler;
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.betterstructures.schematics.SchematicContainer;
+import com.magmaguy.betterstructures.util.ChunkLoadRateLimiter;
+import com.magmaguy.betterstructures.util.ChunkTicketRegistry;
+import com.magmaguy.betterstructures.util.DeveloperLogger;
+import com.magmaguy.betterstructures.util.StructurePasteQueue;
+import com.magmaguy.magmacore.util.Logger;
+import com.sk89q.worldedit.EditSession;
+import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.math.BlockVector3;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Merges generated structure pastes that land close to each other into one FAWE edit.
+ * <p>
+ * Pastes are grouped per region window of {@code pastePerformance.coalesceRegionChunks} chunks and held for up to
+ * {@code pastePerformance.coalesceWindowTicks}, or until {@code pastePerformance.coalesceMaxStructures} have joined.
+ * A group then takes a single slot of the {@link StructurePasteQueue}: the chunks of all its structures are loaded
+ * and ticketed once, and the structures are written one after the other in one EditSession that is flushed once. Each
+ * structure still gets its own {@link Schematic.PasteResult}, a structure whose chunks fail validation or whose writes
+ * throw fails alone. Command pastes and structures large enough for an {@link IncrementalPaste} are never held.
+ * Placement decisions are made before a paste gets here and are not affected. Main thread only, calls from other
+ * threads are handed over to it.
+ */
+public final class PasteCoalescer {
+    // Insertion ordered, so the oldest group is always first
+    private static final Map<RegionKey, PendingGroup> pendingGroups = new LinkedHashMap<>();
+    private static BukkitTask task = null;
+    private static int pendingPastes = 0;
+    // Metrics
+    private static long coalescedGroups = 0;
+    private static long coalescedPastes = 0;
+
+    private PasteCoalescer() {
+    }
+
+    private record RegionKey(UUID worldUUID, int regionX, int regionZ) {
+    }
+
+    private static class PendingGroup {
+        private final World world;
+        private final List<Schematic.PasteRequest> pasteRequests = new ArrayList<>();
+        private int waitedTicks = 0;
+
+        private PendingGroup(World world) {
+            this.world = world;
+        }
+    }
+
+    /**
+     * @return Whether a paste can wait for neighbours to merge with
+     */
+    static boolean accepts(SchematicContainer schematicContainer, StructurePasteQueue.Priority priority) {
+        // Someone is waiting for command pastes
+        if (priority != StructurePasteQueue.Priority.NORMAL) return false;
+        if (DefaultConfig.getCoalesceRegionChunks() <= 0 || DefaultConfig.getCoalesceMaxStructures() <= 1) return false;
+        // The volume bounds the block count, so this never needs the paste plan
+        int incrementalPasteMinBlocks = DefaultConfig.getIncrementalPasteMinBlocks();
+        BlockVector3 dimensions = schematicContainer.getDimensions();
+        return incrementalPasteMinBlocks <= 0 ||
+                (long) dimensions.x() * dimensions.y() * dimensions.z() < incrementalPasteMinBlocks;
+    }
+
+    /**
+     * Adds a paste to the group of its region window, queueing the group once it is full.
+     */
+    static void submit(World world, Schematic.PasteRequest pasteRequest) {
+        if (!Bukkit.isPrimaryThread()) {
+            Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> submit(world, pasteRequest));
+            return;
+        }
+        int regionChunks = Math.max(1, DefaultConfig.getCoalesceRegionChunks());
+        RegionKey regionKey = new RegionKey(world.getUID(),
+                Math.floorDiv(pasteRequest.location().getBlockX() >> 4, regionChunks),
+                Math.floorDiv(pasteRequest.location().getBlockZ() >> 4, regionChunks));
+        PendingGroup pendingGroup = pendingGroups.computeIfAbsent(regionKey, k -> new PendingGroup(world));
+        pendingGroup.pasteRequests.add(pasteRequest);
+        pendingPastes++;
+        if (pendingGroup.pasteRequests.size() >= DefaultConfig.getCoalesceMaxStructures()) {
+            pendingGroups.remove(regionKey);
+            enqueue(pendingGroup);
+            return;
+        }
+        if (task == null) task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }.runTaskTimer(MetadataHandler.PLUGIN, 1, 1);
+    }
+
+    private static void tick() {
+        int windowTicks = Math.max(0, DefaultConfig.getCoalesceWindowTicks());
+        List<PendingGroup> readyGroups = new ArrayList<>();
+        for (Iterator<PendingGroup> iterator = pendingGroups.values().iterator(); iterator.hasNext(); ) {
+            PendingGroup pendingGroup = iterator.next();
+            if (++pendingGroup.waitedTicks < windowTicks) continue;
+            iterator.remove();
+            readyGroups.add(pendingGroup);
+        }
+        for (PendingGroup pendingGroup : readyGroups) enqueue(pendingGroup);
+        if (pendingGroups.isEmpty() && task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private static void enqueue(PendingGroup pendingGroup) {
+        List<Schematic.PasteRequest> pasteRequests = pendingGroup.pasteRequests;
+        pendingPastes -= pasteRequests.size();
+        // Nothing joined it, the paste goes through the queue on its own and keeps its source chunk cancellation
+        if (pasteRequests.size() == 1) {
+            Schematic.enqueue(pendingGroup.world, pasteRequests.get(0), StructurePasteQueue.Priority.NORMAL);
+            return;
+        }
+        coalescedGroups++;
+        coalescedPastes += pasteRequests.size();
+        Location first = pasteRequests.get(0).location();
+        String description = pasteRequests.size() + " structures from " +
+                first.getBlockX() + "," + first.getBlockY() + "," + first.getBlockZ();
+        StructurePasteQueue.enqueue(pendingGroup.world, null, StructurePasteQueue.Priority.NORMAL, description,
+                new StructurePasteQueue.PasteJob() {
+                    @Override
+                    public void start(Runnable release) {
+                        startGroup(pendingGroup.world, pasteRequests, description, release);
+                    }
+
+                    @Override
+                    public void cancel(String reason) {
+                        for (Schematic.PasteRequest pasteRequest : pasteRequests)
+                            deliver(pasteRequest, Schematic.failureResult("paste_cancelled:" + reason));
+                    }
+                });
+    }
+
+    private static void startGroup(World world, List<Schematic.PasteRequest> queuedRequests, String description,
+                                   Runnable release) {
+        // The queue only knows the group, so the source chunks of its pastes are checked here
+        List<Schematic.PasteRequest> pasteRequests = new ArrayList<>();
+        for (Schematic.PasteRequest pasteRequest : queuedRequests) {
+            if (pasteRequest.sourceChunk() != null && !pasteRequest.sourceChunk().isLoaded())
+                deliver(pasteRequest, Schematic.failureResult("paste_cancelled:source_chunk_unloaded"));
+            else pasteRequests.add(pasteRequest);
+        }
+        if (pasteRequests.isEmpty()) {
+            release.run();
+            return;
+        }
+
+        List<Set<Long>> requiredChunks = new ArrayList<>(pasteRequests.size());
+        Set<Long> groupChunks = new HashSet<>();
+        for (Schematic.PasteRequest pasteRequest : pasteRequests) {
+            Set<Long> chunks = Schematic.calculateRequiredChunks(pasteRequest.schematicContainer().getDimensions(),
+                    pasteRequest.footprint(), pasteRequest.location(), pasteRequest.schematicOffset());
+            requiredChunks.add(chunks);
+            groupChunks.addAll(chunks);
+        }
+
+        // Chunks shared by several structures are loaded once
+        CompletableFuture<Void> chunkLoads = ChunkLoadRateLimiter.loadChunks(world, groupChunks, ChunkLoadRateLimiter.Priority.PASTE);
+        Runnable afterChunkLoads = () -> {
+            List<Schematic.PasteRequest> readyRequests = new ArrayList<>();
+            List<Set<Long>> readyRequestChunks = new ArrayList<>();
+            Set<Long> readyChunks = new HashSet<>();
+            for (int i = 0; i < pasteRequests.size(); i++) {
+                Schematic.PasteRequest pasteRequest = pasteRequests.get(i);
+                String validationFailure = Schematic.validateRequiredChunks(world, requiredChunks.get(i));
+                if (validationFailure != null) {
+                    deliver(pasteRequest, Schematic.failureResult("chunk_validation_failed:" + validationFailure));
+                    continue;
+                }
+                if (pasteRequest.prePasteCallback() != null) pasteRequest.prePasteCallback().run();
+                readyRequests.add(pasteRequest);
+                readyRequestChunks.add(requiredChunks.get(i));
+                readyChunks.addAll(requiredChunks.get(i));
+            }
+            if (readyRequests.isEmpty()) {
+                release.run();
+                return;
+            }
+            ChunkTicketRegistry.Lease ticketLease = ChunkTicketRegistry.acquire(world, readyChunks, "paste " + description);
+            executeGroup(world, readyRequests, readyRequestChunks, ticketLease, release);
+        };
+
+        if (chunkLoads.isDone() && !chunkLoads.isCompletedExceptionally()) {
+            afterChunkLoads.run();
+            return;
+        }
+        DeveloperLogger.debug("Loading chunks before pasting " + description + " (required: " + groupChunks.size() + ")");
+        chunkLoads.whenComplete((ignored, throwable) -> Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> {
+            if (throwable != null) {
+                for (Schematic.PasteRequest pasteRequest : pasteRequests)
+                    deliver(pasteRequest, Schematic.failureResult("chunk_load_failed:" + throwable.getMessage()));
+                release.run();
+                return;
+            }
+            afterChunkLoads.run();
+        }));
+    }
+
+    private static void executeGroup(World world, List<Schematic.PasteRequest> pasteRequests,
+                                     List<Set<Long>> requiredChunks, ChunkTicketRegistry.Lease ticketLease,
+                                     Runnable release) {
+        Bukkit.getScheduler().runTaskAsynchronously(MetadataHandler.PLUGIN, () -> {
+            String[] failureReasons = new String[pasteRequests.size()];
+            String sessionFailureReason = null;
+            long writeStart = System.nanoTime();
+            try (EditSession editSession = Schematic.newPasteSession(BukkitAdapter.adapt(world))) {
+                for (int i = 0; i < pasteRequests.size(); i++) {
+                    Schematic.PasteRequest pasteRequest = pasteRequests.get(i);
+                    Location corner = pasteRequest.location().clone().add(pasteRequest.schematicOffset());
+                    try {
+                        Schematic.writePlan(editSession, pasteRequest.schematicContainer().getPastePlan(),
+                                corner.getBlockX(), corner.getBlockY(), corner.getBlockZ(),
+                                pasteRequest.pedestalMaterialProvider(), pasteRequest.terrainFinish());
+                    } catch (Exception e) {
+                        // Only this structure fails, the others in the edit still get flushed
+                        failureReasons[i] = Schematic.faweFailureReason(e);
+                    }
+                }
+            } catch (Exception e) {
+                // The flush failed, so none of the structures can be trusted
+                sessionFailureReason = Schematic.faweFailureReason(e);
+            }
+            DeveloperLogger.debug("Pasted " + pasteRequests.size() + " structures in one edit in "
+                    + (System.nanoTime() - writeStart) / 1_000_000 + "ms");
+
+            String flushFailureReason = sessionFailureReason;
+            Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> {
+                // Queued before the group tickets go away, so the chunks stay loaded until they are relit
+                for (int i = 0; i < pasteRequests.size(); i++) {
+                    if (failureReasons[i] != null || flushFailureReason != null) continue;
+                    Schematic.PasteRequest pasteRequest = pasteRequests.get(i);
+                    Schematic.queueRelight(world, requiredChunks.get(i),
+                            pasteRequest.location().clone().add(pasteRequest.schematicOffset()).getBlockY(),
+                            pasteRequest.schematicContainer());
+                }
+                ticketLease.release();
+                try {
+                    for (int i = 0; i < pasteRequests.size(); i++) {
+                        String failureReason = failureReasons[i] != null ? failureReasons[i] : flushFailureReason;
+                        deliver(pasteRequests.get(i), failureReason == null
+                                ? Schematic.successResult()
+                                : Schematic.failureResult(failureReason));
+                    }
+                } finally {
+                    release.run();
+                }
+            });
+        });
+    }
+
+    private static void deliver(Schematic.PasteRequest pasteRequest, Schematic.PasteResult pasteResult) {
+        if (pasteRequest.onComplete() == null) return;
+        try {
+            pasteRequest.onComplete().accept(pasteResult);
+        } catch (Exception e) {
+            // One failing callback must not keep the other structures of the group from completing
+            Logger.warn("结构粘贴回调失败: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Cancels the pastes of a world that is unloading while they wait for neighbours.
+     */
+    public static void onWorldUnload(World world) {
+        List<Schematic.PasteRequest> cancelled = new ArrayList<>();
+        for (Iterator<Map.Entry<RegionKey, PendingGroup>> iterator = pendingGroups.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<RegionKey, PendingGroup> entry = iterator.next();
+            if (!entry.getKey().worldUUID().equals(world.getUID())) continue;
+            iterator.remove();
+            cancelled.addAll(entry.getValue().pasteRequests);
+        }
+        pendingPastes -= cancelled.size();
+        for (Schematic.PasteRequest pasteRequest : cancelled)
+            deliver(pasteRequest, Schematic.failureResult("paste_cancelled:world_unloaded"));
+    }
+
+    /**
+     * Drops the waiting pastes and resets counters. Called during plugin disable.
+     */
+    public static void shutdown() {
+        if (task != null) task.cancel();
+        task = null;
+        pendingGroups.clear();
+        pendingPastes = 0;
+        coalescedGroups = 0;
+        coalescedPastes = 0;
+    }
+
+    public static int getPendingPastes() {
+        return pendingPastes;
+    }
+
+    public static long getCoalescedGroups() {
+        return coalescedGroups;
+    }
+
+    public static long getCoalescedPastes() {
+        return coalescedPastes;
+    }
+}
@@ -0,0 +1,101 @@
+package com.magmaguy.betterstructures.worldedit;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Columns of a schematic's bounding box that a paste actually writes to, used to work out which chunks a paste
+ * needs loaded and ticketed.
+ * <p>
+ * A chunk is required if a written column lies in it. A written column on the edge of its chunk also requires the
+ * chunk across that edge, and the diagonal one on a corner, so the terrain touching the structure is fully generated
+ * before it is pasted. Chunks the structure does not reach are never loaded.
+ */
+public final class PasteFootprint {
+    private final int sizeX;
+    private final int sizeZ;
+    // Bit x * sizeZ + z is set if the column is written
+    private final BitSet writtenColumns;
+
+    public PasteFootprint(int sizeX, int sizeZ, BitSet writtenColumns) {
+        this.sizeX = sizeX;
+        this.sizeZ = sizeZ;
+        this.writtenColumns = writtenColumns;
+    }
+
+    /**
+     * @return A footprint writing every column of the bounding box, for pastes whose pedestal or tree clearing covers
+     * all of it
+     */
+    public static PasteFootprint boundingBox(int sizeX, int sizeZ) {
+        BitSet writtenColumns = new BitSet(sizeX * sizeZ);
+        writtenColumns.set(0, sizeX * sizeZ);
+        return new PasteFootprint(sizeX, sizeZ, writtenColumns);
+    }
+
+    /**
+     * Writes the footprint for the schematic cache, see {@link #read(DataInput)}.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(sizeX);
+        out.writeInt(sizeZ);
+        long[] words = writtenColumns.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) out.writeLong(word);
+    }
+
+    /**
+     * @throws IOException If the data is truncated or does not describe a footprint
+     */
+    public static PasteFootprint read(DataInput in) throws IOException {
+        int sizeX = in.readInt();
+        int sizeZ = in.readInt();
+        int wordCount = in.readInt();
+        if (sizeX < 0 || sizeZ < 0 || wordCount < 0 || wordCount > ((long) sizeX * sizeZ + 63) / 64)
+            throw new IOException("Invalid footprint " + sizeX + "x" + sizeZ);
+        long[] words = new long[wordCount];
+        for (int i = 0; i < wordCount; i++) words[i] = in.readLong();
+        return new PasteFootprint(sizeX, sizeZ, BitSet.valueOf(words));
+    }
+
+    public int getWrittenColumnCount() {
+        return writtenColumns.cardinality();
+    }
+
+    /**
+     * @param cornerX World X of the lowest corner of the paste
+     * @param cornerZ World Z of the lowest corner of the paste
+     * @return Keys of the required chunks (chunkX << 32 | chunkZ & 0xFFFFFFFFL)
+     */
+    public Set<Long> getRequiredChunks(int cornerX, int cornerZ) {
+        Set<Long> chunks = new HashSet<>();
+        for (int column = writtenColumns.nextSetBit(0); column >= 0 && column < sizeX * sizeZ;
+             column = writtenColumns.nextSetBit(column + 1)) {
+            int worldX = cornerX + column / sizeZ;
+            int worldZ = cornerZ + column % sizeZ;
+            int chunkX = worldX >> 4;
+            int chunkZ = worldZ >> 4;
+            chunks.add(chunkKey(chunkX, chunkZ));
+            int edgeX = edgeDirection(worldX & 15);
+            int edgeZ = edgeDirection(worldZ & 15);
+            if (edgeX != 0) chunks.add(chunkKey(chunkX + edgeX, chunkZ));
+            if (edgeZ != 0) chunks.add(chunkKey(chunkX, chunkZ + edgeZ));
+            if (edgeX != 0 && edgeZ != 0) chunks.add(chunkKey(chunkX + edgeX, chunkZ + edgeZ));
+        }
+        return chunks;
+    }
+
+    private static int edgeDirection(int localCoordinate) {
+        if (localCoordinate == 0) return -1;
+        if (localCoordinate == 15) return 1;
+        return 0;
+    }
+
+    private static long chunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+}
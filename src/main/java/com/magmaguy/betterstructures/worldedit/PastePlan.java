@@ -0,0 +1,216 @@
+package com.magmaguy.betterstructures.worldedit;
+
+import com.magmaguy.betterstructures.util.MaterialClassTable;
+import com.sk89q.worldedit.extent.clipboard.Clipboard;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockState;
+import com.sk89q.worldedit.world.block.BlockType;
+import com.sk89q.worldedit.world.block.BlockTypes;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The blocks a paste writes, compiled once per schematic so pasting never walks the clipboard.
+ * <p>
+ * Every written position is packed relative to the paste corner next to an index into a palette of blocks. Blocks
+ * without NBT share one palette entry per block state, blocks with NBT keep their own. Barriers are left out, and
+ * bedrock goes to a separate pedestal list together with whether the schematic block above it is solid, since those
+ * positions are only filled if the world block is not solid and with a material picked at paste time. Air stays in
+ * the plan, pasting it clears the terrain inside the structure. The plan also records what the bottom block of each
+ * column leaves in the world, which decides where a pedestal is built under the structure. Immutable and safe to
+ * share between paste threads.
+ */
+public final class PastePlan {
+    // Rough size of a palette entry and its block state reference, NBT payloads are not counted
+    private static final int PALETTE_ENTRY_BYTES = 32;
+
+    // What the bottom layer of each column (x * sizeZ + z) leaves in the world once pasted
+    public static final byte BASE_AIR = 0;
+    public static final byte BASE_SOLID = 1;
+    public static final byte BASE_NON_SOLID = 2;
+    // Not written by the paste, the world block stays
+    public static final byte BASE_WORLD = 3;
+
+    @Getter
+    private final int sizeX;
+    @Getter
+    private final int sizeY;
+    @Getter
+    private final int sizeZ;
+    private final byte[] columnBases;
+    private final BaseBlock[] palette;
+    private final long[] blockPositions;
+    private final int[] blockPaletteIndices;
+    private final long[] pedestalPositions;
+    // Set for pedestal positions whose schematic block above is not solid
+    private final BitSet groundPedestals;
+
+    private PastePlan(BlockVector3 dimensions, byte[] columnBases, BaseBlock[] palette, long[] blockPositions,
+                      int[] blockPaletteIndices, long[] pedestalPositions, BitSet groundPedestals) {
+        this.sizeX = dimensions.x();
+        this.sizeY = dimensions.y();
+        this.sizeZ = dimensions.z();
+        this.columnBases = columnBases;
+        this.palette = palette;
+        this.blockPositions = blockPositions;
+        this.blockPaletteIndices = blockPaletteIndices;
+        this.pedestalPositions = pedestalPositions;
+        this.groundPedestals = groundPedestals;
+    }
+
+    public static PastePlan compile(Clipboard clipboard) {
+        BlockVector3 minimumPoint = clipboard.getMinimumPoint();
+        BlockVector3 dimensions = clipboard.getDimensions();
+        List<BaseBlock> palette = new ArrayList<>();
+        Map<BlockState, Integer> statePaletteIndices = new HashMap<>();
+        long[] blockPositions = new long[64];
+        int[] blockPaletteIndices = new int[64];
+        int blockCount = 0;
+        long[] pedestalPositions = new long[16];
+        BitSet groundPedestals = new BitSet();
+        int pedestalCount = 0;
+
+        byte[] columnBases = new byte[dimensions.x() * dimensions.z()];
+        for (int x = 0; x < dimensions.x(); x++)
+            for (int z = 0; z < dimensions.z(); z++) {
+                BlockType blockType = clipboard.getBlock(minimumPoint.add(x, 0, z)).getBlockType();
+                int blockClasses = MaterialClassTable.getClasses(blockType);
+                byte base;
+                if (blockType == BlockTypes.BARRIER) base = BASE_WORLD;
+                // Bedrock becomes a pedestal block unless the world block there is already solid
+                else if (blockType == BlockTypes.BEDROCK || (blockClasses & MaterialClassTable.SOLID) != 0) base = BASE_SOLID;
+                else if ((blockClasses & MaterialClassTable.AIR) != 0) base = BASE_AIR;
+                else base = BASE_NON_SOLID;
+                columnBases[x * dimensions.z() + z] = base;
+            }
+
+        // Same y, z, x order FAWE stores the blocks of a chunk section in
+        for (int y = 0; y < dimensions.y(); y++)
+            for (int z = 0; z < dimensions.z(); z++)
+                for (int x = 0; x < dimensions.x(); x++) {
+                    BlockVector3 clipboardPosition = minimumPoint.add(x, y, z);
+                    BaseBlock baseBlock = clipboard.getFullBlock(clipboardPosition);
+                    BlockType blockType = baseBlock.getBlockType();
+                    if (blockType == BlockTypes.BARRIER) continue;
+                    long position = SectionBatches.pack(x, y, z);
+                    if (blockType == BlockTypes.BEDROCK) {
+                        if (pedestalCount == pedestalPositions.length)
+                            pedestalPositions = Arrays.copyOf(pedestalPositions, pedestalCount * 2);
+                        // Positions above the clipboard are air, so the top layer is always ground
+                        boolean ground = y + 1 >= dimensions.y() || !MaterialClassTable.is(
+                                clipboard.getBlock(clipboardPosition.add(0, 1, 0)).getBlockType(), MaterialClassTable.SOLID);
+                        if (ground) groundPedestals.set(pedestalCount);
+                        pedestalPositions[pedestalCount++] = position;
+                        continue;
+                    }
+                    int paletteIndex;
+                    if (baseBlock.getNbtReference() != null) {
+                        paletteIndex = palette.size();
+                        palette.add(baseBlock);
+                    } else {
+                        paletteIndex = statePaletteIndices.computeIfAbsent(baseBlock.toImmutableState(), state -> {
+                            palette.add(baseBlock);
+                            return palette.size() - 1;
+                        });
+                    }
+                    if (blockCount == blockPositions.length) {
+                        blockPositions = Arrays.copyOf(blockPositions, blockCount * 2);
+                        blockPaletteIndices = Arrays.copyOf(blockPaletteIndices, blockCount * 2);
+                    }
+                    blockPositions[blockCount] = position;
+                    blockPaletteIndices[blockCount++] = paletteIndex;
+                }
+
+        return new PastePlan(dimensions, columnBases, palette.toArray(new BaseBlock[0]),
+                Arrays.copyOf(blockPositions, blockCount),
+                Arrays.copyOf(blockPaletteIndices, blockCount),
+                Arrays.copyOf(pedestalPositions, pedestalCount),
+                groundPedestals);
+    }
+
+    /**
+     * @return The blocks of the plan grouped by the chunk section they are written to for a paste at the given corner
+     */
+    public SectionBatches groupBySection(int cornerX, int cornerY, int cornerZ, SectionBatches.Sequence sequence) {
+        return SectionBatches.group(blockPositions, cornerX, cornerY, cornerZ, sequence);
+    }
+
+    /**
+     * @return The pedestal positions of the plan grouped by the chunk section they are written to
+     */
+    public SectionBatches groupPedestalsBySection(int cornerX, int cornerY, int cornerZ, SectionBatches.Sequence sequence) {
+        return SectionBatches.group(pedestalPositions, cornerX, cornerY, cornerZ, sequence);
+    }
+
+    public int getBlockCount() {
+        return blockPositions.length;
+    }
+
+    public int getBlockX(int index) {
+        return SectionBatches.unpackX(blockPositions[index]);
+    }
+
+    public int getBlockY(int index) {
+        return SectionBatches.unpackY(blockPositions[index]);
+    }
+
+    public int getBlockZ(int index) {
+        return SectionBatches.unpackZ(blockPositions[index]);
+    }
+
+    public BaseBlock getBlock(int index) {
+        return palette[blockPaletteIndices[index]];
+    }
+
+    public int getPedestalCount() {
+        return pedestalPositions.length;
+    }
+
+    public int getPedestalX(int index) {
+        return SectionBatches.unpackX(pedestalPositions[index]);
+    }
+
+    public int getPedestalY(int index) {
+        return SectionBatches.unpackY(pedestalPositions[index]);
+    }
+
+    public int getPedestalZ(int index) {
+        return SectionBatches.unpackZ(pedestalPositions[index]);
+    }
+
+    /**
+     * @return True if the schematic block above the pedestal position is not solid, so it is the top of the pedestal
+     */
+    public boolean isGroundPedestal(int index) {
+        return groundPedestals.get(index);
+    }
+
+    /**
+     * @return One of the {@code BASE_} constants for the bottom block of the column once pasted
+     */
+    public byte getColumnBase(int x, int z) {
+        return columnBases[x * sizeZ + z];
+    }
+
+    public int getPaletteSize() {
+        return palette.length;
+    }
+
+    /**
+     * @return Approximate heap use of the plan in bytes, not counting the NBT of block entities
+     */
+    public long getEstimatedBytes() {
+        return blockPositions.length * (long) (Long.BYTES + Integer.BYTES)
+                + pedestalPositions.length * (long) Long.BYTES
+                + groundPedestals.size() / Byte.SIZE
+                + columnBases.length
+                + palette.length * (long) PALETTE_ENTRY_BYTES;
+    }
+}
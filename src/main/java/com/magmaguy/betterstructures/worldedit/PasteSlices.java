@@ -0,0 +1,81 @@
+package com.magmaguy.betterstructures.worldedit;
+
+import java.util.Arrays;
+
+/**
+ * Splits an incremental paste into slices of whole chunk columns.
+ * <p>
+ * Works on the block and pedestal {@link SectionBatches} of a paste grouped with
+ * {@link SectionBatches.Sequence#CHUNK_COLUMNS}, where the sections of each chunk are contiguous and chunks are
+ * ordered by X then Z. Each slice takes the sections of up to {@code chunksPerSlice} consecutive chunks from both, so
+ * a slice never writes a chunk another slice writes too.
+ */
+public final class PasteSlices {
+    // Exclusive end section of each slice
+    private final int[] blockSectionEnds;
+    private final int[] pedestalSectionEnds;
+
+    private PasteSlices(int[] blockSectionEnds, int[] pedestalSectionEnds) {
+        this.blockSectionEnds = blockSectionEnds;
+        this.pedestalSectionEnds = pedestalSectionEnds;
+    }
+
+    public static PasteSlices plan(SectionBatches blocks, SectionBatches pedestals, int chunksPerSlice) {
+        chunksPerSlice = Math.max(1, chunksPerSlice);
+        int blockSections = blocks.getSectionCount();
+        int pedestalSections = pedestals.getSectionCount();
+        int[] blockSectionEnds = new int[blockSections + pedestalSections];
+        int[] pedestalSectionEnds = new int[blockSections + pedestalSections];
+        int sliceCount = 0;
+        int blockSection = 0;
+        int pedestalSection = 0;
+        while (blockSection < blockSections || pedestalSection < pedestalSections) {
+            for (int chunks = 0; chunks < chunksPerSlice && (blockSection < blockSections || pedestalSection < pedestalSections); chunks++) {
+                // The next chunk is the lower of the two cursors
+                int chunkX, chunkZ;
+                if (pedestalSection >= pedestalSections || (blockSection < blockSections && compare(
+                        blocks.getSectionX(blockSection), blocks.getSectionZ(blockSection),
+                        pedestals.getSectionX(pedestalSection), pedestals.getSectionZ(pedestalSection)) <= 0)) {
+                    chunkX = blocks.getSectionX(blockSection);
+                    chunkZ = blocks.getSectionZ(blockSection);
+                } else {
+                    chunkX = pedestals.getSectionX(pedestalSection);
+                    chunkZ = pedestals.getSectionZ(pedestalSection);
+                }
+                while (blockSection < blockSections && blocks.getSectionX(blockSection) == chunkX
+                        && blocks.getSectionZ(blockSection) == chunkZ) blockSection++;
+                while (pedestalSection < pedestalSections && pedestals.getSectionX(pedestalSection) == chunkX
+                        && pedestals.getSectionZ(pedestalSection) == chunkZ) pedestalSection++;
+            }
+            blockSectionEnds[sliceCount] = blockSection;
+            pedestalSectionEnds[sliceCount] = pedestalSection;
+            sliceCount++;
+        }
+        return new PasteSlices(Arrays.copyOf(blockSectionEnds, sliceCount), Arrays.copyOf(pedestalSectionEnds, sliceCount));
+    }
+
+    private static int compare(int firstX, int firstZ, int secondX, int secondZ) {
+        if (firstX != secondX) return Integer.compare(firstX, secondX);
+        return Integer.compare(firstZ, secondZ);
+    }
+
+    public int getSliceCount() {
+        return blockSectionEnds.length;
+    }
+
+    public int getBlockSectionStart(int slice) {
+        return slice == 0 ? 0 : blockSectionEnds[slice - 1];
+    }
+
+    public int getBlockSectionEnd(int slice) {
+        return blockSectionEnds[slice];
+    }
+
+    public int getPedestalSectionStart(int slice) {
+        return slice == 0 ? 0 : pedestalSectionEnds[slice - 1];
+    }
+
+    public int getPedestalSectionEnd(int slice) {
+        return pedestalSectionEnds[slice];
+    }
+}
@@ -0,0 +1,304 @@
+package com.magmaguy.betterstructures.worldedit;
+
+import com.magmaguy.betterstructures.MetadataHandler;
+import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.betterstructures.util.ChunkTicketRegistry;
+import com.magmaguy.betterstructures.util.DeveloperLogger;
+import com.magmaguy.magmacore.util.Logger;
+import com.sk89q.worldedit.EditSessionBuilder;
+import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldedit.regions.CuboidRegion;
+import com.sk89q.worldedit.regions.Region;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Recalculates the lighting of pasted structures after the fact, once per chunk for all the pastes that touched it.
+ * <p>
+ * Paste edits are built with FAWE's relighting turned off and queue the chunk sections they wrote here instead.
+ * Queued sections are merged per chunk, so neighbouring and overlapping pastes share one relight. A chunk becomes due
+ * {@code lighting.relightDelayTicks} after it was first queued; due chunks are relit through FAWE at most
+ * {@code lighting.maxRelightChunksPerTick} at a time, one batch after the other, closest to a player first. Queued
+ * chunks keep a chunk ticket until they are relit, so they cannot be saved with stale light; chunks still queued when
+ * their world unloads or the plugin disables are relit synchronously on the spot. Without FAWE the scheduler stays
+ * disabled and pastes light themselves as before. Main thread only, calls from other threads are handed over to it.
+ */
+public final class RelightScheduler {
+    // Resolved once, null when FAWE is not installed
+    private static final Object RELIGHT_MODE_NONE;
+    private static final Object RELIGHT_MODE_ALL;
+    private static final MethodHandle RELIGHT_MODE_SETTER;
+    private static final MethodHandle FIX_LIGHTING;
+
+    static {
+        Object relightModeNone = null;
+        Object relightModeAll = null;
+        MethodHandle relightModeSetter = null;
+        MethodHandle fixLighting = null;
+        try {
+            Class<?> relightMode = Class.forName("com.fastasyncworldedit.core.extent.processor.lighting.RelightMode");
+            relightModeNone = relightMode.getField("NONE").get(null);
+            relightModeAll = relightMode.getField("ALL").get(null);
+            relightModeSetter = MethodHandles.publicLookup().findVirtual(EditSessionBuilder.class, "relightMode",
+                    MethodType.methodType(EditSessionBuilder.class, relightMode));
+            fixLighting = MethodHandles.publicLookup().findStatic(Class.forName("com.fastasyncworldedit.core.FaweAPI"),
+                    "fixLighting", MethodType.methodType(int.class, com.sk89q.worldedit.world.World.class, Region.class,
+                            Class.forName("com.fastasyncworldedit.core.queue.IQueueExtent"), relightMode));
+        } catch (Throwable throwable) {
+            relightModeNone = null;
+            relightModeAll = null;
+            relightModeSetter = null;
+            fixLighting = null;
+            DeveloperLogger.debug("RelightScheduler: FAWE relighting unavailable, pastes keep their own lighting: " + throwable);
+        }
+        RELIGHT_MODE_NONE = relightModeNone;
+        RELIGHT_MODE_ALL = relightModeAll;
+        RELIGHT_MODE_SETTER = relightModeSetter;
+        FIX_LIGHTING = fixLighting;
+    }
+
+    private static final Map<UUID, Map<Long, DirtyChunk>> dirtyChunks = new LinkedHashMap<>();
+    private static BukkitTask task = null;
+    private static int currentTick = 0;
+    private static int queuedChunks = 0;
+    private static boolean batchRunning = false;
+    // Bumped on shutdown so batches started before a reload do not touch the new state
+    private static int generation = 0;
+    // Metrics
+    private static long mergedRequests = 0;
+    private static long relitChunks = 0;
+
+    private RelightScheduler() {
+    }
+
+    private static class DirtyChunk {
+        private final World world;
+        private final int chunkX;
+        private final int chunkZ;
+        private final int queuedTick;
+        private final ChunkTicketRegistry.Lease ticketLease;
+        private int minSectionY;
+        private int maxSectionY;
+
+        private DirtyChunk(World world, int chunkX, int chunkZ, int minSectionY, int maxSectionY, int queuedTick,
+                           ChunkTicketRegistry.Lease ticketLease) {
+            this.world = world;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.minSectionY = minSectionY;
+            this.maxSectionY = maxSectionY;
+            this.queuedTick = queuedTick;
+            this.ticketLease = ticketLease;
+        }
+    }
+
+    /**
+     * @return Whether pastes should leave lighting to this scheduler
+     */
+    public static boolean isEnabled() {
+        return DefaultConfig.isDeferredRelight() && RELIGHT_MODE_SETTER != null;
+    }
+
+    /**
+     * Turns FAWE's relighting off for an edit whose lighting is queued here. Does nothing when disabled.
+     */
+    static EditSessionBuilder disableLighting(EditSessionBuilder editSessionBuilder) {
+        if (!isEnabled()) return editSessionBuilder;
+        try {
+            return (EditSessionBuilder) RELIGHT_MODE_SETTER.invoke(editSessionBuilder, RELIGHT_MODE_NONE);
+        } catch (Throwable throwable) {
+            throw new IllegalStateException("Failed to disable FAWE relighting", throwable);
+        }
+    }
+
+    /**
+     * Queues the sections between two heights of a set of chunks for relighting. Does nothing when disabled.
+     *
+     * @param chunkKeys Encoded chunk keys (chunkX << 32 | chunkZ & 0xFFFFFFFFL)
+     * @param minY      Lowest block Y written
+     * @param maxY      Highest block Y written
+     */
+    public static void queue(World world, Collection<Long> chunkKeys, int minY, int maxY) {
+        if (!isEnabled() || chunkKeys.isEmpty()) return;
+        if (!Bukkit.isPrimaryThread()) {
+            Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> queue(world, chunkKeys, minY, maxY));
+            return;
+        }
+        // Light spreads up to 15 blocks, so the neighbouring sections are relit too
+        int minSectionY = Math.max(world.getMinHeight() >> 4, (minY >> 4) - 1);
+        int maxSectionY = Math.min((world.getMaxHeight() - 1) >> 4, (maxY >> 4) + 1);
+        Map<Long, DirtyChunk> worldChunks = dirtyChunks.computeIfAbsent(world.getUID(), k -> new LinkedHashMap<>());
+        for (long chunkKey : chunkKeys) {
+            DirtyChunk dirtyChunk = worldChunks.get(chunkKey);
+            if (dirtyChunk != null) {
+                mergedRequests++;
+                dirtyChunk.minSectionY = Math.min(dirtyChunk.minSectionY, minSectionY);
+                dirtyChunk.maxSectionY = Math.max(dirtyChunk.maxSectionY, maxSectionY);
+                continue;
+            }
+            int chunkX = (int) (chunkKey >> 32);
+            int chunkZ = (int) chunkKey;
+            worldChunks.put(chunkKey, new DirtyChunk(world, chunkX, chunkZ, minSectionY, maxSectionY, currentTick,
+                    ChunkTicketRegistry.acquire(world, List.of(chunkKey), "relight " + chunkX + "," + chunkZ)));
+            queuedChunks++;
+        }
+        if (task == null) task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }.runTaskTimer(MetadataHandler.PLUGIN, 1, 1);
+    }
+
+    private static void tick() {
+        currentTick++;
+        if (queuedChunks == 0 && !batchRunning) {
+            task.cancel();
+            task = null;
+            return;
+        }
+        if (batchRunning) return;
+
+        int delayTicks = Math.max(0, DefaultConfig.getRelightDelayTicks());
+        List<DirtyChunk> dueChunks = new ArrayList<>();
+        for (Map<Long, DirtyChunk> worldChunks : dirtyChunks.values())
+            for (DirtyChunk dirtyChunk : worldChunks.values())
+                if (currentTick - dirtyChunk.queuedTick >= delayTicks) dueChunks.add(dirtyChunk);
+        if (dueChunks.isEmpty()) return;
+
+        // Stable, so chunks no player is near keep their queue order
+        Map<UUID, List<Player>> players = new HashMap<>();
+        dueChunks.sort(Comparator.comparingLong(dirtyChunk -> distanceToPlayers(dirtyChunk,
+                players.computeIfAbsent(dirtyChunk.world.getUID(), k -> dirtyChunk.world.getPlayers()))));
+        List<DirtyChunk> batch = dueChunks.subList(0, Math.min(dueChunks.size(),
+                Math.max(1, DefaultConfig.getMaxRelightChunksPerTick())));
+        List<DirtyChunk> relightBatch = new ArrayList<>(batch);
+        for (DirtyChunk dirtyChunk : relightBatch) {
+            Map<Long, DirtyChunk> worldChunks = dirtyChunks.get(dirtyChunk.world.getUID());
+            worldChunks.remove(((long) dirtyChunk.chunkX << 32) | (dirtyChunk.chunkZ & 0xFFFFFFFFL));
+            if (worldChunks.isEmpty()) dirtyChunks.remove(dirtyChunk.world.getUID());
+            queuedChunks--;
+        }
+        relight(relightBatch);
+    }
+
+    private static long distanceToPlayers(DirtyChunk dirtyChunk, List<Player> players) {
+        long closest = Long.MAX_VALUE;
+        for (Player player : players) {
+            long distanceX = (player.getLocation().getBlockX() >> 4) - dirtyChunk.chunkX;
+            long distanceZ = (player.getLocation().getBlockZ() >> 4) - dirtyChunk.chunkZ;
+            closest = Math.min(closest, distanceX * distanceX + distanceZ * distanceZ);
+        }
+        return closest;
+    }
+
+    private static void relight(List<DirtyChunk> batch) {
+        batchRunning = true;
+        int startedGeneration = generation;
+        List<com.sk89q.worldedit.world.World> weWorlds = new ArrayList<>(batch.size());
+        for (DirtyChunk dirtyChunk : batch) weWorlds.add(BukkitAdapter.adapt(dirtyChunk.world));
+        Bukkit.getScheduler().runTaskAsynchronously(MetadataHandler.PLUGIN, () -> {
+            long start = System.nanoTime();
+            for (int i = 0; i < batch.size(); i++) relightChunk(batch.get(i), weWorlds.get(i));
+            DeveloperLogger.debug("Relit " + batch.size() + " chunks in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+            if (!MetadataHandler.PLUGIN.isEnabled()) {
+                // Tasks can no longer be scheduled after disable, the leases are released directly
+                for (DirtyChunk dirtyChunk : batch) dirtyChunk.ticketLease.release();
+                return;
+            }
+            Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> {
+                for (DirtyChunk dirtyChunk : batch) dirtyChunk.ticketLease.release();
+                if (startedGeneration != generation) return;
+                relitChunks += batch.size();
+                batchRunning = false;
+            });
+        });
+    }
+
+    private static void relightChunk(DirtyChunk dirtyChunk, com.sk89q.worldedit.world.World weWorld) {
+        Region region = new CuboidRegion(
+                BlockVector3.at(dirtyChunk.chunkX << 4, dirtyChunk.minSectionY << 4, dirtyChunk.chunkZ << 4),
+                BlockVector3.at((dirtyChunk.chunkX << 4) + 15, (dirtyChunk.maxSectionY << 4) + 15,
+                        (dirtyChunk.chunkZ << 4) + 15));
+        try {
+            FIX_LIGHTING.invoke(weWorld, region, null, RELIGHT_MODE_ALL);
+        } catch (Throwable throwable) {
+            Logger.warn("区块光照重算失败 " + dirtyChunk.chunkX + "," + dirtyChunk.chunkZ + ": " + throwable.getMessage());
+        }
+    }
+
+    /**
+     * Relights queued chunks on the calling thread and releases their tickets, for when they cannot wait any longer.
+     */
+    private static void relightNow(Collection<DirtyChunk> chunks) {
+        if (chunks.isEmpty()) return;
+        long start = System.nanoTime();
+        Map<UUID, com.sk89q.worldedit.world.World> weWorlds = new HashMap<>();
+        for (DirtyChunk dirtyChunk : chunks) {
+            relightChunk(dirtyChunk, weWorlds.computeIfAbsent(dirtyChunk.world.getUID(),
+                    k -> BukkitAdapter.adapt(dirtyChunk.world)));
+            dirtyChunk.ticketLease.release();
+        }
+        relitChunks += chunks.size();
+        DeveloperLogger.debug("Relit " + chunks.size() + " queued chunks synchronously in "
+                + (System.nanoTime() - start) / 1_000_000 + "ms");
+    }
+
+    /**
+     * Relights the queued chunks of a world that is unloading right away, before they are saved.
+     */
+    public static void onWorldUnload(World world) {
+        Map<Long, DirtyChunk> worldChunks = dirtyChunks.remove(world.getUID());
+        if (worldChunks == null) return;
+        queuedChunks -= worldChunks.size();
+        relightNow(worldChunks.values());
+    }
+
+    /**
+     * Relights the queued chunks right away so they are not saved with stale light, then resets counters. Called
+     * during plugin disable.
+     */
+    public static void shutdown() {
+        if (task != null) task.cancel();
+        task = null;
+        generation++;
+        List<DirtyChunk> pendingChunks = new ArrayList<>();
+        for (Map<Long, DirtyChunk> worldChunks : dirtyChunks.values()) pendingChunks.addAll(worldChunks.values());
+        if (!pendingChunks.isEmpty()) Logger.info("正在重算 " + pendingChunks.size() + " 个待处理区块的光照");
+        relightNow(pendingChunks);
+        dirtyChunks.clear();
+        queuedChunks = 0;
+        batchRunning = false;
+        currentTick = 0;
+        mergedRequests = 0;
+        relitChunks = 0;
+    }
+
+    public static int getQueuedChunks() {
+        return queuedChunks;
+    }
+
+    public static long getMergedRequests() {
+        return mergedRequests;
+    }
+
+    public static long getRelitChunks() {
+        return relitChunks;
+    }
+}
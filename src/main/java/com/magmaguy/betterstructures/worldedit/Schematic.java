@@ -2,8 +2,14 @@ package com.magmaguy.betterstructures.worldedit;
 
 import com.magmaguy.betterstructures.MetadataHandler;
 import com.magmaguy.betterstructures.config.DefaultConfig;
+import com.magmaguy.betterstructures.schematics.SchematicContainer;
+import com.magmaguy.betterstructures.util.ChunkLoadRateLimiter;
+import com.magmaguy.betterstructures.util.ChunkTicketRegistry;
 import com.magmaguy.betterstructures.util.ChunkValidationUtil;
 import com.magmaguy.betterstructures.util.DeveloperLogger;
+import com.magmaguy.betterstructures.util.MaterialClassTable;
+import com.magmaguy.betterstructures.util.PasteAdmission;
+import com.magmaguy.betterstructures.util.StructurePasteQueue;
 import com.magmaguy.magmacore.util.Logger;
 import com.sk89q.worldedit.EditSession;
 import com.sk89q.worldedit.WorldEdit;
@@ -19,26 +25,66 @@ import com.sk89q.worldedit.math.BlockVector3;
 import com.sk89q.worldedit.session.ClipboardHolder;
 import com.sk89q.worldedit.util.SideEffectSet;
 import com.sk89q.worldedit.world.World;
-import com.sk89q.worldedit.world.block.BaseBlock;
+import com.sk89q.worldedit.world.block.BlockType;
+import com.sk89q.worldedit.world.block.BlockTypes;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.Material;
+import org.bukkit.plugin.IllegalPluginAccessException;
 import org.bukkit.util.Vector;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 public class Schematic {
+    // Blocks a pedestal reaches below the structure and tree clearing reaches above it
+    private static final int MAX_PEDESTAL_DEPTH = 10;
+    private static final int TREE_CLEARING_HEIGHT = 31;
     private static boolean erroredOnce = false;
+    // FAWE's read into a caller supplied clipboard, null on plain WorldEdit
+    private static final MethodHandle READ_INTO;
+
+    static {
+        MethodHandle readInto = null;
+        try {
+            readInto = MethodHandles.publicLookup().findVirtual(ClipboardReader.class, "read",
+                    MethodType.methodType(Clipboard.class, UUID.class, Function.class));
+        } catch (Throwable throwable) {
+            DeveloperLogger.debug("Schematic: clipboard providers unavailable, schematics are read into the default clipboard: " + throwable);
+        }
+        READ_INTO = readInto;
+    }
 
     public record PasteResult(boolean success, String reason) {}
 
+    /**
+     * Everything a paste needs once it leaves {@link #pasteSchematic}, see there for the fields.
+     */
+    record PasteRequest(SchematicContainer schematicContainer, Location location, Vector schematicOffset,
+                        PasteFootprint footprint, Chunk sourceChunk, Runnable prePasteCallback,
+                        Function<Boolean, Material> pedestalMaterialProvider, TerrainFinish terrainFinish,
+                        Consumer<PasteResult> onComplete) {
+    }
+
+    /**
+     * Terrain work done around the structure inside the same EditSession as the paste.
+     *
+     * @param buildPedestal Extend the structure down to the ground below it
+     * @param clearTrees    Remove the tree blocks resting on top of the structure
+     */
+    public record TerrainFinish(boolean buildPedestal, boolean clearTrees) {
+        public static final TerrainFinish NONE = new TerrainFinish(false, false);
+    }
+
     private Schematic() {
     }
 
@@ -49,12 +95,24 @@ public class Schematic {
      * @return The loaded clipboard or null if loading failed
      */
     public static Clipboard load(File schematicFile) {
+        return load(schematicFile, null);
+    }
+
+    /**
+     * Loads a schematic from a file into a clipboard of the caller's choice
+     *
+     * @param schematicFile     The schematic file to load
+     * @param clipboardProvider Creates the clipboard for the given dimensions, null for the default clipboard. Ignored
+     *                          on plain WorldEdit
+     * @return The loaded clipboard or null if loading failed
+     */
+    public static Clipboard load(File schematicFile, Function<BlockVector3, Clipboard> clipboardProvider) {
         Clipboard clipboard;
 
         ClipboardFormat format = ClipboardFormats.findByFile(schematicFile);
 
         try (ClipboardReader reader = format.getReader(new FileInputStream(schematicFile))) {
-            clipboard = reader.read();
+            clipboard = read(reader, clipboardProvider);
         } catch (IOException e) {
             e.printStackTrace();
             return null;
@@ -72,6 +130,17 @@ public class Schematic {
         return clipboard;
     }
 
+    private static Clipboard read(ClipboardReader reader, Function<BlockVector3, Clipboard> clipboardProvider) throws Exception {
+        if (clipboardProvider == null || READ_INTO == null) return reader.read();
+        try {
+            return (Clipboard) READ_INTO.invoke(reader, UUID.randomUUID(), clipboardProvider);
+        } catch (Throwable throwable) {
+            // Exceptions reach load() as they are, so its messages stay the same as for a plain read
+            if (throwable instanceof Exception exception) throw exception;
+            throw new IOException(throwable);
+        }
+    }
+
     /**
      * Pastes a schematic synchronously (used for small schematics like modular world elevators).
      * FAWE runtime already optimizes this automatically.
@@ -94,49 +163,49 @@ public class Schematic {
 
     /**
      * Calculates all chunks required for pasting a schematic.
-     * This method does NOT access the world - it only uses clipboard dimensions.
+     * This method does NOT access the world - it only uses the clipboard footprint.
      *
      * @param clipboard The schematic clipboard
+     * @param footprint Columns the paste writes to, null for the whole bounding box
      * @param location The paste location
      * @param schematicOffset The schematic offset
-     * @return Set of chunk keys (use chunkKey() to decode)
+     * @return Set of chunk keys (chunkX << 32 | chunkZ & 0xFFFFFFFFL)
      */
-    private static Set<Long> calculateRequiredChunks(Clipboard clipboard, Location location, Vector schematicOffset) {
-        Set<Long> chunks = new HashSet<>();
+    static Set<Long> calculateRequiredChunks(BlockVector3 dimensions, PasteFootprint footprint, Location location, Vector schematicOffset) {
+        if (footprint == null)
+            footprint = PasteFootprint.boundingBox(dimensions.x(), dimensions.z());
         Location adjusted = location.clone().add(schematicOffset);
-
-        // Calculate bounding box from clipboard dimensions (no world access)
-        int minX = adjusted.getBlockX();
-        int maxX = minX + clipboard.getDimensions().x();
-        int minZ = adjusted.getBlockZ();
-        int maxZ = minZ + clipboard.getDimensions().z();
-
-        // Convert to chunk coordinates with 1-chunk padding
-        for (int cx = (minX >> 4) - 1; cx <= (maxX >> 4) + 1; cx++) {
-            for (int cz = (minZ >> 4) - 1; cz <= (maxZ >> 4) + 1; cz++) {
-                chunks.add(chunkKey(cx, cz));
-            }
-        }
-        return chunks;
+        return footprint.getRequiredChunks(adjusted.getBlockX(), adjusted.getBlockZ());
     }
 
     /**
      * Pastes a schematic using FAWE async EditSession.
      * Ensures all required chunks are generated BEFORE accessing any world blocks.
+     * The paste waits in the {@link StructurePasteQueue} until a paste slot is free, generator pastes may first be
+     * merged with their neighbours by the {@link PasteCoalescer}. Expensive pastes requested while the server is
+     * lagging are queued with a low priority by the {@link PasteAdmission} rules.
      *
-     * @param schematicClipboard The clipboard containing the schematic
+     * @param schematicContainer The schematic to paste
      * @param location The location to paste at
      * @param schematicOffset The offset of the schematic
-     * @param prePasteCallback Callback to run AFTER chunks are ready but BEFORE paste (for pedestal assignment)
+     * @param footprint Columns the paste writes to, including pedestal and tree clearing extents. Null for the whole bounding box
+     * @param sourceChunk Chunk whose generation triggered the paste, null if none. The paste is dropped if it unloads while queued
+     * @param priority Queue priority of the paste, lowered for expensive pastes while the server is lagging
+     * @param prePasteCallback Callback to run on the main thread AFTER chunks are ready but BEFORE paste, null if none
      * @param pedestalMaterialProvider Function that provides pedestal material based on whether it's a surface block
+     * @param terrainFinish Pedestal and tree clearing work applied in the same edit as the structure
      * @param onComplete Callback to run when paste is complete
      */
     public static void pasteSchematic(
-            Clipboard schematicClipboard,
+            SchematicContainer schematicContainer,
             Location location,
             Vector schematicOffset,
+            PasteFootprint footprint,
+            Chunk sourceChunk,
+            StructurePasteQueue.Priority priority,
             Runnable prePasteCallback,
             Function<Boolean, Material> pedestalMaterialProvider,
+            TerrainFinish terrainFinish,
             Consumer<PasteResult> onComplete) {
 
         org.bukkit.World world = location.getWorld();
@@ -146,58 +215,98 @@ public class Schematic {
             return;
         }
 
-        // Step 1: Calculate required chunks WITHOUT accessing world
-        Set<Long> requiredChunks = calculateRequiredChunks(schematicClipboard, location, schematicOffset);
-
-        // Step 2: Load all required chunks asynchronously
-        List<CompletableFuture<Chunk>> chunkFutures = new ArrayList<>();
-        for (Long key : requiredChunks) {
-            int chunkX = (int) (key >> 32);
-            int chunkZ = key.intValue();
-            chunkFutures.add(world.getChunkAtAsync(chunkX, chunkZ, true));
+        // Expensive pastes wait in the low priority queue while the server is lagging
+        priority = PasteAdmission.admit(schematicContainer.getPasteCost(), priority);
+        PasteRequest pasteRequest = new PasteRequest(schematicContainer, location, schematicOffset, footprint, sourceChunk,
+                prePasteCallback, pedestalMaterialProvider, terrainFinish, onComplete);
+        if (PasteCoalescer.accepts(schematicContainer, priority)) {
+            PasteCoalescer.submit(world, pasteRequest);
+            return;
         }
+        enqueue(world, pasteRequest, priority);
+    }
+
+    /**
+     * Queues a paste on its own, in its own EditSession.
+     */
+    static void enqueue(org.bukkit.World world, PasteRequest pasteRequest, StructurePasteQueue.Priority priority) {
+        Location location = pasteRequest.location();
+        String locationDesc = location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ();
+        StructurePasteQueue.enqueue(world, pasteRequest.sourceChunk(), priority, locationDesc, new StructurePasteQueue.PasteJob() {
+            @Override
+            public void start(Runnable release) {
+                startPaste(pasteRequest.schematicContainer(), pasteRequest.footprint(), location,
+                        pasteRequest.schematicOffset(), pasteRequest.prePasteCallback(),
+                        pasteRequest.pedestalMaterialProvider(), pasteRequest.terrainFinish(),
+                        pasteResult -> {
+                            try {
+                                if (pasteRequest.onComplete() != null) pasteRequest.onComplete().accept(pasteResult);
+                            } finally {
+                                release.run();
+                            }
+                        }, world);
+            }
 
-        if (chunkFutures.isEmpty()) {
-            // No chunks required (empty schematic?), proceed immediately on main thread
+            @Override
+            public void cancel(String reason) {
+                if (pasteRequest.onComplete() != null)
+                    pasteRequest.onComplete().accept(failureResult("paste_cancelled:" + reason));
+            }
+        });
+    }
+
+    private static void startPaste(
+            SchematicContainer schematicContainer,
+            PasteFootprint footprint,
+            Location location,
+            Vector schematicOffset,
+            Runnable prePasteCallback,
+            Function<Boolean, Material> pedestalMaterialProvider,
+            TerrainFinish terrainFinish,
+            Consumer<PasteResult> onComplete,
+            org.bukkit.World world) {
+        // Step 1: Calculate required chunks WITHOUT accessing world
+        Set<Long> requiredChunks = calculateRequiredChunks(schematicContainer.getDimensions(), footprint, location, schematicOffset);
+
+        // Step 2: Load all required chunks through the shared chunk load budget, loaded ones are served right away
+        CompletableFuture<Void> chunkLoads = ChunkLoadRateLimiter.loadChunks(world, requiredChunks, ChunkLoadRateLimiter.Priority.PASTE);
+        Runnable afterChunkLoads = () -> {
+            // Step 3: Main thread — run prePasteCallback and add chunk tickets
             String validationFailure = validateRequiredChunks(world, requiredChunks);
             if (validationFailure != null) {
                 if (onComplete != null) onComplete.accept(failureResult("chunk_validation_failed:" + validationFailure));
                 return;
             }
             if (prePasteCallback != null) prePasteCallback.run();
-            executeFaweAsyncPaste(schematicClipboard, location, schematicOffset,
-                    pedestalMaterialProvider, onComplete, requiredChunks, world);
-        } else {
-            DeveloperLogger.debug("Loading " + chunkFutures.size() + " chunks before pasting at " +
-                    location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ());
-
-            CompletableFuture.allOf(chunkFutures.toArray(new CompletableFuture[0]))
-                    .thenRun(() -> {
-                        // Step 3: Main thread — run prePasteCallback and add chunk tickets
-                        Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> {
-                            String validationFailure = validateRequiredChunks(world, requiredChunks);
-                            if (validationFailure != null) {
-                                if (onComplete != null) onComplete.accept(failureResult("chunk_validation_failed:" + validationFailure));
-                                return;
-                            }
-                            if (prePasteCallback != null) prePasteCallback.run();
 
-                            // Add chunk tickets to keep chunks loaded during async paste
-                            for (Long key : requiredChunks) {
-                                int chunkX = (int) (key >> 32);
-                                int chunkZ = key.intValue();
-                                world.addPluginChunkTicket(chunkX, chunkZ, MetadataHandler.PLUGIN);
-                            }
+            // Keep chunks loaded during async paste, shared with overlapping pastes
+            ChunkTicketRegistry.Lease ticketLease = ChunkTicketRegistry.acquire(world, requiredChunks,
+                    "paste " + location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ());
+
+            // Step 4: Switch to async thread for FAWE paste
+            executeFaweAsyncPaste(schematicContainer, location, schematicOffset,
+                    pedestalMaterialProvider, terrainFinish, onComplete, requiredChunks, ticketLease, world);
+        };
 
-                            // Step 4: Switch to async thread for FAWE paste
-                            executeFaweAsyncPaste(schematicClipboard, location, schematicOffset,
-                                    pedestalMaterialProvider, onComplete, requiredChunks, world);
-                        });
-                    });
+        if (chunkLoads.isDone() && !chunkLoads.isCompletedExceptionally()) {
+            // Every chunk was already loaded, proceed immediately on main thread
+            afterChunkLoads.run();
+            return;
         }
+        DeveloperLogger.debug("Loading chunks before pasting at " +
+                location.getBlockX() + "," + location.getBlockY() + "," + location.getBlockZ() +
+                " (required: " + requiredChunks.size() + ")");
+        chunkLoads.whenComplete((ignored, throwable) -> Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> {
+            if (throwable != null) {
+                // Report the failure so the paste slot is not held forever
+                if (onComplete != null) onComplete.accept(failureResult("chunk_load_failed:" + throwable.getMessage()));
+                return;
+            }
+            afterChunkLoads.run();
+        }));
     }
 
-    private static String validateRequiredChunks(org.bukkit.World world, Set<Long> requiredChunks) {
+    static String validateRequiredChunks(org.bukkit.World world, Set<Long> requiredChunks) {
         if (!DefaultConfig.isValidateChunkBeforePaste()) {
             return null;
         }
@@ -247,106 +356,251 @@ public class Schematic {
 
     /**
      * Executes the actual block placement using FAWE EditSession on an async thread.
+     * Plans of at least {@code pastePerformance.incrementalPasteMinBlocks} blocks are pasted by an
+     * {@link IncrementalPaste} instead, one slice of chunks at a time.
      */
     private static void executeFaweAsyncPaste(
-            Clipboard schematicClipboard,
+            SchematicContainer schematicContainer,
             Location location,
             Vector schematicOffset,
             Function<Boolean, Material> pedestalMaterialProvider,
+            TerrainFinish terrainFinish,
             Consumer<PasteResult> onComplete,
             Set<Long> requiredChunks,
+            ChunkTicketRegistry.Lease ticketLease,
             org.bukkit.World bukkitWorld) {
 
+        // Step 5: Back to main thread — queue the relight, release chunk tickets and run onComplete. Null means success
+        Consumer<String> finish = failureReason -> {
+            Runnable complete = () -> {
+                // Queued before the paste tickets go away, so the chunks stay loaded until they are relit
+                if (failureReason == null && MetadataHandler.PLUGIN.isEnabled())
+                    queueRelight(bukkitWorld, requiredChunks, location.clone().add(schematicOffset).getBlockY(),
+                            schematicContainer);
+                ticketLease.release();
+                if (onComplete != null) {
+                    if (failureReason == null) {
+                        onComplete.accept(successResult());
+                    } else {
+                        onComplete.accept(failureResult(failureReason));
+                    }
+                }
+            };
+            try {
+                Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, complete);
+            } catch (IllegalPluginAccessException e) {
+                // Disabled during the paste, cleanup still has to release the tickets and the queue slot
+                complete.run();
+            }
+        };
+
         Bukkit.getScheduler().runTaskAsynchronously(MetadataHandler.PLUGIN, () -> {
-            boolean success = true;
-            String failureReason = "unknown";
+            String failureReason = null;
             try {
                 World weWorld = BukkitAdapter.adapt(bukkitWorld);
                 Location adjustedLocation = location.clone().add(schematicOffset);
 
-                try (EditSession editSession = WorldEdit.getInstance().newEditSession(weWorld)) {
-                    editSession.setTrackingHistory(false);
-                    editSession.setSideEffectApplier(SideEffectSet.none());
-
-                    for (int x = 0; x < schematicClipboard.getDimensions().x(); x++)
-                        for (int y = 0; y < schematicClipboard.getDimensions().y(); y++)
-                            for (int z = 0; z < schematicClipboard.getDimensions().z(); z++) {
-                                BlockVector3 clipboardPos = BlockVector3.at(
-                                        x + schematicClipboard.getMinimumPoint().x(),
-                                        y + schematicClipboard.getMinimumPoint().y(),
-                                        z + schematicClipboard.getMinimumPoint().z());
-
-                                BaseBlock baseBlock = schematicClipboard.getFullBlock(clipboardPos);
-                                Material material = BukkitAdapter.adapt(baseBlock.getBlockType());
-
-                                // Skip barriers
-                                if (material == Material.BARRIER) continue;
-
-                                int worldX = adjustedLocation.getBlockX() + x;
-                                int worldY = adjustedLocation.getBlockY() + y;
-                                int worldZ = adjustedLocation.getBlockZ() + z;
-                                BlockVector3 worldPos = BlockVector3.at(worldX, worldY, worldZ);
-
-                                if (material == Material.BEDROCK) {
-                                    // Check if existing block is solid using FAWE async-safe getBlock
-                                    if (editSession.getBlock(worldPos).getBlockType().getMaterial().isSolid()) continue;
-
-                                    // Determine if this is a surface block (block above is not solid in schematic)
-                                    boolean isGround = !BukkitAdapter.adapt(schematicClipboard.getBlock(
-                                            BlockVector3.at(clipboardPos.x(),
-                                                    clipboardPos.y() + 1,
-                                                    clipboardPos.z())).getBlockType()).isSolid();
-
-                                    Material pedestalMaterial = pedestalMaterialProvider.apply(isGround);
-                                    editSession.setBlock(worldPos, BukkitAdapter.adapt(pedestalMaterial.createBlockData()));
-                                } else {
-                                    // All blocks (including NBT-rich) go through BaseBlock which carries NBT
-                                    editSession.setBlock(worldPos, baseBlock);
-                                }
-                            }
+                // Compiled on the first paste of this schematic, only holds the positions that get written
+                PastePlan pastePlan = schematicContainer.getPastePlan();
+                int cornerX = adjustedLocation.getBlockX();
+                int cornerY = adjustedLocation.getBlockY();
+                int cornerZ = adjustedLocation.getBlockZ();
+
+                int incrementalPasteMinBlocks = DefaultConfig.getIncrementalPasteMinBlocks();
+                if (incrementalPasteMinBlocks > 0 && pastePlan.getBlockCount() >= incrementalPasteMinBlocks) {
+                    new IncrementalPaste(weWorld, pastePlan, cornerX, cornerY, cornerZ, pedestalMaterialProvider,
+                            terrainFinish, schematicContainer.getClipboardFilename(), finish).start();
+                    return;
+                }
+
+                // One chunk section after the other, so the FAWE queue fills a section before moving on
+                SectionBatches sectionBatches = pastePlan.groupBySection(cornerX, cornerY, cornerZ,
+                        DefaultConfig.getPasteSectionOrder());
+                SectionBatches pedestalBatches = pastePlan.groupPedestalsBySection(cornerX, cornerY, cornerZ,
+                        DefaultConfig.getPasteSectionOrder());
+                long writeStart = System.nanoTime();
+                long writeNanos = 0;
+                long slowestSectionNanos = 0;
+                int slowestSection = 0;
+
+                try (EditSession editSession = newPasteSession(weWorld)) {
+                    for (int section = 0; section < sectionBatches.getSectionCount(); section++) {
+                        long sectionStart = System.nanoTime();
+                        writeSection(editSession, pastePlan, sectionBatches, section, cornerX, cornerY, cornerZ);
+                        long sectionNanos = System.nanoTime() - sectionStart;
+                        writeNanos += sectionNanos;
+                        if (sectionNanos > slowestSectionNanos) {
+                            slowestSectionNanos = sectionNanos;
+                            slowestSection = section;
+                        }
+                    }
+
+                    for (int section = 0; section < pedestalBatches.getSectionCount(); section++)
+                        writePedestalSection(editSession, pastePlan, pedestalBatches, section, cornerX, cornerY, cornerZ,
+                                pedestalMaterialProvider);
+
+                    for (int x = 0; x < pastePlan.getSizeX(); x++)
+                        for (int z = 0; z < pastePlan.getSizeZ(); z++)
+                            finishColumn(editSession, pastePlan, x, z, cornerX, cornerY, cornerZ, pedestalMaterialProvider,
+                                    terrainFinish);
                 } // EditSession auto-closes and flushes
 
+                if (DefaultConfig.isDeveloperMessages() && sectionBatches.getSectionCount() > 0) {
+                    long flushNanos = System.nanoTime() - writeStart - writeNanos;
+                    DeveloperLogger.debug("Pasted " + pastePlan.getBlockCount() + " blocks in "
+                            + sectionBatches.getSectionCount() + " sections at " + cornerX + "," + cornerY + "," + cornerZ
+                            + " (order " + DefaultConfig.getPasteSectionOrder() + ", write " + writeNanos / 1_000_000
+                            + "ms, pedestals, terrain and flush " + flushNanos / 1_000_000 + "ms, avg "
+                            + writeNanos / sectionBatches.getSectionCount() / 1_000 + "us/section, slowest section "
+                            + sectionBatches.getSectionX(slowestSection) + "," + sectionBatches.getSectionY(slowestSection) + ","
+                            + sectionBatches.getSectionZ(slowestSection) + " " + slowestSectionNanos / 1_000 + "us)");
+                }
+
             } catch (Exception e) {
-                success = false;
-                String exceptionMessage = e.getMessage() == null ? "" : (":" + e.getMessage());
-                failureReason = "fawe_exception:" + e.getClass().getSimpleName() + exceptionMessage;
-                Logger.warn("FAWE 异步粘贴失败: " + e.getMessage());
-                e.printStackTrace();
+                failureReason = faweFailureReason(e);
             }
 
-            // Step 5: Back to main thread — release chunk tickets and run onComplete
-            boolean finalSuccess = success;
-            String finalFailureReason = failureReason;
-            Bukkit.getScheduler().runTask(MetadataHandler.PLUGIN, () -> {
-                for (Long key : requiredChunks) {
-                    int chunkX = (int) (key >> 32);
-                    int chunkZ = key.intValue();
-                    bukkitWorld.removePluginChunkTicket(chunkX, chunkZ, MetadataHandler.PLUGIN);
-                }
-                if (onComplete != null) {
-                    if (finalSuccess) {
-                        onComplete.accept(successResult());
-                    } else {
-                        onComplete.accept(failureResult(finalFailureReason));
-                    }
-                }
-            });
+            finish.accept(failureReason);
         });
     }
 
-    private static PasteResult successResult() {
-        return new PasteResult(true, "success");
+    /**
+     * Opens an EditSession for a structure paste. Lighting is left to the {@link RelightScheduler} when it is enabled.
+     */
+    static EditSession newPasteSession(World weWorld) {
+        EditSession editSession = RelightScheduler.disableLighting(
+                WorldEdit.getInstance().newEditSessionBuilder().world(weWorld)).build();
+        editSession.setTrackingHistory(false);
+        editSession.setSideEffectApplier(SideEffectSet.none());
+        return editSession;
     }
 
-    private static PasteResult failureResult(String reason) {
-        if (reason == null || reason.isEmpty()) return new PasteResult(false, "unknown");
-        return new PasteResult(false, reason);
+    /**
+     * Queues the relight of a finished paste, from the deepest pedestal block to the highest cleared tree block.
+     */
+    static void queueRelight(org.bukkit.World world, Set<Long> requiredChunks, int cornerY,
+                             SchematicContainer schematicContainer) {
+        RelightScheduler.queue(world, requiredChunks, cornerY - MAX_PEDESTAL_DEPTH,
+                cornerY + schematicContainer.getDimensions().y() + TREE_CLEARING_HEIGHT);
+    }
+
+    /**
+     * Writes a whole plan with its pedestals and terrain finish, for edits that do not time their sections.
+     */
+    static void writePlan(EditSession editSession, PastePlan pastePlan, int cornerX, int cornerY, int cornerZ,
+                          Function<Boolean, Material> pedestalMaterialProvider,
+                          TerrainFinish terrainFinish) throws WorldEditException {
+        SectionBatches sectionBatches = pastePlan.groupBySection(cornerX, cornerY, cornerZ,
+                DefaultConfig.getPasteSectionOrder());
+        for (int section = 0; section < sectionBatches.getSectionCount(); section++)
+            writeSection(editSession, pastePlan, sectionBatches, section, cornerX, cornerY, cornerZ);
+        SectionBatches pedestalBatches = pastePlan.groupPedestalsBySection(cornerX, cornerY, cornerZ,
+                DefaultConfig.getPasteSectionOrder());
+        for (int section = 0; section < pedestalBatches.getSectionCount(); section++)
+            writePedestalSection(editSession, pastePlan, pedestalBatches, section, cornerX, cornerY, cornerZ,
+                    pedestalMaterialProvider);
+        for (int x = 0; x < pastePlan.getSizeX(); x++)
+            for (int z = 0; z < pastePlan.getSizeZ(); z++)
+                finishColumn(editSession, pastePlan, x, z, cornerX, cornerY, cornerZ, pedestalMaterialProvider,
+                        terrainFinish);
+    }
+
+    /**
+     * Writes the plan blocks of one section. All blocks (including NBT-rich) go through BaseBlock which carries NBT.
+     */
+    static void writeSection(EditSession editSession, PastePlan pastePlan, SectionBatches sectionBatches, int section,
+                             int cornerX, int cornerY, int cornerZ) throws WorldEditException {
+        for (int step = sectionBatches.getSectionStart(section); step < sectionBatches.getSectionEnd(section); step++) {
+            int i = sectionBatches.getIndex(step);
+            editSession.setBlock(BlockVector3.at(cornerX + pastePlan.getBlockX(i),
+                    cornerY + pastePlan.getBlockY(i), cornerZ + pastePlan.getBlockZ(i)), pastePlan.getBlock(i));
+        }
     }
 
     /**
-     * Creates a unique key for chunk coordinates.
+     * Fills the pedestal positions of one section that are not solid in the world.
      */
-    private static long chunkKey(int x, int z) {
-        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    static void writePedestalSection(EditSession editSession, PastePlan pastePlan, SectionBatches pedestalBatches,
+                                     int section, int cornerX, int cornerY, int cornerZ,
+                                     Function<Boolean, Material> pedestalMaterialProvider) throws WorldEditException {
+        for (int step = pedestalBatches.getSectionStart(section); step < pedestalBatches.getSectionEnd(section); step++) {
+            int i = pedestalBatches.getIndex(step);
+            BlockVector3 worldPos = BlockVector3.at(cornerX + pastePlan.getPedestalX(i),
+                    cornerY + pastePlan.getPedestalY(i), cornerZ + pastePlan.getPedestalZ(i));
+            // Check if existing block is solid using FAWE async-safe getBlock
+            if (editSession.getBlock(worldPos).getBlockType().getMaterial().isSolid()) continue;
+            Material pedestalMaterial = pedestalMaterialProvider.apply(pastePlan.isGroundPedestal(i));
+            editSession.setBlock(worldPos, BukkitAdapter.adapt(pedestalMaterial.createBlockData()));
+        }
+    }
+
+    /**
+     * Applies the terrain finish of one column of the structure.
+     */
+    static void finishColumn(EditSession editSession, PastePlan pastePlan, int x, int z, int cornerX, int cornerY,
+                             int cornerZ, Function<Boolean, Material> pedestalMaterialProvider,
+                             TerrainFinish terrainFinish) throws WorldEditException {
+        if (terrainFinish.buildPedestal())
+            writePedestalColumn(editSession, pastePlan, x, z, cornerX, cornerY, cornerZ, pedestalMaterialProvider);
+        if (terrainFinish.clearTrees())
+            clearTreesAbove(editSession, pastePlan, x, z, cornerX, cornerY, cornerZ);
+    }
+
+    /**
+     * Fills the ignorable blocks under a column, at most {@link #MAX_PEDESTAL_DEPTH}, so the structure does not float above uneven ground.
+     */
+    private static void writePedestalColumn(EditSession editSession, PastePlan pastePlan, int x, int z, int cornerX,
+                                            int cornerY, int cornerZ,
+                                            Function<Boolean, Material> pedestalMaterialProvider) throws WorldEditException {
+        int worldX = cornerX + x;
+        int worldZ = cornerZ + z;
+        byte base = pastePlan.getColumnBase(x, z);
+        //Only add pedestals for areas with a solid floor, some schematics can have rounded air edges to better fit terrain
+        if (base == PastePlan.BASE_AIR) return;
+        boolean baseSolid = base == PastePlan.BASE_SOLID;
+        if (base == PastePlan.BASE_WORLD) {
+            BlockType worldBase = editSession.getBlock(BlockVector3.at(worldX, cornerY, worldZ)).getBlockType();
+            if (MaterialClassTable.is(worldBase, MaterialClassTable.AIR)) return;
+            baseSolid = MaterialClassTable.is(worldBase, MaterialClassTable.SOLID);
+        }
+        for (int y = -1; y >= -MAX_PEDESTAL_DEPTH; y--) {
+            BlockVector3 worldPos = BlockVector3.at(worldX, cornerY + y, worldZ);
+            //Pedestal only fills until it hits the first solid block
+            if (!MaterialClassTable.is(editSession.getBlock(worldPos).getBlockType(), MaterialClassTable.IGNORABLE)) break;
+            // Deeper blocks sit under a pedestal block, only the first one can be under a non solid base
+            Material pedestalMaterial = pedestalMaterialProvider.apply(y == -1 && !baseSolid);
+            editSession.setBlock(worldPos, BukkitAdapter.adapt(pedestalMaterial.createBlockData()));
+        }
+    }
+
+    /**
+     * Removes the tree blocks stacked on top of a column, starting one block above the structure.
+     */
+    private static void clearTreesAbove(EditSession editSession, PastePlan pastePlan, int x, int z, int cornerX,
+                                        int cornerY, int cornerZ) throws WorldEditException {
+        int startY = cornerY + pastePlan.getSizeY() + 1;
+        for (int y = 0; y < TREE_CLEARING_HEIGHT; y++) {
+            BlockVector3 worldPos = BlockVector3.at(cornerX + x, startY + y, cornerZ + z);
+            int blockClasses = MaterialClassTable.getClasses(editSession.getBlock(worldPos).getBlockType());
+            // Each column stops at its own first block that is not part of a tree
+            if ((blockClasses & (MaterialClassTable.IGNORABLE | MaterialClassTable.AIR)) != MaterialClassTable.IGNORABLE) break;
+            editSession.setBlock(worldPos, BlockTypes.AIR.getDefaultState());
+        }
+    }
+
+    static String faweFailureReason(Exception e) {
+        String exceptionMessage = e.getMessage() == null ? "" : (":" + e.getMessage());
+        Logger.warn("FAWE 异步粘贴失败: " + e.getMessage());
+        e.printStackTrace();
+        return "fawe_exception:" + e.getClass().getSimpleName() + exceptionMessage;
+    }
+
+    static PasteResult successResult() {
+        return new PasteResult(true, "success");
+    }
+
+    static PasteResult failureResult(String reason) {
+        if (reason == null || reason.isEmpty()) return new PasteResult(false, "unknown");
+        return new PasteResult(false, reason);
     }
 }
@@ -0,0 +1,163 @@
+package com.magmaguy.betterstructures.worldedit;
+
+/**
+ * Order in which a paste writes its blocks, grouped by the 16x16x16 chunk section they land in.
+ * <p>
+ * Writing one section at a time lets the FAWE queue fill a section before moving on instead of jumping between
+ * chunks on every block. Sections follow the configured {@link Sequence}; inside a section blocks keep the order of
+ * the paste plan. Built with a counting sort over the sections the paste covers, once per paste since the grouping
+ * depends on where the paste corner falls in its chunk.
+ */
+public final class SectionBatches {
+    private static final int AXIS_BITS = 21;
+    private static final long AXIS_MASK = (1L << AXIS_BITS) - 1;
+
+    public enum Sequence {
+        // Chunk by chunk, each chunk's sections bottom to top
+        CHUNK_COLUMNS,
+        // Layer of sections by layer of sections, bottom to top, chunk by chunk inside a layer
+        LAYERS,
+        // Plan order, no grouping
+        NONE
+    }
+
+    // Position indices in write order
+    private final int[] order;
+    // Start of each non-empty section in order, with a trailing end marker
+    private final int[] sectionStarts;
+    // World section coordinates of each non-empty section
+    private final int[] sectionX;
+    private final int[] sectionY;
+    private final int[] sectionZ;
+
+    private SectionBatches(int[] order, int[] sectionStarts, int[] sectionX, int[] sectionY, int[] sectionZ) {
+        this.order = order;
+        this.sectionStarts = sectionStarts;
+        this.sectionX = sectionX;
+        this.sectionY = sectionY;
+        this.sectionZ = sectionZ;
+    }
+
+    public static long pack(int x, int y, int z) {
+        return ((long) x << (AXIS_BITS * 2)) | ((long) y << AXIS_BITS) | z;
+    }
+
+    public static int unpackX(long position) {
+        return (int) (position >>> (AXIS_BITS * 2));
+    }
+
+    public static int unpackY(long position) {
+        return (int) ((position >>> AXIS_BITS) & AXIS_MASK);
+    }
+
+    public static int unpackZ(long position) {
+        return (int) (position & AXIS_MASK);
+    }
+
+    /**
+     * @param positions Positions packed with {@link #pack(int, int, int)}, relative to the paste corner
+     * @param cornerX   World X of the paste corner
+     * @param cornerY   World Y of the paste corner
+     * @param cornerZ   World Z of the paste corner
+     * @param sequence  Order of the sections
+     */
+    public static SectionBatches group(long[] positions, int cornerX, int cornerY, int cornerZ, Sequence sequence) {
+        int count = positions.length;
+        int baseX = cornerX >> 4;
+        int baseY = cornerY >> 4;
+        int baseZ = cornerZ >> 4;
+        if (count == 0) return new SectionBatches(new int[0], new int[]{0}, new int[0], new int[0], new int[0]);
+        if (sequence == Sequence.NONE) {
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) order[i] = i;
+            return new SectionBatches(order, new int[]{0, count}, new int[]{baseX}, new int[]{baseY}, new int[]{baseZ});
+        }
+
+        int spanX = 0, spanY = 0, spanZ = 0;
+        for (long position : positions) {
+            spanX = Math.max(spanX, ((cornerX + unpackX(position)) >> 4) - baseX + 1);
+            spanY = Math.max(spanY, ((cornerY + unpackY(position)) >> 4) - baseY + 1);
+            spanZ = Math.max(spanZ, ((cornerZ + unpackZ(position)) >> 4) - baseZ + 1);
+        }
+
+        int[] sectionOfPosition = new int[count];
+        int[] counts = new int[spanX * spanY * spanZ + 1];
+        for (int i = 0; i < count; i++) {
+            int localX = ((cornerX + unpackX(positions[i])) >> 4) - baseX;
+            int localY = ((cornerY + unpackY(positions[i])) >> 4) - baseY;
+            int localZ = ((cornerZ + unpackZ(positions[i])) >> 4) - baseZ;
+            int section = sequence == Sequence.LAYERS
+                    ? (localY * spanX + localX) * spanZ + localZ
+                    : (localX * spanZ + localZ) * spanY + localY;
+            sectionOfPosition[i] = section;
+            counts[section + 1]++;
+        }
+
+        int nonEmptySections = 0;
+        for (int section = 0; section < counts.length - 1; section++) {
+            if (counts[section + 1] > 0) nonEmptySections++;
+            counts[section + 1] += counts[section];
+        }
+
+        int[] sectionStarts = new int[nonEmptySections + 1];
+        int[] sectionX = new int[nonEmptySections];
+        int[] sectionY = new int[nonEmptySections];
+        int[] sectionZ = new int[nonEmptySections];
+        int index = 0;
+        for (int section = 0; section < counts.length - 1; section++) {
+            if (counts[section + 1] == counts[section]) continue;
+            sectionStarts[index] = counts[section];
+            int localX, localY, localZ;
+            if (sequence == Sequence.LAYERS) {
+                localZ = section % spanZ;
+                localX = (section / spanZ) % spanX;
+                localY = section / spanZ / spanX;
+            } else {
+                localY = section % spanY;
+                localZ = (section / spanY) % spanZ;
+                localX = section / spanY / spanZ;
+            }
+            sectionX[index] = baseX + localX;
+            sectionY[index] = baseY + localY;
+            sectionZ[index] = baseZ + localZ;
+            index++;
+        }
+        sectionStarts[nonEmptySections] = count;
+
+        // Stable, so positions keep their plan order inside a section
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) order[counts[sectionOfPosition[i]]++] = i;
+        return new SectionBatches(order, sectionStarts, sectionX, sectionY, sectionZ);
+    }
+
+    public int getSectionCount() {
+        return sectionStarts.length - 1;
+    }
+
+    public int getSectionStart(int section) {
+        return sectionStarts[section];
+    }
+
+    public int getSectionEnd(int section) {
+        return sectionStarts[section + 1];
+    }
+
+    /**
+     * @return Index of the position written at the given step
+     */
+    public int getIndex(int step) {
+        return order[step];
+    }
+
+    public int getSectionX(int section) {
+        return sectionX[section];
+    }
+
+    public int getSectionY(int section) {
+        return sectionY[section];
+    }
+
+    public int getSectionZ(int section) {
+        return sectionZ[section];
+    }
+}
@@ -0,0 +1,34 @@
+package com.magmaguy.betterstructures.schematics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasteCostTest {
+    @Test
+    void weighsEveryComponent() {
+        assertEquals(1, new PasteCost(4096, 0, 0, 0).getUnits(), 1e-9);
+        assertEquals(3, new PasteCost(0, 3, 0, 0).getUnits(), 1e-9);
+        assertEquals(1, new PasteCost(0, 0, 4, 0).getUnits(), 1e-9);
+        assertEquals(1, new PasteCost(0, 0, 0, 2).getUnits(), 1e-9);
+        assertEquals(6, new PasteCost(4096, 3, 4, 2).getUnits(), 1e-9);
+    }
+
+    @Test
+    void aHutIsCheapAndACastleIsExpensive() {
+        PasteCost hut = new PasteCost(120, 1, 1, 0);
+        PasteCost castle = new PasteCost(1_500_000, 196, 80, 40);
+        assertFalse(hut.isExpensive(64));
+        assertTrue(castle.isExpensive(64));
+        // A threshold at the exact cost counts as expensive
+        assertTrue(new PasteCost(0, 64, 0, 0).isExpensive(64));
+    }
+
+    @Test
+    void aThresholdOfZeroDisablesTheCheck() {
+        assertFalse(new PasteCost(1_500_000, 196, 80, 40).isExpensive(0));
+        assertFalse(new PasteCost(1_500_000, 196, 80, 40).isExpensive(-1));
+    }
+}
@@ -0,0 +1,40 @@
+package com.magmaguy.betterstructures.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AliasTableTest {
+    private static final int STEPS = 1_000_000;
+
+    // Sweeps the uniform input evenly, so the frequencies are the exact probabilities up to the step size
+    private static double[] frequencies(AliasTable aliasTable) {
+        double[] counts = new double[aliasTable.size()];
+        for (int i = 0; i < STEPS; i++) counts[aliasTable.sample((i + 0.5) / STEPS)]++;
+        for (int i = 0; i < counts.length; i++) counts[i] /= STEPS;
+        return counts;
+    }
+
+    @Test
+    void picksIndicesProportionallyToTheirWeights() {
+        double[] frequencies = frequencies(new AliasTable(new double[]{1, 2, 3, 4}));
+        for (int i = 0; i < 4; i++) assertEquals((i + 1) / 10D, frequencies[i], 1e-4);
+    }
+
+    @Test
+    void neverPicksZeroOrInvalidWeights() {
+        double[] frequencies = frequencies(new AliasTable(new double[]{0, 5, -3, Double.NaN, 15}));
+        assertEquals(0, frequencies[0]);
+        assertEquals(0.25, frequencies[1], 1e-4);
+        assertEquals(0, frequencies[2]);
+        assertEquals(0, frequencies[3]);
+        assertEquals(0.75, frequencies[4], 1e-4);
+    }
+
+    @Test
+    void fallsBackToUniformWithoutPositiveWeights() {
+        double[] frequencies = frequencies(new AliasTable(new double[]{0, 0, 0}));
+        for (double frequency : frequencies) assertEquals(1 / 3D, frequency, 1e-4);
+        assertEquals(0, new AliasTable(new double[]{7}).sample(0.999999));
+    }
+}
@@ -0,0 +1,82 @@
+package com.magmaguy.betterstructures.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StartupGraphTest {
+    private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void shutdownPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    void runsIndependentStagesConcurrently() throws Exception {
+        // Each stage waits for the other, so this only finishes if both run at the same time
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        Runnable meet = () -> {
+            bothRunning.countDown();
+            try {
+                assertTrue(bothRunning.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException exception) {
+                throw new IllegalStateException(exception);
+            }
+        };
+        List<StartupGraph.StageTiming> timings = new StartupGraph()
+                .stage("schematics", pool, meet)
+                .stage("modules", pool, meet)
+                .run().get(10, TimeUnit.SECONDS);
+        assertEquals(2, timings.size());
+    }
+
+    @Test
+    void startsAStageOnlyAfterItsDependencies() throws Exception {
+        List<String> order = new CopyOnWriteArrayList<>();
+        List<StartupGraph.StageTiming> timings = new StartupGraph()
+                .stage("treasures", pool, () -> order.add("treasures"))
+                .stage("generators", pool, () -> order.add("generators"), "treasures")
+                .stage("modules", pool, () -> order.add("modules"), "treasures")
+                .stage("schematics", pool, () -> order.add("schematics"), "treasures", "generators")
+                .run().get(10, TimeUnit.SECONDS);
+        assertEquals("treasures", order.get(0));
+        assertTrue(order.indexOf("schematics") > order.indexOf("generators"));
+        assertEquals(4, timings.size());
+        assertEquals("treasures", timings.get(0).name());
+    }
+
+    @Test
+    void skipsTheDependentsOfAFailedStage() {
+        AtomicBoolean dependentRan = new AtomicBoolean();
+        CompletionException exception = assertThrows(CompletionException.class, () -> new StartupGraph()
+                .stage("generators", pool, () -> {
+                    throw new IllegalStateException("broken generator");
+                })
+                .stage("schematics", pool, () -> dependentRan.set(true), "generators")
+                .run().join());
+        assertInstanceOf(StartupGraph.StageFailure.class, exception.getCause());
+        assertTrue(exception.getCause().getMessage().contains("generators"));
+        assertFalse(dependentRan.get());
+    }
+
+    @Test
+    void rejectsUndeclaredAndDuplicateStages() {
+        StartupGraph startupGraph = new StartupGraph().stage("treasures", pool, () -> {
+        });
+        assertThrows(IllegalArgumentException.class, () -> startupGraph.stage("schematics", pool, () -> {
+        }, "generators"));
+        assertThrows(IllegalArgumentException.class, () -> startupGraph.stage("treasures", pool, () -> {
+        }));
+    }
+}
@@ -0,0 +1,39 @@
+package com.magmaguy.betterstructures.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StructureGridTest {
+    @Test
+    void matchesSeededRandomGridForAllChunksInRange() {
+        int[][] settings = {{15, 5}, {20, 7}, {40, 0}, {25, 30}, {1, 3}, {16, 8}};
+        Random seeds = new Random(42);
+        for (int[] setting : settings) {
+            long typeSeed = StructureGrid.typeSeed(seeds.nextLong(), "SURFACE");
+            StructureGrid grid = new StructureGrid(typeSeed, setting[0], setting[1]);
+            for (int x = -70; x <= 70; x++)
+                for (int z = -70; z <= 70; z++)
+                    assertEquals(legacyIsValidStructurePosition(typeSeed, x, z, setting[0], setting[1]), grid.isAnchor(x, z),
+                            "grid " + setting[0] + "/" + setting[1] + " at " + x + "," + z);
+        }
+    }
+
+    // Reference copy of the original per-cell java.util.Random implementation
+    private static boolean legacyIsValidStructurePosition(long typeSeed, int x, int z, int gridDistance, int maxOffset) {
+        for (int gridX = (x - maxOffset) / gridDistance - 1; gridX <= (x + maxOffset) / gridDistance + 1; gridX++) {
+            for (int gridZ = (z - maxOffset) / gridDistance - 1; gridZ <= (z + maxOffset) / gridDistance + 1; gridZ++) {
+                int baseX = gridX * gridDistance;
+                int baseZ = gridZ * gridDistance;
+                if (gridZ % 2 != 0) baseX += gridDistance / 2;
+                Random cellRandom = new Random(typeSeed ^ (((long) baseX << 32) | (baseZ & 0xFFFFFFFFL)));
+                int offsetX = maxOffset > 0 ? cellRandom.nextInt(maxOffset * 2 + 1) - maxOffset : 0;
+                int offsetZ = maxOffset > 0 ? cellRandom.nextInt(maxOffset * 2 + 1) - maxOffset : 0;
+                if (x == baseX + offsetX && z == baseZ + offsetZ) return true;
+            }
+        }
+        return false;
+    }
+}
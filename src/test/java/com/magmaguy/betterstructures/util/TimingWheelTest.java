@@ -0,0 +1,40 @@
+package com.magmaguy.betterstructures.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    @Test
+    void expiresEntriesOnTheirTickIncludingDelaysLongerThanTheWheel() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(8);
+        wheel.schedule(3, 3);
+        wheel.schedule(8, 8);
+        wheel.schedule(21, 21);
+        List<Long> expiredAt = new ArrayList<>();
+        for (long tick = 1; tick <= 30; tick++) {
+            long currentTick = tick;
+            wheel.tick(Integer.MAX_VALUE, value -> expiredAt.add(currentTick * 100 + value));
+        }
+        assertEquals(List.of(303L, 808L, 2121L), expiredAt);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void holdsBackEntriesOverTheTickBudget() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(16);
+        for (int i = 0; i < 5; i++) wheel.schedule(i, 1);
+        List<Integer> handled = new ArrayList<>();
+        assertEquals(2, wheel.tick(2, handled::add));
+        assertEquals(3, wheel.size());
+        assertEquals(3, wheel.backlog());
+        assertEquals(2, wheel.tick(2, handled::add));
+        assertEquals(1, wheel.tick(2, handled::add));
+        assertEquals(List.of(0, 1, 2, 3, 4), handled);
+        assertTrue(wheel.size() == 0 && wheel.backlog() == 0);
+    }
+}
@@ -0,0 +1,35 @@
+package com.magmaguy.betterstructures.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void allowsABurstUpToCapacityThenRefillsAtTheRate() {
+        TokenBucket tokenBucket = new TokenBucket(10, 10, 0);
+        for (int i = 0; i < 10; i++) assertTrue(tokenBucket.tryAcquire(0));
+        assertFalse(tokenBucket.tryAcquire(0));
+        // One token every 100ms
+        assertFalse(tokenBucket.tryAcquire(SECOND / 10 - 1));
+        assertTrue(tokenBucket.tryAcquire(SECOND / 10));
+        assertFalse(tokenBucket.tryAcquire(SECOND / 10));
+        int acquired = 0;
+        for (long now = SECOND / 10; now <= SECOND * 11 / 10; now += SECOND / 100)
+            if (tokenBucket.tryAcquire(now)) acquired++;
+        assertEquals(10, acquired);
+    }
+
+    @Test
+    void neverSavesUpMoreThanItsCapacity() {
+        TokenBucket tokenBucket = new TokenBucket(10, 5, 0);
+        for (int i = 0; i < 5; i++) assertTrue(tokenBucket.tryAcquire(0));
+        assertEquals(5, tokenBucket.getAvailable(60 * SECOND), 1e-9);
+        // Time going backwards does not mint tokens
+        assertEquals(5, tokenBucket.getAvailable(30 * SECOND), 1e-9);
+    }
+}
@@ -0,0 +1,75 @@
+package com.magmaguy.betterstructures.worldedit;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasteFootprintTest {
+    private static long chunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    // Footprint of a square structure with a barrier border of the given width
+    private static PasteFootprint bordered(int size, int border) {
+        BitSet writtenColumns = new BitSet(size * size);
+        for (int x = border; x < size - border; x++)
+            for (int z = border; z < size - border; z++)
+                writtenColumns.set(x * size + z);
+        return new PasteFootprint(size, size, writtenColumns);
+    }
+
+    @Test
+    void onlyLoadsTheChunksAStructureCovers() {
+        // 3x3 chunks of structure with a barrier border, aligned with the chunk grid
+        Set<Long> chunks = bordered(48, 1).getRequiredChunks(16, -32);
+        assertEquals(9, chunks.size());
+        for (int chunkX = 1; chunkX <= 3; chunkX++)
+            for (int chunkZ = -2; chunkZ <= 0; chunkZ++)
+                assertTrue(chunks.contains(chunkKey(chunkX, chunkZ)));
+    }
+
+    @Test
+    void addsNeighboursWhereWrittenColumnsTouchAChunkEdge() {
+        // The full bounding box reaches every outer chunk edge, so the whole ring is needed
+        assertEquals(25, PasteFootprint.boundingBox(48, 48).getRequiredChunks(16, 16).size());
+        // A single column in the corner of chunk 0,0 touches the -X and -Z edges
+        BitSet corner = new BitSet(1);
+        corner.set(0);
+        Set<Long> chunks = new PasteFootprint(1, 1, corner).getRequiredChunks(0, 0);
+        assertEquals(Set.of(chunkKey(0, 0), chunkKey(-1, 0), chunkKey(0, -1), chunkKey(-1, -1)), chunks);
+    }
+
+    @Test
+    void skipsChunksOnlyReachedByEmptyColumns() {
+        // A 40 wide box starting mid chunk, with only its first row written
+        BitSet writtenColumns = new BitSet(40 * 40);
+        for (int z = 0; z < 40; z++) writtenColumns.set(z);
+        Set<Long> chunks = new PasteFootprint(40, 40, writtenColumns).getRequiredChunks(4, 4);
+        // Columns at x = 4 span z = 4..43, touching the z = 15/16 and 31/32 edges inside the row
+        assertEquals(Set.of(chunkKey(0, 0), chunkKey(0, 1), chunkKey(0, 2)), chunks);
+    }
+
+    @Test
+    void survivesTheSchematicCache() throws IOException {
+        PasteFootprint footprint = bordered(40, 3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        footprint.write(new DataOutputStream(bytes));
+        PasteFootprint read = PasteFootprint.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(footprint.getWrittenColumnCount(), read.getWrittenColumnCount());
+        assertEquals(footprint.getRequiredChunks(4, -20), read.getRequiredChunks(4, -20));
+        // A truncated entry is rejected instead of read as a smaller footprint
+        byte[] truncated = Arrays.copyOf(bytes.toByteArray(), bytes.size() - 4);
+        assertThrows(IOException.class, () -> PasteFootprint.read(new DataInputStream(new ByteArrayInputStream(truncated))));
+    }
+}
@@ -0,0 +1,67 @@
+package com.magmaguy.betterstructures.worldedit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PasteSlicesTest {
+    private static long chunkKey(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    // A filled box of blocks, in the y, z, x order of a paste plan
+    private static long[] box(int sizeX, int sizeY, int sizeZ) {
+        long[] positions = new long[sizeX * sizeY * sizeZ];
+        int index = 0;
+        for (int y = 0; y < sizeY; y++)
+            for (int z = 0; z < sizeZ; z++)
+                for (int x = 0; x < sizeX; x++)
+                    positions[index++] = SectionBatches.pack(x, y, z);
+        return positions;
+    }
+
+    @Test
+    void slicesCoverEveryChunkOnce() {
+        // 3x3 chunks, two sections high
+        SectionBatches blocks = SectionBatches.group(box(48, 32, 48), 0, 0, 0, SectionBatches.Sequence.CHUNK_COLUMNS);
+        // Pedestals under three of the chunks, sharing their slices with the blocks
+        long[] pedestalPositions = {SectionBatches.pack(0, 0, 0), SectionBatches.pack(0, 0, 40), SectionBatches.pack(47, 0, 47)};
+        SectionBatches pedestals = SectionBatches.group(pedestalPositions, 0, 0, 0, SectionBatches.Sequence.CHUNK_COLUMNS);
+        PasteSlices slices = PasteSlices.plan(blocks, pedestals, 4);
+        assertEquals(3, slices.getSliceCount());
+
+        Set<Long> seenChunks = new HashSet<>();
+        int blockSections = 0;
+        int pedestalSections = 0;
+        for (int slice = 0; slice < slices.getSliceCount(); slice++) {
+            Set<Long> sliceChunks = new HashSet<>();
+            for (int section = slices.getBlockSectionStart(slice); section < slices.getBlockSectionEnd(slice); section++) {
+                sliceChunks.add(chunkKey(blocks.getSectionX(section), blocks.getSectionZ(section)));
+                blockSections++;
+            }
+            for (int section = slices.getPedestalSectionStart(slice); section < slices.getPedestalSectionEnd(slice); section++) {
+                sliceChunks.add(chunkKey(pedestals.getSectionX(section), pedestals.getSectionZ(section)));
+                pedestalSections++;
+            }
+            assertTrue(sliceChunks.size() <= 4);
+            for (long chunk : sliceChunks) assertTrue(seenChunks.add(chunk));
+        }
+        assertEquals(9, seenChunks.size());
+        assertEquals(blocks.getSectionCount(), blockSections);
+        assertEquals(pedestals.getSectionCount(), pedestalSections);
+    }
+
+    @Test
+    void handlesPlansWithoutPedestals() {
+        SectionBatches blocks = SectionBatches.group(box(32, 16, 16), 0, 0, 0, SectionBatches.Sequence.CHUNK_COLUMNS);
+        SectionBatches pedestals = SectionBatches.group(new long[0], 0, 0, 0, SectionBatches.Sequence.CHUNK_COLUMNS);
+        PasteSlices slices = PasteSlices.plan(blocks, pedestals, 1);
+        assertEquals(2, slices.getSliceCount());
+        assertEquals(1, slices.getBlockSectionEnd(0));
+        assertEquals(0, slices.getPedestalSectionEnd(1));
+    }
+}
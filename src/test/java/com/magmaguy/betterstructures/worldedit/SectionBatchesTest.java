@@ -0,0 +1,68 @@
+package com.magmaguy.betterstructures.worldedit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SectionBatchesTest {
+    // Every position of a box, in the y, z, x order of a paste plan
+    private static long[] box(int sizeX, int sizeY, int sizeZ) {
+        long[] positions = new long[sizeX * sizeY * sizeZ];
+        int index = 0;
+        for (int y = 0; y < sizeY; y++)
+            for (int z = 0; z < sizeZ; z++)
+                for (int x = 0; x < sizeX; x++)
+                    positions[index++] = SectionBatches.pack(x, y, z);
+        return positions;
+    }
+
+    @Test
+    void groupsEveryPositionIntoTheSectionItLandsIn() {
+        long[] positions = box(20, 20, 20);
+        // The corner sits mid section, so each axis spans two sections
+        SectionBatches batches = SectionBatches.group(positions, 8, -8, -20, SectionBatches.Sequence.CHUNK_COLUMNS);
+        assertEquals(8, batches.getSectionCount());
+        Set<Integer> seen = new HashSet<>();
+        for (int section = 0; section < batches.getSectionCount(); section++)
+            for (int step = batches.getSectionStart(section); step < batches.getSectionEnd(section); step++) {
+                int index = batches.getIndex(step);
+                assertTrue(seen.add(index));
+                assertEquals(batches.getSectionX(section), (8 + SectionBatches.unpackX(positions[index])) >> 4);
+                assertEquals(batches.getSectionY(section), (-8 + SectionBatches.unpackY(positions[index])) >> 4);
+                assertEquals(batches.getSectionZ(section), (-20 + SectionBatches.unpackZ(positions[index])) >> 4);
+            }
+        assertEquals(positions.length, seen.size());
+    }
+
+    @Test
+    void ordersSectionsBySequence() {
+        long[] positions = box(32, 32, 16);
+        SectionBatches columns = SectionBatches.group(positions, 0, 0, 0, SectionBatches.Sequence.CHUNK_COLUMNS);
+        // Both sections of chunk 0,0 first, bottom to top
+        assertEquals(0, columns.getSectionX(0));
+        assertEquals(0, columns.getSectionY(0));
+        assertEquals(0, columns.getSectionX(1));
+        assertEquals(1, columns.getSectionY(1));
+        SectionBatches layers = SectionBatches.group(positions, 0, 0, 0, SectionBatches.Sequence.LAYERS);
+        // The bottom sections of both chunks first
+        assertEquals(0, layers.getSectionY(0));
+        assertEquals(0, layers.getSectionY(1));
+        assertEquals(1, layers.getSectionX(1));
+    }
+
+    @Test
+    void keepsPlanOrderInsideASectionAndWithoutGrouping() {
+        long[] positions = box(4, 4, 4);
+        SectionBatches grouped = SectionBatches.group(positions, 0, 0, 0, SectionBatches.Sequence.CHUNK_COLUMNS);
+        SectionBatches ungrouped = SectionBatches.group(positions, 0, 0, 0, SectionBatches.Sequence.NONE);
+        assertEquals(1, grouped.getSectionCount());
+        for (int step = 0; step < positions.length; step++) {
+            assertEquals(step, grouped.getIndex(step));
+            assertEquals(step, ungrouped.getIndex(step));
+        }
+    }
+}